@@ -0,0 +1,69 @@
+package client;
+
+
+import util.AddressPortPair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A benchmark that measures client latency percentiles across a leader failover. Launch the replicas first
+ * (e.g. ManualServiceLauncher0 ~ ManualServiceLauncher4 with messageLossRate set to 0.0), then run this launcher with
+ * "hedge" or "nohedge" as the first argument, and kill the leader when it asks you to.
+ */
+public class ClientFailoverLatencyBenchmark {
+
+    private final static int NUM_OF_COMMANDS = 3000;
+    private final static int SEND_INTERVAL_MILLS = 10;
+    private final static int WINDOW_SIZE = 64;
+
+    public static void main(String args[]) throws InterruptedException {
+
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3057));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3058));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3059));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3060));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3061));
+
+        final boolean hedge = args.length > 0 && args[0].equals("hedge");
+
+        final PaxosLogClient logClient = new PaxosLogClient.Builder("127.0.0.1", 7799, allReplicasInfo)
+                .windowSize(WINDOW_SIZE)
+                .hedgingPolicy(hedge ? new HedgingPolicy(0.99, 50, 1000) : null)
+                .build();
+        final Thread clientThread = new Thread(logClient::start);
+        clientThread.setDaemon(true);
+        clientThread.start();
+
+        final long[] latencyNanos = new long[NUM_OF_COMMANDS];
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < NUM_OF_COMMANDS; i++) {
+            if (i == NUM_OF_COMMANDS / 3) {
+                System.out.println(">>> kill the current leader now <<<");
+            }
+            final int index = i;
+            final long startTime = System.nanoTime();
+            futures.add(logClient.submit("failover-" + i).thenAccept(slot -> latencyNanos[index] = System.nanoTime() - startTime));
+            Thread.sleep(SEND_INTERVAL_MILLS);
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+        Arrays.sort(latencyNanos);
+        System.out.printf("%s: p50 %.1f ms, p99 %.1f ms, p999 %.1f ms, max %.1f ms%n",
+                hedge ? "hedging" : "no hedging",
+                percentileMillis(latencyNanos, 0.5),
+                percentileMillis(latencyNanos, 0.99),
+                percentileMillis(latencyNanos, 0.999),
+                latencyNanos[latencyNanos.length - 1] / 1e6);
+        System.exit(0);
+    }
+
+    private static double percentileMillis(final long[] sortedNanos, final double percentile) {
+        final int index = Math.min(sortedNanos.length - 1, (int) Math.ceil(percentile * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+
+}
@@ -0,0 +1,56 @@
+package client;
+
+
+import util.AddressPortPair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A benchmark that measures how many commands per second a single client can get committed. Launch the replicas first
+ * (e.g. ManualServiceLauncher0 ~ ManualServiceLauncher4 with messageLossRate set to 0.0), then run this launcher.
+ *
+ * It runs the same workload twice: once sending a HELLO before every message (the old behaviour) and once caching
+ * the leader. The two clients listen to different ports so they can be run against the same replicas.
+ */
+public class ClientThroughputBenchmark {
+
+    private final static int NUM_OF_COMMANDS = 2000;
+
+    public static void main(String args[]) {
+
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3057));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3058));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3059));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3060));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3061));
+
+        final int numOfCommands = args.length > 0 ? Integer.parseInt(args[0]) : NUM_OF_COMMANDS;
+
+        final double withoutCache = run(new PaxosLogClient.Builder("127.0.0.1", 7787, allReplicasInfo).cacheLeader(false).build(),
+                numOfCommands);
+        final double withCache = run(new PaxosLogClient.Builder("127.0.0.1", 7788, allReplicasInfo).build(), numOfCommands);
+
+        System.out.printf("HELLO per message: %.1f commands/sec%n", withoutCache);
+        System.out.printf("cached leader:     %.1f commands/sec%n", withCache);
+        System.exit(0);
+    }
+
+    private static double run(final PaxosLogClient logClient, final int numOfCommands) {
+        final Thread clientThread = new Thread(logClient::start);
+        clientThread.setDaemon(true);
+        clientThread.start();
+
+        final long startTime = System.nanoTime();
+        final List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < numOfCommands; i++) {
+            futures.add(logClient.submit("benchmark-" + i));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        final long elapsedNanos = System.nanoTime() - startTime;
+        return numOfCommands * 1e9 / elapsedNanos;
+    }
+
+}
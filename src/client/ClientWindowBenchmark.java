@@ -0,0 +1,54 @@
+package client;
+
+
+import util.AddressPortPair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A benchmark that measures the throughput of a single client with different numbers of in-flight messages. Launch the
+ * replicas first (e.g. ManualServiceLauncher0 ~ ManualServiceLauncher4 with messageLossRate set to 0.0), then run this
+ * launcher. Each window size uses a fresh client listening to its own port.
+ */
+public class ClientWindowBenchmark {
+
+    private final static int NUM_OF_COMMANDS = 2000;
+    private final static int MAX_WINDOW_SIZE = 256;
+    private final static int FIRST_CLIENT_PORT = 7790;
+
+    public static void main(String args[]) {
+
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3057));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3058));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3059));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3060));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3061));
+
+        final int numOfCommands = args.length > 0 ? Integer.parseInt(args[0]) : NUM_OF_COMMANDS;
+
+        int clientPort = FIRST_CLIENT_PORT;
+        for (int windowSize = 1; windowSize <= MAX_WINDOW_SIZE; windowSize *= 2) {
+            final PaxosLogClient logClient = new PaxosLogClient.Builder("127.0.0.1", clientPort++, allReplicasInfo)
+                    .windowSize(windowSize)
+                    .build();
+            final Thread clientThread = new Thread(logClient::start);
+            clientThread.setDaemon(true);
+            clientThread.start();
+
+            final long startTime = System.nanoTime();
+            final List<CompletableFuture<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < numOfCommands; i++) {
+                futures.add(logClient.submit("benchmark-" + windowSize + "-" + i));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            final long elapsedNanos = System.nanoTime() - startTime;
+
+            System.out.printf("window %3d: %.1f commands/sec%n", windowSize, numOfCommands * 1e9 / elapsedNanos);
+        }
+        System.exit(0);
+    }
+
+}
@@ -0,0 +1,101 @@
+package client;
+
+
+import message.ClientToServerMsg;
+import message.ServerToClientMsg;
+import util.AddressPortPair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A benchmark that measures the aggregate throughput of linearizable reads when they are served by the leader only and
+ * when they are spread over the followers as well (read index, see PaxosLogServer.handleClientRead). Launch the
+ * replicas first (e.g. ManualServiceLauncher0 ~ ManualServiceLauncher4 with messageLossRate set to 0.0), then run this
+ * launcher.
+ *
+ * For 1, 3 and 5 serving replicas (replica 0 is the leader), READERS_PER_REPLICA readers per replica issue reads one
+ * after another for DURATION_SECONDS. Before that, a read-your-writes check writes a message and reads its slot from
+ * every follower with the slot token of the write.
+ */
+public class FollowerReadBenchmark {
+
+    private final static int DURATION_SECONDS = 10;
+    private final static int READERS_PER_REPLICA = 4;
+    private final static int CLIENT_PORT = 7820;
+
+    public static void main(String args[]) throws Exception {
+
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3057));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3058));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3059));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3060));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3061));
+
+        final int durationSeconds = args.length > 0 ? Integer.parseInt(args[0]) : DURATION_SECONDS;
+
+        final PaxosLogClient logClient = new PaxosLogClient.Builder("127.0.0.1", CLIENT_PORT, allReplicasInfo).build();
+        final Thread clientThread = new Thread(logClient::start);
+        clientThread.setDaemon(true);
+        clientThread.start();
+
+        // read-your-writes: the slot of a write is the token of the reads that have to see it
+        final String value = "follower-read-benchmark-" + System.currentTimeMillis();
+        final int slot = (int) (long) logClient.submit(value).join();
+        for (int r = 1; r < allReplicasInfo.size(); r++) {
+            final ReplicaReadClient readClient = new ReplicaReadClient("127.0.0.1", allReplicasInfo.get(r).getPort());
+            final ServerToClientMsg.ServerReadResponseMsg response = readClient.read(slot, slot).join();
+            if (!value.equals(response.getValue())) {
+                throw new IllegalStateException("Replica " + r + " misses the write at slot " + slot + "!");
+            }
+            readClient.close();
+        }
+        System.out.println("read-your-writes: every follower returns the write at slot " + slot);
+
+        for (int numOfServingReplicas : new int[]{1, 3, 5}) {
+            run(allReplicasInfo, numOfServingReplicas, durationSeconds);
+        }
+        System.exit(0);
+    }
+
+    private static void run(final List<AddressPortPair> allReplicasInfo, final int numOfServingReplicas,
+                            final int durationSeconds) throws Exception {
+        final AtomicLong numOfReads = new AtomicLong();
+        final AtomicLong numOfRejectedReads = new AtomicLong();
+        final long endTime = System.nanoTime() + durationSeconds * 1000000000L;
+        final List<Thread> readerThreads = new ArrayList<>();
+        final List<ReplicaReadClient> readClients = new ArrayList<>();
+        for (int r = 0; r < numOfServingReplicas; r++) {
+            for (int i = 0; i < READERS_PER_REPLICA; i++) {
+                final ReplicaReadClient readClient = new ReplicaReadClient("127.0.0.1", allReplicasInfo.get(r).getPort());
+                readClients.add(readClient);
+                final Thread readerThread = new Thread(() -> {
+                    while (System.nanoTime() < endTime) {
+                        try {
+                            readClient.read(-1, ClientToServerMsg.ReadMsg.LINEARIZABLE).join();
+                            numOfReads.incrementAndGet();
+                        } catch (CompletionException e) {
+                            numOfRejectedReads.incrementAndGet();
+                        }
+                    }
+                });
+                readerThread.start();
+                readerThreads.add(readerThread);
+            }
+        }
+        final long startTime = System.nanoTime();
+        for (Thread readerThread : readerThreads) {
+            readerThread.join();
+        }
+        final double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+        for (ReplicaReadClient readClient : readClients) {
+            readClient.close();
+        }
+        System.out.printf("%d serving replica(s): %.1f reads/sec, %d reads rejected%n", numOfServingReplicas,
+                numOfReads.get() / elapsedSeconds, numOfRejectedReads.get());
+    }
+
+}
@@ -0,0 +1,72 @@
+package client;
+
+import java.util.Arrays;
+
+/**
+ * A policy that decides how long a client waits for a response before hedging, i.e. sending the same message to the
+ * next candidate leader as well. The delay is a percentile of recently observed response latencies, so in steady state
+ * only the slowest few messages are hedged, while after the leader dies the client retries long before the
+ * retransmit timeout.
+ */
+public class HedgingPolicy {
+
+    private final static int NUM_OF_SAMPLES = 1024;
+
+    // the percentile is recomputed after this many new samples rather than on every message
+    private final static int RECOMPUTE_INTERVAL = 64;
+
+    private final double percentile;
+    private final long minDelayMillis;
+    private final long initialDelayMillis;
+
+    // a ring buffer of the latest response latencies in milliseconds
+    private final long[] latencySamples;
+    private int numOfSamples;
+    private int nextSampleIndex;
+    private int numOfSamplesSinceRecompute;
+    private long hedgeDelayMillis;
+
+    /**
+     * @param percentile         the percentile of recent latencies to wait before hedging, e.g. 0.99
+     * @param minDelayMillis     never hedge earlier than this, to avoid doubling the load when latencies are tiny
+     * @param initialDelayMillis the delay used before any latency is observed
+     */
+    public HedgingPolicy(final double percentile, final long minDelayMillis, final long initialDelayMillis) {
+        if (percentile <= 0 || percentile > 1) {
+            throw new IllegalArgumentException("Invalid percentile");
+        }
+        this.percentile = percentile;
+        this.minDelayMillis = minDelayMillis;
+        this.initialDelayMillis = initialDelayMillis;
+        this.latencySamples = new long[NUM_OF_SAMPLES];
+        this.numOfSamples = 0;
+        this.nextSampleIndex = 0;
+        this.numOfSamplesSinceRecompute = 0;
+        this.hedgeDelayMillis = Math.max(minDelayMillis, initialDelayMillis);
+    }
+
+    public synchronized void recordLatency(final long latencyMillis) {
+        latencySamples[nextSampleIndex] = latencyMillis;
+        nextSampleIndex = (nextSampleIndex + 1) % NUM_OF_SAMPLES;
+        numOfSamples = Math.min(numOfSamples + 1, NUM_OF_SAMPLES);
+        numOfSamplesSinceRecompute += 1;
+        if (numOfSamplesSinceRecompute >= RECOMPUTE_INTERVAL || numOfSamples < RECOMPUTE_INTERVAL) {
+            recomputeHedgeDelay();
+        }
+    }
+
+    /**
+     * @return How long to wait for a response before hedging
+     */
+    public synchronized long getHedgeDelayMillis() {
+        return hedgeDelayMillis;
+    }
+
+    private void recomputeHedgeDelay() {
+        numOfSamplesSinceRecompute = 0;
+        final long[] sortedSamples = Arrays.copyOf(latencySamples, numOfSamples);
+        Arrays.sort(sortedSamples);
+        final int index = Math.min(numOfSamples - 1, (int) Math.ceil(percentile * numOfSamples) - 1);
+        hedgeDelayMillis = Math.max(minDelayMillis, sortedSamples[Math.max(0, index)]);
+    }
+}
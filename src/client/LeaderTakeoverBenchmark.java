@@ -0,0 +1,69 @@
+package client;
+
+
+import util.AddressPortPair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A benchmark that measures how long the log is unavailable when the leader fails. Launch the replicas first
+ * (e.g. ManualServiceLauncher0 ~ ManualServiceLauncher4 with messageLossRate set to 0.0), then run this launcher with
+ * the number of replicas you are going to kill as the first argument (1 or 2), and kill them when it asks you to: the
+ * leader, and for 2 the replica that leads the next view as well, which the view would otherwise rotate to.
+ *
+ * Commands are submitted at a steady rate, so the longest gap between two consecutive commits is the time from the
+ * kill to the first commit of the new leader (failure detection, pre-vote, recovery and the client finding the leader).
+ * The client hedges, so that it finds the new leader within a hedge delay rather than its retransmission timeout.
+ */
+public class LeaderTakeoverBenchmark {
+
+    private final static int NUM_OF_COMMANDS = 3000;
+    private final static int SEND_INTERVAL_MILLS = 10;
+    private final static int WINDOW_SIZE = 64;
+
+    public static void main(String args[]) throws InterruptedException {
+
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3057));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3058));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3059));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3060));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3061));
+
+        final int numOfKilledReplicas = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+
+        final PaxosLogClient logClient = new PaxosLogClient.Builder("127.0.0.1", 7840, allReplicasInfo)
+                .windowSize(WINDOW_SIZE)
+                .hedgingPolicy(new HedgingPolicy(0.99, 50, 1000))
+                .build();
+        final Thread clientThread = new Thread(logClient::start);
+        clientThread.setDaemon(true);
+        clientThread.start();
+
+        final long[] commitTimeNanos = new long[NUM_OF_COMMANDS];
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < NUM_OF_COMMANDS; i++) {
+            if (i == NUM_OF_COMMANDS / 3) {
+                System.out.println(numOfKilledReplicas == 1
+                        ? ">>> kill the current leader now <<<"
+                        : ">>> kill the current leader and the replica leading the next view now <<<");
+            }
+            final int index = i;
+            futures.add(logClient.submit("takeover-" + i).thenAccept(slot -> commitTimeNanos[index] = System.nanoTime()));
+            Thread.sleep(SEND_INTERVAL_MILLS);
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+
+        Arrays.sort(commitTimeNanos);
+        long longestGapNanos = 0;
+        for (int i = 1; i < commitTimeNanos.length; i++) {
+            longestGapNanos = Math.max(longestGapNanos, commitTimeNanos[i] - commitTimeNanos[i - 1]);
+        }
+        System.out.printf("%d replica(s) killed: kill-to-first-commit %.1f ms%n", numOfKilledReplicas, longestGapNanos / 1e6);
+        System.exit(0);
+    }
+
+}
@@ -0,0 +1,117 @@
+package client;
+
+
+import util.AddressPortPair;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A benchmark that compares the latency spike clients see when the leader hands its leadership over (see
+ * LeaderTransferClient) with the one they see when the leader crashes. Launch the replicas first (e.g.
+ * ManualServiceLauncher0 ~ ManualServiceLauncher2 with messageLossRate set to 0.0), then run this launcher with
+ * "transfer" or "crash" as the first argument. For "transfer" it asks replica 0 to hand its leadership over to replica 1
+ * a third of the way through, for "crash" it asks you to kill the leader then.
+ *
+ * Commands are submitted at a steady rate as in LeaderTakeoverBenchmark, but slow enough not to queue up, so that the
+ * latencies show the spike rather than a backlog. It reports the latency percentiles of the commands, the longest gap
+ * between two consecutive commits and the commands not committed within FAILED_MILLS.
+ */
+public class LeaderTransferBenchmark {
+
+    private final static int NUM_OF_COMMANDS = 1000;
+    private final static int SEND_INTERVAL_MILLS = 30;
+    private final static int WINDOW_SIZE = 64;
+    private final static int FAILED_MILLS = 60000;
+
+    public static void main(String args[]) throws InterruptedException {
+
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3057));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3058));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3059));
+
+        final boolean transfer = args.length == 0 || !args[0].equals("crash");
+
+        final PaxosLogClient logClient = new PaxosLogClient.Builder("127.0.0.1", 7850, allReplicasInfo)
+                .windowSize(WINDOW_SIZE)
+                .hedgingPolicy(new HedgingPolicy(0.99, 50, 1000))
+                .build();
+        final Thread clientThread = new Thread(logClient::start);
+        clientThread.setDaemon(true);
+        clientThread.start();
+
+        final long[] submitTimeNanos = new long[NUM_OF_COMMANDS];
+        final long[] commitTimeNanos = new long[NUM_OF_COMMANDS];
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < NUM_OF_COMMANDS; i++) {
+            if (i == NUM_OF_COMMANDS / 3) {
+                if (transfer) {
+                    final Thread transferThread = new Thread(() -> {
+                        try {
+                            final long startNanos = System.nanoTime();
+                            final int leaderID = LeaderTransferClient.transfer(allReplicasInfo.get(0).getIp(),
+                                    allReplicasInfo.get(0).getPort(), 1);
+                            System.out.printf("Transfer answered in %.1f ms, the leader is replica %d%n",
+                                    (System.nanoTime() - startNanos) / 1e6, leaderID);
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                            System.out.println("Fail to transfer the leadership");
+                        }
+                    });
+                    transferThread.setDaemon(true);
+                    transferThread.start();
+                } else {
+                    System.out.println(">>> kill the current leader now <<<");
+                }
+            }
+            final int index = i;
+            submitTimeNanos[i] = System.nanoTime();
+            futures.add(logClient.submit((transfer ? "transfer-" : "crash-") + i)
+                    .thenAccept(slot -> commitTimeNanos[index] = System.nanoTime()));
+            Thread.sleep(SEND_INTERVAL_MILLS);
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(FAILED_MILLS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            // counted as failed below
+        }
+
+        final List<Long> latencyNanos = new ArrayList<>();
+        final List<Long> committedTimeNanos = new ArrayList<>();
+        int numOfFailed = 0;
+        for (int i = 0; i < NUM_OF_COMMANDS; i++) {
+            if (!futures.get(i).isDone() || futures.get(i).isCompletedExceptionally()) {
+                numOfFailed += 1;
+                continue;
+            }
+            latencyNanos.add(commitTimeNanos[i] - submitTimeNanos[i]);
+            committedTimeNanos.add(commitTimeNanos[i]);
+        }
+        final long[] sortedLatencyNanos = latencyNanos.stream().mapToLong(Long::longValue).sorted().toArray();
+        final long[] sortedCommitTimeNanos = committedTimeNanos.stream().mapToLong(Long::longValue).sorted().toArray();
+        long longestGapNanos = 0;
+        for (int i = 1; i < sortedCommitTimeNanos.length; i++) {
+            longestGapNanos = Math.max(longestGapNanos, sortedCommitTimeNanos[i] - sortedCommitTimeNanos[i - 1]);
+        }
+        System.out.printf("%s: p50 %.1f ms, p99 %.1f ms, max %.1f ms, longest gap between commits %.1f ms, %d failed%n",
+                transfer ? "leader transfer" : "leader crash",
+                percentile(sortedLatencyNanos, 0.50) / 1e6, percentile(sortedLatencyNanos, 0.99) / 1e6,
+                sortedLatencyNanos.length == 0 ? 0 : sortedLatencyNanos[sortedLatencyNanos.length - 1] / 1e6,
+                longestGapNanos / 1e6, numOfFailed);
+        System.exit(0);
+    }
+
+    private static long percentile(final long[] sortedValues, final double percentile) {
+        if (sortedValues.length == 0) {
+            return 0;
+        }
+        return sortedValues[Math.min(sortedValues.length - 1, (int) (sortedValues.length * percentile))];
+    }
+
+}
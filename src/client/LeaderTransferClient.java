@@ -0,0 +1,63 @@
+package client;
+
+import message.ClientToServerMsg;
+import message.ServerToClientMsg;
+import util.ClientIdGenerator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+
+/**
+ * An administration tool that asks the leader to hand its leadership over to another replica, e.g. before the leader is
+ * restarted for a deploy, so that the clients are redirected at once instead of waiting for the followers to suspect
+ * the leader (see PaxosLogServer.transferLeadership). Run it with the address and the port of the leader, and
+ * optionally the server ID of the target, the replica leading the next view by default.
+ *
+ * Like ReplicaReadClient, this tool does not listen to any port, the replica replies through the connection.
+ */
+public class LeaderTransferClient {
+
+    private final static int TIME_OUT_MILLS = 10000;
+
+    public static void main(String args[]) throws IOException {
+        final String serverAddr = args.length > 0 ? args[0] : "127.0.0.1";
+        final int serverPort = args.length > 1 ? Integer.parseInt(args[1]) : 3057;
+        final int targetServerID = args.length > 2 ? Integer.parseInt(args[2]) : ClientToServerMsg.TransferMsg.NEXT_REPLICA;
+        final int leaderID = transfer(serverAddr, serverPort, targetServerID);
+        System.out.println("The leader is replica " + leaderID);
+    }
+
+    /**
+     * @param targetServerID the replica to hand the leadership over to, ClientToServerMsg.TransferMsg.NEXT_REPLICA for
+     *                       the replica leading the next view
+     * @return The leader once the replica has answered: the target if the leadership is handed over, the replica itself
+     * if it has kept its leadership, or the leader it knows of if it is not the leader
+     */
+    public static int transfer(final String serverAddr, final int serverPort, final int targetServerID) throws IOException {
+        final long clientId = ClientIdGenerator.nextClientId();
+        try (Socket socket = new Socket(serverAddr, serverPort)) {
+            socket.setSoTimeout(TIME_OUT_MILLS);
+            final PrintWriter printWriter = new PrintWriter(socket.getOutputStream(), true);
+            final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            printWriter.println(new ClientToServerMsg.HelloMsg(clientId, serverAddr, 0).toString());
+            // the answer to the HELLO
+            bufferedReader.readLine();
+            printWriter.println(new ClientToServerMsg.TransferMsg(clientId, targetServerID).toString());
+            final String line = bufferedReader.readLine();
+            if (line == null) {
+                throw new IOException("Connection closed before the transfer is answered");
+            }
+            switch (ServerToClientMsg.getServerToClientType(line)) {
+                case ACK:
+                    return ServerToClientMsg.ServerAckMsg.fromString(line).getLeaderId();
+                case NACK:
+                    return ServerToClientMsg.ServerNackMsg.fromString(line).getCurrentLeaderId();
+                default:
+                    throw new IllegalStateException("Unresolvable response to TRANSFER!");
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package client;
+
+
+import util.AddressPortPair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.IntFunction;
+
+/**
+ * A benchmark that compares reads answered by the leader under its lease with reads written through the log (a chat
+ * message whose response tells the slot it is ordered at). Launch the replicas first (e.g. ManualServiceLauncher0 ~
+ * ManualServiceLauncher4 with messageLossRate set to 0.0), then run this launcher.
+ *
+ * Both kinds of reads are issued by one client with CONCURRENCY of them outstanding, and the throughput and the latency
+ * percentiles of each kind are reported.
+ */
+public class LeaseReadBenchmark {
+
+    private final static int NUM_OF_READS = 5000;
+    private final static int CONCURRENCY = 16;
+    private final static int CLIENT_PORT = 7810;
+
+    public static void main(String args[]) {
+
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3057));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3058));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3059));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3060));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3061));
+
+        final int numOfReads = args.length > 0 ? Integer.parseInt(args[0]) : NUM_OF_READS;
+
+        final PaxosLogClient logClient = new PaxosLogClient.Builder("127.0.0.1", CLIENT_PORT, allReplicasInfo)
+                .windowSize(CONCURRENCY)
+                .build();
+        final Thread clientThread = new Thread(logClient::start);
+        clientThread.setDaemon(true);
+        clientThread.start();
+
+        // a written message makes sure the leader has got a value chosen in its view, so it answers lease reads
+        logClient.submit("lease-read-benchmark-warmup").join();
+
+        run("write-through reads", numOfReads, i -> logClient.submit("lease-read-benchmark-" + i));
+        run("lease reads", numOfReads, i -> logClient.read(-1));
+        System.exit(0);
+    }
+
+    private static void run(final String name, final int numOfReads, final IntFunction<CompletableFuture<?>> read) {
+        final Semaphore outstandingReads = new Semaphore(CONCURRENCY);
+        final long[] latencies = new long[numOfReads];
+        final List<CompletableFuture<?>> futures = new ArrayList<>();
+        final long startTime = System.nanoTime();
+        for (int i = 0; i < numOfReads; i++) {
+            outstandingReads.acquireUninterruptibly();
+            final int readIndex = i;
+            final long readStartTime = System.nanoTime();
+            futures.add(read.apply(i).whenComplete((response, e) -> {
+                latencies[readIndex] = System.nanoTime() - readStartTime;
+                outstandingReads.release();
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        final long elapsedNanos = System.nanoTime() - startTime;
+
+        Arrays.sort(latencies);
+        System.out.printf("%s: %.1f reads/sec, latency p50 %.3f ms, p99 %.3f ms%n", name, numOfReads * 1e9 / elapsedNanos,
+                latencies[numOfReads / 2] / 1e6, latencies[(int) (numOfReads * 0.99)] / 1e6);
+    }
+
+}
@@ -0,0 +1,99 @@
+package client;
+
+import message.ClientToServerMsg;
+import message.Message;
+import message.ServerToClientMsg;
+import service.PaxosLogServer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A downstream consumer of the log, fetching executed entries by slot from the log read port of any replica (see
+ * service.LogReadService).
+ */
+public class LogRangeReader {
+
+    private final Socket socket;
+    private final PrintWriter printWriter;
+    private final DataInputStream inputStream;
+
+    /**
+     * @param serverPort the server port of the replica, the log read port is derived from it
+     */
+    public LogRangeReader(final String serverAddr, final int serverPort) throws IOException {
+        this.socket = new Socket(serverAddr, serverPort + PaxosLogServer.LOG_READ_PORT_OFFSET);
+        this.printWriter = new PrintWriter(socket.getOutputStream(), true);
+        this.inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+    }
+
+    /**
+     * @return The values of up to maxEntries consecutive slots from fromSlot on, empty if the replica has not executed
+     * fromSlot yet; a slot a new leader has filled with a no-op holds an empty value
+     */
+    public List<String> readRange(final int fromSlot, final int maxEntries) throws IOException {
+        return read(new ClientToServerMsg.ReadRangeMsg(fromSlot, maxEntries, false));
+    }
+
+    /**
+     * @return What the replica has executed in up to maxEntries consecutive slots from fromSlot on, with erasure coding
+     * the fragment it holds of a value rather than the value, so that a replica can rebuild the value from them
+     */
+    public List<String> readFragments(final int fromSlot, final int maxEntries) throws IOException {
+        return read(new ClientToServerMsg.ReadRangeMsg(fromSlot, maxEntries, true));
+    }
+
+    private List<String> read(final ClientToServerMsg.ReadRangeMsg readRangeMsg) throws IOException {
+        printWriter.println(readRangeMsg.toString());
+        final String header = readLine(inputStream);
+        if (Message.getMessageType(header) != Message.MESSAGE_TYPE.SERVER_TO_CLIENT
+                || ServerToClientMsg.getServerToClientType(header) != ServerToClientMsg.SERVER_TO_CLIENT_TYPE.RANGE) {
+            throw new IllegalStateException("Unresolvable response to READ_RANGE!");
+        }
+        final ServerToClientMsg.ServerRangeMsg rangeMsg = ServerToClientMsg.ServerRangeMsg.fromString(header);
+        final byte[] bytes = new byte[(int) rangeMsg.getNumOfBytes()];
+        inputStream.readFully(bytes);
+
+        final List<String> values = new ArrayList<>(rangeMsg.getNumOfEntries());
+        int lineStart = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            int separator = lineStart;
+            while (bytes[separator] != ':') {
+                separator += 1;
+            }
+            values.add(new String(bytes, separator + 1, i - separator - 1, StandardCharsets.UTF_8));
+            lineStart = i + 1;
+        }
+        if (values.size() != rangeMsg.getNumOfEntries()) {
+            throw new IllegalStateException("RANGE response does not hold the announced number of entries!");
+        }
+        return values;
+    }
+
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private static String readLine(final InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                throw new IOException("Connection closed by replica");
+            }
+            line.write(b);
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
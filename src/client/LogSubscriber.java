@@ -0,0 +1,118 @@
+package client;
+
+import message.ClientToServerMsg;
+import message.Message;
+import message.ServerToClientMsg;
+import service.PaxosLogServer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A downstream consumer that subscribes to the log read port of any replica (see service.LogReadService) and receives
+ * every executed entry in slot order as the replica executes it.
+ *
+ * The subscriber keeps its own offset (the next slot it expects), so it can resume from it on another replica after
+ * a failure. It grants the replica a window of credits and returns the credits of a batch once the batch is consumed,
+ * i.e. when the next batch is polled, so the replica never pushes more than the window ahead of the consumer.
+ */
+public class LogSubscriber {
+
+    public final static int DEFAULT_WINDOW = 4096;
+
+    private final Socket socket;
+    private final PrintWriter printWriter;
+    private final DataInputStream inputStream;
+
+    private int nextSlot;
+    private int numOfUncreditedEntries;
+
+    /**
+     * @param serverPort the server port of the replica, the log read port is derived from it
+     * @param fromSlot   the first slot to receive
+     * @param window     the number of entries the replica may push ahead of the consumer
+     */
+    public LogSubscriber(final String serverAddr, final int serverPort, final int fromSlot, final int window) throws IOException {
+        this.socket = new Socket(serverAddr, serverPort + PaxosLogServer.LOG_READ_PORT_OFFSET);
+        this.socket.setTcpNoDelay(true);
+        this.printWriter = new PrintWriter(socket.getOutputStream(), true);
+        this.inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        this.nextSlot = fromSlot;
+        this.numOfUncreditedEntries = 0;
+        printWriter.println(new ClientToServerMsg.SubscribeMsg(fromSlot, window).toString());
+    }
+
+    /**
+     * Block until the replica pushes the next batch
+     *
+     * @return The values of the next consecutive slots, the first of them is the slot getNextSlot() returned before
+     */
+    public List<String> poll() throws IOException {
+        if (numOfUncreditedEntries > 0) {
+            printWriter.println(new ClientToServerMsg.CreditMsg(numOfUncreditedEntries).toString());
+            numOfUncreditedEntries = 0;
+        }
+        final String header = readLine(inputStream);
+        if (Message.getMessageType(header) != Message.MESSAGE_TYPE.SERVER_TO_CLIENT
+                || ServerToClientMsg.getServerToClientType(header) != ServerToClientMsg.SERVER_TO_CLIENT_TYPE.RANGE) {
+            throw new IllegalStateException("Unresolvable message on a subscription!");
+        }
+        final ServerToClientMsg.ServerRangeMsg rangeMsg = ServerToClientMsg.ServerRangeMsg.fromString(header);
+        if (rangeMsg.getFromSlot() != nextSlot) {
+            throw new IllegalStateException("Subscription skips from slot " + nextSlot + " to " + rangeMsg.getFromSlot() + "!");
+        }
+        final byte[] bytes = new byte[(int) rangeMsg.getNumOfBytes()];
+        inputStream.readFully(bytes);
+
+        final List<String> values = new ArrayList<>(rangeMsg.getNumOfEntries());
+        int lineStart = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            int separator = lineStart;
+            while (bytes[separator] != ':') {
+                separator += 1;
+            }
+            values.add(new String(bytes, separator + 1, i - separator - 1, StandardCharsets.UTF_8));
+            lineStart = i + 1;
+        }
+        if (values.size() != rangeMsg.getNumOfEntries()) {
+            throw new IllegalStateException("RANGE message does not hold the announced number of entries!");
+        }
+        nextSlot += values.size();
+        numOfUncreditedEntries += values.size();
+        return values;
+    }
+
+    /**
+     * @return The offset of the subscriber, the next slot it will receive
+     */
+    public int getNextSlot() {
+        return nextSlot;
+    }
+
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private static String readLine(final InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                throw new IOException("Connection closed by replica");
+            }
+            line.write(b);
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
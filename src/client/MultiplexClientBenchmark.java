@@ -0,0 +1,59 @@
+package client;
+
+
+import util.AddressPortPair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A benchmark that carries many logical sessions over one MultiplexPaxosLogClient and measures the throughput and the
+ * number of connections it needs. Launch the replicas first (e.g. ManualServiceLauncher0 ~ ManualServiceLauncher4 with
+ * messageLossRate set to 0.0), then run this launcher.
+ *
+ * For comparison, the same sessions as separate PaxosLogClients would need one listening port each and two sockets
+ * per replica each (one to send and one the replica connects back with).
+ */
+public class MultiplexClientBenchmark {
+
+    private final static int NUM_OF_SESSIONS = 10000;
+    private final static int NUM_OF_COMMANDS_PER_SESSION = 1;
+
+    public static void main(String args[]) {
+
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3057));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3058));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3059));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3060));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3061));
+
+        final int numOfSessions = args.length > 0 ? Integer.parseInt(args[0]) : NUM_OF_SESSIONS;
+        final int numOfCommandsPerSession = args.length > 1 ? Integer.parseInt(args[1]) : NUM_OF_COMMANDS_PER_SESSION;
+
+        final MultiplexPaxosLogClient logClient = new MultiplexPaxosLogClient(allReplicasInfo, 0.0);
+        logClient.start();
+
+        final List<MultiplexPaxosLogClient.Session> sessions = new ArrayList<>(numOfSessions);
+        for (int i = 0; i < numOfSessions; i++) {
+            sessions.add(logClient.openSession());
+        }
+
+        final long startTime = System.nanoTime();
+        final List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int round = 0; round < numOfCommandsPerSession; round++) {
+            for (int i = 0; i < numOfSessions; i++) {
+                futures.add(sessions.get(i).submit("session-" + i + "-" + round));
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        final long elapsedNanos = System.nanoTime() - startTime;
+
+        System.out.printf("sessions: %d, connections: %d (separate clients would need %d)%n",
+                numOfSessions, logClient.getNumOfConnections(), numOfSessions * allReplicasInfo.size() * 2);
+        System.out.printf("throughput: %.1f commands/sec%n", futures.size() * 1e9 / elapsedNanos);
+        System.exit(0);
+    }
+
+}
@@ -0,0 +1,407 @@
+package client;
+
+import message.ClientToServerMsg;
+import message.Message;
+import message.ServerToClientMsg;
+import service.PaxosLogServer;
+import thread.ThreadHandler;
+import util.AddressPortPair;
+import util.ChatMessageIdentifier;
+import util.ClientIdGenerator;
+import util.FragmentCodec;
+import util.PayloadStore;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A Paxos client that carries many logical sessions over a single connection per replica. Each session has its own
+ * client ID and message sequence numbers, so replicas deduplicate the messages of every session independently.
+ * Chat messages from all sessions are batched into one BATCH message, and responses are dispatched back to each
+ * session by the client ID they carry.
+ *
+ * Unlike PaxosLogClient, this client does not listen to any port, replicas reply through the connection the client opens.
+ */
+public class MultiplexPaxosLogClient {
+
+    private final static long TIME_OUT_RETRANSMIT_PERIOD = 10000;
+    // how long the client waits before it asks the next replica when a replica misses the leader as well
+    private final static long NEXT_REPLICA_HELLO_DELAY = 100;
+
+    private final static int MAX_BATCH_SIZE = 512;
+
+    // the ID of this client connection, replicas route the responses of all sessions to the connection with this ID;
+    // it is the first ID of the block the IDs of the sessions are numbered in (see ClientIdGenerator.nextSessionBlockId)
+    private final long connectionClientId;
+    // the number of the next session in the block of this connection
+    private final AtomicLong nextSessionNumber;
+
+    private final int totalNumOfReplicas;
+    private final List<AddressPortPair> allReplicasInfo;
+
+    private final double messageLossRate;
+
+    private volatile int leaderServerID;
+    private volatile boolean leaderKnown;
+    private volatile boolean waitingForHelloResponse;
+
+    // for allReplicaWriters, the key is the replica ID and value is the writer of the only socket to that replica
+    private final Map<Integer, PrintWriter> allReplicaWriters;
+
+    // messages submitted by all sessions but not sent yet, the sender fetches at most MAX_BATCH_SIZE of them at a time
+    private final BlockingQueue<ClientToServerMsg.ChatMsg> sendMessageQueue;
+
+    // messages that are submitted but have not received their responses
+    private final Map<ChatMessageIdentifier, InFlightMessage> inFlightMessages;
+
+    private final Timer retransmitTimer;
+
+    private final Random random;
+
+    public MultiplexPaxosLogClient(final List<AddressPortPair> allReplicasInfo, final double messageLossRate) {
+        this.connectionClientId = ClientIdGenerator.nextSessionBlockId();
+        this.nextSessionNumber = new AtomicLong(1);
+        this.allReplicasInfo = allReplicasInfo;
+        this.totalNumOfReplicas = allReplicasInfo.size();
+        this.messageLossRate = messageLossRate;
+        this.leaderServerID = 0;
+        this.leaderKnown = false;
+        this.waitingForHelloResponse = false;
+        this.allReplicaWriters = new ConcurrentHashMap<>();
+        this.sendMessageQueue = new LinkedBlockingQueue<>();
+        this.inFlightMessages = new ConcurrentHashMap<>();
+        this.retransmitTimer = new Timer(true);
+        this.random = new Random(10);
+
+        System.out.println("Multiplexing client with ID: " + connectionClientId + " initialize");
+    }
+
+    /**
+     * Entrance of the client, connect to all replicas and start sending batches in background
+     */
+    public void start() {
+        for (int i = 0; i < totalNumOfReplicas; i++) {
+            connectToReplicaIfNecessary(i);
+        }
+        final Thread batchSender = new Thread(new BatchSender());
+        batchSender.setDaemon(true);
+        batchSender.start();
+        retransmitTimer.schedule(new WaitRepeatSendTask(), TIME_OUT_RETRANSMIT_PERIOD, TIME_OUT_RETRANSMIT_PERIOD);
+    }
+
+    /**
+     * @return A new logical session carried by this client, its ID is the next one in the block of this client so the
+     * sessions of a client never share an ID
+     */
+    public Session openSession() {
+        final long sessionNumber = nextSessionNumber.getAndIncrement();
+        if (sessionNumber >= 1L << ClientIdGenerator.SESSION_BITS) {
+            throw new IllegalStateException("No more than " + ((1L << ClientIdGenerator.SESSION_BITS) - 1)
+                    + " sessions can be opened on a client");
+        }
+        return new Session(connectionClientId | sessionNumber);
+    }
+
+    /**
+     * @return The number of sockets this client holds, which is at most one per replica regardless of the sessions
+     */
+    public int getNumOfConnections() {
+        return allReplicaWriters.size();
+    }
+
+    /**
+     * A logical session, which behaves like a PaxosLogClient with its own client ID and message sequence numbers
+     */
+    public class Session {
+
+        private final long sessionId;
+        private int sessionMsgSeqNum;
+
+        private Session(final long sessionId) {
+            this.sessionId = sessionId;
+            this.sessionMsgSeqNum = 0;
+        }
+
+        /**
+         * @param chatMessageLiteral a literal not starting with the prefix of a reference or a fragment, see PayloadStore
+         *                           and FragmentCodec, nor empty or the no-op literal of the leader
+         * @return A future that is completed with the slot index the message is chosen in
+         */
+        public synchronized CompletableFuture<Long> submit(final String chatMessageLiteral) {
+            if (PayloadStore.isReference(chatMessageLiteral) || FragmentCodec.isFragment(chatMessageLiteral)) {
+                throw new IllegalArgumentException("Chat message can not start with "
+                        + PayloadStore.REFERENCE_PREFIX + " or " + FragmentCodec.FRAGMENT_PREFIX);
+            }
+            if (chatMessageLiteral.isEmpty() || chatMessageLiteral.equals(PaxosLogServer.NO_OP_MESSAGE_LITERAL)) {
+                throw new IllegalArgumentException("Chat message can not be empty or "
+                        + PaxosLogServer.NO_OP_MESSAGE_LITERAL);
+            }
+            final ClientToServerMsg.ChatMsg chatMsg = new ClientToServerMsg.ChatMsg(sessionId, sessionMsgSeqNum, chatMessageLiteral);
+            sessionMsgSeqNum += 1;
+            final InFlightMessage inFlightMessage = new InFlightMessage(chatMsg);
+            inFlightMessages.put(new ChatMessageIdentifier(sessionId, chatMsg.getMessageSequenceNumber()), inFlightMessage);
+            sendMessageQueue.offer(chatMsg);
+            return inFlightMessage.future;
+        }
+
+        public long getSessionId() {
+            return sessionId;
+        }
+    }
+
+    private static class InFlightMessage {
+
+        final ClientToServerMsg.ChatMsg chatMsg;
+        final CompletableFuture<Long> future;
+        volatile long lastSendTimeStamp;
+
+        InFlightMessage(final ClientToServerMsg.ChatMsg chatMsg) {
+            this.chatMsg = chatMsg;
+            this.future = new CompletableFuture<>();
+            this.lastSendTimeStamp = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Connect to a replica if we don't have that connection, and say hello to it through the new connection
+     *
+     * @param replicaID
+     * @return The writer of the connection, null if the replica is not accessible
+     */
+    private synchronized PrintWriter connectToReplicaIfNecessary(final int replicaID) {
+        if (allReplicaWriters.containsKey(replicaID)) {
+            return allReplicaWriters.get(replicaID);
+        }
+        try {
+            final Socket socket = new Socket(allReplicasInfo.get(replicaID).getIp(), allReplicasInfo.get(replicaID).getPort());
+            final ReceiveMessageHandler handler = new ReceiveMessageHandler(socket, replicaID);
+            allReplicaWriters.put(replicaID, handler.getPrintWriter());
+            final Thread receiver = new Thread(handler);
+            receiver.setDaemon(true);
+            receiver.start();
+            send(replicaID, new ClientToServerMsg.HelloMsg(connectionClientId, "0.0.0.0", 0).toString());
+            return allReplicaWriters.get(replicaID);
+        } catch (IOException e) {
+            System.out.println("Server whose address is " + allReplicasInfo.get(replicaID).getIp()
+                    + ':' + allReplicasInfo.get(replicaID).getPort() + " is not accessible now");
+            return null;
+        }
+    }
+
+    /**
+     * Send a message to a replica, if the connection is broken, drop it so that it can be rebuilt next time
+     *
+     * @return Whether the message is written to the connection
+     */
+    private boolean send(final int replicaID, final String message) {
+        final PrintWriter writer = allReplicaWriters.get(replicaID);
+        if (writer == null) {
+            return false;
+        }
+        synchronized (writer) {
+            if (random.nextFloat() >= messageLossRate) {
+                writer.println(message);
+            }
+            if (writer.checkError()) {
+                allReplicaWriters.remove(replicaID);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * HELLO the replica, or the next one a little later if it can not be reached, e.g. a leader named by NACK that has
+     * just failed (the followers name it until they miss it)
+     */
+    private void sendHello(final int replicaID) {
+        waitingForHelloResponse = true;
+        if (connectToReplicaIfNecessary(replicaID) != null
+                && send(replicaID, new ClientToServerMsg.HelloMsg(connectionClientId, "0.0.0.0", 0).toString())) {
+            return;
+        }
+        retransmitTimer.schedule(new NextReplicaHelloTask((replicaID + 1) % totalNumOfReplicas), NEXT_REPLICA_HELLO_DELAY);
+    }
+
+    /**
+     * Send chat messages to the leader as one or more batches, if the leader is not accessible, forget about it
+     */
+    private void sendBatchesToLeader(final List<ClientToServerMsg.ChatMsg> chatMsgs) {
+        final int leader = leaderServerID;
+        for (int from = 0; from < chatMsgs.size() && leaderKnown; from += MAX_BATCH_SIZE) {
+            final List<ClientToServerMsg.ChatMsg> batch = chatMsgs.subList(from, Math.min(chatMsgs.size(), from + MAX_BATCH_SIZE));
+            if (!send(leader, new ClientToServerMsg.BatchMsg(connectionClientId, batch).toString())) {
+                leaderKnown = false;
+                sendHello((leader + 1) % totalNumOfReplicas);
+                return;
+            }
+            final long currentTimeStamp = System.currentTimeMillis();
+            for (final ClientToServerMsg.ChatMsg chatMsg : batch) {
+                final InFlightMessage inFlightMessage = inFlightMessages.get(
+                        new ChatMessageIdentifier(chatMsg.getClientID(), chatMsg.getMessageSequenceNumber()));
+                if (inFlightMessage != null) {
+                    inFlightMessage.lastSendTimeStamp = currentTimeStamp;
+                }
+            }
+        }
+    }
+
+    private void resendAllInFlightMessages() {
+        final List<ClientToServerMsg.ChatMsg> chatMsgs = new ArrayList<>();
+        for (final InFlightMessage inFlightMessage : inFlightMessages.values()) {
+            chatMsgs.add(inFlightMessage.chatMsg);
+        }
+        sendBatchesToLeader(chatMsgs);
+    }
+
+    /**
+     * A worker that drains messages from all sessions and sends them to the leader as batches.
+     * Messages drained while the leader is unknown stay in flight and are resent once a replica ACKs.
+     */
+    public class BatchSender implements Runnable {
+
+        @Override
+        public void run() {
+            final List<ClientToServerMsg.ChatMsg> batch = new ArrayList<>(MAX_BATCH_SIZE);
+            while (true) {
+                try {
+                    batch.add(sendMessageQueue.take());
+                    sendMessageQueue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                    if (leaderKnown) {
+                        sendBatchesToLeader(batch);
+                    }
+                    batch.clear();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A worker for receiving messages from one replica and dispatching responses to the sessions
+     */
+    public class ReceiveMessageHandler extends ThreadHandler {
+
+        private final int replicaID;
+
+        public ReceiveMessageHandler(final Socket socket, final int replicaID) {
+            super(socket);
+            this.replicaID = replicaID;
+        }
+
+        PrintWriter getPrintWriter() {
+            return super.printWriter;
+        }
+
+        @Override
+        public void run() {
+            try {
+                String line;
+                while ((line = super.bufferedReader.readLine()) != null) {
+                    if (Message.getMessageType(line) != Message.MESSAGE_TYPE.SERVER_TO_CLIENT) {
+                        continue;
+                    }
+                    switch (ServerToClientMsg.getServerToClientType(line)) {
+                        case ACK:
+                            leaderServerID = replicaID;
+                            leaderKnown = true;
+                            waitingForHelloResponse = false;
+                            resendAllInFlightMessages();
+                            break;
+                        case NACK:
+                            final int currentLeaderId = ServerToClientMsg.ServerNackMsg.fromString(line).getCurrentLeaderId();
+                            // a NACK from a follower answering the initial HELLO is expected, only chase the leader it names
+                            if (replicaID == leaderServerID || !leaderKnown) {
+                                leaderKnown = false;
+                                if (currentLeaderId == ServerToClientMsg.ServerNackMsg.NO_LEADER) {
+                                    // the replica misses the leader as well, a new one is about to be elected
+                                    retransmitTimer.schedule(new NextReplicaHelloTask((replicaID + 1) % totalNumOfReplicas),
+                                            NEXT_REPLICA_HELLO_DELAY);
+                                } else {
+                                    leaderServerID = currentLeaderId;
+                                    sendHello(currentLeaderId);
+                                }
+                            }
+                            break;
+                        case RESPONSE:
+                            final ServerToClientMsg.ServerResponseMsg responseMsg = ServerToClientMsg.ServerResponseMsg.fromString(line);
+                            final InFlightMessage inFlightMessage = inFlightMessages.remove(
+                                    new ChatMessageIdentifier(responseMsg.getClientID(), responseMsg.getMessageSequenceNumber()));
+                            if (inFlightMessage != null) {
+                                inFlightMessage.future.complete((long) responseMsg.getSlotIndex());
+                            }
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Can not detect message type in message queue");
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            allReplicaWriters.remove(replicaID);
+            if (replicaID == leaderServerID) {
+                // the leader is gone, ask the next replica rather than waiting for the in-flight messages to time out
+                leaderKnown = false;
+                sendHello((replicaID + 1) % totalNumOfReplicas);
+            }
+        }
+    }
+
+    /**
+     * Ask the next replica for the leader, unless it has been found meanwhile: while the replicas elect a new leader
+     * the one after a replica that has named none, or the one after a replica that can not be reached
+     */
+    public class NextReplicaHelloTask extends TimerTask {
+
+        final int replicaID;
+
+        public NextReplicaHelloTask(int replicaID) {
+            this.replicaID = replicaID;
+        }
+
+        @Override
+        public void run() {
+            if (!leaderKnown) {
+                sendHello(replicaID);
+            }
+        }
+    }
+
+    /**
+     * A retransmit task that checks periodically whether any in-flight message timed out. If so, the leader we believe
+     * in is verified by HELLO again, and if that HELLO is not answered either, the next replica is tried.
+     */
+    public class WaitRepeatSendTask extends TimerTask {
+
+        @Override
+        public void run() {
+            final long currentTimeStamp = System.currentTimeMillis();
+            boolean timeout = false;
+            for (final InFlightMessage inFlightMessage : inFlightMessages.values()) {
+                if (currentTimeStamp - inFlightMessage.lastSendTimeStamp > TIME_OUT_RETRANSMIT_PERIOD) {
+                    timeout = true;
+                    break;
+                }
+            }
+            if (!timeout) {
+                return;
+            }
+            if (waitingForHelloResponse) {
+                leaderServerID = (leaderServerID + 1) % totalNumOfReplicas;
+            }
+            leaderKnown = false;
+            sendHello(leaderServerID);
+        }
+    }
+
+}
@@ -5,15 +5,22 @@ import java.io.IOException;
 import message.ClientToServerMsg;
 import message.Message;
 import message.ServerToClientMsg;
+import service.PaxosLogServer;
 import thread.ThreadHandler;
 import util.AddressPortPair;
+import util.ClientIdGenerator;
+import util.ClientSessionTable;
+import util.FragmentCodec;
+import util.PayloadStore;
 
 import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.Random;
 
 
@@ -23,6 +30,14 @@ import java.util.Random;
 public class PaxosLogClient {
 
     private final static long TIME_OUT_RETRANSMIT_PERIOD = 10000;
+    // how long a HELLO after a NACK waits for an answer before the next replica is asked, e.g. since the NACK named a
+    // leader that has just failed (see NextReplicaHelloTask)
+    private final static long NEXT_REPLICA_HELLO_DELAY = 100;
+
+    private final static int DEFAULT_WINDOW_SIZE = 1;
+
+    // the dissemination threshold of a client that sends every payload to the leader within its chat message
+    public final static int NO_DISSEMINATION = Integer.MAX_VALUE;
 
     private final long clientId;
     private final String clientAddr;
@@ -36,21 +51,58 @@ public class PaxosLogClient {
 
     private final double messageLossRate;
 
-    private boolean receivedLastSendMsgResponse;
     private int leaderServerID;
+    // the leader latest confirmed by an ACK, which is skipped while the replicas are asked in turn; -1 before the first
+    private volatile int ackedLeaderServerID;
+
+    // whether leaderServerID is confirmed by an ACK, if so chat messages are sent to it directly without a HELLO first
+    private volatile boolean leaderKnown;
+    private final boolean cacheLeader;
 
     private final List<Socket> allReceiveSockets;
 
     // for allClientSendSockets, the key is the replica ID and value is the socket used to send message to other replicas
     private final Map<Integer, Socket> allClientSendSockets;
 
-    // A message queue that cache the messages sent from user, note that only when the previous message was sent can we fetch
-    // next message from this queue
+    // A message queue that cache the messages sent from user, note that only when there are less than windowSize
+    // messages in flight can we fetch next message from this queue
     private final Queue<ClientToServerMsg.ChatMsg> sendMessageQueue;
 
+    // the maximum number of messages that are sent but have not received their responses
+    private final int windowSize;
+
+    // messages that are sent but have not received their responses, the key is the message sequence number
+    private final Map<Integer, ClientToServerMsg.ChatMsg> inFlightMessages;
+
+    // for responseFutures, the key is the message sequence number and value is completed with the slot it is chosen in
+    private final Map<Integer, CompletableFuture<Long>> responseFutures;
+
+    // for inFlightSendTimeStamps, the key is the message sequence number and value is System.nanoTime() when it is sent
+    private final Map<Integer, Long> inFlightSendTimeStamps;
+
+    // reads that are submitted but not sent yet, reads are not limited by the window since they are not logged
+    private final Queue<ClientToServerMsg.ReadMsg> readMessageQueue;
+
+    // the ID of the next read of this client
+    private int readID;
+
+    // reads that are sent but have not received their responses, the key is the read ID
+    private final Map<Integer, ClientToServerMsg.ReadMsg> inFlightReads;
+
+    // for readFutures, the key is the read ID and value is completed with the response of the leader
+    private final Map<Integer, CompletableFuture<ServerToClientMsg.ServerReadResponseMsg>> readFutures;
+
+    // decides when an in-flight message is also sent to the next candidate leader, null disables hedging
+    private final HedgingPolicy hedgingPolicy;
+
+    // a payload at least this long is sent to every replica by the client itself, and the leader orders its reference
+    private final int disseminationThreshold;
+
+    // the payloads of the in-flight messages that are disseminated, the key is the message sequence number
+    private final Map<Integer, ClientToServerMsg.PayloadMsg> inFlightPayloads;
+
     // A message queue store messages from all replicas, this messages include ACK, NACK and response of a chat message
     private final Queue<String> receiveMessageQueue;
-    private ClientToServerMsg.ChatMsg nextSendMsg;
     private Message nextMsg;
 
     private final ClientToServerMsg.HelloMsg messageHello;
@@ -63,36 +115,136 @@ public class PaxosLogClient {
 
     private final Random random;
 
+    // a single timer shared by all retransmit tasks, so that we do not spawn a timer thread for each message
+    private final Timer retransmitTimer;
+
     public PaxosLogClient(
             final String clientAddr,
             final int clientPort,
             final List<AddressPortPair> allReplicasInfo,
             final double messageLossRate
     ) {
-        this.clientId = System.currentTimeMillis();
-        this.clientAddr = clientAddr;
-        this.clientPort = clientPort;
+        this(new Builder(clientAddr, clientPort, allReplicasInfo).messageLossRate(messageLossRate));
+    }
+
+    private PaxosLogClient(final Builder builder) {
+        // replicas only track ClientSessionTable.WINDOW_SIZE messages above the executed ones of a client
+        if (builder.windowSize < 1 || builder.windowSize > ClientSessionTable.WINDOW_SIZE) {
+            throw new IllegalArgumentException("Invalid window size");
+        }
+        this.clientId = ClientIdGenerator.nextClientId();
+        this.clientAddr = builder.clientAddr;
+        this.clientPort = builder.clientPort;
         this.clientMsgSeqNum = 0;
-        this.allReplicasInfo = allReplicasInfo;
-        this.messageLossRate = messageLossRate;
+        this.allReplicasInfo = builder.allReplicasInfo;
+        this.messageLossRate = builder.messageLossRate;
         this.totalNumOfReplicas = allReplicasInfo.size();
         this.allReceiveSockets = new Vector<>();
         this.allClientSendSockets = new ConcurrentHashMap<>();
         this.receiveMessageQueue = new ConcurrentLinkedQueue<>();
         this.sendMessageQueue = new ConcurrentLinkedQueue<>();
-        // at the beginning, we should never wait for the previous message
-        this.receivedLastSendMsgResponse = true;
+        this.windowSize = builder.windowSize;
+        this.inFlightMessages = new ConcurrentSkipListMap<>();
+        this.responseFutures = new ConcurrentHashMap<>();
+        this.inFlightSendTimeStamps = new ConcurrentHashMap<>();
+        this.hedgingPolicy = builder.hedgingPolicy;
+        this.disseminationThreshold = builder.disseminationThreshold;
+        this.inFlightPayloads = new ConcurrentHashMap<>();
+        this.readMessageQueue = new ConcurrentLinkedQueue<>();
+        this.readID = 0;
+        this.inFlightReads = new ConcurrentHashMap<>();
+        this.readFutures = new ConcurrentHashMap<>();
         this.leaderServerID = 0;
+        this.ackedLeaderServerID = -1;
+        this.leaderKnown = false;
+        this.cacheLeader = builder.cacheLeader;
         this.messageHello = new ClientToServerMsg.HelloMsg(clientId, clientAddr, clientPort);
         this.randomServerId = new Random(totalNumOfReplicas);
         this.receivedNack = false;
-        this.receivedResponseForHello = new HashMap<>();
+        this.receivedResponseForHello = new ConcurrentHashMap<>();
         this.helloID = 0;
         this.random = new Random(10);
+        this.retransmitTimer = new Timer(true);
 
         System.out.println("Client with ID: " + clientId + " initialize at address: " + clientAddr + ':' + clientPort);
     }
 
+    /**
+     * Configures a client, every option left out keeps the behaviour of the original constructor: the leader is cached,
+     * one message is in flight at a time, nothing is hedged and every payload is sent within its chat message.
+     */
+    public static class Builder {
+
+        private final String clientAddr;
+        private final int clientPort;
+        private final List<AddressPortPair> allReplicasInfo;
+        private double messageLossRate;
+        private boolean cacheLeader;
+        private int windowSize;
+        private HedgingPolicy hedgingPolicy;
+        private int disseminationThreshold;
+
+        public Builder(final String clientAddr, final int clientPort, final List<AddressPortPair> allReplicasInfo) {
+            this.clientAddr = clientAddr;
+            this.clientPort = clientPort;
+            this.allReplicasInfo = allReplicasInfo;
+            this.messageLossRate = 0.0;
+            this.cacheLeader = true;
+            this.windowSize = DEFAULT_WINDOW_SIZE;
+            this.hedgingPolicy = null;
+            this.disseminationThreshold = NO_DISSEMINATION;
+        }
+
+        public Builder messageLossRate(final double messageLossRate) {
+            this.messageLossRate = messageLossRate;
+            return this;
+        }
+
+        /**
+         * @param cacheLeader if true, the client remembers the leader once a HELLO is ACKed and only rediscovers it on
+         *                    NACK, timeout or connection failure; otherwise every message is preceded by a HELLO to a
+         *                    random replica
+         */
+        public Builder cacheLeader(final boolean cacheLeader) {
+            this.cacheLeader = cacheLeader;
+            return this;
+        }
+
+        /**
+         * @param windowSize the maximum number of messages that can be sent without waiting for their responses, at
+         *                   most ClientSessionTable.WINDOW_SIZE
+         */
+        public Builder windowSize(final int windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * @param hedgingPolicy if not null, a message that has no response after the delay given by the policy is also
+         *                      sent to the next candidate leaders, which is safe since the leader never executes a
+         *                      message twice
+         */
+        public Builder hedgingPolicy(final HedgingPolicy hedgingPolicy) {
+            this.hedgingPolicy = hedgingPolicy;
+            return this;
+        }
+
+        /**
+         * @param disseminationThreshold the length from which on the client sends a payload to every replica itself and
+         *                               the chat message to the leader carries its reference only (see PayloadStore),
+         *                               so that the leader does not have to send large payloads to every other
+         *                               replica; NO_DISSEMINATION sends every payload within its chat message
+         */
+        public Builder disseminationThreshold(final int disseminationThreshold) {
+            this.disseminationThreshold = disseminationThreshold;
+            return this;
+        }
+
+        public PaxosLogClient build() {
+            return new PaxosLogClient(this);
+        }
+    }
+
 
     /**
      * Entrance of the client
@@ -231,9 +383,8 @@ public class PaxosLogClient {
             while (true) {
                 try {
                     String nextLine = scanner.nextLine();
-                    sendMessageQueue.offer(new ClientToServerMsg.ChatMsg(clientId, clientMsgSeqNum, nextLine));
+                    submit(nextLine);
                     System.out.println("client want to send message: " + nextLine);
-                    clientMsgSeqNum += 1;
                 } catch (Exception e) {
                     e.printStackTrace();
                     System.out.println("Fail to add msg to sendMessageQueue");
@@ -242,16 +393,98 @@ public class PaxosLogClient {
         }
     }
 
+    /**
+     * Cache a chat message in the sendMessageQueue, it will be sent once there is room in the window of in-flight messages
+     *
+     * @param chatMessageLiteral a literal not starting with the prefix of a reference or a fragment, see PayloadStore
+     *                           and FragmentCodec, nor empty or the no-op literal of the leader
+     * @return A future that is completed with the slot index the message is chosen in
+     */
+    public synchronized CompletableFuture<Long> submit(final String chatMessageLiteral) {
+        if (PayloadStore.isReference(chatMessageLiteral) || FragmentCodec.isFragment(chatMessageLiteral)) {
+            throw new IllegalArgumentException("Chat message can not start with "
+                    + PayloadStore.REFERENCE_PREFIX + " or " + FragmentCodec.FRAGMENT_PREFIX);
+        }
+        if (chatMessageLiteral.isEmpty() || chatMessageLiteral.equals(PaxosLogServer.NO_OP_MESSAGE_LITERAL)) {
+            throw new IllegalArgumentException("Chat message can not be empty or "
+                    + PaxosLogServer.NO_OP_MESSAGE_LITERAL);
+        }
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+        responseFutures.put(clientMsgSeqNum, future);
+        if (chatMessageLiteral.length() >= disseminationThreshold) {
+            inFlightPayloads.put(clientMsgSeqNum, new ClientToServerMsg.PayloadMsg(clientId, clientMsgSeqNum, chatMessageLiteral));
+            sendMessageQueue.offer(new ClientToServerMsg.ChatMsg(clientId, clientMsgSeqNum,
+                    PayloadStore.toReference(clientId, clientMsgSeqNum, chatMessageLiteral)));
+        } else {
+            sendMessageQueue.offer(new ClientToServerMsg.ChatMsg(clientId, clientMsgSeqNum, chatMessageLiteral));
+        }
+        clientMsgSeqNum += 1;
+        return future;
+    }
+
+    /**
+     * Read a slot from the leader, which answers from its executed slots under its lease without a Paxos round, so the
+     * read sees every message whose response was received before it is submitted
+     *
+     * @param slotIndex the slot to read, -1 for the newest executed slot
+     * @return A future that is completed with the response of the leader
+     */
+    public CompletableFuture<ServerToClientMsg.ServerReadResponseMsg> read(final int slotIndex) {
+        return read(slotIndex, ClientToServerMsg.ReadMsg.LINEARIZABLE);
+    }
+
+    /**
+     * @param slotIndex the slot to read, -1 for the newest executed slot
+     * @param slotToken the slot the read has to see (e.g. the slot a previous message of this client is chosen in), or
+     *                  ClientToServerMsg.ReadMsg.LINEARIZABLE
+     * @return A future that is completed with the response of the leader
+     */
+    public synchronized CompletableFuture<ServerToClientMsg.ServerReadResponseMsg> read(final int slotIndex, final int slotToken) {
+        final CompletableFuture<ServerToClientMsg.ServerReadResponseMsg> future = new CompletableFuture<>();
+        readFutures.put(readID, future);
+        readMessageQueue.offer(new ClientToServerMsg.ReadMsg(clientId, readID, slotIndex, slotToken));
+        readID += 1;
+        return future;
+    }
+
+    /**
+     * @return The number of messages that are submitted but have not received their responses yet
+     */
+    public int getNumOfPendingMessages() {
+        return sendMessageQueue.size() + inFlightMessages.size();
+    }
+
     /**
      * Handle messages in sendMessageQueue and receiveMessageQueue
      */
     public void runQueuesProcessor() {
 
         while (true) {
-            if (receivedLastSendMsgResponse == true) {
-                nextSendMsg = sendMessageQueue.peek();
-                if (nextSendMsg != null) {
-                    receivedLastSendMsgResponse = false;
+            while (inFlightMessages.size() < windowSize && sendMessageQueue.peek() != null) {
+                final ClientToServerMsg.ChatMsg nextSendMsg = sendMessageQueue.poll();
+                inFlightMessages.put(nextSendMsg.getMessageSequenceNumber(), nextSendMsg);
+                inFlightSendTimeStamps.put(nextSendMsg.getMessageSequenceNumber(), System.nanoTime());
+                if (hedgingPolicy != null) {
+                    retransmitTimer.schedule(new HedgeTask(nextSendMsg, leaderServerID, 1), hedgingPolicy.getHedgeDelayMillis());
+                }
+                disseminatePayload(nextSendMsg.getMessageSequenceNumber());
+                if (leaderKnown) {
+                    sendChatToLeader(nextSendMsg);
+                } else if (!isWaitingForHelloResponse()) {
+                    // messages admitted while a HELLO is pending will be sent once it is ACKed
+                    sendHelloRandom();
+                    new ReTransmitSchedulerHello(helloID, TIME_OUT_RETRANSMIT_PERIOD);
+                }
+            }
+
+            ClientToServerMsg.ReadMsg nextReadMsg;
+            while ((nextReadMsg = readMessageQueue.poll()) != null) {
+                inFlightReads.put(nextReadMsg.getReadID(), nextReadMsg);
+                retransmitTimer.schedule(new WaitRepeatReadTask(nextReadMsg), TIME_OUT_RETRANSMIT_PERIOD);
+                if (leaderKnown) {
+                    sendReadToLeader(nextReadMsg);
+                } else if (!isWaitingForHelloResponse()) {
+                    // reads admitted while a HELLO is pending will be sent once it is ACKed
                     sendHelloRandom();
                     new ReTransmitSchedulerHello(helloID, TIME_OUT_RETRANSMIT_PERIOD);
                 }
@@ -263,34 +496,61 @@ public class PaxosLogClient {
                     case ACK:
                         receivedResponseForHello.put(helloID, true);
                         nextMsg = ServerToClientMsg.ServerAckMsg.fromString(nextString);
-                        try {
-                            PrintWriter leaderPrintWriter = new PrintWriter(allClientSendSockets.get(leaderServerID).getOutputStream(), true);
-                            if (random.nextFloat() >= messageLossRate) {
-                                leaderPrintWriter.println(nextSendMsg.toString());
-                            }
-                            receivedNack = false;
-                            new ReTransmitScheduler(nextSendMsg, 3 * TIME_OUT_RETRANSMIT_PERIOD);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                            System.out.printf("build printWriter failed for index %s", leaderServerID);
-
+                        leaderServerID = ((ServerToClientMsg.ServerAckMsg) nextMsg).getLeaderId();
+                        ackedLeaderServerID = leaderServerID;
+                        leaderKnown = true;
+                        for (final ClientToServerMsg.ChatMsg inFlightMsg : inFlightMessages.values()) {
+                            sendChatToLeader(inFlightMsg);
                         }
+                        for (final ClientToServerMsg.ReadMsg inFlightRead : inFlightReads.values()) {
+                            sendReadToLeader(inFlightRead);
+                        }
+                        leaderKnown = leaderKnown && cacheLeader;
                         break;
                     case NACK:
                         receivedNack = true;
-                        receivedResponseForHello.put(helloID, true);
+                        leaderKnown = false;
                         nextMsg = ServerToClientMsg.ServerNackMsg.fromString(nextString);
-                        leaderServerID = ((ServerToClientMsg.ServerNackMsg) nextMsg).getCurrentLeaderId();
-                        sendHello();
-                        new ReTransmitSchedulerHello(helloID, TIME_OUT_RETRANSMIT_PERIOD);
+                        final int nackLeaderID = ((ServerToClientMsg.ServerNackMsg) nextMsg).getCurrentLeaderId();
+                        if (nackLeaderID == ServerToClientMsg.ServerNackMsg.NO_LEADER) {
+                            // the replica misses the leader as well and a new one is about to be elected, which a
+                            // replica names once it knows; the HELLO pending (if any) is not answered by this NACK
+                            if (!isWaitingForHelloResponse()) {
+                                sendHelloToNextReplica();
+                            }
+                        } else {
+                            // the followers keep naming a leader that has just failed until they miss it, so the
+                            // other replicas are asked in turn if the leader named does not answer soon
+                            receivedResponseForHello.put(helloID, true);
+                            leaderServerID = nackLeaderID;
+                            sendHello();
+                        }
+                        retransmitTimer.schedule(new NextReplicaHelloTask(helloID, NEXT_REPLICA_HELLO_DELAY),
+                                NEXT_REPLICA_HELLO_DELAY);
                         break;
                     case RESPONSE:
                         nextMsg = ServerToClientMsg.ServerResponseMsg.fromString(nextString);
-                        if (nextSendMsg.getMessageSequenceNumber() == ((ServerToClientMsg.ServerResponseMsg) nextMsg).getMessageSequenceNumber()) {
-                            sendMessageQueue.poll();
-                            receivedLastSendMsgResponse = true;
-                        } else {
-                            throw new IllegalStateException("received inconsistent message response");
+                        final int responseSeqNum = ((ServerToClientMsg.ServerResponseMsg) nextMsg).getMessageSequenceNumber();
+                        // a retransmitted message may be responded more than once, only the first response counts
+                        if (inFlightMessages.remove(responseSeqNum) != null) {
+                            inFlightPayloads.remove(responseSeqNum);
+                            final Long sendTimeStamp = inFlightSendTimeStamps.remove(responseSeqNum);
+                            if (hedgingPolicy != null && sendTimeStamp != null) {
+                                hedgingPolicy.recordLatency((System.nanoTime() - sendTimeStamp) / 1000000);
+                            }
+                            final CompletableFuture<Long> future = responseFutures.remove(responseSeqNum);
+                            if (future != null) {
+                                future.complete((long) ((ServerToClientMsg.ServerResponseMsg) nextMsg).getSlotIndex());
+                            }
+                        }
+                        break;
+                    case READ_RESPONSE:
+                        final ServerToClientMsg.ServerReadResponseMsg readResponseMsg = ServerToClientMsg.ServerReadResponseMsg.fromString(nextString);
+                        if (inFlightReads.remove(readResponseMsg.getReadID()) != null) {
+                            final CompletableFuture<ServerToClientMsg.ServerReadResponseMsg> future = readFutures.remove(readResponseMsg.getReadID());
+                            if (future != null) {
+                                future.complete(readResponseMsg);
+                            }
                         }
                         break;
                     default:
@@ -300,6 +560,116 @@ public class PaxosLogClient {
         }
     }
 
+    /**
+     * Send an in-flight message to the leader we believe in, if the connection to it is broken, forget about the leader
+     * and rediscover it by HELLO
+     */
+    private void sendChatToLeader(final ClientToServerMsg.ChatMsg nextSendMsg) {
+        if (!leaderKnown) {
+            return;
+        }
+        try {
+            final Socket leaderSocket = allClientSendSockets.get(leaderServerID);
+            // the leader only orders a reference once it holds the payload, so the payload goes ahead of every send
+            final ClientToServerMsg.PayloadMsg payloadMsg = inFlightPayloads.get(nextSendMsg.getMessageSequenceNumber());
+            if (payloadMsg != null) {
+                sendPayload(leaderSocket, payloadMsg);
+            }
+            PrintWriter leaderPrintWriter = new PrintWriter(leaderSocket.getOutputStream(), true);
+            if (random.nextFloat() >= messageLossRate) {
+                leaderPrintWriter.println(nextSendMsg.toString());
+            }
+            receivedNack = false;
+            new ReTransmitScheduler(nextSendMsg, 3 * TIME_OUT_RETRANSMIT_PERIOD);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.out.printf("build printWriter failed for index %s", leaderServerID);
+            leaderKnown = false;
+            allClientSendSockets.remove(leaderServerID);
+            createSendSocketsForClientsIfNecessary();
+            sendHelloRandom();
+            new ReTransmitSchedulerHello(helloID, TIME_OUT_RETRANSMIT_PERIOD);
+        }
+    }
+
+    /**
+     * Send the payload of a message that is admitted into the window to every replica but the leader we know, which
+     * receives it along with the message. The followers hold it by the time the leader asks them to accept its
+     * reference, and they resolve the reference to it once it is chosen.
+     */
+    private void disseminatePayload(final int messageSequenceNumber) {
+        final ClientToServerMsg.PayloadMsg payloadMsg = inFlightPayloads.get(messageSequenceNumber);
+        if (payloadMsg == null) {
+            return;
+        }
+        createSendSocketsForClientsIfNecessary();
+        for (final Map.Entry<Integer, Socket> entry : allClientSendSockets.entrySet()) {
+            if (leaderKnown && entry.getKey() == leaderServerID) {
+                continue;
+            }
+            try {
+                sendPayload(entry.getValue(), payloadMsg);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.println("Fail to send payload to replica ID: " + entry.getKey());
+                allClientSendSockets.remove(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Send a payload through a socket, a payload may be written in several chunks, which must not interleave with a
+     * hedged message sent through the same socket by the timer
+     */
+    private void sendPayload(final Socket socket, final ClientToServerMsg.PayloadMsg payloadMsg) throws IOException {
+        synchronized (socket) {
+            final PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+            if (random.nextFloat() >= messageLossRate) {
+                writer.println(payloadMsg.toString());
+            }
+        }
+    }
+
+    /**
+     * Send an in-flight read to the leader we believe in, a read the leader can not answer is NACKed like a chat message
+     */
+    private void sendReadToLeader(final ClientToServerMsg.ReadMsg readMsg) {
+        if (!leaderKnown) {
+            return;
+        }
+        try {
+            PrintWriter leaderPrintWriter = new PrintWriter(allClientSendSockets.get(leaderServerID).getOutputStream(), true);
+            if (random.nextFloat() >= messageLossRate) {
+                leaderPrintWriter.println(readMsg.toString());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.out.printf("build printWriter failed for index %s", leaderServerID);
+            leaderKnown = false;
+            allClientSendSockets.remove(leaderServerID);
+            createSendSocketsForClientsIfNecessary();
+        }
+    }
+
+    /**
+     * @return Whether the latest HELLO has been sent but neither ACK nor NACK is received
+     */
+    private boolean isWaitingForHelloResponse() {
+        return helloID > 0 && !receivedResponseForHello.containsKey(helloID);
+    }
+
+    /**
+     * HELLO the replica after the one asked last, skipping the leader latest confirmed by an ACK, which the replicas
+     * are about to replace
+     */
+    private void sendHelloToNextReplica() {
+        leaderServerID = (leaderServerID + 1) % totalNumOfReplicas;
+        if (leaderServerID == ackedLeaderServerID && totalNumOfReplicas > 2) {
+            leaderServerID = (leaderServerID + 1) % totalNumOfReplicas;
+        }
+        sendHello();
+    }
+
     private void sendHelloRandom() {
         leaderServerID = randomServerId.nextInt(totalNumOfReplicas);
         sendHello();
@@ -332,16 +702,112 @@ public class PaxosLogClient {
         @Override
         public void run() {
 
-            if (curMsg == sendMessageQueue.peek() && !receivedNack) {
+            if (inFlightMessages.get(curMsg.getMessageSequenceNumber()) != curMsg) {
+                super.cancel();
+            } else if (!receivedNack && !isWaitingForHelloResponse()) {
+                leaderKnown = false;
                 sendHelloRandom();
                 new ReTransmitSchedulerHello(helloID, TIME_OUT_RETRANSMIT_PERIOD);
-            } else {
-                super.cancel();
             }
         }
     }
 
 
+    /**
+     * A retransmit task for a read that has no response after the timeout, it is submitted again to the leader that is
+     * rediscovered by HELLO
+     */
+    public class WaitRepeatReadTask extends TimerTask {
+
+        final ClientToServerMsg.ReadMsg readMsg;
+
+        public WaitRepeatReadTask(ClientToServerMsg.ReadMsg readMsg) {
+            this.readMsg = readMsg;
+        }
+
+        @Override
+        public void run() {
+            if (inFlightReads.remove(readMsg.getReadID()) == readMsg) {
+                leaderKnown = false;
+                readMessageQueue.offer(readMsg);
+            }
+        }
+    }
+
+
+    /**
+     * After a NACK, HELLO the next replica if the latest HELLO is neither ACKed nor NACKed with a leader by then: the
+     * leader named may be down, or the replicas may miss the leader and name none until a new one is elected. The
+     * replicas are asked in turn, each HELLO left unanswered doubles the delay up to TIME_OUT_RETRANSMIT_PERIOD, while a
+     * NACK starts over from NEXT_REPLICA_HELLO_DELAY.
+     */
+    public class NextReplicaHelloTask extends TimerTask {
+
+        final int helloIDForThisTask;
+        final long delayMillis;
+
+        public NextReplicaHelloTask(int helloId, long delayMillis) {
+            this.helloIDForThisTask = helloId;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public void run() {
+            if (helloID != helloIDForThisTask || receivedResponseForHello.containsKey(helloIDForThisTask)) {
+                return;
+            }
+            sendHelloToNextReplica();
+            final long nextDelayMillis = Math.min(2 * delayMillis, TIME_OUT_RETRANSMIT_PERIOD);
+            retransmitTimer.schedule(new NextReplicaHelloTask(helloID, nextDelayMillis), nextDelayMillis);
+        }
+    }
+
+
+    /**
+     * A hedging task that sends an in-flight message to the next candidate leader if it still has no response.
+     * The attempt-th task targets the replica attempt positions after the one the message was first sent to, so if
+     * several replicas are dead, later hedges still reach the live one that takes over. The targets do not move with
+     * the replicas the client asks for the leader in the meantime, so no hedge goes back to the one it was sent to.
+     */
+    public class HedgeTask extends TimerTask {
+
+        final ClientToServerMsg.ChatMsg curMsg;
+        final int firstServerID;
+        final int attempt;
+
+        public HedgeTask(ClientToServerMsg.ChatMsg curMsg, int firstServerID, int attempt) {
+            this.curMsg = curMsg;
+            this.firstServerID = firstServerID;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public void run() {
+            if (inFlightMessages.get(curMsg.getMessageSequenceNumber()) != curMsg) {
+                return;
+            }
+            final int candidateServerID = (firstServerID + attempt) % totalNumOfReplicas;
+            final Socket candidateSocket = allClientSendSockets.get(candidateServerID);
+            if (candidateSocket != null) {
+                try {
+                    // the HELLO makes sure the candidate can connect back to us before it handles the chat message
+                    synchronized (candidateSocket) {
+                        PrintWriter candidatePrintWriter = new PrintWriter(candidateSocket.getOutputStream(), true);
+                        if (random.nextFloat() >= messageLossRate) {
+                            candidatePrintWriter.println(messageHello.toString());
+                            candidatePrintWriter.println(curMsg.toString());
+                        }
+                    }
+                } catch (Exception e) {
+                    allClientSendSockets.remove(candidateServerID);
+                }
+            }
+            if (attempt + 1 < totalNumOfReplicas) {
+                retransmitTimer.schedule(new HedgeTask(curMsg, firstServerID, attempt + 1), hedgingPolicy.getHedgeDelayMillis());
+            }
+        }
+    }
+
     /**
      * A scheduler executing message retransmit if we do not receive response from server (timeout)
      */
@@ -350,7 +816,7 @@ public class PaxosLogClient {
         final Timer timer;
 
         public ReTransmitScheduler(ClientToServerMsg.ChatMsg curMsg, long millSeconds) {
-            timer = new Timer();
+            timer = retransmitTimer;
             final Calendar calendar = Calendar.getInstance();
             calendar.add(Calendar.MILLISECOND, (int) millSeconds);
             final Date time = calendar.getTime();
@@ -388,7 +854,7 @@ public class PaxosLogClient {
         final Timer timer;
 
         public ReTransmitSchedulerHello(int HelloID, long millSeconds) {
-            timer = new Timer();
+            timer = retransmitTimer;
             final Calendar calendar = Calendar.getInstance();
             calendar.add(Calendar.MILLISECOND, (int) millSeconds);
             final Date time = calendar.getTime();
@@ -0,0 +1,81 @@
+package client;
+
+
+import util.AddressPortPair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A benchmark that measures how many entries per second a downstream consumer can stream from a follower with
+ * READ_RANGE while the leader is under write load. Launch the replicas first (e.g. ManualServiceLauncher0 ~
+ * ManualServiceLauncher4 with messageLossRate set to 0.0), then run this launcher.
+ *
+ * A client keeps WRITE_WINDOW_SIZE messages in flight to the leader for the whole run, and the consumer reads the log
+ * of replica 1 from slot 0 on, MAX_ENTRIES_PER_READ entries at a time, waiting briefly whenever it catches up.
+ */
+public class RangeReadBenchmark {
+
+    private final static int DURATION_SECONDS = 30;
+    private final static int WRITE_WINDOW_SIZE = 16;
+    private final static int MAX_ENTRIES_PER_READ = 4096;
+    private final static int CLIENT_PORT = 7800;
+
+    public static void main(String args[]) throws Exception {
+
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3057));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3058));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3059));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3060));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3061));
+
+        final int durationSeconds = args.length > 0 ? Integer.parseInt(args[0]) : DURATION_SECONDS;
+        final long endTime = System.nanoTime() + durationSeconds * 1000000000L;
+
+        final PaxosLogClient logClient = new PaxosLogClient.Builder("127.0.0.1", CLIENT_PORT, allReplicasInfo)
+                .windowSize(WRITE_WINDOW_SIZE)
+                .build();
+        final Thread clientThread = new Thread(logClient::start);
+        clientThread.setDaemon(true);
+        clientThread.start();
+
+        final AtomicLong numOfWrites = new AtomicLong();
+        final Thread writeLoad = new Thread(() -> {
+            int i = 0;
+            while (System.nanoTime() < endTime) {
+                final List<CompletableFuture<Long>> futures = new ArrayList<>();
+                for (int j = 0; j < WRITE_WINDOW_SIZE * 4; j++) {
+                    futures.add(logClient.submit("range-read-benchmark-" + i++));
+                }
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+                numOfWrites.addAndGet(futures.size());
+            }
+        });
+        writeLoad.setDaemon(true);
+        writeLoad.start();
+
+        final LogRangeReader rangeReader = new LogRangeReader("127.0.0.1", 3058);
+        final long startTime = System.nanoTime();
+        long numOfReadEntries = 0;
+        int nextSlot = 0;
+        while (System.nanoTime() < endTime) {
+            final List<String> values = rangeReader.readRange(nextSlot, MAX_ENTRIES_PER_READ);
+            if (values.isEmpty()) {
+                Thread.sleep(1);
+                continue;
+            }
+            nextSlot += values.size();
+            numOfReadEntries += values.size();
+        }
+        final double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+        rangeReader.close();
+
+        System.out.printf("writes to the leader: %.1f commands/sec%n", numOfWrites.get() / elapsedSeconds);
+        System.out.printf("range reads from a follower: %.1f entries/sec (up to slot %d)%n", numOfReadEntries / elapsedSeconds, nextSlot);
+        System.exit(0);
+    }
+
+}
@@ -0,0 +1,119 @@
+package client;
+
+import message.ClientToServerMsg;
+import message.Message;
+import message.ServerToClientMsg;
+import util.ClientIdGenerator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A client that reads from one replica, the leader or a follower, over a single connection. The replica answers from
+ * its executed slots (see PaxosLogServer.handleClientRead): a linearizable read waits for the read index of the leader,
+ * a read with a slot token (e.g. the slot a previous write was chosen in) waits for that slot only.
+ *
+ * Like MultiplexPaxosLogClient, this client does not listen to any port, the replica replies through the connection.
+ * The replica answers the reads of a connection in order, so a NACK (the replica can not serve a read now) belongs to
+ * the oldest read in flight.
+ */
+public class ReplicaReadClient {
+
+    private final long clientId;
+    private final Socket socket;
+    private final PrintWriter printWriter;
+
+    private int readID;
+
+    // reads that are sent but have not received their responses in the order they are sent, guarded by this
+    private final Map<Integer, CompletableFuture<ServerToClientMsg.ServerReadResponseMsg>> inFlightReads;
+
+    // the first ACK or NACK answers the HELLO rather than a read
+    private boolean helloAnswered;
+
+    public ReplicaReadClient(final String serverAddr, final int serverPort) throws IOException {
+        this.clientId = ClientIdGenerator.nextClientId();
+        this.socket = new Socket(serverAddr, serverPort);
+        this.socket.setTcpNoDelay(true);
+        this.printWriter = new PrintWriter(socket.getOutputStream(), true);
+        this.readID = 0;
+        this.inFlightReads = new LinkedHashMap<>();
+        this.helloAnswered = false;
+        printWriter.println(new ClientToServerMsg.HelloMsg(clientId, serverAddr, 0).toString());
+        final Thread responseHandler = new Thread(new ResponseHandler());
+        responseHandler.setDaemon(true);
+        responseHandler.start();
+    }
+
+    /**
+     * @param slotIndex the slot to read, -1 for the newest executed slot
+     * @param slotToken the slot the read has to see, ClientToServerMsg.ReadMsg.LINEARIZABLE for a linearizable read
+     * @return A future that is completed with the response of the replica, or exceptionally if it can not serve the read
+     */
+    public synchronized CompletableFuture<ServerToClientMsg.ServerReadResponseMsg> read(final int slotIndex, final int slotToken) {
+        final CompletableFuture<ServerToClientMsg.ServerReadResponseMsg> future = new CompletableFuture<>();
+        inFlightReads.put(readID, future);
+        printWriter.println(new ClientToServerMsg.ReadMsg(clientId, readID, slotIndex, slotToken).toString());
+        readID += 1;
+        return future;
+    }
+
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private synchronized void onResponse(final String line) {
+        switch (ServerToClientMsg.getServerToClientType(line)) {
+            case ACK:
+            case NACK:
+                if (!helloAnswered) {
+                    helloAnswered = true;
+                    return;
+                }
+                final Iterator<CompletableFuture<ServerToClientMsg.ServerReadResponseMsg>> oldestRead = inFlightReads.values().iterator();
+                if (oldestRead.hasNext()) {
+                    final CompletableFuture<ServerToClientMsg.ServerReadResponseMsg> future = oldestRead.next();
+                    oldestRead.remove();
+                    future.completeExceptionally(new IllegalStateException("Replica can not serve the read now: " + line));
+                }
+                break;
+            case READ_RESPONSE:
+                final ServerToClientMsg.ServerReadResponseMsg readResponseMsg = ServerToClientMsg.ServerReadResponseMsg.fromString(line);
+                final CompletableFuture<ServerToClientMsg.ServerReadResponseMsg> future = inFlightReads.remove(readResponseMsg.getReadID());
+                if (future != null) {
+                    future.complete(readResponseMsg);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unresolvable response to a read!");
+        }
+    }
+
+    /**
+     * A worker dispatching the responses of the replica to the reads in flight
+     */
+    public class ResponseHandler implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                String line;
+                while ((line = bufferedReader.readLine()) != null) {
+                    if (Message.getMessageType(line) == Message.MESSAGE_TYPE.SERVER_TO_CLIENT) {
+                        onResponse(line);
+                    }
+                }
+            } catch (IOException e) {
+                // the connection is closed
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package client;
+
+import service.PaxosGroupHost;
+import util.AddressPortPair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A client of the Paxos groups run by PaxosGroupHost, which routes every command to the group of its partition key, so
+ * that the commands of a key are ordered in one log while the groups order theirs independently. The commands of each
+ * group are carried by a MultiplexPaxosLogClient of its own, in one session, which finds the leader of the group.
+ */
+public class ShardedPaxosLogClient {
+
+    private final List<MultiplexPaxosLogClient> groupClients;
+    private final List<MultiplexPaxosLogClient.Session> groupSessions;
+
+    /**
+     * @param allReplicasInfo the address and port of every replica, which are those of its first group
+     * @param numOfGroups     the number of groups the replicas run
+     */
+    public ShardedPaxosLogClient(final List<AddressPortPair> allReplicasInfo, final int numOfGroups, final double messageLossRate) {
+        this.groupClients = new ArrayList<>(numOfGroups);
+        this.groupSessions = new ArrayList<>(numOfGroups);
+        for (int groupId = 0; groupId < numOfGroups; groupId++) {
+            final MultiplexPaxosLogClient groupClient = new MultiplexPaxosLogClient(
+                    PaxosGroupHost.getGroupReplicasInfo(allReplicasInfo, groupId), messageLossRate);
+            groupClients.add(groupClient);
+            groupSessions.add(groupClient.openSession());
+        }
+    }
+
+    /**
+     * Entrance of the client, connect to the replicas of every group
+     */
+    public void start() {
+        for (final MultiplexPaxosLogClient groupClient : groupClients) {
+            groupClient.start();
+        }
+    }
+
+    /**
+     * @param partitionKey       the key the group of the command is chosen by
+     * @param chatMessageLiteral
+     * @return A future that is completed with the slot index the message is chosen in the log of its group
+     */
+    public CompletableFuture<Long> submit(final String partitionKey, final String chatMessageLiteral) {
+        return groupSessions.get(getGroupOf(partitionKey)).submit(chatMessageLiteral);
+    }
+
+    public int getGroupOf(final String partitionKey) {
+        return PaxosGroupHost.getGroupOf(partitionKey, groupSessions.size());
+    }
+
+    public int getNumOfGroups() {
+        return groupSessions.size();
+    }
+}
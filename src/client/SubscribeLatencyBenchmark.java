@@ -0,0 +1,142 @@
+package client;
+
+
+import util.AddressPortPair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A benchmark that measures the commit-to-delivery latency of subscriptions: the time from a client learning that its
+ * command is chosen (the leader's response) to a subscriber on a follower receiving it. Launch the replicas first (e.g.
+ * ManualServiceLauncher0 ~ ManualServiceLauncher4 with messageLossRate set to 0.0), then run this launcher.
+ *
+ * A client keeps WRITE_WINDOW_SIZE messages in flight to the leader for the whole run, and NUM_OF_SUBSCRIBERS
+ * subscribers are spread over the followers (replicas 1 ~ 4), each from the slot the log was at when it started. A
+ * command that reaches a subscriber before its response reaches the client counts as a latency of 0.
+ */
+public class SubscribeLatencyBenchmark {
+
+    private final static int DURATION_SECONDS = 30;
+    private final static int NUM_OF_SUBSCRIBERS = 100;
+    private final static int WRITE_WINDOW_SIZE = 16;
+    private final static int CLIENT_PORT = 7900;
+
+    public static void main(String args[]) throws Exception {
+
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3057));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3058));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3059));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3060));
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", 3061));
+
+        final int durationSeconds = args.length > 0 ? Integer.parseInt(args[0]) : DURATION_SECONDS;
+        final int numOfSubscribers = args.length > 1 ? Integer.parseInt(args[1]) : NUM_OF_SUBSCRIBERS;
+        final String runId = Long.toString(System.currentTimeMillis());
+        final String valuePrefix = "subscribe-benchmark-" + runId + "-";
+
+        // the slot the log is at now, so that the subscribers do not replay earlier runs
+        final LogRangeReader rangeReader = new LogRangeReader("127.0.0.1", 3058);
+        int fromSlot = 0;
+        List<String> values;
+        while (!(values = rangeReader.readRange(fromSlot, LogSubscriber.DEFAULT_WINDOW)).isEmpty()) {
+            fromSlot += values.size();
+        }
+        rangeReader.close();
+
+        final Map<Integer, Long> commitTimes = new ConcurrentHashMap<>();
+        final long[][] latencies = new long[numOfSubscribers][];
+        final int[] numOfLatencies = new int[numOfSubscribers];
+        final AtomicLong numOfDeliveredEntries = new AtomicLong();
+        final List<Thread> subscriberThreads = new ArrayList<>();
+        final List<LogSubscriber> subscribers = new ArrayList<>();
+        for (int s = 0; s < numOfSubscribers; s++) {
+            final int subscriberIndex = s;
+            final LogSubscriber subscriber = new LogSubscriber("127.0.0.1", allReplicasInfo.get(1 + s % 4).getPort(),
+                    fromSlot, LogSubscriber.DEFAULT_WINDOW);
+            subscribers.add(subscriber);
+            latencies[s] = new long[1 << 16];
+            final Thread subscriberThread = new Thread(() -> {
+                try {
+                    while (true) {
+                        final List<String> batch = subscriber.poll();
+                        final long deliveryTime = System.nanoTime();
+                        for (String value : batch) {
+                            if (!value.startsWith(valuePrefix)) {
+                                continue;
+                            }
+                            final Long commitTime = commitTimes.get(Integer.parseInt(value.substring(valuePrefix.length())));
+                            if (numOfLatencies[subscriberIndex] == latencies[subscriberIndex].length) {
+                                latencies[subscriberIndex] = Arrays.copyOf(latencies[subscriberIndex], numOfLatencies[subscriberIndex] * 2);
+                            }
+                            latencies[subscriberIndex][numOfLatencies[subscriberIndex]++] =
+                                    commitTime == null ? 0 : Math.max(0, deliveryTime - commitTime);
+                        }
+                        numOfDeliveredEntries.addAndGet(batch.size());
+                    }
+                } catch (Exception e) {
+                    // the subscription is closed at the end of the run
+                }
+            });
+            subscriberThread.start();
+            subscriberThreads.add(subscriberThread);
+        }
+
+        final PaxosLogClient logClient = new PaxosLogClient.Builder("127.0.0.1", CLIENT_PORT, allReplicasInfo)
+                .windowSize(WRITE_WINDOW_SIZE)
+                .build();
+        final Thread clientThread = new Thread(logClient::start);
+        clientThread.setDaemon(true);
+        clientThread.start();
+
+        final long startTime = System.nanoTime();
+        final long endTime = startTime + durationSeconds * 1000000000L;
+        int numOfWrites = 0;
+        while (System.nanoTime() < endTime) {
+            final List<CompletableFuture<Long>> futures = new ArrayList<>();
+            for (int j = 0; j < WRITE_WINDOW_SIZE; j++) {
+                final int writeIndex = numOfWrites++;
+                futures.add(logClient.submit(valuePrefix + writeIndex)
+                        .whenComplete((slot, e) -> commitTimes.put(writeIndex, System.nanoTime())));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        }
+        final double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+        // let the subscribers drain the last commands
+        Thread.sleep(1000);
+        for (LogSubscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+        for (Thread subscriberThread : subscriberThreads) {
+            subscriberThread.join();
+        }
+
+        int totalNumOfLatencies = 0;
+        for (int s = 0; s < numOfSubscribers; s++) {
+            totalNumOfLatencies += numOfLatencies[s];
+        }
+        final long[] allLatencies = new long[totalNumOfLatencies];
+        int position = 0;
+        for (int s = 0; s < numOfSubscribers; s++) {
+            System.arraycopy(latencies[s], 0, allLatencies, position, numOfLatencies[s]);
+            position += numOfLatencies[s];
+        }
+        Arrays.sort(allLatencies);
+
+        System.out.printf("writes to the leader: %.1f commands/sec%n", numOfWrites / elapsedSeconds);
+        System.out.printf("deliveries to %d subscribers: %.1f entries/sec%n", numOfSubscribers, numOfDeliveredEntries.get() / elapsedSeconds);
+        if (allLatencies.length > 0) {
+            System.out.printf("commit-to-delivery latency: p50 %.3f ms, p99 %.3f ms, max %.3f ms (%d deliveries)%n",
+                    allLatencies[allLatencies.length / 2] / 1e6, allLatencies[(int) (allLatencies.length * 0.99)] / 1e6,
+                    allLatencies[allLatencies.length - 1] / 1e6, allLatencies.length);
+        }
+        System.exit(0);
+    }
+
+}
@@ -1,13 +1,15 @@
 package message;
 
 /**
- * Accept Response Message: "ACCEPT_RESPONSE:23:10:2:1539876988101:45"
+ * Accept Response Message: "ACCEPT_RESPONSE:23:10:2:1539876988101:45:0"
  * note that
  *      "23" is the minimum the number of the smallest proposal this server will accept for any log entry
  *      "10" means the first unchosen index
  *      "2" indicates the server ID who send out this response message
  *      "1539876988101" means the client ID
  *      "45" indicates the message's sequence number
+ *      "0" is the view whose leader this server has promised the lease to by accepting ("-1" if it has not), like an
+ *      acknowledged heartbeat
  */
 
 public class AcceptResponseMsg extends Message {
@@ -17,15 +19,18 @@ public class AcceptResponseMsg extends Message {
     private final int responseServerID;
     private final long clientID;
     private final int messageSequenceNumber;
+    private final int viewNumber;
 
-    public AcceptResponseMsg(int minProposal, int firstUnchosenIndex, int responseServerID, long clientID, int messageSequenceNumber) {
+    public AcceptResponseMsg(int minProposal, int firstUnchosenIndex, int responseServerID, long clientID, int messageSequenceNumber,
+                             int viewNumber) {
         this.minProposal = minProposal;
         this.firstUnchosenIndex = firstUnchosenIndex;
         this.responseServerID = responseServerID;
         this.clientID = clientID;
         this.messageSequenceNumber = messageSequenceNumber;
+        this.viewNumber = viewNumber;
         this.messageType = MESSAGE_TYPE.ACCEPT_RESPONSE;
-        this.messageLiteral = new String("ACCEPT_RESPONSE:" + minProposal + ":" + firstUnchosenIndex + ":" + responseServerID + ":" + clientID + ":" + messageSequenceNumber);
+        this.messageLiteral = new String("ACCEPT_RESPONSE:" + minProposal + ":" + firstUnchosenIndex + ":" + responseServerID + ":" + clientID + ":" + messageSequenceNumber + ":" + viewNumber);
     }
 
     public String toString() {
@@ -39,7 +44,8 @@ public class AcceptResponseMsg extends Message {
                 Integer.parseInt(subStrArr[2]),
                 Integer.parseInt(subStrArr[3]),
                 Long.parseLong(subStrArr[4]),
-                Integer.parseInt(subStrArr[5])
+                Integer.parseInt(subStrArr[5]),
+                Integer.parseInt(subStrArr[6])
         );
     }
 
@@ -62,4 +68,8 @@ public class AcceptResponseMsg extends Message {
     public int getMessageSequenceNumber() {
         return messageSequenceNumber;
     }
+
+    public int getViewNumber() {
+        return viewNumber;
+    }
 }
@@ -1,5 +1,8 @@
 package message;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * CLIENT_TO_SERVER
  *
@@ -7,12 +10,59 @@ package message;
  *      note that
  *          "1539876988101" denotes the client ID
  *          "68.232.15.233" and "28779" denotes the IP address and port number for which the client is listening
+ *          (port "0" means the client is not listening and the replica should reply through the connection it came from)
  *
  *      Chat Message: "CLIENT_TO_SERVER:CHAT:1539876988101:23:Hi there!"
  *      note that
  *          "1539876988101" denotes the client ID
  *          "23" represents the sequence number of current message
  *          "Hi there" is the message literal
+ *
+ *      Batch Message: "CLIENT_TO_SERVER:BATCH:1539876988101:2:1539876988102:23:9:Hi there!1539876988103:5:2:Hi"
+ *      note that
+ *          "1539876988101" denotes the ID of the client connection that carries the batch (the one sent HELLO)
+ *          "2" is the number of chat messages in this batch
+ *          each chat message is "{session client ID}:{sequence number}:{length of literal}:{literal}" and they are
+ *          concatenated without separator since the literal itself may contain ':'
+ *
+ *      Read Range Message: "CLIENT_TO_SERVER:READ_RANGE:120:1000:false"
+ *      note that
+ *          "120" denotes the first slot to read and "1000" the maximum number of entries to return
+ *          "false" asks for the values, "true" for the fragments a replica holds of them with erasure coding as they
+ *          are, which a replica rebuilding the values reads from the others
+ *          it is sent to the log read port of any replica (server port + PaxosLogServer.LOG_READ_PORT_OFFSET)
+ *
+ *      Subscribe Message: "CLIENT_TO_SERVER:SUBSCRIBE:120:4096"
+ *      note that
+ *          "120" denotes the first slot to stream and "4096" the number of entries the replica may push before it
+ *          receives a CREDIT message; it is sent to the log read port, which then pushes RANGE messages as the slots
+ *          are executed
+ *
+ *      Credit Message: "CLIENT_TO_SERVER:CREDIT:1024"
+ *      note that
+ *          "1024" denotes the number of further entries the subscriber is ready to receive (usually the number it has
+ *          consumed since its last CREDIT message)
+ *
+ *      Read Message: "CLIENT_TO_SERVER:READ:1539876988101:7:120:-1"
+ *      note that
+ *          "1539876988101" denotes the client ID
+ *          "7" is the read ID, which the response refers to (reads are not logged, so they have no sequence number)
+ *          "120" is the slot to read, "-1" means the newest executed slot
+ *          "-1" is the slot token: "-1" asks for a linearizable read, a slot (e.g. the one a previous write of the client
+ *          is chosen in) asks for a read that sees at least that slot, which needs no round trip to the leader
+ *          any replica answers it from its executed slots without a Paxos round (see PaxosLogServer)
+ *
+ *      Transfer Message: "CLIENT_TO_SERVER:TRANSFER:1539876988101:2"
+ *      note that
+ *          "1539876988101" denotes the client ID of the administrator, who has sent HELLO before
+ *          "2" is the server ID of the replica the leader should hand its leadership over to ("-1" for the next one)
+ *          the leader answers with NACK naming the new leader once it has handed over, or ACK if it is still the leader
+ *
+ *      Payload Message: "CLIENT_TO_SERVER:PAYLOAD:1539876988101:23:Hi there!"
+ *      note that
+ *          "1539876988101" denotes the client ID and "23" the sequence number of the chat message the payload belongs to
+ *          "Hi there!" is the payload, which a client disseminating large payloads sends to every replica itself; the
+ *          chat message then carries the reference of the payload (see PayloadStore) instead of the payload
  */
 
 public class ClientToServerMsg extends Message {
@@ -20,15 +70,36 @@ public class ClientToServerMsg extends Message {
     public enum CLIENT_TO_SERVER_TYPE {
         HELLO,
         CHAT,
+        BATCH,
+        READ_RANGE,
+        SUBSCRIBE,
+        CREDIT,
+        READ,
+        TRANSFER,
+        PAYLOAD,
     }
 
     public static CLIENT_TO_SERVER_TYPE getClientToServerType(final String messageLiteral) {
-        final String subType = messageLiteral.split(":")[1];
+        final String subType = messageLiteral.split(":", 3)[1];
         switch (subType) {
             case "HELLO":
                 return CLIENT_TO_SERVER_TYPE.HELLO;
             case "CHAT":
                 return CLIENT_TO_SERVER_TYPE.CHAT;
+            case "BATCH":
+                return CLIENT_TO_SERVER_TYPE.BATCH;
+            case "READ_RANGE":
+                return CLIENT_TO_SERVER_TYPE.READ_RANGE;
+            case "SUBSCRIBE":
+                return CLIENT_TO_SERVER_TYPE.SUBSCRIBE;
+            case "CREDIT":
+                return CLIENT_TO_SERVER_TYPE.CREDIT;
+            case "READ":
+                return CLIENT_TO_SERVER_TYPE.READ;
+            case "TRANSFER":
+                return CLIENT_TO_SERVER_TYPE.TRANSFER;
+            case "PAYLOAD":
+                return CLIENT_TO_SERVER_TYPE.PAYLOAD;
             default:
                 throw new IllegalArgumentException("Can not detect message type!");
         }
@@ -110,4 +181,274 @@ public class ClientToServerMsg extends Message {
         }
     }
 
+    public static class BatchMsg extends Message {
+        private final long connectionClientID;
+        private final List<ChatMsg> chatMsgs;
+
+        public BatchMsg(long connectionClientID, List<ChatMsg> chatMsgs) {
+            this.connectionClientID = connectionClientID;
+            this.chatMsgs = chatMsgs;
+            this.messageType = MESSAGE_TYPE.CLIENT_TO_SERVER;
+            final StringBuilder builder = new StringBuilder("CLIENT_TO_SERVER:BATCH:" + connectionClientID + ":" + chatMsgs.size() + ":");
+            for (final ChatMsg chatMsg : chatMsgs) {
+                builder.append(chatMsg.getClientID()).append(':')
+                        .append(chatMsg.getMessageSequenceNumber()).append(':')
+                        .append(chatMsg.getChatMessageLiteral().length()).append(':')
+                        .append(chatMsg.getChatMessageLiteral());
+            }
+            this.messageLiteral = builder.toString();
+        }
+
+        public String toString() {
+            return this.messageLiteral;
+        }
+
+        public static BatchMsg fromString(final String messageLiteral) {
+            final String[] headerArr = messageLiteral.split(":", 5);
+            final long connectionClientID = Long.parseLong(headerArr[2]);
+            final int numOfChatMsgs = Integer.parseInt(headerArr[3]);
+            final String body = headerArr.length > 4 ? headerArr[4] : "";
+            final List<ChatMsg> chatMsgs = new ArrayList<>(numOfChatMsgs);
+            int position = 0;
+            for (int i = 0; i < numOfChatMsgs; i++) {
+                final int clientIDEnd = body.indexOf(':', position);
+                final int seqNumEnd = body.indexOf(':', clientIDEnd + 1);
+                final int lengthEnd = body.indexOf(':', seqNumEnd + 1);
+                final int literalEnd = lengthEnd + 1 + Integer.parseInt(body.substring(seqNumEnd + 1, lengthEnd));
+                chatMsgs.add(new ChatMsg(
+                        Long.parseLong(body.substring(position, clientIDEnd)),
+                        Integer.parseInt(body.substring(clientIDEnd + 1, seqNumEnd)),
+                        body.substring(lengthEnd + 1, literalEnd)));
+                position = literalEnd;
+            }
+            return new BatchMsg(connectionClientID, chatMsgs);
+        }
+
+        public long getConnectionClientID() {
+            return connectionClientID;
+        }
+
+        public List<ChatMsg> getChatMsgs() {
+            return chatMsgs;
+        }
+    }
+
+    public static class ReadRangeMsg extends Message {
+
+        private final int fromSlot;
+        private final int maxEntries;
+        private final boolean fragments;
+
+        public ReadRangeMsg(int fromSlot, int maxEntries) {
+            this(fromSlot, maxEntries, false);
+        }
+
+        public ReadRangeMsg(int fromSlot, int maxEntries, boolean fragments) {
+            this.fromSlot = fromSlot;
+            this.maxEntries = maxEntries;
+            this.fragments = fragments;
+            this.messageType = MESSAGE_TYPE.CLIENT_TO_SERVER;
+            this.messageLiteral = new String("CLIENT_TO_SERVER:READ_RANGE:" + fromSlot + ":" + maxEntries + ":" + fragments);
+        }
+
+        public String toString() {
+            return this.messageLiteral;
+        }
+
+        public static ReadRangeMsg fromString(final String messageLiteral) {
+            final String[] subStrArr = messageLiteral.split(":");
+            return new ReadRangeMsg(Integer.parseInt(subStrArr[2]), Integer.parseInt(subStrArr[3]),
+                    Boolean.parseBoolean(subStrArr[4]));
+        }
+
+        public int getFromSlot() {
+            return fromSlot;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        /**
+         * @return Whether the fragments are asked for as they are, rather than the values rebuilt from them
+         */
+        public boolean isFragments() {
+            return fragments;
+        }
+    }
+
+    public static class SubscribeMsg extends Message {
+
+        private final int fromSlot;
+        private final int credits;
+
+        public SubscribeMsg(int fromSlot, int credits) {
+            this.fromSlot = fromSlot;
+            this.credits = credits;
+            this.messageType = MESSAGE_TYPE.CLIENT_TO_SERVER;
+            this.messageLiteral = new String("CLIENT_TO_SERVER:SUBSCRIBE:" + fromSlot + ":" + credits);
+        }
+
+        public String toString() {
+            return this.messageLiteral;
+        }
+
+        public static SubscribeMsg fromString(final String messageLiteral) {
+            final String[] subStrArr = messageLiteral.split(":");
+            return new SubscribeMsg(Integer.parseInt(subStrArr[2]), Integer.parseInt(subStrArr[3]));
+        }
+
+        public int getFromSlot() {
+            return fromSlot;
+        }
+
+        public int getCredits() {
+            return credits;
+        }
+    }
+
+    public static class CreditMsg extends Message {
+
+        private final int credits;
+
+        public CreditMsg(int credits) {
+            this.credits = credits;
+            this.messageType = MESSAGE_TYPE.CLIENT_TO_SERVER;
+            this.messageLiteral = new String("CLIENT_TO_SERVER:CREDIT:" + credits);
+        }
+
+        public String toString() {
+            return this.messageLiteral;
+        }
+
+        public static CreditMsg fromString(final String messageLiteral) {
+            final String[] subStrArr = messageLiteral.split(":");
+            return new CreditMsg(Integer.parseInt(subStrArr[2]));
+        }
+
+        public int getCredits() {
+            return credits;
+        }
+    }
+
+    public static class ReadMsg extends Message {
+
+        // the slot token of a linearizable read
+        public final static int LINEARIZABLE = -1;
+
+        private final long clientID;
+        private final int readID;
+        private final int slotIndex;
+        private final int slotToken;
+
+        public ReadMsg(long clientID, int readID, int slotIndex) {
+            this(clientID, readID, slotIndex, LINEARIZABLE);
+        }
+
+        public ReadMsg(long clientID, int readID, int slotIndex, int slotToken) {
+            this.clientID = clientID;
+            this.readID = readID;
+            this.slotIndex = slotIndex;
+            this.slotToken = slotToken;
+            this.messageType = MESSAGE_TYPE.CLIENT_TO_SERVER;
+            this.messageLiteral = new String("CLIENT_TO_SERVER:READ:" + clientID + ":" + readID + ":" + slotIndex + ":" + slotToken);
+        }
+
+        public String toString() {
+            return this.messageLiteral;
+        }
+
+        public static ReadMsg fromString(final String messageLiteral) {
+            final String[] subStrArr = messageLiteral.split(":");
+            return new ReadMsg(Long.parseLong(subStrArr[2]), Integer.parseInt(subStrArr[3]), Integer.parseInt(subStrArr[4]),
+                    Integer.parseInt(subStrArr[5]));
+        }
+
+        public long getClientID() {
+            return clientID;
+        }
+
+        public int getReadID() {
+            return readID;
+        }
+
+        public int getSlotIndex() {
+            return slotIndex;
+        }
+
+        /**
+         * @return The slot the read has to see, LINEARIZABLE if it has to see every slot chosen before it is received
+         */
+        public int getSlotToken() {
+            return slotToken;
+        }
+    }
+
+    public static class TransferMsg extends Message {
+
+        // the target of a transfer to the replica leading the next view
+        public final static int NEXT_REPLICA = -1;
+
+        private final long clientID;
+        private final int targetServerID;
+
+        public TransferMsg(long clientID, int targetServerID) {
+            this.clientID = clientID;
+            this.targetServerID = targetServerID;
+            this.messageType = MESSAGE_TYPE.CLIENT_TO_SERVER;
+            this.messageLiteral = new String("CLIENT_TO_SERVER:TRANSFER:" + clientID + ":" + targetServerID);
+        }
+
+        public String toString() {
+            return this.messageLiteral;
+        }
+
+        public static TransferMsg fromString(final String messageLiteral) {
+            final String[] subStrArr = messageLiteral.split(":");
+            return new TransferMsg(Long.parseLong(subStrArr[2]), Integer.parseInt(subStrArr[3]));
+        }
+
+        public long getClientID() {
+            return clientID;
+        }
+
+        public int getTargetServerID() {
+            return targetServerID;
+        }
+    }
+
+    public static class PayloadMsg extends Message {
+        private final long clientID;
+        private final int messageSequenceNumber;
+        private final String payload;
+
+        public PayloadMsg(long clientID, int messageSequenceNumber, String payload) {
+            this.clientID = clientID;
+            this.messageSequenceNumber = messageSequenceNumber;
+            this.payload = payload;
+            this.messageType = MESSAGE_TYPE.CLIENT_TO_SERVER;
+            this.messageLiteral = new String("CLIENT_TO_SERVER:PAYLOAD:" + clientID + ":" + messageSequenceNumber + ":" + payload);
+        }
+
+        public String toString() {
+            return this.messageLiteral;
+        }
+
+        public static PayloadMsg fromString(final String messageLiteral) {
+            final String[] subStrArr = messageLiteral.split(":", 5);
+            return new PayloadMsg(Long.parseLong(subStrArr[2]), Integer.parseInt(subStrArr[3]), subStrArr[4]);
+        }
+
+        public long getClientID() {
+            return clientID;
+        }
+
+        public int getMessageSequenceNumber() {
+            return messageSequenceNumber;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+    }
 }
@@ -1,20 +1,26 @@
 package message;
 
 /**
- * HeartBeat Message: "HEART_BEAT:0:1539876988101"
+ * HeartBeat Message: "HEART_BEAT:0:1539876988101:3:7"
  * note that
- *      "0" is the view number and "1539876988101" is the timestamp
+ *      "0" is the view number and "1539876988101" is the timestamp (System.nanoTime() of the leader)
+ *      "3" is the round number and "7" the first unchosen index of the leader: every slot below "7" the leader has
+ *      proposed in round "3" is chosen, so a follower that accepted a slot below it in that round can choose it
  */
 public class HeartBeatMsg extends Message {
 
     private final int viewNumber;
     private final long timeStamp;
+    private final int roundNumber;
+    private final int firstUnchosenIndex;
 
-    public HeartBeatMsg(int viewNumber, long timeStamp) {
+    public HeartBeatMsg(int viewNumber, long timeStamp, int roundNumber, int firstUnchosenIndex) {
         this.viewNumber = viewNumber;
         this.timeStamp = timeStamp;
+        this.roundNumber = roundNumber;
+        this.firstUnchosenIndex = firstUnchosenIndex;
         this.messageType = MESSAGE_TYPE.HEART_BEAT;
-        this.messageLiteral = new String("HEART_BEAT:" + viewNumber + ":" + timeStamp);
+        this.messageLiteral = new String("HEART_BEAT:" + viewNumber + ":" + timeStamp + ":" + roundNumber + ":" + firstUnchosenIndex);
     }
 
     public String toString() {
@@ -23,7 +29,8 @@ public class HeartBeatMsg extends Message {
 
     public static HeartBeatMsg fromString(final String messageLiteral) {
         final String[] subStrArr = messageLiteral.split(":");
-        return new HeartBeatMsg(Integer.parseInt(subStrArr[1]), Long.parseLong(subStrArr[2]));
+        return new HeartBeatMsg(Integer.parseInt(subStrArr[1]), Long.parseLong(subStrArr[2]),
+                Integer.parseInt(subStrArr[3]), Integer.parseInt(subStrArr[4]));
     }
 
     public int getViewNumber() {
@@ -33,4 +40,12 @@ public class HeartBeatMsg extends Message {
     public long getTimeStamp() {
         return timeStamp;
     }
+
+    public int getRoundNumber() {
+        return roundNumber;
+    }
+
+    public int getFirstUnchosenIndex() {
+        return firstUnchosenIndex;
+    }
 }
@@ -0,0 +1,43 @@
+package message;
+
+/**
+ * HeartBeat Response Message: "HEART_BEAT_RESPONSE:0:1539876988101:2"
+ * note that
+ *      "0" is the view number and "1539876988101" is the timestamp of the heartbeat it acknowledges
+ *      "2" is the server ID who send out this response message
+ */
+public class HeartBeatResponseMsg extends Message {
+
+    private final int viewNumber;
+    private final long timeStamp;
+    private final int responseServerID;
+
+    public HeartBeatResponseMsg(int viewNumber, long timeStamp, int responseServerID) {
+        this.viewNumber = viewNumber;
+        this.timeStamp = timeStamp;
+        this.responseServerID = responseServerID;
+        this.messageType = MESSAGE_TYPE.HEART_BEAT_RESPONSE;
+        this.messageLiteral = new String("HEART_BEAT_RESPONSE:" + viewNumber + ":" + timeStamp + ":" + responseServerID);
+    }
+
+    public String toString() {
+        return this.messageLiteral;
+    }
+
+    public static HeartBeatResponseMsg fromString(final String messageLiteral) {
+        final String[] subStrArr = messageLiteral.split(":");
+        return new HeartBeatResponseMsg(Integer.parseInt(subStrArr[1]), Long.parseLong(subStrArr[2]), Integer.parseInt(subStrArr[3]));
+    }
+
+    public int getViewNumber() {
+        return viewNumber;
+    }
+
+    public long getTimeStamp() {
+        return timeStamp;
+    }
+
+    public int getResponseServerID() {
+        return responseServerID;
+    }
+}
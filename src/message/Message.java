@@ -12,6 +12,7 @@ public abstract class Message {
      *      note that
      *          "1539876988101" denotes the client ID
      *          "68.232.15.233" and "28779" denotes the IP address and port number for which the client is listening
+     *          (port "0" means the client is not listening and the replica should reply through the connection it came from)
      *
      *      Chat Message: "CLIENT_TO_SERVER:CHAT:1539876988101:23:Hi there!"
      *      note that
@@ -19,32 +20,129 @@ public abstract class Message {
      *          "23" represents the sequence number of current message
      *          "Hi there" is the message literal
      *
+     *      Batch Message: "CLIENT_TO_SERVER:BATCH:1539876988101:2:1539876988102:23:9:Hi there!1539876988103:5:2:Hi"
+     *      note that
+     *          "1539876988101" denotes the ID of the client connection that carries the batch (the one sent HELLO)
+     *          "2" is the number of chat messages in this batch
+     *          each chat message is "{session client ID}:{sequence number}:{length of literal}:{literal}"
+     *
+     *      Read Range Message: "CLIENT_TO_SERVER:READ_RANGE:120:1000:false"
+     *      note that
+     *          "120" denotes the first slot to read and "1000" the maximum number of entries to return
+     *          "false" asks for the values, "true" for the fragments of them held with erasure coding as they are
+     *
+     *      Subscribe Message: "CLIENT_TO_SERVER:SUBSCRIBE:120:4096"
+     *      note that
+     *          "120" denotes the first slot to stream and "4096" the number of entries that may be pushed before a CREDIT
+     *
+     *      Credit Message: "CLIENT_TO_SERVER:CREDIT:1024"
+     *      note that
+     *          "1024" denotes the number of further entries the subscriber is ready to receive
+     *
+     *      Read Message: "CLIENT_TO_SERVER:READ:1539876988101:7:120:-1"
+     *      note that
+     *          "1539876988101" denotes the client ID, "7" the read ID and "120" the slot to read ("-1" for the newest)
+     *          "-1" is the slot token, "-1" for a linearizable read or the slot the read has to see
+     *
+     *      Transfer Message: "CLIENT_TO_SERVER:TRANSFER:1539876988101:2"
+     *      note that
+     *          "1539876988101" denotes the client ID of the administrator
+     *          "2" is the server ID of the replica the leader should hand over to ("-1" for the next one)
+     *
+     *      Payload Message: "CLIENT_TO_SERVER:PAYLOAD:1539876988101:23:Hi there!"
+     *      note that
+     *          "1539876988101" denotes the client ID and "23" the sequence number of the chat message whose payload
+     *          "Hi there!" the client sends to every replica itself, the chat message then carries its reference
+     *
      * SERVER_TO_CLIENT
      *
      *      NACK Message: "SERVER_TO_CLIENT:NACK:2"
      *      note that
      *          "2" denotes the ID of current leader
      *
-     *      ACK Message: "SERVER_TO_CLIENT:ACK"
+     *      ACK Message: "SERVER_TO_CLIENT:ACK:2"
      *      note that
      *          this message indicates that the client find the correct leader
+     *          "2" denotes the ID of the leader who send out this message
      *
-     *      Response Message: "SERVER_TO_CLIENT:RESPONSE:23"
+     *      Response Message: "SERVER_TO_CLIENT:RESPONSE:1539876988101:23:7"
      *      note that
+     *          "1539876988101" denotes the ID of the client (or the session of a multiplexing client) the message comes from
      *          "23" denotes the sequence number of the message that send to server before
+     *          "7" denotes the slot index that message is chosen in ("-1" if the server does not know)
+     *
+     *      Range Message: "SERVER_TO_CLIENT:RANGE:120:64:4711"
+     *      note that
+     *          it is followed by "4711" bytes holding "64" lines "{slotIndex}:{value}" for the slots from "120" on
+     *          (the response to READ_RANGE, and what the log read port pushes to a subscriber)
+     *
+     *      Read Response Message: "SERVER_TO_CLIENT:READ_RESPONSE:1539876988101:7:120:Hi there!"
+     *      note that
+     *          "7" is the read ID, "120" the slot that is read ("-1" if not executed yet) and "Hi there!" its value
      *
      * AMONG_REPLICAS
      *
-     *      HeartBeat Message: "HEART_BEAT:0:1539876988101"
+     *      HeartBeat Message: "HEART_BEAT:0:1539876988101:3:7"
+     *      note that
+     *          "0" is the view number and "1539876988101" is the timestamp (System.nanoTime() of the leader)
+     *          "3" is the round number and "7" the first unchosen index of the leader, the slots below it accepted in
+     *          that round are chosen
+     *
+     *      HeartBeat Response Message: "HEART_BEAT_RESPONSE:0:1539876988101:2"
+     *      note that
+     *          "0" is the view number and "1539876988101" the timestamp of the heartbeat it acknowledges
+     *          "2" is the server ID who send out this response message, it grants the leader a lease (see LeaderLease)
+     *
+     *      Read Index Message: "READ_INDEX:17:3"
+     *      note that
+     *          "17" is the ID of the request in the follower and "3" is the server ID of the follower asking
+     *
+     *      Read Index Response Message: "READ_INDEX_RESPONSE:17:120"
+     *      note that
+     *          "17" is the ID of the request it answers
+     *          "120" is the read index, every slot the leader has responded to a client for is below it ("-1" if the
+     *          replica is not the leader holding the lease)
+     *
+     *      Pre-Vote Message: "PRE_VOTE:3:1"
+     *      note that
+     *          "3" is the view number of the replica that suspects the leader of that view and "1" is its server ID
+     *
+     *      Pre-Vote Response Message: "PRE_VOTE_RESPONSE:3:2:120:true"
+     *      note that
+     *          "3" is the view number and "2" the server ID of the responder, "120" is its executed watermark
+     *          "true" means it has not heard from the leader for a heartbeat period and promises it no lease either
+     *
+     *      Take Over Message: "TAKE_OVER:5:1"
+     *      note that
+     *          "5" is the view the replicas move to, whose leader takes over right away
+     *          "1" is the server ID of the replica that won the pre-vote for it, or of the leader of the current view
+     *          that hands its leadership over
+     *
+     *      Transfer Leadership Message: "TRANSFER_LEADERSHIP:4:7:120"
      *      note that
-     *          "0" is the view number and "1539876988101" is the timestamp
+     *          "4" is the view number of the leader handing over, "7" its round and "120" its first unchosen index
+     *          (the commit watermark, as in a heartbeat), the target has to have chosen every slot below it
      *
-     *      Prepare Message: "PREPARE:0:1:1539876988101:45"
+     *      Transfer Leadership Response Message: "TRANSFER_LEADERSHIP_RESPONSE:4:2:118"
+     *      note that
+     *          "4" is the view number, "2" the server ID of the target and "118" its first unchosen index
+     *
+     *      Payload Request Message: "PAYLOAD_REQUEST:120:2:|PAYLOAD|1539876988101:23:9f86d081..."
+     *      note that
+     *          "120" is the slot the reference is chosen in ("-1" if it is only accepted there) and "2" the server ID of
+     *          the replica that misses the payload the reference "|PAYLOAD|1539876988101:23:9f86d081..." refers to
+     *
+     *      Payload Response Message: "PAYLOAD_RESPONSE:|PAYLOAD|1539876988101:23:9f86d081...:Hi there!"
+     *      note that
+     *          "|PAYLOAD|1539876988101:23:9f86d081..." is the reference asked for and "Hi there!" its payload
+     *
+     *      Prepare Message: "PREPARE:0:1:1539876988101:45:2"
      *      note that
      *          "0" denotes the round number
      *          "1" denotes the slot index,
      *          "1539876988101" means the client ID
      *          "45" means the sequence number of this client
+     *          "2" denotes the view the sender leads
      *
      *      Prepare Response Message: "PREPARE_RESPONSE:0:1:2:true:1539876988101:45:Hello"
      *      note that
@@ -56,24 +154,39 @@ public abstract class Message {
      *          "45" means that message's sequence number
      *          "hello" means the message in current slot ("|EMPTY_MESSAGE|" literal means there is nothing in that slot)
      *
+     *      Prepare Range Message: "PREPARE_RANGE:3:120:2"
+     *      note that
+     *          "3" denotes the round number
+     *          "120" denotes the first slot, the PREPARE covers it and every slot after it at once (sent by a new leader)
+     *          "2" denotes the view the sender leads
+     *
+     *      Prepare Range Response Message: "PREPARE_RANGE_RESPONSE:3:2:3:2:121:1:5:Hello125:1:2:Hi"
+     *      note that
+     *          "3" denotes the round number and "2" the server ID who send out this response message
+     *          "3" is the minimum proposal of the server after the PREPARE_RANGE, above the round number if rejected
+     *          "2" is the number of slots from the first slot on that the server has accepted a value in, each slot is
+     *          "{slot index}:{accepted proposal}:{length of value}:{value}"
+     *
      *      Accept Message: "ACCEPT:0:1:7:1539876988101:45:Hello"
      *      note that
      *          "0" represents the round number (proposal ID)
      *          "1" denotes the index
-     *          "7" means the first unchosen index
+     *          "7" means the first unchosen index (the slots below it accepted in round "0" are chosen)
      *          "1539876988101" means the client ID
      *          "45" indicates the message's sequence number
      *          "Hello" means the value
      *
-     *      Accept Response Message: "ACCEPT_RESPONSE:23:10:2:1539876988101:45"
+     *      Accept Response Message: "ACCEPT_RESPONSE:23:10:2:1539876988101:45:0"
      *      note that
      *          "23" is the minimum the number of the smallest proposal this server will accept for any log entry
      *          "10" means the first unchosen index
      *          "2" indicates the server ID who send out this response message
      *          "1539876988101" means the client ID
      *          "45" indicates the message's sequence number
+     *          "0" is the view whose leader the server has promised the lease to by accepting ("-1" if none)
      *
-     *      Success Message: "SUCCESS:7:Hi"
+     *      Success Message: "SUCCESS:7:Hi" (only sent to a replica that falls behind, the others learn the chosen slots
+     *      from the first unchosen index of ACCEPT and HEART_BEAT messages)
      *      note that
      *          "7" is the index that is chosen
      *          "Hi" is the message value literal
@@ -89,8 +202,20 @@ public abstract class Message {
         CLIENT_TO_SERVER,
         SERVER_TO_CLIENT,
         HEART_BEAT,
+        HEART_BEAT_RESPONSE,
+        READ_INDEX,
+        READ_INDEX_RESPONSE,
+        PRE_VOTE,
+        PRE_VOTE_RESPONSE,
+        TAKE_OVER,
+        TRANSFER_LEADERSHIP,
+        TRANSFER_LEADERSHIP_RESPONSE,
+        PAYLOAD_REQUEST,
+        PAYLOAD_RESPONSE,
         PREPARE,
         PREPARE_RESPONSE,
+        PREPARE_RANGE,
+        PREPARE_RANGE_RESPONSE,
         ACCEPT,
         ACCEPT_RESPONSE,
         SUCCESS,
@@ -119,7 +244,7 @@ public abstract class Message {
     }
 
     public static MESSAGE_TYPE getMessageType(final String messageLiteral) {
-        final String type = messageLiteral.split(":")[0];
+        final String type = messageLiteral.split(":", 2)[0];
         switch (type) {
             case "CLIENT_TO_SERVER":
                 return MESSAGE_TYPE.CLIENT_TO_SERVER;
@@ -127,10 +252,34 @@ public abstract class Message {
                 return MESSAGE_TYPE.SERVER_TO_CLIENT;
             case "HEART_BEAT":
                 return MESSAGE_TYPE.HEART_BEAT;
+            case "HEART_BEAT_RESPONSE":
+                return MESSAGE_TYPE.HEART_BEAT_RESPONSE;
+            case "READ_INDEX":
+                return MESSAGE_TYPE.READ_INDEX;
+            case "READ_INDEX_RESPONSE":
+                return MESSAGE_TYPE.READ_INDEX_RESPONSE;
+            case "PRE_VOTE":
+                return MESSAGE_TYPE.PRE_VOTE;
+            case "PRE_VOTE_RESPONSE":
+                return MESSAGE_TYPE.PRE_VOTE_RESPONSE;
+            case "TAKE_OVER":
+                return MESSAGE_TYPE.TAKE_OVER;
+            case "TRANSFER_LEADERSHIP":
+                return MESSAGE_TYPE.TRANSFER_LEADERSHIP;
+            case "TRANSFER_LEADERSHIP_RESPONSE":
+                return MESSAGE_TYPE.TRANSFER_LEADERSHIP_RESPONSE;
+            case "PAYLOAD_REQUEST":
+                return MESSAGE_TYPE.PAYLOAD_REQUEST;
+            case "PAYLOAD_RESPONSE":
+                return MESSAGE_TYPE.PAYLOAD_RESPONSE;
             case "PREPARE":
                 return MESSAGE_TYPE.PREPARE;
             case "PREPARE_RESPONSE":
                 return MESSAGE_TYPE.PREPARE_RESPONSE;
+            case "PREPARE_RANGE":
+                return MESSAGE_TYPE.PREPARE_RANGE;
+            case "PREPARE_RANGE_RESPONSE":
+                return MESSAGE_TYPE.PREPARE_RANGE_RESPONSE;
             case "ACCEPT":
                 return MESSAGE_TYPE.ACCEPT;
             case "ACCEPT_RESPONSE":
@@ -0,0 +1,45 @@
+package message;
+
+/**
+ * Payload Request Message: "PAYLOAD_REQUEST:120:2:|PAYLOAD|1539876988101:23:9f86d081..."
+ * note that
+ *      "120" is the slot the reference is chosen in ("-1" if it is only accepted there), a replica that no longer keeps
+ *      the payload answers from that slot once it has executed it
+ *      "2" is the server ID of the replica that misses the payload
+ *      "|PAYLOAD|1539876988101:23:9f86d081..." is the reference of the payload (see PayloadStore)
+ */
+public class PayloadRequestMsg extends Message {
+
+    private final int slotIndex;
+    private final int requestServerID;
+    private final String reference;
+
+    public PayloadRequestMsg(int slotIndex, int requestServerID, String reference) {
+        this.slotIndex = slotIndex;
+        this.requestServerID = requestServerID;
+        this.reference = reference;
+        this.messageType = MESSAGE_TYPE.PAYLOAD_REQUEST;
+        this.messageLiteral = new String("PAYLOAD_REQUEST:" + slotIndex + ":" + requestServerID + ":" + reference);
+    }
+
+    public String toString() {
+        return this.messageLiteral;
+    }
+
+    public static PayloadRequestMsg fromString(final String messageLiteral) {
+        final String[] subStrArr = messageLiteral.split(":", 4);
+        return new PayloadRequestMsg(Integer.parseInt(subStrArr[1]), Integer.parseInt(subStrArr[2]), subStrArr[3]);
+    }
+
+    public int getSlotIndex() {
+        return slotIndex;
+    }
+
+    public int getRequestServerID() {
+        return requestServerID;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+}
@@ -0,0 +1,38 @@
+package message;
+
+/**
+ * Payload Response Message: "PAYLOAD_RESPONSE:|PAYLOAD|1539876988101:23:9f86d081...:Hi there!"
+ * note that
+ *      "|PAYLOAD|1539876988101:23:9f86d081..." is the reference of the payload asked for, which ends with the digest
+ *      "Hi there!" is the payload, the replica that asked for it keeps it only if it matches the digest
+ */
+public class PayloadResponseMsg extends Message {
+
+    private final String reference;
+    private final String payload;
+
+    public PayloadResponseMsg(String reference, String payload) {
+        this.reference = reference;
+        this.payload = payload;
+        this.messageType = MESSAGE_TYPE.PAYLOAD_RESPONSE;
+        this.messageLiteral = new String("PAYLOAD_RESPONSE:" + reference + ":" + payload);
+    }
+
+    public String toString() {
+        return this.messageLiteral;
+    }
+
+    public static PayloadResponseMsg fromString(final String messageLiteral) {
+        // the reference itself holds two ':'
+        final String[] subStrArr = messageLiteral.split(":", 5);
+        return new PayloadResponseMsg(subStrArr[1] + ":" + subStrArr[2] + ":" + subStrArr[3], subStrArr[4]);
+    }
+
+    public String getReference() {
+        return reference;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+}
@@ -0,0 +1,37 @@
+package message;
+
+/**
+ * Pre-Vote Message: "PRE_VOTE:3:1"
+ * note that
+ *      "3" is the view number of the replica that suspects the leader of that view
+ *      "1" is the server ID of that replica
+ */
+public class PreVoteMsg extends Message {
+
+    private final int viewNumber;
+    private final int requestServerID;
+
+    public PreVoteMsg(int viewNumber, int requestServerID) {
+        this.viewNumber = viewNumber;
+        this.requestServerID = requestServerID;
+        this.messageType = MESSAGE_TYPE.PRE_VOTE;
+        this.messageLiteral = new String("PRE_VOTE:" + viewNumber + ":" + requestServerID);
+    }
+
+    public String toString() {
+        return this.messageLiteral;
+    }
+
+    public static PreVoteMsg fromString(final String messageLiteral) {
+        final String[] subStrArr = messageLiteral.split(":");
+        return new PreVoteMsg(Integer.parseInt(subStrArr[1]), Integer.parseInt(subStrArr[2]));
+    }
+
+    public int getViewNumber() {
+        return viewNumber;
+    }
+
+    public int getRequestServerID() {
+        return requestServerID;
+    }
+}
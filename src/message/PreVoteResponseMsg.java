@@ -0,0 +1,53 @@
+package message;
+
+/**
+ * Pre-Vote Response Message: "PRE_VOTE_RESPONSE:3:2:120:true"
+ * note that
+ *      "3" is the view number of the responder
+ *      "2" is the server ID who send out this response message
+ *      "120" is the executed watermark of the responder, every slot below it is executed there
+ *      "true" means the responder has not heard from the leader for a heartbeat period and promises it no lease either
+ */
+public class PreVoteResponseMsg extends Message {
+
+    private final int viewNumber;
+    private final int responseServerID;
+    private final int executedWatermark;
+    private final boolean granted;
+
+    public PreVoteResponseMsg(int viewNumber, int responseServerID, int executedWatermark, boolean granted) {
+        this.viewNumber = viewNumber;
+        this.responseServerID = responseServerID;
+        this.executedWatermark = executedWatermark;
+        this.granted = granted;
+        this.messageType = MESSAGE_TYPE.PRE_VOTE_RESPONSE;
+        this.messageLiteral = new String("PRE_VOTE_RESPONSE:" + viewNumber + ":" + responseServerID + ":"
+                + executedWatermark + ":" + granted);
+    }
+
+    public String toString() {
+        return this.messageLiteral;
+    }
+
+    public static PreVoteResponseMsg fromString(final String messageLiteral) {
+        final String[] subStrArr = messageLiteral.split(":");
+        return new PreVoteResponseMsg(Integer.parseInt(subStrArr[1]), Integer.parseInt(subStrArr[2]),
+                Integer.parseInt(subStrArr[3]), Boolean.parseBoolean(subStrArr[4]));
+    }
+
+    public int getViewNumber() {
+        return viewNumber;
+    }
+
+    public int getResponseServerID() {
+        return responseServerID;
+    }
+
+    public int getExecutedWatermark() {
+        return executedWatermark;
+    }
+
+    public boolean isGranted() {
+        return granted;
+    }
+}
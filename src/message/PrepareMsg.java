@@ -1,12 +1,13 @@
 package message;
 
 /**
- * Prepare Message: "PREPARE:0:1:1539876988101:45"
+ * Prepare Message: "PREPARE:0:1:1539876988101:45:2"
  * note that
  *      "0" denotes the round number
  *      "1" denotes the slot index,
  *      "1539876988101" means the client ID
  *      "45" means the sequence number of this client
+ *      "2" denotes the view the sender leads, a follower promising the lease to another view does not answer it
  */
 
 public class PrepareMsg extends Message {
@@ -15,14 +16,16 @@ public class PrepareMsg extends Message {
     private final int slotIndex;
     private final long clientID;
     private final int messageSequenceNumber;
+    private final int viewNumber;
 
-    public PrepareMsg(int roundNumber, int slotIndex, long clientID, int messageSequenceNumber) {
+    public PrepareMsg(int roundNumber, int slotIndex, long clientID, int messageSequenceNumber, int viewNumber) {
         this.roundNumber = roundNumber;
         this.slotIndex = slotIndex;
         this.clientID = clientID;
         this.messageSequenceNumber = messageSequenceNumber;
+        this.viewNumber = viewNumber;
         this.messageType = MESSAGE_TYPE.PREPARE;
-        this.messageLiteral = new String("PREPARE:" + roundNumber + ":" + slotIndex + ":" + clientID + ":" + messageSequenceNumber);
+        this.messageLiteral = new String("PREPARE:" + roundNumber + ":" + slotIndex + ":" + clientID + ":" + messageSequenceNumber + ":" + viewNumber);
     }
 
     public String toString() {
@@ -31,7 +34,7 @@ public class PrepareMsg extends Message {
 
     public static PrepareMsg fromString(final String messageLiteral) {
         final String[] subStrArr = messageLiteral.split(":");
-        return new PrepareMsg(Integer.parseInt(subStrArr[1]), Integer.parseInt(subStrArr[2]), Long.parseLong(subStrArr[3]), Integer.parseInt(subStrArr[4]));
+        return new PrepareMsg(Integer.parseInt(subStrArr[1]), Integer.parseInt(subStrArr[2]), Long.parseLong(subStrArr[3]), Integer.parseInt(subStrArr[4]), Integer.parseInt(subStrArr[5]));
     }
 
     public int getRoundNumber() {
@@ -49,4 +52,8 @@ public class PrepareMsg extends Message {
     public int getMessageSequenceNumber() {
         return messageSequenceNumber;
     }
+
+    public int getViewNumber() {
+        return viewNumber;
+    }
 }
@@ -0,0 +1,44 @@
+package message;
+
+/**
+ * Prepare Range Message: "PREPARE_RANGE:3:120:2"
+ * note that
+ *      "3" denotes the round number
+ *      "120" denotes the first slot, the PREPARE covers it and every slot after it at once (sent by a new leader)
+ *      "2" denotes the view the sender leads, a follower promising the lease to another view does not answer it
+ */
+public class PrepareRangeMsg extends Message {
+
+    private final int roundNumber;
+    private final int fromSlot;
+    private final int viewNumber;
+
+    public PrepareRangeMsg(int roundNumber, int fromSlot, int viewNumber) {
+        this.roundNumber = roundNumber;
+        this.fromSlot = fromSlot;
+        this.viewNumber = viewNumber;
+        this.messageType = MESSAGE_TYPE.PREPARE_RANGE;
+        this.messageLiteral = new String("PREPARE_RANGE:" + roundNumber + ":" + fromSlot + ":" + viewNumber);
+    }
+
+    public String toString() {
+        return this.messageLiteral;
+    }
+
+    public static PrepareRangeMsg fromString(final String messageLiteral) {
+        final String[] subStrArr = messageLiteral.split(":");
+        return new PrepareRangeMsg(Integer.parseInt(subStrArr[1]), Integer.parseInt(subStrArr[2]), Integer.parseInt(subStrArr[3]));
+    }
+
+    public int getRoundNumber() {
+        return roundNumber;
+    }
+
+    public int getFromSlot() {
+        return fromSlot;
+    }
+
+    public int getViewNumber() {
+        return viewNumber;
+    }
+}
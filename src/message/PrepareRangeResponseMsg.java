@@ -0,0 +1,85 @@
+package message;
+
+import util.LogEntry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prepare Range Response Message: "PREPARE_RANGE_RESPONSE:3:2:3:2:121:1:5:Hello125:1:2:Hi"
+ * note that
+ *      "3" denotes the round number of the PREPARE_RANGE it answers
+ *      "2" means the server ID who send out this response message
+ *      "3" is the minimum proposal of the server after the PREPARE_RANGE, above the round number if it is rejected
+ *      "2" is the number of slots from the first slot of the PREPARE_RANGE on that the server has accepted a value in
+ *      each slot is "{slot index}:{accepted proposal}:{length of value}:{value}", the accepted proposal of a chosen
+ *      slot is Integer.MAX_VALUE
+ */
+public class PrepareRangeResponseMsg extends Message {
+
+    private final int roundNumber;
+    private final int responseServerID;
+    private final int minProposal;
+    private final Map<Integer, LogEntry> acceptedEntries;
+
+    /**
+     * @param acceptedEntries the accepted slots in slot order, the key is the slot index
+     */
+    public PrepareRangeResponseMsg(int roundNumber, int responseServerID, int minProposal, Map<Integer, LogEntry> acceptedEntries) {
+        this.roundNumber = roundNumber;
+        this.responseServerID = responseServerID;
+        this.minProposal = minProposal;
+        this.acceptedEntries = acceptedEntries;
+        this.messageType = MESSAGE_TYPE.PREPARE_RANGE_RESPONSE;
+        final StringBuilder builder = new StringBuilder("PREPARE_RANGE_RESPONSE:" + roundNumber + ":" + responseServerID
+                + ":" + minProposal + ":" + acceptedEntries.size() + ":");
+        for (final Map.Entry<Integer, LogEntry> acceptedEntry : acceptedEntries.entrySet()) {
+            final String acceptedValue = acceptedEntry.getValue().getAcceptedValue();
+            builder.append(acceptedEntry.getKey()).append(':')
+                    .append(acceptedEntry.getValue().getAcceptedProposal()).append(':')
+                    .append(acceptedValue.length()).append(':')
+                    .append(acceptedValue);
+        }
+        this.messageLiteral = builder.toString();
+    }
+
+    public String toString() {
+        return this.messageLiteral;
+    }
+
+    public static PrepareRangeResponseMsg fromString(final String messageLiteral) {
+        final String[] headerArr = messageLiteral.split(":", 6);
+        final int numOfEntries = Integer.parseInt(headerArr[4]);
+        final String body = headerArr.length > 5 ? headerArr[5] : "";
+        final Map<Integer, LogEntry> acceptedEntries = new LinkedHashMap<>();
+        int position = 0;
+        for (int i = 0; i < numOfEntries; i++) {
+            final int slotIndexEnd = body.indexOf(':', position);
+            final int proposalEnd = body.indexOf(':', slotIndexEnd + 1);
+            final int lengthEnd = body.indexOf(':', proposalEnd + 1);
+            final int valueEnd = lengthEnd + 1 + Integer.parseInt(body.substring(proposalEnd + 1, lengthEnd));
+            acceptedEntries.put(Integer.parseInt(body.substring(position, slotIndexEnd)), new LogEntry(
+                    Integer.parseInt(body.substring(slotIndexEnd + 1, proposalEnd)),
+                    body.substring(lengthEnd + 1, valueEnd)));
+            position = valueEnd;
+        }
+        return new PrepareRangeResponseMsg(Integer.parseInt(headerArr[1]), Integer.parseInt(headerArr[2]),
+                Integer.parseInt(headerArr[3]), acceptedEntries);
+    }
+
+    public int getRoundNumber() {
+        return roundNumber;
+    }
+
+    public int getResponseServerID() {
+        return responseServerID;
+    }
+
+    public int getMinProposal() {
+        return minProposal;
+    }
+
+    public Map<Integer, LogEntry> getAcceptedEntries() {
+        return acceptedEntries;
+    }
+}
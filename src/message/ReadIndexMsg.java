@@ -0,0 +1,37 @@
+package message;
+
+/**
+ * Read Index Message: "READ_INDEX:17:3"
+ * note that
+ *      "17" is the ID of the request in the follower
+ *      "3" is the server ID of the follower asking for the read index
+ */
+public class ReadIndexMsg extends Message {
+
+    private final int requestID;
+    private final int requestServerID;
+
+    public ReadIndexMsg(int requestID, int requestServerID) {
+        this.requestID = requestID;
+        this.requestServerID = requestServerID;
+        this.messageType = MESSAGE_TYPE.READ_INDEX;
+        this.messageLiteral = new String("READ_INDEX:" + requestID + ":" + requestServerID);
+    }
+
+    public String toString() {
+        return this.messageLiteral;
+    }
+
+    public static ReadIndexMsg fromString(final String messageLiteral) {
+        final String[] subStrArr = messageLiteral.split(":");
+        return new ReadIndexMsg(Integer.parseInt(subStrArr[1]), Integer.parseInt(subStrArr[2]));
+    }
+
+    public int getRequestID() {
+        return requestID;
+    }
+
+    public int getRequestServerID() {
+        return requestServerID;
+    }
+}
@@ -0,0 +1,38 @@
+package message;
+
+/**
+ * Read Index Response Message: "READ_INDEX_RESPONSE:17:120"
+ * note that
+ *      "17" is the ID of the request it answers
+ *      "120" is the read index, every slot the leader has responded to a client for is below it
+ *      ("-1" if the replica is not the leader holding the lease)
+ */
+public class ReadIndexResponseMsg extends Message {
+
+    private final int requestID;
+    private final int readIndex;
+
+    public ReadIndexResponseMsg(int requestID, int readIndex) {
+        this.requestID = requestID;
+        this.readIndex = readIndex;
+        this.messageType = MESSAGE_TYPE.READ_INDEX_RESPONSE;
+        this.messageLiteral = new String("READ_INDEX_RESPONSE:" + requestID + ":" + readIndex);
+    }
+
+    public String toString() {
+        return this.messageLiteral;
+    }
+
+    public static ReadIndexResponseMsg fromString(final String messageLiteral) {
+        final String[] subStrArr = messageLiteral.split(":");
+        return new ReadIndexResponseMsg(Integer.parseInt(subStrArr[1]), Integer.parseInt(subStrArr[2]));
+    }
+
+    public int getRequestID() {
+        return requestID;
+    }
+
+    public int getReadIndex() {
+        return readIndex;
+    }
+}
@@ -7,13 +7,28 @@ package message;
  *      note that
  *          "2" denotes the ID of current leader
  *
- *      ACK Message: "SERVER_TO_CLIENT:ACK"
+ *      ACK Message: "SERVER_TO_CLIENT:ACK:2"
  *      note that
  *          this message indicates that the client find the correct leader
+ *          "2" denotes the ID of the leader who send out this message
  *
- *      Response Message: "SERVER_TO_CLIENT:RESPONSE:23"
+ *      Response Message: "SERVER_TO_CLIENT:RESPONSE:1539876988101:23:7"
  *      note that
+ *          "1539876988101" denotes the ID of the client (or the session of a multiplexing client) the message comes from
  *          "23" denotes the sequence number of the message that send to server before
+ *          "7" denotes the slot index that message is chosen in ("-1" if the server does not know)
+ *
+ *      Range Message: "SERVER_TO_CLIENT:RANGE:120:64:4711"
+ *      note that
+ *          it answers a READ_RANGE message and is followed by "4711" bytes holding "64" lines of the replica log,
+ *          "{slotIndex}:{value}" for the slots from "120" on, so that they can be copied straight from the log file
+ *          "0" entries means that the replica has not executed the slot yet or no longer keeps it
+ *
+ *      Read Response Message: "SERVER_TO_CLIENT:READ_RESPONSE:1539876988101:7:120:Hi there!"
+ *      note that
+ *          "1539876988101" denotes the ID of the client and "7" the ID of the read it answers
+ *          "120" denotes the slot that is read ("-1" if the slot is not executed yet)
+ *          "Hi there!" is the value of that slot, it may contain ':'
  */
 
 public class ServerToClientMsg extends Message {
@@ -22,6 +37,8 @@ public class ServerToClientMsg extends Message {
         NACK,
         ACK,
         RESPONSE,
+        RANGE,
+        READ_RESPONSE,
     }
 
     public static SERVER_TO_CLIENT_TYPE getServerToClientType(final String messageLiteral) {
@@ -33,12 +50,20 @@ public class ServerToClientMsg extends Message {
                 return SERVER_TO_CLIENT_TYPE.ACK;
             case "RESPONSE":
                 return SERVER_TO_CLIENT_TYPE.RESPONSE;
+            case "RANGE":
+                return SERVER_TO_CLIENT_TYPE.RANGE;
+            case "READ_RESPONSE":
+                return SERVER_TO_CLIENT_TYPE.READ_RESPONSE;
             default:
                 throw new IllegalArgumentException("Can not detect message type!");
         }
     }
 
     public static class ServerNackMsg extends Message {
+        // named by a follower that misses its leader: a new leader is about to be elected, so the client asks another
+        // replica rather than the one it believed in
+        public final static int NO_LEADER = -1;
+
         private final int currentLeaderId;
 
         public ServerNackMsg(int currentLeaderId) {
@@ -62,10 +87,12 @@ public class ServerToClientMsg extends Message {
     }
 
     public static class ServerAckMsg extends Message {
+        private final int leaderId;
 
-        public ServerAckMsg() {
+        public ServerAckMsg(int leaderId) {
+            this.leaderId = leaderId;
             this.messageType = MESSAGE_TYPE.SERVER_TO_CLIENT;
-            this.messageLiteral = new String("SERVER_TO_CLIENT:ACK");
+            this.messageLiteral = new String("SERVER_TO_CLIENT:ACK:" + leaderId);
         }
 
         public String toString() {
@@ -73,17 +100,26 @@ public class ServerToClientMsg extends Message {
         }
 
         public static ServerAckMsg fromString(final String messageLiteral) {
-            return new ServerAckMsg();
+            final String[] subStrArr = messageLiteral.split(":");
+            return new ServerAckMsg(Integer.parseInt(subStrArr[2]));
+        }
+
+        public int getLeaderId() {
+            return leaderId;
         }
     }
 
     public static class ServerResponseMsg extends Message {
+        private final long clientID;
         private final int messageSequenceNumber;
+        private final int slotIndex;
 
-        public ServerResponseMsg(int messageSequenceNumber) {
+        public ServerResponseMsg(long clientID, int messageSequenceNumber, int slotIndex) {
+            this.clientID = clientID;
             this.messageSequenceNumber = messageSequenceNumber;
+            this.slotIndex = slotIndex;
             this.messageType = MESSAGE_TYPE.SERVER_TO_CLIENT;
-            this.messageLiteral = new String("SERVER_TO_CLIENT:RESPONSE:" + messageSequenceNumber);
+            this.messageLiteral = new String("SERVER_TO_CLIENT:RESPONSE:" + clientID + ":" + messageSequenceNumber + ":" + slotIndex);
         }
 
         public String toString() {
@@ -92,12 +128,96 @@ public class ServerToClientMsg extends Message {
 
         public static ServerResponseMsg fromString(final String messageLiteral) {
             final String[] subStrArr = messageLiteral.split(":");
-            return new ServerResponseMsg(Integer.parseInt(subStrArr[2]));
+            return new ServerResponseMsg(Long.parseLong(subStrArr[2]), Integer.parseInt(subStrArr[3]), Integer.parseInt(subStrArr[4]));
+        }
+
+        public long getClientID() {
+            return clientID;
         }
 
         public int getMessageSequenceNumber() {
             return messageSequenceNumber;
         }
+
+        public int getSlotIndex() {
+            return slotIndex;
+        }
     }
 
+    public static class ServerRangeMsg extends Message {
+        private final int fromSlot;
+        private final int numOfEntries;
+        private final long numOfBytes;
+
+        public ServerRangeMsg(int fromSlot, int numOfEntries, long numOfBytes) {
+            this.fromSlot = fromSlot;
+            this.numOfEntries = numOfEntries;
+            this.numOfBytes = numOfBytes;
+            this.messageType = MESSAGE_TYPE.SERVER_TO_CLIENT;
+            this.messageLiteral = new String("SERVER_TO_CLIENT:RANGE:" + fromSlot + ":" + numOfEntries + ":" + numOfBytes);
+        }
+
+        public String toString() {
+            return this.messageLiteral;
+        }
+
+        public static ServerRangeMsg fromString(final String messageLiteral) {
+            final String[] subStrArr = messageLiteral.split(":");
+            return new ServerRangeMsg(Integer.parseInt(subStrArr[2]), Integer.parseInt(subStrArr[3]), Long.parseLong(subStrArr[4]));
+        }
+
+        public int getFromSlot() {
+            return fromSlot;
+        }
+
+        public int getNumOfEntries() {
+            return numOfEntries;
+        }
+
+        public long getNumOfBytes() {
+            return numOfBytes;
+        }
+    }
+
+    public static class ServerReadResponseMsg extends Message {
+        private final long clientID;
+        private final int readID;
+        private final int slotIndex;
+        private final String value;
+
+        public ServerReadResponseMsg(long clientID, int readID, int slotIndex, String value) {
+            this.clientID = clientID;
+            this.readID = readID;
+            this.slotIndex = slotIndex;
+            this.value = value;
+            this.messageType = MESSAGE_TYPE.SERVER_TO_CLIENT;
+            this.messageLiteral = new String("SERVER_TO_CLIENT:READ_RESPONSE:" + clientID + ":" + readID + ":" + slotIndex + ":" + value);
+        }
+
+        public String toString() {
+            return this.messageLiteral;
+        }
+
+        public static ServerReadResponseMsg fromString(final String messageLiteral) {
+            final String[] subStrArr = messageLiteral.split(":", 6);
+            return new ServerReadResponseMsg(Long.parseLong(subStrArr[2]), Integer.parseInt(subStrArr[3]),
+                    Integer.parseInt(subStrArr[4]), subStrArr[5]);
+        }
+
+        public long getClientID() {
+            return clientID;
+        }
+
+        public int getReadID() {
+            return readID;
+        }
+
+        public int getSlotIndex() {
+            return slotIndex;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
 }
@@ -0,0 +1,38 @@
+package message;
+
+/**
+ * Take Over Message: "TAKE_OVER:5:1"
+ * note that
+ *      "5" is the view the replicas move to, its leader (5 % number of replicas) takes over right away
+ *      "1" is the server ID of the replica that won the pre-vote for it; if it is the leader of the view the receiver
+ *      is in, that leader hands its leadership over and releases the lease promised to it
+ */
+public class TakeOverMsg extends Message {
+
+    private final int viewNumber;
+    private final int electorServerID;
+
+    public TakeOverMsg(int viewNumber, int electorServerID) {
+        this.viewNumber = viewNumber;
+        this.electorServerID = electorServerID;
+        this.messageType = MESSAGE_TYPE.TAKE_OVER;
+        this.messageLiteral = new String("TAKE_OVER:" + viewNumber + ":" + electorServerID);
+    }
+
+    public String toString() {
+        return this.messageLiteral;
+    }
+
+    public static TakeOverMsg fromString(final String messageLiteral) {
+        final String[] subStrArr = messageLiteral.split(":");
+        return new TakeOverMsg(Integer.parseInt(subStrArr[1]), Integer.parseInt(subStrArr[2]));
+    }
+
+    public int getViewNumber() {
+        return viewNumber;
+    }
+
+    public int getElectorServerID() {
+        return electorServerID;
+    }
+}
@@ -0,0 +1,45 @@
+package message;
+
+/**
+ * Transfer Leadership Message: "TRANSFER_LEADERSHIP:4:7:120"
+ * note that
+ *      "4" is the view number of the leader handing its leadership over
+ *      "7" is the round number of the leader and "120" its first unchosen index, the slots below it accepted in that
+ *      round are chosen (as in a heartbeat); the target has to have chosen every slot below it to take over
+ */
+public class TransferLeadershipMsg extends Message {
+
+    private final int viewNumber;
+    private final int roundNumber;
+    private final int firstUnchosenIndex;
+
+    public TransferLeadershipMsg(int viewNumber, int roundNumber, int firstUnchosenIndex) {
+        this.viewNumber = viewNumber;
+        this.roundNumber = roundNumber;
+        this.firstUnchosenIndex = firstUnchosenIndex;
+        this.messageType = MESSAGE_TYPE.TRANSFER_LEADERSHIP;
+        this.messageLiteral = new String("TRANSFER_LEADERSHIP:" + viewNumber + ":" + roundNumber + ":" + firstUnchosenIndex);
+    }
+
+    public String toString() {
+        return this.messageLiteral;
+    }
+
+    public static TransferLeadershipMsg fromString(final String messageLiteral) {
+        final String[] subStrArr = messageLiteral.split(":");
+        return new TransferLeadershipMsg(Integer.parseInt(subStrArr[1]), Integer.parseInt(subStrArr[2]),
+                Integer.parseInt(subStrArr[3]));
+    }
+
+    public int getViewNumber() {
+        return viewNumber;
+    }
+
+    public int getRoundNumber() {
+        return roundNumber;
+    }
+
+    public int getFirstUnchosenIndex() {
+        return firstUnchosenIndex;
+    }
+}
@@ -0,0 +1,46 @@
+package message;
+
+/**
+ * Transfer Leadership Response Message: "TRANSFER_LEADERSHIP_RESPONSE:4:2:118"
+ * note that
+ *      "4" is the view number of the leader handing its leadership over
+ *      "2" is the server ID of the target who send out this response message
+ *      "118" is the first unchosen index of the target, the leader sends it the chosen slots from there on
+ */
+public class TransferLeadershipResponseMsg extends Message {
+
+    private final int viewNumber;
+    private final int responseServerID;
+    private final int firstUnchosenIndex;
+
+    public TransferLeadershipResponseMsg(int viewNumber, int responseServerID, int firstUnchosenIndex) {
+        this.viewNumber = viewNumber;
+        this.responseServerID = responseServerID;
+        this.firstUnchosenIndex = firstUnchosenIndex;
+        this.messageType = MESSAGE_TYPE.TRANSFER_LEADERSHIP_RESPONSE;
+        this.messageLiteral = new String("TRANSFER_LEADERSHIP_RESPONSE:" + viewNumber + ":" + responseServerID + ":"
+                + firstUnchosenIndex);
+    }
+
+    public String toString() {
+        return this.messageLiteral;
+    }
+
+    public static TransferLeadershipResponseMsg fromString(final String messageLiteral) {
+        final String[] subStrArr = messageLiteral.split(":");
+        return new TransferLeadershipResponseMsg(Integer.parseInt(subStrArr[1]), Integer.parseInt(subStrArr[2]),
+                Integer.parseInt(subStrArr[3]));
+    }
+
+    public int getViewNumber() {
+        return viewNumber;
+    }
+
+    public int getResponseServerID() {
+        return responseServerID;
+    }
+
+    public int getFirstUnchosenIndex() {
+        return firstUnchosenIndex;
+    }
+}
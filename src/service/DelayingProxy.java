@@ -0,0 +1,118 @@
+package service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A proxy in front of a replica for the benchmarks that run the replicas in one process. It forwards what is sent to
+ * the replica after a delay, and what the replica sends back right away, simulating a replica behind a slow link, and
+ * counts the bytes sent to the replica.
+ */
+class DelayingProxy implements Runnable {
+
+    private final int proxyPort;
+    private final int targetPort;
+    private final long delayNanos;
+    private final AtomicLong numOfForwardedBytes;
+
+    DelayingProxy(final int proxyPort, final int targetPort, final int delayMillis) {
+        this.proxyPort = proxyPort;
+        this.targetPort = targetPort;
+        this.delayNanos = delayMillis * 1000000L;
+        this.numOfForwardedBytes = new AtomicLong();
+    }
+
+    /**
+     * @return A proxy listening on the proxy port in a daemon thread
+     */
+    static DelayingProxy start(final int proxyPort, final int targetPort, final int delayMillis) {
+        final DelayingProxy delayingProxy = new DelayingProxy(proxyPort, targetPort, delayMillis);
+        startDaemon(delayingProxy);
+        return delayingProxy;
+    }
+
+    /**
+     * @return The bytes sent to the replica through this proxy so far
+     */
+    long getNumOfForwardedBytes() {
+        return numOfForwardedBytes.get();
+    }
+
+    @Override
+    public void run() {
+        try (ServerSocket serverSocket = new ServerSocket(proxyPort)) {
+            while (true) {
+                final Socket source = serverSocket.accept();
+                final Socket target = new Socket("127.0.0.1", targetPort);
+                source.setTcpNoDelay(true);
+                target.setTcpNoDelay(true);
+                final BlockingQueue<Object[]> delayedChunks = new LinkedBlockingQueue<>();
+                startDaemon(() -> readChunks(source, delayedChunks));
+                startDaemon(() -> writeChunks(target, delayedChunks));
+                startDaemon(() -> copy(target, source));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Proxy on port " + proxyPort + " failed");
+        }
+    }
+
+    private void readChunks(final Socket source, final BlockingQueue<Object[]> delayedChunks) {
+        try {
+            final InputStream inputStream = source.getInputStream();
+            final byte[] buffer = new byte[65536];
+            int length;
+            while ((length = inputStream.read(buffer)) >= 0) {
+                numOfForwardedBytes.addAndGet(length);
+                delayedChunks.put(new Object[]{System.nanoTime() + delayNanos, Arrays.copyOf(buffer, length)});
+            }
+        } catch (IOException | InterruptedException e) {
+            // the connection is closed
+        }
+    }
+
+    private void writeChunks(final Socket target, final BlockingQueue<Object[]> delayedChunks) {
+        try {
+            final OutputStream outputStream = target.getOutputStream();
+            while (true) {
+                final Object[] delayedChunk = delayedChunks.take();
+                final long waitNanos = (Long) delayedChunk[0] - System.nanoTime();
+                if (waitNanos > 0) {
+                    Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+                }
+                outputStream.write((byte[]) delayedChunk[1]);
+                outputStream.flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            // the connection is closed
+        }
+    }
+
+    private void copy(final Socket from, final Socket to) {
+        try {
+            final InputStream inputStream = from.getInputStream();
+            final OutputStream outputStream = to.getOutputStream();
+            final byte[] buffer = new byte[65536];
+            int length;
+            while ((length = inputStream.read(buffer)) >= 0) {
+                outputStream.write(buffer, 0, length);
+                outputStream.flush();
+            }
+        } catch (IOException e) {
+            // the connection is closed
+        }
+    }
+
+    private static void startDaemon(final Runnable runnable) {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
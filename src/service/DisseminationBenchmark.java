@@ -0,0 +1,125 @@
+package service;
+
+import client.PaxosLogClient;
+import util.AddressPortPair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A benchmark of the throughput and the egress of the leader with large payloads, sent to the leader within the chat
+ * messages or disseminated to every replica by the client with the leader ordering their references. It starts 3
+ * replicas in this process on the ports 4557 ~ 4559, replica 0 as the leader, and puts a proxy in front of every follower
+ * that counts the bytes the leader sends it. A client then submits the commands with the given payload size through a
+ * window of 16, and the throughput and the bytes the leader has sent per command are reported once every replica has
+ * executed them. Run it with the payload size in bytes, "disseminate" or "leader", and optionally the number of
+ * commands (by default as many as make 128 MB, but at least 32 and at most 2000):
+ *
+ *      java -Xmx3g -cp out/production/MultiPaxosLog service.DisseminationBenchmark 65536 disseminate > /dev/null
+ *      java -Xmx3g -cp out/production/MultiPaxosLog service.DisseminationBenchmark 1048576 leader > /dev/null
+ *
+ * The result is printed to stderr, since the replicas print every message they receive to stdout.
+ * It writes replica0 ~ replica2 -log in the working directory, as every run of the replicas does.
+ */
+public class DisseminationBenchmark {
+
+    private final static int NUM_OF_TOLERATED_FAILURES = 1;
+    private final static int FIRST_PORT = 4557;
+    private final static int FIRST_PROXY_PORT = 4657;
+    private final static int CLIENT_PORT = 7880;
+    private final static int WINDOW_SIZE = 16;
+    private final static int NUM_OF_WARM_UP_COMMANDS = 20;
+    private final static long NUM_OF_BYTES = 128L << 20;
+    private final static long TIME_OUT_MILLS = 120000;
+
+    public static void main(String[] args) throws Exception {
+        final int payloadSize = args.length > 0 ? Integer.parseInt(args[0]) : 65536;
+        final boolean disseminate = args.length < 2 || args[1].equals("disseminate");
+        final int numOfCommands = args.length > 2 ? Integer.parseInt(args[2])
+                : (int) Math.max(32, Math.min(2000, NUM_OF_BYTES / payloadSize));
+        final int numOfReplicas = NUM_OF_TOLERATED_FAILURES * 2 + 1;
+
+        // the replicas reach the followers through the proxies, the client reaches them directly
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        final List<AddressPortPair> clientReplicasInfo = new ArrayList<>();
+        final List<DelayingProxy> proxies = new ArrayList<>();
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PORT));
+        clientReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PORT));
+        for (int replicaID = 1; replicaID < numOfReplicas; replicaID++) {
+            proxies.add(DelayingProxy.start(FIRST_PROXY_PORT + replicaID, FIRST_PORT + replicaID, 0));
+            allReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PROXY_PORT + replicaID));
+            clientReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PORT + replicaID));
+        }
+        final List<PaxosLogServer> servers = new ArrayList<>();
+        for (int replicaID = 0; replicaID < numOfReplicas; replicaID++) {
+            servers.add(new PaxosLogServer.Builder(replicaID, "127.0.0.1", FIRST_PORT + replicaID, NUM_OF_TOLERATED_FAILURES,
+                    allReplicasInfo).leader(replicaID == 0).build());
+        }
+        // the followers listen before the leader starts
+        for (int replicaID = numOfReplicas - 1; replicaID >= 0; replicaID--) {
+            startDaemon(servers.get(replicaID)::start);
+        }
+        Thread.sleep(1000);
+
+        final PaxosLogClient logClient = new PaxosLogClient.Builder("127.0.0.1", CLIENT_PORT, clientReplicasInfo)
+                .windowSize(WINDOW_SIZE)
+                .disseminationThreshold(disseminate ? 0 : PaxosLogClient.NO_DISSEMINATION)
+                .build();
+        startDaemon(logClient::start);
+        final char[] payload = new char[payloadSize];
+        Arrays.fill(payload, 'x');
+        for (int i = 0; i < NUM_OF_WARM_UP_COMMANDS; i++) {
+            // the sequence number is part of the reference, but distinct payloads keep the comparison fair
+            payload[0] = (char) ('a' + i % 26);
+            logClient.submit(new String(payload)).get();
+        }
+        awaitExecuted(servers, NUM_OF_WARM_UP_COMMANDS - 1);
+
+        final long startBytes = getLeaderEgressBytes(proxies);
+        final long startTime = System.nanoTime();
+        final List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < numOfCommands; i++) {
+            payload[0] = (char) ('a' + i % 26);
+            futures.add(logClient.submit(new String(payload)));
+        }
+        int lastSlot = 0;
+        for (final CompletableFuture<Long> future : futures) {
+            lastSlot = Math.max(lastSlot, future.get().intValue());
+        }
+        final double committedSeconds = (System.nanoTime() - startTime) / 1e9;
+        awaitExecuted(servers, lastSlot);
+        final double executedSeconds = (System.nanoTime() - startTime) / 1e9;
+        final long egressBytes = getLeaderEgressBytes(proxies) - startBytes;
+
+        System.err.printf("%s, %d B payload, %d commands: %.1f commands/s (%.1f MB/s) committed, %.1f commands/s once "
+                        + "every replica has executed them, leader egress %.0f B/command%n",
+                disseminate ? "disseminate" : "leader", payloadSize, numOfCommands, numOfCommands / committedSeconds,
+                numOfCommands * (double) payloadSize / committedSeconds / 1e6, numOfCommands / executedSeconds,
+                egressBytes / (double) numOfCommands);
+        System.exit(0);
+    }
+
+    private static void awaitExecuted(final List<PaxosLogServer> servers, final int slotIndex) throws InterruptedException {
+        for (final PaxosLogServer server : servers) {
+            if (server.getLogEntrySlotManager().awaitExecutedWatermark(slotIndex, TIME_OUT_MILLS) <= slotIndex) {
+                System.err.println("Replica " + server.getServerId() + " has not executed slot " + slotIndex);
+            }
+        }
+    }
+
+    private static long getLeaderEgressBytes(final List<DelayingProxy> proxies) {
+        long numOfBytes = 0;
+        for (final DelayingProxy proxy : proxies) {
+            numOfBytes += proxy.getNumOfForwardedBytes();
+        }
+        return numOfBytes;
+    }
+
+    private static void startDaemon(final Runnable runnable) {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,223 @@
+package service;
+
+import client.PaxosLogClient;
+import client.ReplicaReadClient;
+import util.AddressPortPair;
+import util.FragmentCodec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * A benchmark of the bytes erasure coding (RS-Paxos) saves and what rebuilding the values costs. It starts 5 replicas
+ * in this process on the ports 4757 ~ 4761, replica 0 as the leader, and puts a proxy in front of every follower that
+ * counts the bytes the leader sends it, and another in front of its log read port, which the followers rebuild values
+ * through. "coded" splits every value into 3 data and 2 parity fragments with phase 1 and phase 2 quorums of 4, so that
+ * any two quorums share 3 fragments; "full" replicates the whole values with majorities. A client submits the commands
+ * with the given payload size through a window of 16, then the leader egress and the bytes the replicas have added to
+ * their logs on disk are reported per committed MB, along with the throughput. The cost of rebuilding is reported as the
+ * latency of reading slots from a follower (which rebuilds the value from the other replicas when coded) and from the
+ * leader, and as the CPU time of encoding and decoding (from a parity fragment) per MB. Run it with the payload size in
+ * bytes, "coded" or "full", and optionally the number of commands (by default as many as make 64 MB, but at least 32 and
+ * at most 1000):
+ *
+ *      java -Xmx3g -cp out/production/MultiPaxosLog service.ErasureCodingBenchmark 65536 coded > /dev/null
+ *      java -Xmx3g -cp out/production/MultiPaxosLog service.ErasureCodingBenchmark 65536 full > /dev/null
+ *
+ * The result is printed to stderr, since the replicas print every message they receive to stdout.
+ * It writes replica0 ~ replica4 -log in the working directory, as every run of the replicas does.
+ */
+public class ErasureCodingBenchmark {
+
+    private final static int NUM_OF_TOLERATED_FAILURES = 2;
+    private final static int NUM_OF_DATA_FRAGMENTS = 3;
+    private final static int CODED_QUORUM_SIZE = 4;
+    private final static int FIRST_PORT = 4757;
+    private final static int FIRST_PROXY_PORT = 4857;
+    private final static int CLIENT_PORT = 7890;
+    private final static int WINDOW_SIZE = 16;
+    private final static int NUM_OF_WARM_UP_COMMANDS = 20;
+    private final static int NUM_OF_READS = 50;
+    private final static int NUM_OF_CODEC_ROUNDS = 20;
+    private final static long NUM_OF_BYTES = 64L << 20;
+    private final static long TIME_OUT_MILLS = 120000;
+
+    public static void main(String[] args) throws Exception {
+        final int payloadSize = args.length > 0 ? Integer.parseInt(args[0]) : 65536;
+        final boolean coded = args.length < 2 || args[1].equals("coded");
+        final int numOfCommands = args.length > 2 ? Integer.parseInt(args[2])
+                : (int) Math.max(32, Math.min(1000, NUM_OF_BYTES / payloadSize));
+        final int numOfReplicas = NUM_OF_TOLERATED_FAILURES * 2 + 1;
+        final int quorumSize = coded ? CODED_QUORUM_SIZE : NUM_OF_TOLERATED_FAILURES + 1;
+
+        // the replicas reach the followers through the proxies, the client reaches them directly
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        final List<AddressPortPair> clientReplicasInfo = new ArrayList<>();
+        final List<DelayingProxy> proxies = new ArrayList<>();
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PORT));
+        clientReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PORT));
+        for (int replicaID = 1; replicaID < numOfReplicas; replicaID++) {
+            proxies.add(DelayingProxy.start(FIRST_PROXY_PORT + replicaID, FIRST_PORT + replicaID, 0));
+            DelayingProxy.start(FIRST_PROXY_PORT + replicaID + PaxosLogServer.LOG_READ_PORT_OFFSET,
+                    FIRST_PORT + replicaID + PaxosLogServer.LOG_READ_PORT_OFFSET, 0);
+            allReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PROXY_PORT + replicaID));
+            clientReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PORT + replicaID));
+        }
+        final List<PaxosLogServer> servers = new ArrayList<>();
+        for (int replicaID = 0; replicaID < numOfReplicas; replicaID++) {
+            servers.add(new PaxosLogServer.Builder(replicaID, "127.0.0.1", FIRST_PORT + replicaID, NUM_OF_TOLERATED_FAILURES,
+                    allReplicasInfo)
+                    .leader(replicaID == 0)
+                    .quorumSizes(quorumSize, quorumSize)
+                    .numOfDataFragments(coded ? NUM_OF_DATA_FRAGMENTS : 1)
+                    .build());
+        }
+        // the followers listen before the leader starts
+        for (int replicaID = numOfReplicas - 1; replicaID >= 0; replicaID--) {
+            startDaemon(servers.get(replicaID)::start);
+        }
+        Thread.sleep(1000);
+
+        final PaxosLogClient logClient = new PaxosLogClient.Builder("127.0.0.1", CLIENT_PORT, clientReplicasInfo)
+                .windowSize(WINDOW_SIZE)
+                .build();
+        startDaemon(logClient::start);
+        final char[] payload = new char[payloadSize];
+        Arrays.fill(payload, 'x');
+        for (int i = 0; i < NUM_OF_WARM_UP_COMMANDS; i++) {
+            payload[0] = (char) ('a' + i % 26);
+            logClient.submit(new String(payload)).get();
+        }
+        awaitExecuted(servers, NUM_OF_WARM_UP_COMMANDS - 1);
+
+        final long startBytes = getLeaderEgressBytes(proxies);
+        final long startDiskBytes = getLogDiskBytes(numOfReplicas);
+        final long startTime = System.nanoTime();
+        final List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < numOfCommands; i++) {
+            payload[0] = (char) ('a' + i % 26);
+            futures.add(logClient.submit(new String(payload)));
+        }
+        int firstSlot = Integer.MAX_VALUE;
+        int lastSlot = 0;
+        for (final CompletableFuture<Long> future : futures) {
+            firstSlot = Math.min(firstSlot, future.get().intValue());
+            lastSlot = Math.max(lastSlot, future.get().intValue());
+        }
+        final double seconds = (System.nanoTime() - startTime) / 1e9;
+        awaitExecuted(servers, lastSlot);
+        final double committedMegaBytes = numOfCommands * (double) payloadSize / 1e6;
+        final long egressBytes = getLeaderEgressBytes(proxies) - startBytes;
+        final long diskBytes = getLogDiskBytes(numOfReplicas) - startDiskBytes;
+
+        final double followerReadMillis = measureReads(clientReplicasInfo.get(1), firstSlot, lastSlot, payloadSize);
+        final double leaderReadMillis = measureReads(clientReplicasInfo.get(0), firstSlot, lastSlot, payloadSize);
+
+        System.err.printf("%s, %d B payload, %d commands: %.1f commands/s (%.2f MB/s), leader egress %.2f MB and disk "
+                        + "%.2f MB per committed MB, read from a follower %.2f ms, from the leader %.2f ms%n",
+                coded ? "coded" : "full", payloadSize, numOfCommands, numOfCommands / seconds, committedMegaBytes / seconds,
+                egressBytes / 1e6 / committedMegaBytes, diskBytes / 1e6 / committedMegaBytes, followerReadMillis,
+                leaderReadMillis);
+        if (coded) {
+            measureCodec(new String(payload), numOfReplicas);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * @return The average latency of reading slots between the first and the last one from a replica, in ms
+     */
+    private static double measureReads(final AddressPortPair replicaInfo, final int firstSlot, final int lastSlot,
+                                       final int payloadSize) throws Exception {
+        final ReplicaReadClient readClient = new ReplicaReadClient(replicaInfo.getIp(), replicaInfo.getPort());
+        long totalNanos = 0;
+        for (int i = 0; i < NUM_OF_READS; i++) {
+            final int slotIndex = firstSlot + (int) ((lastSlot - firstSlot) * (long) i / NUM_OF_READS);
+            final long readStartTime = System.nanoTime();
+            final String value = readClient.read(slotIndex, slotIndex).get().getValue();
+            totalNanos += System.nanoTime() - readStartTime;
+            if (value == null || value.length() != payloadSize) {
+                System.err.println("Slot " + slotIndex + " is read wrong from " + replicaInfo.getPort());
+            }
+        }
+        readClient.close();
+        return totalNanos / 1e6 / NUM_OF_READS;
+    }
+
+    /**
+     * Report the CPU time the leader spends encoding a value and a follower decoding it from the fragments of the last
+     * replicas, which include the parity fragments
+     */
+    private static void measureCodec(final String value, final int numOfReplicas) {
+        final FragmentCodec fragmentCodec = new FragmentCodec(NUM_OF_DATA_FRAGMENTS, numOfReplicas);
+        List<String> fragments = fragmentCodec.encode(value);
+        final String digest = FragmentCodec.getDigest(fragments.get(0));
+        final List<String> lastFragments = fragments.subList(numOfReplicas - NUM_OF_DATA_FRAGMENTS, numOfReplicas);
+        FragmentCodec.decode(lastFragments, digest);
+        final long encodeStartTime = System.nanoTime();
+        for (int i = 0; i < NUM_OF_CODEC_ROUNDS; i++) {
+            fragments = fragmentCodec.encode(value);
+        }
+        final double encodeSeconds = (System.nanoTime() - encodeStartTime) / 1e9;
+        final long decodeStartTime = System.nanoTime();
+        for (int i = 0; i < NUM_OF_CODEC_ROUNDS; i++) {
+            if (!value.equals(FragmentCodec.decode(lastFragments, digest))) {
+                System.err.println("The value is decoded wrong");
+            }
+        }
+        final double decodeSeconds = (System.nanoTime() - decodeStartTime) / 1e9;
+        final double megaBytes = NUM_OF_CODEC_ROUNDS * (double) value.length() / 1e6;
+        System.err.printf("encode %.1f ms/MB, decode from fragments %d ~ %d %.1f ms/MB%n", encodeSeconds * 1e3 / megaBytes,
+                numOfReplicas - NUM_OF_DATA_FRAGMENTS, numOfReplicas - 1, decodeSeconds * 1e3 / megaBytes);
+    }
+
+    private static void awaitExecuted(final List<PaxosLogServer> servers, final int slotIndex) throws InterruptedException {
+        for (final PaxosLogServer server : servers) {
+            if (server.getLogEntrySlotManager().awaitExecutedWatermark(slotIndex, TIME_OUT_MILLS) <= slotIndex) {
+                System.err.println("Replica " + server.getServerId() + " has not executed slot " + slotIndex);
+            }
+        }
+    }
+
+    private static long getLeaderEgressBytes(final List<DelayingProxy> proxies) {
+        long numOfBytes = 0;
+        for (final DelayingProxy proxy : proxies) {
+            numOfBytes += proxy.getNumOfForwardedBytes();
+        }
+        return numOfBytes;
+    }
+
+    /**
+     * @return The bytes of the executed logs of all replicas on disk
+     */
+    private static long getLogDiskBytes(final int numOfReplicas) throws IOException {
+        long numOfBytes = 0;
+        for (int replicaID = 0; replicaID < numOfReplicas; replicaID++) {
+            final Path directory = Paths.get("replica" + replicaID + "-log");
+            if (!Files.isDirectory(directory)) {
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (final Path file : (Iterable<Path>) files::iterator) {
+                    if (Files.isRegularFile(file)) {
+                        numOfBytes += Files.size(file);
+                    }
+                }
+            }
+        }
+        return numOfBytes;
+    }
+
+    private static void startDaemon(final Runnable runnable) {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,85 @@
+package service;
+
+import client.PaxosLogClient;
+import util.AddressPortPair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A benchmark of the commit latency with phase 1 and phase 2 quorums of different sizes. It starts 2f + 1 replicas in
+ * this process on the ports 4157 ~, replica 0 as the leader, and puts a proxy in front of every follower that delays
+ * what the other replicas send it: follower i by i ms, and the last follower, the slow replica, by the given delay
+ * (200 ms by default). A client then submits commands one at a time and the latency percentiles are reported. Run it once
+ * per configuration, with f, the phase 1 and the phase 2 quorum size, and optionally the delay of the slow replica:
+ *
+ *      java -cp out/production/MultiPaxosLog service.FlexibleQuorumBenchmark 2 3 3 > /dev/null
+ *      java -cp out/production/MultiPaxosLog service.FlexibleQuorumBenchmark 2 4 2 > /dev/null
+ *
+ * The result is printed to stderr, since the replicas print every message they receive to stdout.
+ */
+public class FlexibleQuorumBenchmark {
+
+    private final static int FIRST_PORT = 4157;
+    private final static int FIRST_PROXY_PORT = 4257;
+    private final static int CLIENT_PORT = 7860;
+    private final static int SLOW_REPLICA_DELAY_MILLS = 200;
+    private final static int NUM_OF_WARM_UP_COMMANDS = 50;
+    private final static int NUM_OF_COMMANDS = 300;
+
+    public static void main(String[] args) throws Exception {
+        final int numOfToleratedFailures = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        final int numOfReplicas = numOfToleratedFailures * 2 + 1;
+        final int phase1QuorumSize = args.length > 1 ? Integer.parseInt(args[1]) : numOfToleratedFailures + 1;
+        final int phase2QuorumSize = args.length > 2 ? Integer.parseInt(args[2]) : numOfToleratedFailures + 1;
+        final int slowReplicaDelayMillis = args.length > 3 ? Integer.parseInt(args[3]) : SLOW_REPLICA_DELAY_MILLS;
+
+        // the replicas reach each other through the proxies, the client reaches them directly
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        final List<AddressPortPair> clientReplicasInfo = new ArrayList<>();
+        for (int replicaID = 0; replicaID < numOfReplicas; replicaID++) {
+            final int delayMillis = replicaID == 0 ? 0 : replicaID == numOfReplicas - 1 ? slowReplicaDelayMillis : replicaID;
+            if (delayMillis == 0) {
+                allReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PORT + replicaID));
+            } else {
+                allReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PROXY_PORT + replicaID));
+                DelayingProxy.start(FIRST_PROXY_PORT + replicaID, FIRST_PORT + replicaID, delayMillis);
+            }
+            clientReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PORT + replicaID));
+        }
+        final List<PaxosLogServer> servers = new ArrayList<>();
+        for (int replicaID = 0; replicaID < numOfReplicas; replicaID++) {
+            servers.add(new PaxosLogServer.Builder(replicaID, "127.0.0.1", FIRST_PORT + replicaID, numOfToleratedFailures,
+                    allReplicasInfo).leader(replicaID == 0).quorumSizes(phase1QuorumSize, phase2QuorumSize).build());
+        }
+        // the followers listen before the leader starts
+        for (int replicaID = numOfReplicas - 1; replicaID >= 0; replicaID--) {
+            startDaemon(servers.get(replicaID)::start);
+        }
+        Thread.sleep(1000);
+
+        final PaxosLogClient logClient = new PaxosLogClient.Builder("127.0.0.1", CLIENT_PORT, clientReplicasInfo).build();
+        startDaemon(logClient::start);
+        for (int i = 0; i < NUM_OF_WARM_UP_COMMANDS; i++) {
+            logClient.submit("warm-up-" + i).get();
+        }
+        final long[] latencyNanos = new long[NUM_OF_COMMANDS];
+        for (int i = 0; i < NUM_OF_COMMANDS; i++) {
+            final long startTime = System.nanoTime();
+            logClient.submit("command-" + i).get();
+            latencyNanos[i] = System.nanoTime() - startTime;
+        }
+        Arrays.sort(latencyNanos);
+        System.err.printf("%d replicas, phase 1 quorum %d, phase 2 quorum %d, slow replica +%d ms: commit p50 %.2f ms, p99 %.2f ms%n",
+                numOfReplicas, phase1QuorumSize, phase2QuorumSize, slowReplicaDelayMillis,
+                latencyNanos[NUM_OF_COMMANDS / 2] / 1e6, latencyNanos[NUM_OF_COMMANDS * 99 / 100] / 1e6);
+        System.exit(0);
+    }
+
+    private static void startDaemon(final Runnable runnable) {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
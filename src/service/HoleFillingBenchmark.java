@@ -0,0 +1,108 @@
+package service;
+
+import util.AddressPortPair;
+import util.WriteAheadLog;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A benchmark of how long a new leader takes to fill the holes of the log. It writes the write-ahead logs of three
+ * replicas whose logs hold the given number of holes: every other slot is chosen, the ones in between are empty, as if
+ * the old leader had got every other command chosen only. It then starts the replicas in this process on the ports
+ * 4057 ~ 4059 with replica 0 as the leader, which fills the holes with no-ops before serving any client, and measures
+ * how long the leader and then every replica take to execute the whole log. For example:
+ *
+ *      java -cp out/production/MultiPaxosLog service.HoleFillingBenchmark 10000 > /dev/null
+ *
+ * The result is printed to stderr, since the replicas print every message they receive to stdout.
+ * It deletes replica0 ~ replica2 -wal, -slots and -log in the working directory before and after the run.
+ */
+public class HoleFillingBenchmark {
+
+    private final static int NUM_OF_REPLICAS = 3;
+    private final static int NUM_OF_HOLES = 10000;
+    private final static int FIRST_PORT = 4057;
+    private final static long TIME_OUT_MILLS = 300000;
+
+    public static void main(String[] args) throws InterruptedException {
+        final int numOfHoles = args.length > 0 ? Integer.parseInt(args[0]) : NUM_OF_HOLES;
+        final int lastSlot = 2 * numOfHoles;
+        cleanUp();
+
+        for (int replicaID = 0; replicaID < NUM_OF_REPLICAS; replicaID++) {
+            final WriteAheadLog writeAheadLog = new WriteAheadLog("replica" + replicaID + "-wal");
+            writeAheadLog.logMinProposal(1);
+            for (int i = 0; i <= lastSlot; i += 2) {
+                writeAheadLog.logAccept(i, 1, WriteAheadLog.NO_CLIENT_ID, 0, "value " + i);
+                writeAheadLog.logChosen(i);
+            }
+            writeAheadLog.close();
+        }
+
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        for (int replicaID = 0; replicaID < NUM_OF_REPLICAS; replicaID++) {
+            allReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PORT + replicaID));
+        }
+        final List<PaxosLogServer> servers = new ArrayList<>();
+        for (int replicaID = 0; replicaID < NUM_OF_REPLICAS; replicaID++) {
+            servers.add(new PaxosLogServer.Builder(replicaID, "127.0.0.1", FIRST_PORT + replicaID, (NUM_OF_REPLICAS - 1) / 2,
+                    allReplicasInfo).leader(replicaID == 0).persistent(true).build());
+        }
+        // the followers listen before the leader starts to recover
+        for (int replicaID = NUM_OF_REPLICAS - 1; replicaID >= 0; replicaID--) {
+            final Thread serverThread = new Thread(servers.get(replicaID)::start);
+            serverThread.setDaemon(true);
+            if (replicaID == 0) {
+                Thread.sleep(1000);
+            }
+            serverThread.start();
+        }
+        final long startTime = System.nanoTime();
+
+        final double leaderSeconds = awaitExecuted(servers.get(0), lastSlot, startTime);
+        double allSeconds = leaderSeconds;
+        for (final PaxosLogServer server : servers) {
+            allSeconds = Math.max(allSeconds, awaitExecuted(server, lastSlot, startTime));
+        }
+        System.err.printf("%d holes below slot %d: the leader executed its log in %.2f s, every replica in %.2f s%n",
+                numOfHoles, lastSlot, leaderSeconds, allSeconds);
+        cleanUp();
+        System.exit(0);
+    }
+
+    /**
+     * @return The seconds from the start until the replica has executed the slot, -1 on time out
+     */
+    private static double awaitExecuted(final PaxosLogServer server, final int slotIndex, final long startTime) throws InterruptedException {
+        if (server.getLogEntrySlotManager().awaitExecutedWatermark(slotIndex, TIME_OUT_MILLS) <= slotIndex) {
+            return -1;
+        }
+        return (System.nanoTime() - startTime) / 1e9;
+    }
+
+    private static void cleanUp() {
+        for (int replicaID = 0; replicaID < NUM_OF_REPLICAS; replicaID++) {
+            for (final String name : new String[]{"replica" + replicaID + "-wal", "replica" + replicaID + "-slots", "replica" + replicaID + "-log"}) {
+                final File directory = new File(name);
+                final List<File> files = new ArrayList<>();
+                collect(directory, files);
+                for (int i = files.size() - 1; i >= 0; i--) {
+                    files.get(i).delete();
+                }
+            }
+        }
+    }
+
+    private static void collect(final File file, final List<File> files) {
+        if (!file.exists()) {
+            return;
+        }
+        files.add(file);
+        final File[] children = file.listFiles();
+        for (final File child : children == null ? new File[0] : children) {
+            collect(child, files);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package service;
+
+import client.LogRangeReader;
+import message.ClientToServerMsg;
+import message.Message;
+import message.ServerToClientMsg;
+import util.AddressPortPair;
+import util.ExecutedEntryCache;
+import util.FragmentCodec;
+import util.LogEntrySlotManager;
+import util.ReplicaLogReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A worker that serves READ_RANGE messages on the log read port of a replica, so that downstream consumers can fetch
+ * the executed entries from any replica instead of tailing its log file. Only slots below the executed watermark are
+ * served.
+ *
+ * Each response is a RANGE line followed by the lines of the log itself. For an uncompressed segment those bytes are
+ * sent with FileChannel.transferTo, so they go from the page cache to the socket without being copied through the
+ * JVM; that is why this port is served by socket channels rather than by the sockets of the replica port. A range
+ * never crosses a segment, the consumer simply asks again from the next slot.
+ *
+ * A connection may instead SUBSCRIBE from a slot, then the replica pushes RANGE messages to it as the slots are
+ * executed, in order and batched (everything executed since the previous push, up to MAX_ENTRIES_PER_PUSH). The flow
+ * is controlled by credits: the subscriber grants a number of entries with SUBSCRIBE and CREDIT messages and nothing is
+ * pushed beyond that, so a slow subscriber is never buffered for. The replica keeps no per-subscriber queue, only the
+ * offset of the subscriber: a subscriber close to the head of the log is served from the ExecutedEntryCache of the
+ * replica, and one that has fallen behind it reads the log from disk like a range read, until it has caught up.
+ *
+ * With erasure coding a follower executes the fragment of a value the leader sends it (see PaxosLogServer), which is
+ * not what a consumer wants. Such a replica rebuilds the values of a range or a push before it sends them: it reads
+ * the same slots from the other replicas, one range per replica, until it holds the value itself (as the leader that
+ * proposed it does) or k fragments of it for every slot. A range ends before the first value that can not be rebuilt
+ * yet. The other replicas are asked for their fragments as they are (see ReadRangeMsg.isFragments), so that they do
+ * not rebuild the values in turn; that is the only read served without rebuilding them.
+ */
+public class LogReadService implements Runnable {
+
+    // the largest batch pushed to a subscriber at once
+    private final static int MAX_ENTRIES_PER_PUSH = 1024;
+    // how long a subscriber waits for new slots before it checks whether it was cancelled
+    private final static long SUBSCRIPTION_POLL_MILLIS = 100;
+
+    private final int port;
+    private final LogEntrySlotManager logEntrySlotManager;
+
+    // with erasure coding, the other replicas the values are rebuilt from; null if every slot holds the value itself
+    private final List<AddressPortPair> otherReplicasInfo;
+
+    public LogReadService(final int port, final LogEntrySlotManager logEntrySlotManager) {
+        this(port, logEntrySlotManager, null);
+    }
+
+    /**
+     * @param otherReplicasInfo with erasure coding, the other replicas of the log, null without
+     */
+    public LogReadService(final int port, final LogEntrySlotManager logEntrySlotManager,
+                          final List<AddressPortPair> otherReplicasInfo) {
+        this.port = port;
+        this.logEntrySlotManager = logEntrySlotManager;
+        this.otherReplicasInfo = otherReplicasInfo;
+    }
+
+    @Override
+    public void run() {
+        try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
+            serverSocketChannel.bind(new InetSocketAddress(port));
+            while (true) {
+                final SocketChannel socketChannel = serverSocketChannel.accept();
+                // a RANGE message is written as a header and a body, which must not wait for each other
+                socketChannel.socket().setTcpNoDelay(true);
+                new Thread(new ReadRangeHandler(socketChannel)).start();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Fail to serve range reads on port:" + port);
+        }
+    }
+
+    /**
+     * A worker for the READ_RANGE (or the SUBSCRIBE and CREDIT) messages of one consumer connection
+     */
+    public class ReadRangeHandler implements Runnable {
+
+        private final SocketChannel socketChannel;
+        private final ReplicaLogReader replicaLogReader;
+
+        // the subscription of the connection and the thread pushing it, null until it subscribes
+        private SubscriptionPusher subscriptionPusher;
+        private Thread subscriptionThread;
+
+        public ReadRangeHandler(final SocketChannel socketChannel) {
+            this.socketChannel = socketChannel;
+            this.replicaLogReader = new ReplicaLogReader(logEntrySlotManager.getReplicaLogDirectory());
+        }
+
+        @Override
+        public void run() {
+            try {
+                final BufferedReader bufferedReader = new BufferedReader(
+                        new InputStreamReader(socketChannel.socket().getInputStream(), StandardCharsets.UTF_8));
+                String line;
+                while ((line = bufferedReader.readLine()) != null) {
+                    if (Message.getMessageType(line) != Message.MESSAGE_TYPE.CLIENT_TO_SERVER) {
+                        throw new IllegalStateException("Log read port only serves CLIENT_TO_SERVER messages!");
+                    }
+                    switch (ClientToServerMsg.getClientToServerType(line)) {
+                        case READ_RANGE:
+                            if (subscriptionPusher != null) {
+                                throw new IllegalStateException("Can not READ_RANGE on a subscribed connection!");
+                            }
+                            serve(ClientToServerMsg.ReadRangeMsg.fromString(line));
+                            break;
+                        case SUBSCRIBE:
+                            if (subscriptionPusher != null) {
+                                throw new IllegalStateException("Connection is already subscribed!");
+                            }
+                            final ClientToServerMsg.SubscribeMsg subscribeMsg = ClientToServerMsg.SubscribeMsg.fromString(line);
+                            subscriptionPusher = new SubscriptionPusher(subscribeMsg.getFromSlot(), subscribeMsg.getCredits());
+                            subscriptionThread = new Thread(subscriptionPusher);
+                            subscriptionThread.start();
+                            break;
+                        case CREDIT:
+                            if (subscriptionPusher == null) {
+                                throw new IllegalStateException("Can not CREDIT before SUBSCRIBE!");
+                            }
+                            subscriptionPusher.grant(ClientToServerMsg.CreditMsg.fromString(line).getCredits());
+                            break;
+                        default:
+                            throw new IllegalStateException("Log read port only serves READ_RANGE, SUBSCRIBE and CREDIT messages!");
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                if (subscriptionThread != null) {
+                    // the pusher uses the log reader, wait for it before closing the reader
+                    subscriptionPusher.cancel();
+                    try {
+                        subscriptionThread.join();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+                replicaLogReader.close();
+                try {
+                    socketChannel.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private void serve(final ClientToServerMsg.ReadRangeMsg readRangeMsg) throws IOException {
+            final int fromSlot = readRangeMsg.getFromSlot();
+            final int maxEntries = Math.min(readRangeMsg.getMaxEntries(), logEntrySlotManager.getExecutedWatermark() - fromSlot);
+            if (fromSlot < 0 || maxEntries <= 0) {
+                writeFully(header(new ServerToClientMsg.ServerRangeMsg(fromSlot, 0, 0)));
+                return;
+            }
+            if (otherReplicasInfo != null && !readRangeMsg.isFragments()) {
+                sendRebuilt(fromSlot, maxEntries);
+                return;
+            }
+            sendFromLog(fromSlot, maxEntries);
+        }
+
+        /**
+         * Send up to maxEntries executed slots from fromSlot on, with the values this replica holds a fragment of
+         * rebuilt from the other replicas
+         *
+         * @return The number of entries sent, which stop before the first value that can not be rebuilt
+         */
+        private int sendRebuilt(final int fromSlot, final int maxEntries) throws IOException {
+            final ExecutedEntryCache executedEntryCache = logEntrySlotManager.getExecutedEntryCache();
+            List<String> values = new ArrayList<>();
+            String value;
+            while (values.size() < maxEntries && (value = executedEntryCache.get(fromSlot + values.size())) != null) {
+                values.add(value);
+            }
+            if (values.isEmpty()) {
+                values = replicaLogReader.readRange(fromSlot, maxEntries);
+            }
+            if (values.isEmpty()) {
+                throw new IllegalStateException("Slot " + fromSlot + " is no longer kept in the log of the replica!");
+            }
+            final int numOfValues = rebuildValues(fromSlot, values);
+            final StringBuilder lines = new StringBuilder();
+            for (int i = 0; i < numOfValues; i++) {
+                lines.append(fromSlot + i).append(':').append(values.get(i)).append('\n');
+            }
+            final byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+            writeFully(header(new ServerToClientMsg.ServerRangeMsg(fromSlot, numOfValues, bytes.length)));
+            writeFully(ByteBuffer.wrap(bytes));
+            return numOfValues;
+        }
+
+        /**
+         * Replace the fragments among the values of the slots from fromSlot on by the values they are fragments of,
+         * read from the other replicas a range at a time
+         *
+         * @return The number of values from the first one on that hold the value itself
+         */
+        private int rebuildValues(final int fromSlot, final List<String> values) {
+            // for executedValues, the key is the offset of a slot holding a fragment here and value is what the
+            // replicas read so far have executed in it
+            final TreeMap<Integer, List<String>> executedValues = new TreeMap<>();
+            for (int i = 0; i < values.size(); i++) {
+                if (FragmentCodec.isFragment(values.get(i))) {
+                    executedValues.put(i, new ArrayList<>(Collections.singletonList(values.get(i))));
+                }
+            }
+            for (final AddressPortPair replicaInfo : otherReplicasInfo) {
+                if (executedValues.isEmpty()) {
+                    break;
+                }
+                final int firstOffset = executedValues.firstKey();
+                final List<String> replicaValues;
+                try {
+                    final LogRangeReader logRangeReader = new LogRangeReader(replicaInfo.getIp(), replicaInfo.getPort());
+                    try {
+                        replicaValues = logRangeReader.readFragments(fromSlot + firstOffset,
+                                executedValues.lastKey() - firstOffset + 1);
+                    } finally {
+                        logRangeReader.close();
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    e.printStackTrace();
+                    System.out.println("Fail to read slot " + (fromSlot + firstOffset) + " from replica at port:"
+                            + replicaInfo.getPort());
+                    continue;
+                }
+                final Iterator<Map.Entry<Integer, List<String>>> iterator = executedValues.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    final Map.Entry<Integer, List<String>> entry = iterator.next();
+                    if (entry.getKey() - firstOffset >= replicaValues.size()) {
+                        break;
+                    }
+                    entry.getValue().add(replicaValues.get(entry.getKey() - firstOffset));
+                    final String value = FragmentCodec.decode(entry.getValue(),
+                            FragmentCodec.getDigest(values.get(entry.getKey())));
+                    if (value != null) {
+                        values.set(entry.getKey(), value);
+                        iterator.remove();
+                    }
+                }
+            }
+            return executedValues.isEmpty() ? values.size() : executedValues.firstKey();
+        }
+
+        /**
+         * Send up to maxEntries executed slots from fromSlot on, read from the log of the replica
+         *
+         * @return The number of entries sent
+         */
+        private int sendFromLog(final int fromSlot, final int maxEntries) throws IOException {
+            final ReplicaLogReader.SegmentRange range = replicaLogReader.locateRange(fromSlot, maxEntries);
+            if (range != null) {
+                writeFully(header(new ServerToClientMsg.ServerRangeMsg(fromSlot, range.getNumOfEntries(), range.getNumOfBytes())));
+                long position = range.getStartOffset();
+                final long endOffset = position + range.getNumOfBytes();
+                while (position < endOffset) {
+                    position += range.getChannel().transferTo(position, endOffset - position, socketChannel);
+                }
+                return range.getNumOfEntries();
+            }
+            // the slots are in a compressed segment (or no longer kept), which can only be sent through a copy
+            final List<String> values = replicaLogReader.readRange(fromSlot, maxEntries);
+            final StringBuilder lines = new StringBuilder();
+            for (int i = 0; i < values.size(); i++) {
+                lines.append(fromSlot + i).append(':').append(values.get(i)).append('\n');
+            }
+            final byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+            writeFully(header(new ServerToClientMsg.ServerRangeMsg(fromSlot, values.size(), bytes.length)));
+            writeFully(ByteBuffer.wrap(bytes));
+            return values.size();
+        }
+
+        /**
+         * Send the executed slots from fromSlot on that are still in the ExecutedEntryCache, up to maxEntries
+         *
+         * @return The number of entries sent, 0 if fromSlot is no longer cached
+         */
+        private int sendFromCache(final int fromSlot, final int maxEntries) throws IOException {
+            final ExecutedEntryCache executedEntryCache = logEntrySlotManager.getExecutedEntryCache();
+            final StringBuilder lines = new StringBuilder();
+            int numOfEntries = 0;
+            String value;
+            while (numOfEntries < maxEntries && (value = executedEntryCache.get(fromSlot + numOfEntries)) != null) {
+                lines.append(fromSlot + numOfEntries).append(':').append(value).append('\n');
+                numOfEntries += 1;
+            }
+            if (numOfEntries == 0) {
+                return 0;
+            }
+            final byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+            final ByteBuffer header = header(new ServerToClientMsg.ServerRangeMsg(fromSlot, numOfEntries, bytes.length));
+            final ByteBuffer buffer = ByteBuffer.allocate(header.remaining() + bytes.length);
+            buffer.put(header).put(bytes).flip();
+            writeFully(buffer);
+            return numOfEntries;
+        }
+
+        private ByteBuffer header(final ServerToClientMsg.ServerRangeMsg rangeMsg) {
+            return ByteBuffer.wrap((rangeMsg.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void writeFully(final ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                socketChannel.write(buffer);
+            }
+        }
+
+        /**
+         * A worker pushing the executed slots to the subscriber of the connection, from its offset on and within the
+         * credits it has granted
+         */
+        private class SubscriptionPusher implements Runnable {
+
+            private int nextSlot;   // the offset of the subscriber, the next slot to push
+            private int credits;    // guarded by this
+            private volatile boolean cancelled;
+
+            SubscriptionPusher(final int fromSlot, final int credits) {
+                this.nextSlot = Math.max(0, fromSlot);
+                this.credits = credits;
+                this.cancelled = false;
+            }
+
+            synchronized void grant(final int credits) {
+                this.credits += credits;
+                notifyAll();
+            }
+
+            synchronized void cancel() {
+                cancelled = true;
+                notifyAll();
+            }
+
+            private synchronized int awaitCredits() throws InterruptedException {
+                while (credits <= 0 && !cancelled) {
+                    wait();
+                }
+                return credits;
+            }
+
+            private synchronized void consumeCredits(final int numOfEntries) {
+                credits -= numOfEntries;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    while (!cancelled) {
+                        final int availableCredits = awaitCredits();
+                        final int executedWatermark = logEntrySlotManager.awaitExecutedWatermark(nextSlot, SUBSCRIPTION_POLL_MILLIS);
+                        final int maxEntries = Math.min(Math.min(availableCredits, MAX_ENTRIES_PER_PUSH), executedWatermark - nextSlot);
+                        if (cancelled || maxEntries <= 0) {
+                            continue;
+                        }
+                        int numOfSentEntries;
+                        if (otherReplicasInfo != null) {
+                            numOfSentEntries = sendRebuilt(nextSlot, maxEntries);
+                            if (numOfSentEntries == 0) {
+                                // the other replicas can not rebuild the next value yet, e.g. as they are behind
+                                Thread.sleep(SUBSCRIPTION_POLL_MILLIS);
+                                continue;
+                            }
+                        } else {
+                            numOfSentEntries = sendFromCache(nextSlot, maxEntries);
+                            if (numOfSentEntries == 0) {
+                                // the subscriber has fallen behind the cache
+                                numOfSentEntries = sendFromLog(nextSlot, maxEntries);
+                            }
+                            if (numOfSentEntries == 0) {
+                                throw new IllegalStateException("Slot " + nextSlot + " is no longer kept in the log of the replica!");
+                            }
+                        }
+                        nextSlot += numOfSentEntries;
+                        consumeCredits(numOfSentEntries);
+                    }
+                } catch (Exception e) {
+                    if (!cancelled) {
+                        e.printStackTrace();
+                        System.out.println("Subscription ends at slot:" + nextSlot);
+                        try {
+                            // so that the subscriber notices, and the handler stops reading its credits
+                            socketChannel.close();
+                        } catch (IOException closeException) {
+                            closeException.printStackTrace();
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package service;
+
+import client.MultiplexPaxosLogClient;
+import util.AddressPortPair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A benchmark of ordering with a leader per replica (Mencius, see MenciusHost) against a single leader. It starts 3
+ * replicas in this process, each a MenciusHost on the ports 5257 ~ 5259 (plus PaxosGroupHost.GROUP_PORT_STRIDE per
+ * group), and a client at every replica with a window of commands: once a command of the client is delivered in the
+ * total order at its replica, the next one is submitted. "mencius" has every client propose through its own replica,
+ * "single" has them all propose through replica 0. The windows are balanced (16 at every replica) or skewed (36 at
+ * replica 0 and 6 at the others). After a warm-up, the commands delivered at replica 0 within the measuring period are
+ * reported per second, along with the latency from submitting a command to its delivery at its replica and the number
+ * of skips. Run it with the mode and the distribution, and optionally the measuring period in seconds:
+ *
+ *      java -Xmx3g -cp out/production/MultiPaxosLog service.MenciusBenchmark mencius balanced > /dev/null
+ *      java -Xmx3g -cp out/production/MultiPaxosLog service.MenciusBenchmark single skewed > /dev/null
+ *
+ * The result is printed to stderr, since the replicas print every message they receive to stdout.
+ * It writes replica0 ~ replica2 -log (and -group{g}-log for the other groups) in the working directory.
+ */
+public class MenciusBenchmark {
+
+    private final static int NUM_OF_TOLERATED_FAILURES = 1;
+    private final static int FIRST_PORT = 5257;
+    private final static int[] BALANCED_WINDOWS = {16, 16, 16};
+    private final static int[] SKEWED_WINDOWS = {36, 6, 6};
+    private final static int MEASURING_SECONDS = 10;
+    private final static int WARM_UP_SECONDS = 3;
+
+    private static volatile boolean running = true;
+    private static volatile boolean measuring = false;
+
+    public static void main(String[] args) throws Exception {
+        final boolean multiLeader = args.length < 1 || args[0].equals("mencius");
+        final boolean skewed = args.length > 1 && args[1].equals("skewed");
+        final int measuringSeconds = args.length > 2 ? Integer.parseInt(args[2]) : MEASURING_SECONDS;
+        final int numOfReplicas = NUM_OF_TOLERATED_FAILURES * 2 + 1;
+        final int[] windows = skewed ? SKEWED_WINDOWS : BALANCED_WINDOWS;
+
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        for (int replicaID = 0; replicaID < numOfReplicas; replicaID++) {
+            allReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PORT + replicaID));
+        }
+        // the submit time of every command in flight, and the latencies of the commands delivered while measuring
+        final Map<String, Long> submitTimeStamps = new ConcurrentHashMap<>();
+        final List<Long> latencyNanos = new ArrayList<>();
+        final AtomicLong numOfDeliveredCommands = new AtomicLong();
+        final AtomicLong nextCommandID = new AtomicLong();
+        final List<MultiplexPaxosLogClient> clients = new ArrayList<>();
+        final List<MultiplexPaxosLogClient.Session> sessions = new ArrayList<>();
+        for (int replicaID = 0; replicaID < numOfReplicas; replicaID++) {
+            final MultiplexPaxosLogClient client = new MultiplexPaxosLogClient(
+                    MenciusHost.getOwnerReplicasInfo(allReplicasInfo, multiLeader ? replicaID : 0), 0.0);
+            clients.add(client);
+            sessions.add(client.openSession());
+        }
+        final List<MenciusHost> hosts = new ArrayList<>();
+        for (int replicaID = 0; replicaID < numOfReplicas; replicaID++) {
+            final int hostID = replicaID;
+            final String clientPrefix = "c" + replicaID + "-";
+            hosts.add(new MenciusHost(replicaID, "127.0.0.1", NUM_OF_TOLERATED_FAILURES, allReplicasInfo, multiLeader,
+                    0.0, (position, value) -> {
+                        if (hostID == 0) {
+                            numOfDeliveredCommands.incrementAndGet();
+                        }
+                        // a client is told its command is done by its own replica
+                        if (!value.startsWith(clientPrefix)) {
+                            return;
+                        }
+                        final Long submitTimeStamp = submitTimeStamps.remove(value);
+                        if (submitTimeStamp == null) {
+                            return;
+                        }
+                        if (measuring) {
+                            synchronized (latencyNanos) {
+                                latencyNanos.add(System.nanoTime() - submitTimeStamp);
+                            }
+                        }
+                        submitNext(sessions.get(hostID), clientPrefix, nextCommandID, submitTimeStamps);
+                    }));
+        }
+        for (int replicaID = numOfReplicas - 1; replicaID >= 0; replicaID--) {
+            hosts.get(replicaID).start();
+        }
+        Thread.sleep(2000);
+
+        for (final MultiplexPaxosLogClient client : clients) {
+            client.start();
+        }
+        for (int replicaID = 0; replicaID < numOfReplicas; replicaID++) {
+            for (int i = 0; i < windows[replicaID]; i++) {
+                submitNext(sessions.get(replicaID), "c" + replicaID + "-", nextCommandID, submitTimeStamps);
+            }
+        }
+        Thread.sleep(WARM_UP_SECONDS * 1000L);
+        final long startCommands = numOfDeliveredCommands.get();
+        long startSkips = 0;
+        for (final MenciusHost host : hosts) {
+            startSkips += host.getNumOfSkips();
+        }
+        final long startTime = System.nanoTime();
+        measuring = true;
+        Thread.sleep(measuringSeconds * 1000L);
+        measuring = false;
+        final long deliveredCommands = numOfDeliveredCommands.get() - startCommands;
+        final double seconds = (System.nanoTime() - startTime) / 1e9;
+        long numOfSkips = -startSkips;
+        for (final MenciusHost host : hosts) {
+            numOfSkips += host.getNumOfSkips();
+        }
+        running = false;
+
+        final long[] sortedLatencyNanos;
+        synchronized (latencyNanos) {
+            sortedLatencyNanos = latencyNanos.stream().mapToLong(Long::longValue).toArray();
+        }
+        Arrays.sort(sortedLatencyNanos);
+        System.err.printf("%s, %s windows %s: %.1f commands/s delivered, latency mean %.2f ms p50 %.2f ms p99 %.2f ms, "
+                        + "%.1f skips/s%n",
+                multiLeader ? "mencius" : "single leader", skewed ? "skewed" : "balanced", Arrays.toString(windows),
+                deliveredCommands / seconds, Arrays.stream(sortedLatencyNanos).average().orElse(0) / 1e6,
+                getPercentile(sortedLatencyNanos, 0.5) / 1e6, getPercentile(sortedLatencyNanos, 0.99) / 1e6,
+                numOfSkips / seconds);
+        System.exit(0);
+    }
+
+    /**
+     * Submit the next command of a client, with a literal that tells the client it comes from
+     */
+    private static void submitNext(final MultiplexPaxosLogClient.Session session, final String clientPrefix,
+                                   final AtomicLong nextCommandID, final Map<String, Long> submitTimeStamps) {
+        if (!running) {
+            return;
+        }
+        final String literal = clientPrefix + nextCommandID.getAndIncrement();
+        submitTimeStamps.put(literal, System.nanoTime());
+        session.submit(literal);
+    }
+
+    private static long getPercentile(final long[] sortedValues, final double percentile) {
+        if (sortedValues.length == 0) {
+            return 0;
+        }
+        return sortedValues[Math.min(sortedValues.length - 1, (int) Math.ceil(percentile * sortedValues.length) - 1)];
+    }
+}
@@ -0,0 +1,332 @@
+package service;
+
+import client.MultiplexPaxosLogClient;
+import util.AddressPortPair;
+import util.LogEntrySlotManager;
+import util.ReplicaLogReader;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs a replica of a log with a leader per replica rather than a single one, in the manner of Mencius: replica r owns
+ * Paxos group r of a PaxosGroupHost (which it leads from the start, see PaxosGroupHost) and proposes the commands of
+ * its own clients there, so that the work of proposing and the bandwidth of the ACCEPT messages are spread over all
+ * replicas. The groups are merged into a single total order, the same on every replica, which is delivered to the
+ * DeliveryListener of the host.
+ *
+ * Every entry of a group gets a logical index: a command the index after the previous entry of its group, and the
+ * commands of all groups are ordered by (logical index, group). A command is delivered once every other group has an
+ * executed entry at its logical index or beyond (at the index before it suffices for a group ordered after it), since
+ * every later command of that group gets a higher index. An owner whose clients are idle would hold up the others, so
+ * once it sees a command of another group it can not be ordered before, it proposes "|SKIP|{logical index}" in its own
+ * group: an entry that takes its group to that index without a command, like the no-op of a Mencius owner that skips
+ * its slots. A skip covers every slot up to the highest index of the other groups at once, and an owner has one skip
+ * in flight at a time. The no-op a new leader fills a hole with (executed as an empty entry) takes no index. The
+ * prefix of a skip is reserved in every group (see PaxosLogServer.reservePrefix), so that only the skip sessions of
+ * the hosts can order one.
+ *
+ * A failed owner is replaced like any leader of its group (the failure detector of the group elects another replica),
+ * which then proposes the skips of the group, rather than by revoking its slots.
+ */
+public class MenciusHost {
+
+    // the prefix of a skip, like the no-op literal of the leader it is reserved for the log: a client other than the
+    // skip session of a host can not order a literal starting with it
+    public final static String SKIP_PREFIX = "|SKIP|";
+
+    // how long the orderer waits for the groups to execute more entries once it has merged what they have
+    private final static long ORDER_POLL_MILLIS = 1;
+
+    /**
+     * Receives the commands of the total order, one at a time and in order, on the thread of the orderer
+     */
+    public interface DeliveryListener {
+        void deliver(long position, String value);
+    }
+
+    private final int serverId;
+    private final PaxosGroupHost groupHost;
+    private final List<AddressPortPair> allReplicasInfo;
+    private final double messageLossRate;
+    private final DeliveryListener deliveryListener;
+
+    // for skipSessions, the key is the group and value is the session this host proposes the skips of the group with
+    private final Map<Integer, MultiplexPaxosLogClient.Session> skipSessions;
+    // the groups this host has a skip in flight for
+    private final Set<Integer> inFlightSkips;
+    private volatile long numOfSkips;
+
+    /**
+     * @param multiLeader whether every replica owns a group, otherwise replica 0 orders every command in the only group
+     *                    like a single leader
+     */
+    public MenciusHost(
+            final int serverId,
+            final String serverAddr,
+            final int numOfToleratedFailures,
+            final List<AddressPortPair> allReplicasInfo,
+            final boolean multiLeader,
+            final double messageLossRate,
+            final DeliveryListener deliveryListener) {
+        this.serverId = serverId;
+        this.groupHost = new PaxosGroupHost(serverId, serverAddr, numOfToleratedFailures, allReplicasInfo,
+                multiLeader ? allReplicasInfo.size() : 1, messageLossRate);
+        this.allReplicasInfo = allReplicasInfo;
+        this.messageLossRate = messageLossRate;
+        this.deliveryListener = deliveryListener;
+        this.skipSessions = new ConcurrentHashMap<>();
+        this.inFlightSkips = ConcurrentHashMap.newKeySet();
+        this.numOfSkips = 0;
+        for (final PaxosLogServer group : groupHost.getGroups()) {
+            group.reservePrefix(SKIP_PREFIX);
+        }
+    }
+
+    /**
+     * Entrance of the host, the groups and the orderer run in threads of their own
+     */
+    public void start() {
+        groupHost.start();
+        new Thread(new Orderer()).start();
+    }
+
+    public int getServerId() {
+        return serverId;
+    }
+
+    /**
+     * @return The number of groups, each owned by the replica with the same ID
+     */
+    public int getNumOfOwners() {
+        return groupHost.getNumOfGroups();
+    }
+
+    /**
+     * @return The number of skips this host has proposed
+     */
+    public long getNumOfSkips() {
+        return numOfSkips;
+    }
+
+    /**
+     * @return The address and port of every replica of the group an owner proposes the commands of its clients in
+     */
+    public static List<AddressPortPair> getOwnerReplicasInfo(final List<AddressPortPair> allReplicasInfo, final int ownerId) {
+        return PaxosGroupHost.getGroupReplicasInfo(allReplicasInfo, ownerId);
+    }
+
+    /**
+     * Propose a skip to the logical index in a group this host leads
+     *
+     * @return Whether it is proposed, which it is not while an earlier skip of the group is in flight
+     */
+    private boolean proposeSkip(final int groupId, final long logicalIndex) {
+        if (!inFlightSkips.add(groupId)) {
+            return false;
+        }
+        final MultiplexPaxosLogClient.Session skipSession = skipSessions.computeIfAbsent(groupId, key -> {
+            final MultiplexPaxosLogClient skipClient = new MultiplexPaxosLogClient(
+                    PaxosGroupHost.getGroupReplicasInfo(allReplicasInfo, groupId), messageLossRate);
+            skipClient.start();
+            final MultiplexPaxosLogClient.Session session = skipClient.openSession();
+            groupHost.getGroup(groupId).allowReservedPrefix(SKIP_PREFIX, session.getSessionId());
+            return session;
+        });
+        numOfSkips += 1;
+        skipSession.submit(SKIP_PREFIX + logicalIndex).thenRun(() -> inFlightSkips.remove(groupId));
+        return true;
+    }
+
+    /**
+     * A command of a group and its logical index
+     */
+    private static class OrderedCommand {
+
+        private final long logicalIndex;
+        private final String value;
+
+        OrderedCommand(final long logicalIndex, final String value) {
+            this.logicalIndex = logicalIndex;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A worker that merges the entries the groups of this host execute into the total order, and proposes the skips of
+     * the groups this host leads
+     */
+    public class Orderer implements Runnable {
+
+        private final int numOfGroups;
+        // the logical index of the latest executed entry of every group
+        private final long[] logicalIndexes;
+        // the next slot of every group to merge
+        private final int[] nextSlots;
+        // the commands of every group that are merged but not delivered yet
+        private final List<Deque<OrderedCommand>> pendingCommands;
+        // the logical index of the latest skip this host has proposed in every group
+        private final long[] skippedLogicalIndexes;
+        // the logs of the groups, for the entries no longer in the cache of executed entries
+        private final ReplicaLogReader[] replicaLogReaders;
+        private long nextPosition;
+
+        public Orderer() {
+            this.numOfGroups = groupHost.getNumOfGroups();
+            this.logicalIndexes = new long[numOfGroups];
+            this.nextSlots = new int[numOfGroups];
+            this.pendingCommands = new ArrayList<>(numOfGroups);
+            for (int groupId = 0; groupId < numOfGroups; groupId++) {
+                pendingCommands.add(new ArrayDeque<>());
+            }
+            this.skippedLogicalIndexes = new long[numOfGroups];
+            this.replicaLogReaders = new ReplicaLogReader[numOfGroups];
+            this.nextPosition = 0;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                boolean merged = false;
+                for (int groupId = 0; groupId < numOfGroups; groupId++) {
+                    merged |= mergeExecutedEntries(groupId);
+                }
+                if (merged) {
+                    deliverCommands();
+                }
+                // a host that has taken over the group of a failed owner proposes its skips from then on
+                proposeSkips();
+                if (merged) {
+                    continue;
+                }
+                try {
+                    Thread.sleep(ORDER_POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        /**
+         * @return Whether any entry of the group is merged
+         */
+        private boolean mergeExecutedEntries(final int groupId) {
+            final LogEntrySlotManager logEntrySlotManager = groupHost.getGroup(groupId).getLogEntrySlotManager();
+            final int executedWatermark = logEntrySlotManager.getExecutedWatermark();
+            final int firstSlot = nextSlots[groupId];
+            while (nextSlots[groupId] < executedWatermark) {
+                // the groups run without erasure coding (see PaxosGroupHost) and no client may order a literal starting
+                // like a fragment (see PaxosLogServer.isAdmissible), so every executed entry holds a value itself
+                String value = logEntrySlotManager.getExecutedEntryCache().get(nextSlots[groupId]);
+                if (value == null) {
+                    if (replicaLogReaders[groupId] == null) {
+                        replicaLogReaders[groupId] = new ReplicaLogReader(logEntrySlotManager.getReplicaLogDirectory());
+                    }
+                    value = replicaLogReaders[groupId].read(nextSlots[groupId]);
+                    if (value == null) {
+                        System.out.println("Slot " + nextSlots[groupId] + " of group " + groupId + " can not be read");
+                        break;
+                    }
+                }
+                final long skippedLogicalIndex = getSkippedLogicalIndex(value);
+                if (skippedLogicalIndex >= 0) {
+                    logicalIndexes[groupId] = Math.max(logicalIndexes[groupId], skippedLogicalIndex);
+                } else if (!value.isEmpty()) {
+                    logicalIndexes[groupId] += 1;
+                    pendingCommands.get(groupId).add(new OrderedCommand(logicalIndexes[groupId], value));
+                }
+                nextSlots[groupId] += 1;
+            }
+            return nextSlots[groupId] > firstSlot;
+        }
+
+        /**
+         * @return The logical index a skip takes its group to, -1 if the value is not a skip. Only the skip sessions of
+         * the hosts order a literal starting with SKIP_PREFIX, but a malformed one is taken for a command rather than
+         * stopping the orderer, the same on every replica.
+         */
+        private long getSkippedLogicalIndex(final String value) {
+            if (!value.startsWith(SKIP_PREFIX)) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(value.substring(SKIP_PREFIX.length()));
+            } catch (NumberFormatException e) {
+                System.out.println("Malformed skip " + value + " is taken for a command");
+                return -1;
+            }
+        }
+
+        /**
+         * Deliver the pending commands in the order of (logical index, group) as long as the first one can not be
+         * preceded by a later entry of any group
+         */
+        private void deliverCommands() {
+            while (true) {
+                int firstGroupId = -1;
+                for (int groupId = 0; groupId < numOfGroups; groupId++) {
+                    final OrderedCommand command = pendingCommands.get(groupId).peek();
+                    if (command != null && (firstGroupId < 0
+                            || command.logicalIndex < pendingCommands.get(firstGroupId).peek().logicalIndex)) {
+                        firstGroupId = groupId;
+                    }
+                }
+                if (firstGroupId < 0 || getBlockingGroup(firstGroupId) >= 0) {
+                    return;
+                }
+                final OrderedCommand command = pendingCommands.get(firstGroupId).poll();
+                deliveryListener.deliver(nextPosition, command.value);
+                nextPosition += 1;
+            }
+        }
+
+        /**
+         * @return A group a later entry of which may still be ordered before the first pending command of the group,
+         * -1 if there is none
+         */
+        private int getBlockingGroup(final int groupId) {
+            final long logicalIndex = pendingCommands.get(groupId).peek().logicalIndex;
+            for (int otherGroupId = 0; otherGroupId < numOfGroups; otherGroupId++) {
+                if (otherGroupId == groupId || logicalIndexes[otherGroupId] >= logicalIndex
+                        || (logicalIndexes[otherGroupId] == logicalIndex - 1 && groupId < otherGroupId)) {
+                    continue;
+                }
+                return otherGroupId;
+            }
+            return -1;
+        }
+
+        /**
+         * Skip the groups this host leads that hold up a pending command of another group to the highest logical index
+         * of the other groups
+         */
+        private void proposeSkips() {
+            for (int groupId = 0; groupId < numOfGroups; groupId++) {
+                final Deque<OrderedCommand> commands = pendingCommands.get(groupId);
+                if (commands.isEmpty()) {
+                    continue;
+                }
+                final int blockingGroupId = getBlockingGroup(groupId);
+                if (blockingGroupId < 0 || !groupHost.getGroup(blockingGroupId).isLeader()) {
+                    continue;
+                }
+                long highestLogicalIndex = 0;
+                for (int otherGroupId = 0; otherGroupId < numOfGroups; otherGroupId++) {
+                    if (otherGroupId != blockingGroupId) {
+                        highestLogicalIndex = Math.max(highestLogicalIndex, logicalIndexes[otherGroupId]);
+                    }
+                }
+                // a skip proposed before that has not been merged yet covers as much
+                if (highestLogicalIndex > skippedLogicalIndexes[blockingGroupId]
+                        && proposeSkip(blockingGroupId, highestLogicalIndex)) {
+                    skippedLogicalIndexes[blockingGroupId] = highestLogicalIndex;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package service;
+
+import client.ShardedPaxosLogClient;
+import util.AddressPortPair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A benchmark of the aggregate throughput of many Paxos groups on one host. It starts 3 replicas in this process, each
+ * a PaxosGroupHost running the given number of groups on the ports 5057 ~ 5059 plus PaxosGroupHost.GROUP_PORT_STRIDE
+ * per group, so the leaders of the groups are spread over the replicas. A ShardedPaxosLogClient routes the commands by
+ * their partition keys, and every group is kept busy with a window of commands of its keys: once a command is
+ * committed, the next one of the group is submitted. After a warm-up, the commands committed within the measuring
+ * period are reported per second, for all groups and per group. Run it with the number of groups, and optionally the
+ * measuring period in seconds and the window of every group:
+ *
+ *      java -Xmx3g -cp out/production/MultiPaxosLog service.MultiGroupBenchmark 1 > /dev/null
+ *      java -Xmx3g -cp out/production/MultiPaxosLog service.MultiGroupBenchmark 16 > /dev/null
+ *
+ * The result is printed to stderr, since the replicas print every message they receive to stdout.
+ * It writes replica0 ~ replica2 -log (and -group{g}-log for the other groups) in the working directory.
+ */
+public class MultiGroupBenchmark {
+
+    private final static int NUM_OF_TOLERATED_FAILURES = 1;
+    private final static int FIRST_PORT = 5057;
+    private final static int WINDOW_SIZE = 16;
+    private final static int MEASURING_SECONDS = 10;
+    private final static int WARM_UP_SECONDS = 3;
+    private final static int NUM_OF_KEYS_PER_GROUP = 16;
+
+    private static volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        final int numOfGroups = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final int measuringSeconds = args.length > 1 ? Integer.parseInt(args[1]) : MEASURING_SECONDS;
+        final int windowSize = args.length > 2 ? Integer.parseInt(args[2]) : WINDOW_SIZE;
+        final int numOfReplicas = NUM_OF_TOLERATED_FAILURES * 2 + 1;
+
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        for (int replicaID = 0; replicaID < numOfReplicas; replicaID++) {
+            allReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PORT + replicaID));
+        }
+        for (int replicaID = numOfReplicas - 1; replicaID >= 0; replicaID--) {
+            new PaxosGroupHost(replicaID, "127.0.0.1", NUM_OF_TOLERATED_FAILURES, allReplicasInfo, numOfGroups, 0.0).start();
+        }
+        Thread.sleep(2000);
+
+        final ShardedPaxosLogClient logClient = new ShardedPaxosLogClient(allReplicasInfo, numOfGroups, 0.0);
+        logClient.start();
+        // the partition keys of every group
+        final List<List<String>> groupKeys = new ArrayList<>();
+        for (int groupId = 0; groupId < numOfGroups; groupId++) {
+            groupKeys.add(new ArrayList<>());
+        }
+        for (int i = 0; groupKeys.stream().anyMatch(keys -> keys.size() < NUM_OF_KEYS_PER_GROUP); i++) {
+            final String key = "key-" + i;
+            final List<String> keys = groupKeys.get(logClient.getGroupOf(key));
+            if (keys.size() < NUM_OF_KEYS_PER_GROUP) {
+                keys.add(key);
+            }
+        }
+
+        final AtomicLong numOfCommittedCommands = new AtomicLong();
+        for (int groupId = 0; groupId < numOfGroups; groupId++) {
+            for (int i = 0; i < windowSize; i++) {
+                submitNext(logClient, groupKeys.get(groupId), new Random(groupId * windowSize + i), numOfCommittedCommands);
+            }
+        }
+        Thread.sleep(WARM_UP_SECONDS * 1000L);
+        final long startCommands = numOfCommittedCommands.get();
+        final long startTime = System.nanoTime();
+        Thread.sleep(measuringSeconds * 1000L);
+        final long committedCommands = numOfCommittedCommands.get() - startCommands;
+        final double seconds = (System.nanoTime() - startTime) / 1e9;
+        running = false;
+
+        System.err.printf("%d groups, window %d per group: %.1f commands/s in total, %.1f commands/s per group, %d threads%n",
+                numOfGroups, windowSize, committedCommands / seconds, committedCommands / seconds / numOfGroups,
+                Thread.activeCount());
+        System.exit(0);
+    }
+
+    /**
+     * Submit a command of a random key of the group, and the next one once it is committed
+     */
+    private static void submitNext(final ShardedPaxosLogClient logClient, final List<String> keys, final Random random,
+                                   final AtomicLong numOfCommittedCommands) {
+        if (!running) {
+            return;
+        }
+        final String key = keys.get(random.nextInt(keys.size()));
+        logClient.submit(key, key + "-" + random.nextInt()).thenRun(() -> {
+            numOfCommittedCommands.incrementAndGet();
+            submitNext(logClient, keys, random, numOfCommittedCommands);
+        });
+    }
+}
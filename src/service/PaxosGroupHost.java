@@ -0,0 +1,130 @@
+package service;
+
+import util.AddressPortPair;
+import util.LogEntryStoreFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Timer;
+
+/**
+ * Runs one replica of numOfGroups independent Paxos groups in this process, e.g. one log per partition of a keyspace,
+ * so that a host with many cores runs a consensus thread, a view and a leader per group rather than one log for all.
+ * A command belongs to the group of its partition key (see getGroupOf and client.ShardedPaxosLogClient).
+ *
+ * Group g of replica r listens on the port of replica r plus g * GROUP_PORT_STRIDE (see getGroupReplicasInfo), keeps
+ * its files apart from the other groups (see PaxosLogServer.getReplicaName), and starts in view g % N, so that the
+ * initial leaders of the groups are spread over the replicas round robin. The groups of a host share the timer their
+ * leaders send and retransmit PREPARE and ACCEPT messages with.
+ */
+public class PaxosGroupHost {
+
+    // the ports of the groups of a replica are this far apart, so the replicas of a host may use consecutive ports
+    public final static int GROUP_PORT_STRIDE = 10;
+    // the ports of the groups have to stay below the log read port of the first group
+    public final static int MAX_NUM_OF_GROUPS = PaxosLogServer.LOG_READ_PORT_OFFSET / GROUP_PORT_STRIDE;
+
+    private final int serverId;
+    private final List<PaxosLogServer> groups;
+    private final Timer retransmitTimer;
+
+    public PaxosGroupHost(
+            final int serverId,
+            final String serverAddr,
+            final int numOfToleratedFailures,
+            final List<AddressPortPair> allReplicasInfo,
+            final int numOfGroups,
+            final double messageLossRate) {
+        this(serverId, serverAddr, numOfToleratedFailures, allReplicasInfo, numOfGroups, messageLossRate,
+                LogEntryStoreFactory.DEFAULT_TYPE, false);
+    }
+
+    /**
+     * @param allReplicasInfo   the address and port of every replica, which are those of its first group
+     * @param numOfGroups       the number of Paxos groups, at most MAX_NUM_OF_GROUPS
+     * @param logEntryStoreType where the slots of every group are kept, see LogEntryStoreFactory
+     * @param persistent        whether every group keeps a write-ahead log
+     */
+    public PaxosGroupHost(
+            final int serverId,
+            final String serverAddr,
+            final int numOfToleratedFailures,
+            final List<AddressPortPair> allReplicasInfo,
+            final int numOfGroups,
+            final double messageLossRate,
+            final String logEntryStoreType,
+            final boolean persistent) {
+        if (numOfGroups < 1 || numOfGroups > MAX_NUM_OF_GROUPS) {
+            throw new IllegalArgumentException("Invalid number of groups: " + numOfGroups);
+        }
+        if (allReplicasInfo.size() > GROUP_PORT_STRIDE) {
+            throw new IllegalArgumentException("The ports of the groups of more than " + GROUP_PORT_STRIDE + " replicas overlap");
+        }
+        this.serverId = serverId;
+        this.groups = new ArrayList<>(numOfGroups);
+        this.retransmitTimer = new Timer(true);
+        final int totalNumOfReplicas = numOfToleratedFailures * 2 + 1;
+        for (int groupId = 0; groupId < numOfGroups; groupId++) {
+            final int viewNumber = groupId % totalNumOfReplicas;
+            groups.add(new PaxosLogServer.Builder(serverId, serverAddr, getGroupPort(allReplicasInfo.get(serverId).getPort(), groupId),
+                    numOfToleratedFailures, getGroupReplicasInfo(allReplicasInfo, groupId))
+                    .leader(viewNumber == serverId)
+                    .viewNumber(viewNumber)
+                    .messageLossRate(messageLossRate)
+                    .logEntryStoreType(logEntryStoreType)
+                    .persistent(persistent)
+                    .groupId(groupId)
+                    .retransmitTimer(retransmitTimer)
+                    .build());
+        }
+    }
+
+    /**
+     * Entrance of the host, every group runs in threads of its own
+     */
+    public void start() {
+        for (final PaxosLogServer group : groups) {
+            final Thread groupThread = new Thread(group::start);
+            groupThread.start();
+        }
+    }
+
+    public int getServerId() {
+        return serverId;
+    }
+
+    public int getNumOfGroups() {
+        return groups.size();
+    }
+
+    public PaxosLogServer getGroup(final int groupId) {
+        return groups.get(groupId);
+    }
+
+    public List<PaxosLogServer> getGroups() {
+        return Collections.unmodifiableList(groups);
+    }
+
+    /**
+     * @return The group the commands with the partition key belong to
+     */
+    public static int getGroupOf(final String partitionKey, final int numOfGroups) {
+        return Math.floorMod(partitionKey.hashCode(), numOfGroups);
+    }
+
+    /**
+     * @return The address and port of every replica of a group
+     */
+    public static List<AddressPortPair> getGroupReplicasInfo(final List<AddressPortPair> allReplicasInfo, final int groupId) {
+        final List<AddressPortPair> groupReplicasInfo = new ArrayList<>(allReplicasInfo.size());
+        for (final AddressPortPair replicaInfo : allReplicasInfo) {
+            groupReplicasInfo.add(new AddressPortPair(replicaInfo.getIp(), getGroupPort(replicaInfo.getPort(), groupId)));
+        }
+        return groupReplicasInfo;
+    }
+
+    private static int getGroupPort(final int serverPort, final int groupId) {
+        return serverPort + groupId * GROUP_PORT_STRIDE;
+    }
+}
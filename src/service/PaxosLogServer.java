@@ -1,19 +1,34 @@
 package service;
 
+import client.LogRangeReader;
 import message.*;
 import thread.HeartBeatTracker;
 import thread.ThreadHandler;
 import util.AddressPortPair;
 import util.ChatMessageIdentifier;
+import util.ClientSessionTable;
+import util.FragmentCodec;
+import util.LeaderLease;
+import util.LogEntry;
 import util.LogEntrySlotManager;
+import util.LogEntryStoreFactory;
+import util.PayloadStore;
+import util.ReplicaLogReader;
+import util.WriteAheadLog;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A Paxos Replica instance that utilize Multi-Paxos to make consensus among other replicas.
@@ -21,8 +36,65 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public class PaxosLogServer {
 
     private final static int HEART_BEAT_PERIOD_MILLS = 2000;
+    // how often the leader looks for replicas it has sent nothing to for a heartbeat period
+    private final static int HEART_BEAT_CHECK_PERIOD_MILLS = HEART_BEAT_PERIOD_MILLS / 4;
+    // how often a follower checks whether it has become the leader
+    private final static int FOLLOWER_CHECK_PERIOD_MILLS = 10;
+
+    // the suspicion level of the phi accrual failure detector at which a follower considers the leader failed
+    private final static double PHI_SUSPICION_THRESHOLD = HeartBeatTracker.DEFAULT_PHI_THRESHOLD;
+    // how long a replica suspecting the leader waits for the answers to its pre-vote
+    private final static int PRE_VOTE_TIMEOUT_MILLS = HEART_BEAT_PERIOD_MILLS / 4;
+    // how long a leader handing its leadership over tries to catch the target up before it keeps the leadership, and
+    // how long it waits for each answer of the target
+    private final static int TRANSFER_TIMEOUT_MILLS = HEART_BEAT_PERIOD_MILLS;
+    private final static int TRANSFER_RETRY_MILLS = 100;
+
+    // the value a new leader proposes for a slot no value of which can have been chosen, so that it fills the hole
+    // below the slots accepted by the old leader; it is proposed on behalf of no client (WriteAheadLog.NO_CLIENT_ID),
+    // no client can order it and it is executed as an empty entry (see LogEntrySlotManager.write)
+    public final static String NO_OP_MESSAGE_LITERAL = "|NO_OP|";
+    // how many recovered slots a new leader has in flight at most, and how long it waits for their responses before it
+    // sends the PREPARE_RANGE or the ACCEPT messages again
+    private final static int RECOVERY_WINDOW_SIZE = 1024;
+    private final static int RECOVERY_RETRANSMIT_MILLS = 1000;
+
+    // in thrifty mode, how long the leader waits for the fastest phase 2 quorum before it sends the ACCEPT to every
+    // replica: this many times the smoothed round trip time of the slowest replica of the quorum, but at least the minimum
+    private final static int THRIFTY_TIMEOUT_RTT_MULTIPLE = 2;
+    private final static int THRIFTY_MIN_TIMEOUT_MILLS = 10;
+    // in thrifty mode, how many ACCEPT messages the leader holds back from a replica left out of the quorum at most, and
+    // for how long, before it sends them in one batch
+    private final static int THRIFTY_CATCH_UP_BATCH_SIZE = 256;
+    private final static int THRIFTY_CATCH_UP_MILLS = 100;
+
+    // how long a replica waits for a payload disseminated by its client before it asks the other replicas for it, and
+    // how long it waits for their answer before it asks again
+    private final static int PAYLOAD_REQUEST_RETRY_MILLS = 1000;
+
+    // with erasure coding, the shortest value the leader splits into fragments, a shorter one is sent in full since the
+    // header of every fragment would outweigh what the coding saves
+    private final static int MIN_FRAGMENTED_VALUE_LENGTH = 1024;
+
+    // a follower acknowledging a heartbeat promises not to follow another leader for this long, which has to be longer
+    // than the heartbeat period (so the lease is renewed before it ends); a follower never suspects the leader sooner
+    private final static int LEASE_DURATION_MILLS = 2 * HEART_BEAT_PERIOD_MILLS;
+    // the largest relative drift between the clocks of two replicas the lease tolerates
+    private final static double CLOCK_DRIFT_BOUND = 0.01;
+
+    // range reads of the log of a replica are served on its server port plus this offset
+    public final static int LOG_READ_PORT_OFFSET = 1000;
+
+    // how long the consensus thread waits for a message before it looks for other work (e.g. executing chosen slots),
+    // rather than spinning on the queue, which burns a core even while the replica is idle
+    private final static int IDLE_POLL_MILLIS = 10;
+
+    // with a write-ahead log, how many responses to the leader at most wait for the log to be forced together
+    private final static int MAX_GROUP_COMMIT_RESPONSES = 64;
 
     private final int serverId;
+    // the Paxos group of a host running several (see PaxosGroupHost) this replica belongs to, 0 for the only one
+    private final int groupId;
     private final String serverAddr;
     private final int serverPort;
 
@@ -31,6 +103,16 @@ public class PaxosLogServer {
 
     private final int numOfToleratedFailures;
     private final int totalNumOfReplicas;
+    // the number of responses of other replicas that complete a quorum (with the leader) of phase 1 (PREPARE, and the
+    // pre-vote electing the leader that runs it) and of phase 2 (ACCEPT, and the lease it renews); any two quorums of
+    // the two phases intersect (Flexible Paxos), so that phase 2 may wait for fewer replicas than a majority
+    private final int numOfPhase1Responses;
+    private final int numOfPhase2Responses;
+    // whether the leader sends an ACCEPT to the fastest phase 2 quorum only rather than to every replica
+    private final boolean thrifty;
+    // with erasure coding (RS-Paxos), the codec that splits a value the leader proposes into a fragment per replica, k of
+    // which give the value back; null if every replica gets the whole value
+    private final FragmentCodec fragmentCodec;
     private final List<AddressPortPair> allReplicasInfo;
 
     private final int skipSlotSeqNum;
@@ -42,24 +124,112 @@ public class PaxosLogServer {
     // for allReplicaSendSockets, the key is the replica ID and value is the socket used to send message to other replicas
     private final Map<Integer, Socket> allReplicaSendSockets;
 
+    // for allReplicaHeartBeatSockets, the key is the replica ID and value is a second socket to that replica that only
+    // carries heartbeats and their responses, so that they never queue behind ACCEPT and SUCCESS messages
+    private final Map<Integer, Socket> allReplicaHeartBeatSockets;
+
+    // for lastSentTimeStamps, the key is the replica ID and value is the System.nanoTime() the leader last sent that
+    // replica a message at; the leader only sends a heartbeat to a replica it has sent nothing to for a heartbeat period
+    private final Map<Integer, Long> lastSentTimeStamps;
+
+    // for roundTripTimeNanos, the key is the replica ID and value is the smoothed round trip time to that replica (with a
+    // gain of 1/8 like the SRTT of TCP), measured by the leader with the responses to ACCEPT messages and heartbeats
+    private final Map<Integer, Long> roundTripTimeNanos;
+
+    // for leftOutAcceptMsgs, the key is the replica ID and value is the ACCEPT messages the leader has held back from that
+    // replica in thrifty mode, the first since leftOutTimeStamp; owned by the consensus thread
+    private final Map<Integer, List<AcceptMsg>> leftOutAcceptMsgs;
+    private long leftOutTimeStamp;
+
     // for allClientSendSockets, the key is the client ID and value is the socket used to send message to client
     private final Map<Long, Socket> allClientSendSockets;
 
+    // for clientConnectionIds, the key is the session ID of a multiplexing client and value is the client ID of the
+    // connection that carries the session, responses of that session should be sent through that connection
+    private final Map<Long, Long> clientConnectionIds;
+
     // a thread safe message queue caching all messages from all other replicas
-    private final Queue<String> replicasMessageQueue;
+    private final BlockingQueue<String> replicasMessageQueue;
 
     // a thread safe message queue caching all messages from all connected clients
     // note that the client chat message can only be send to the leader replica
-    private final Queue<String> clientChatMessageQueue;
+    private final BlockingQueue<String> clientChatMessageQueue;
 
     // a worker that track the heartbeat from the leader
     private final HeartBeatTracker tracker;
 
+    // the answers to the latest pre-vote of this replica, the key is the server ID of the responder
+    private final Map<Integer, PreVoteResponseMsg> preVoteResponses;
+
+    // set when this replica takes over as the leader, its consensus thread then runs phase 1 on the unchosen slots
+    // before it serves any client
+    private volatile boolean recoveryPending;
+
+    // a leadership transfer an administrator has asked for, the consensus thread carries it out between two commands
+    private volatile ClientToServerMsg.TransferMsg pendingTransfer;
+
+    // the lease that lets the leader answer reads without a Paxos round, renewed by acknowledged heartbeats
+    private final LeaderLease leaderLease;
+
+    // the latest view in which this replica got a value chosen as the leader; like a Raft leader, a new leader only
+    // answers reads once it has got a value chosen in its view, since only then it knows every chosen slot
+    private volatile int viewOfLatestChosenValue;
+
+    // the READ_INDEX requests of this replica waiting for the answer of the leader, the key is the request ID
+    private final Map<Integer, CompletableFuture<Integer>> pendingReadIndexRequests;
+    private final AtomicInteger nextReadIndexRequestID;
+
+    // as the leader, the round and the first unchosen index after the latest chosen value: every slot below the index
+    // proposed in the round is chosen. Published by the consensus thread for the heartbeats, which carry it to the
+    // followers along with the first unchosen index of every ACCEPT, so a chosen value does not need a SUCCESS message
+    private volatile CommitWatermark commitWatermark;
+    // as the leader, the first unchosen index the followers have been told about, owned by the consensus thread
+    private int announcedFirstUnchosenIndex;
+    // as the leader with a write-ahead log, the first slot chosen since the log was last forced and the commit
+    // watermark after the latest of them: the leader counts its own accept of a slot, so the slot is executed,
+    // answered and announced only once the log is forced (see syncLeaderChanges); Integer.MAX_VALUE and null if there
+    // is none, owned by the consensus thread
+    private int firstUnsyncedChosenIndex;
+    private CommitWatermark unsyncedCommitWatermark;
+
+    // as a follower, the round of the latest first unchosen index learned from the leader and the slot below which the
+    // accepted slots of that round are chosen already, owned by the consensus thread
+    private int learnedCommitRoundNumber;
+    private int learnedCommitIndex;
+
     //  a manager that manage every log entry of the replica
     private final LogEntrySlotManager logEntrySlotManager;
 
-    // use a set to make sure a message can only be executed once
-    private final Set<ChatMessageIdentifier> chosenChatMessages;
+    // use a session table to make sure a message can only be executed once
+    private final ClientSessionTable clientSessionTable;
+
+    // the client message of every slot accepted but not chosen yet, so that a follower keeps its session table up to
+    // date as the slots are chosen and knows which messages are executed when it takes over; owned by the consensus thread
+    private final Map<Integer, ChatMessageIdentifier> acceptedClientMessages;
+
+    // the payloads disseminated by the clients, the slots hold their references (see PayloadStore)
+    private final PayloadStore payloadStore;
+
+    // for reservedPrefixes, the key is a prefix of the literals the host of this replica proposes itself and value is
+    // the IDs of the clients it proposes them with, no other client may order a literal starting with it
+    private final Map<String, Set<Long>> reservedPrefixes;
+
+    // for deferredAcceptResponses, the key is a reference and value is the responses to the ACCEPT messages of it this
+    // replica has accepted without holding the payload, they are sent once the payload arrives so that a reference is
+    // only chosen once a phase 2 quorum holds its payload; owned by the consensus thread
+    private final Map<String, List<AcceptResponseMsg>> deferredAcceptResponses;
+
+    // the responses to the leader waiting for the write-ahead log to be forced (see respondToLeader); owned by the
+    // consensus thread
+    private final List<String> unsyncedLeaderResponses;
+
+    // as the leader, the responses to the clients waiting for the write-ahead log to be forced (see
+    // sendResponseBackToClient); owned by the consensus thread
+    private final List<ServerToClientMsg.ServerResponseMsg> unsyncedClientResponses;
+
+    // for payloadRequestTimeStamps, the key is a reference and value is the System.nanoTime() this replica has missed
+    // its payload since or last asked the other replicas for it at; owned by the consensus thread
+    private final Map<String, Long> payloadRequestTimeStamps;
 
     private ClientToServerMsg.ChatMsg nextChatMsg;
     private boolean prepared;
@@ -67,11 +237,19 @@ public class PaxosLogServer {
     private int currentIndex;
     private int nextIndex;
     private int curProposalNumber;
+    // the System.nanoTime() the ACCEPT in flight is first sent at, a quorum of its responses renews the lease from then
+    private long acceptTimeStamp;
+    // in thrifty mode, the replicas the ACCEPT in flight is first sent to, and the timer that sends it
+    private List<Integer> thriftyQuorum;
+    private WaitRepeatSendAccept thriftyAcceptSender;
     private int maxRound;
     private Set<Integer> receivedDistinctPrepareResponse;
     private Set<Integer> receivedDistinctNoMoreAccepted;
     private Set<Integer> receivedDistinctAcceptResponse;
 
+    // the timer the leader sends and retransmits its PREPARE and ACCEPT messages with, shared by the groups of a host
+    private final Timer retransmitTimer;
+
     // use for simulate message drop
     private final Random randomGenerator;
 
@@ -85,37 +263,235 @@ public class PaxosLogServer {
             final List<AddressPortPair> allReplicasInfo,
             final int skipSlotSeqNum,
             final double messageLossRate) {
-        this.serverId = serverId;
-        this.serverAddr = serverAddr;
-        this.serverPort = serverPort;
-        this.isLeader = isLeader;
-        this.viewNumber = viewNumber;
-        this.numOfToleratedFailures = numOfToleratedFailures;
+        this(new Builder(serverId, serverAddr, serverPort, numOfToleratedFailures, allReplicasInfo)
+                .leader(isLeader)
+                .viewNumber(viewNumber)
+                .skipSlotSeqNum(skipSlotSeqNum)
+                .messageLossRate(messageLossRate));
+    }
+
+    private PaxosLogServer(final Builder builder) {
+        final int numOfReplicas = builder.numOfToleratedFailures * 2 + 1;
+        final int phase1QuorumSize = builder.phase1QuorumSize;
+        final int phase2QuorumSize = builder.phase2QuorumSize;
+        final int numOfDataFragments = builder.numOfDataFragments;
+        if (phase1QuorumSize < 1 || phase2QuorumSize < 1 || phase1QuorumSize > numOfReplicas
+                || phase2QuorumSize > numOfReplicas || phase1QuorumSize + phase2QuorumSize <= numOfReplicas) {
+            throw new IllegalArgumentException("Phase 1 and phase 2 quorums do not intersect");
+        }
+        if (numOfDataFragments < 1 || phase1QuorumSize + phase2QuorumSize - numOfReplicas < numOfDataFragments) {
+            throw new IllegalArgumentException("Phase 1 and phase 2 quorums do not share " + numOfDataFragments + " replicas");
+        }
+        if (builder.thrifty && numOfDataFragments > 1) {
+            throw new IllegalArgumentException("Thrifty replication does not hold back fragments");
+        }
+        this.serverId = builder.serverId;
+        this.groupId = builder.groupId;
+        this.serverAddr = builder.serverAddr;
+        this.serverPort = builder.serverPort;
+        this.isLeader = builder.isLeader;
+        this.viewNumber = builder.viewNumber;
+        this.numOfToleratedFailures = builder.numOfToleratedFailures;
         this.totalNumOfReplicas = numOfToleratedFailures * 2 + 1;
-        this.allReplicasInfo = allReplicasInfo;
-        this.skipSlotSeqNum = skipSlotSeqNum;
-        this.messageLossRate = messageLossRate;
+        this.numOfPhase1Responses = phase1QuorumSize - 1;
+        this.numOfPhase2Responses = phase2QuorumSize - 1;
+        this.thrifty = builder.thrifty;
+        this.fragmentCodec = numOfDataFragments > 1 ? new FragmentCodec(numOfDataFragments, totalNumOfReplicas) : null;
+        this.allReplicasInfo = builder.allReplicasInfo;
+        this.skipSlotSeqNum = builder.skipSlotSeqNum;
+        this.messageLossRate = builder.messageLossRate;
         this.allReceiveSockets = new Vector<>();
         this.allReplicaSendSockets = new ConcurrentHashMap<>();
+        this.allReplicaHeartBeatSockets = new ConcurrentHashMap<>();
+        this.lastSentTimeStamps = new ConcurrentHashMap<>();
+        this.roundTripTimeNanos = new ConcurrentHashMap<>();
+        this.leftOutAcceptMsgs = new HashMap<>();
+        this.leftOutTimeStamp = 0;
         this.allClientSendSockets = new ConcurrentHashMap<>();
-        this.replicasMessageQueue = new ConcurrentLinkedQueue<>();
-        this.clientChatMessageQueue = new ConcurrentLinkedQueue<>();
+        this.clientConnectionIds = new ConcurrentHashMap<>();
+        this.replicasMessageQueue = new LinkedBlockingQueue<>();
+        this.clientChatMessageQueue = new LinkedBlockingQueue<>();
         this.tracker = new HeartBeatTracker(
-                this::increaseViewNumber,
-                this::tryToBecomeLeader,
-                System.currentTimeMillis(),
-                HEART_BEAT_PERIOD_MILLS);
-        this.logEntrySlotManager = new LogEntrySlotManager(this);
-        this.chosenChatMessages = new HashSet<>();
+                this::runPreVote,
+                HeartBeatTracker.currentTimeMillis(),
+                HEART_BEAT_PERIOD_MILLS,
+                PHI_SUSPICION_THRESHOLD,
+                LEASE_DURATION_MILLS);
+        this.preVoteResponses = new ConcurrentHashMap<>();
+        // the leader we are configured with may restart with holes in its log, it fills them before serving any client
+        this.recoveryPending = isLeader;
+        this.pendingTransfer = null;
+        this.leaderLease = new LeaderLease(serverId, numOfPhase2Responses, LEASE_DURATION_MILLS, CLOCK_DRIFT_BOUND);
+        // the leader we are configured with starts the log, there is no earlier leader it could miss a chosen slot of
+        this.viewOfLatestChosenValue = isLeader ? viewNumber : -1;
+        this.pendingReadIndexRequests = new ConcurrentHashMap<>();
+        this.nextReadIndexRequestID = new AtomicInteger();
+        this.clientSessionTable = new ClientSessionTable();
+        this.acceptedClientMessages = new HashMap<>();
+        this.retransmitTimer = builder.retransmitTimer != null ? builder.retransmitTimer : new Timer(true);
+        this.logEntrySlotManager = new LogEntrySlotManager(this, LogEntryStoreFactory.create(builder.logEntryStoreType, getReplicaName()),
+                builder.persistent ? new WriteAheadLog(getReplicaName() + "-wal") : null);
+        this.payloadStore = logEntrySlotManager.getPayloadStore();
+        this.reservedPrefixes = new ConcurrentHashMap<>();
+        this.deferredAcceptResponses = new HashMap<>();
+        this.unsyncedLeaderResponses = new ArrayList<>();
+        this.unsyncedClientResponses = new ArrayList<>();
+        this.payloadRequestTimeStamps = new HashMap<>();
         this.prepared = false;
         this.currentIndex = 0;
         this.nextIndex = 1;
         this.curProposalNumber = 0;
-        this.maxRound = 0;
+        this.maxRound = logEntrySlotManager.getMinProposal();
+        this.commitWatermark = new CommitWatermark(0, 0);
+        this.announcedFirstUnchosenIndex = 0;
+        this.firstUnsyncedChosenIndex = Integer.MAX_VALUE;
+        this.unsyncedCommitWatermark = null;
+        this.learnedCommitRoundNumber = 0;
+        this.learnedCommitIndex = 0;
         this.randomGenerator = new Random(10);
         System.out.println("Server with ID: " + serverId + " initialize at address: " + serverAddr + ':' + serverPort);
     }
 
+    /**
+     * Configures a replica, every option left out keeps the behaviour of the original constructor: a follower of view
+     * 0 with the default log entry store, no write-ahead log and majority quorums for both phases.
+     */
+    public static class Builder {
+
+        private final int serverId;
+        private final String serverAddr;
+        private final int serverPort;
+        private final int numOfToleratedFailures;
+        private final List<AddressPortPair> allReplicasInfo;
+        private boolean isLeader;
+        private int viewNumber;
+        private int skipSlotSeqNum;
+        private double messageLossRate;
+        private String logEntryStoreType;
+        private boolean persistent;
+        private int phase1QuorumSize;
+        private int phase2QuorumSize;
+        private boolean thrifty;
+        private int numOfDataFragments;
+        private int groupId;
+        private Timer retransmitTimer;
+
+        public Builder(
+                final int serverId,
+                final String serverAddr,
+                final int serverPort,
+                final int numOfToleratedFailures,
+                final List<AddressPortPair> allReplicasInfo) {
+            this.serverId = serverId;
+            this.serverAddr = serverAddr;
+            this.serverPort = serverPort;
+            this.numOfToleratedFailures = numOfToleratedFailures;
+            this.allReplicasInfo = allReplicasInfo;
+            this.isLeader = false;
+            this.viewNumber = 0;
+            this.skipSlotSeqNum = -1;
+            this.messageLossRate = 0.0;
+            this.logEntryStoreType = LogEntryStoreFactory.DEFAULT_TYPE;
+            this.persistent = false;
+            this.phase1QuorumSize = numOfToleratedFailures + 1;
+            this.phase2QuorumSize = numOfToleratedFailures + 1;
+            this.thrifty = false;
+            this.numOfDataFragments = 1;
+            this.groupId = 0;
+            this.retransmitTimer = null;
+        }
+
+        public Builder leader(final boolean isLeader) {
+            this.isLeader = isLeader;
+            return this;
+        }
+
+        public Builder viewNumber(final int viewNumber) {
+            this.viewNumber = viewNumber;
+            return this;
+        }
+
+        public Builder skipSlotSeqNum(final int skipSlotSeqNum) {
+            this.skipSlotSeqNum = skipSlotSeqNum;
+            return this;
+        }
+
+        public Builder messageLossRate(final double messageLossRate) {
+            this.messageLossRate = messageLossRate;
+            return this;
+        }
+
+        /**
+         * @param logEntryStoreType where the slots are kept, see LogEntryStoreFactory
+         */
+        public Builder logEntryStoreType(final String logEntryStoreType) {
+            this.logEntryStoreType = logEntryStoreType;
+            return this;
+        }
+
+        /**
+         * @param persistent whether to keep a write-ahead log in replica{serverId}-wal and recover from it on start
+         */
+        public Builder persistent(final boolean persistent) {
+            this.persistent = persistent;
+            return this;
+        }
+
+        /**
+         * @param phase1QuorumSize the number of replicas (the leader included) that have to promise a round in phase 1
+         * @param phase2QuorumSize the number of replicas (the leader included) that have to accept a value in phase 2,
+         *                         the two sizes have to add up to more than the number of replicas
+         */
+        public Builder quorumSizes(final int phase1QuorumSize, final int phase2QuorumSize) {
+            this.phase1QuorumSize = phase1QuorumSize;
+            this.phase2QuorumSize = phase2QuorumSize;
+            return this;
+        }
+
+        /**
+         * @param thrifty whether the leader sends an ACCEPT to the phase 2 quorum with the shortest round trip times
+         *                only, and to the other replicas once the quorum is late or in batches off the commit path
+         */
+        public Builder thrifty(final boolean thrifty) {
+            this.thrifty = thrifty;
+            return this;
+        }
+
+        /**
+         * @param numOfDataFragments with more than 1, the leader splits every value of at least
+         *                           MIN_FRAGMENTED_VALUE_LENGTH into this many data fragments and as many parity
+         *                           fragments as make one per replica (RS-Paxos), and sends every replica its own
+         *                           fragment only; any phase 1 quorum has to share this many replicas with any phase 2
+         *                           quorum, so that a chosen value can be rebuilt
+         */
+        public Builder numOfDataFragments(final int numOfDataFragments) {
+            this.numOfDataFragments = numOfDataFragments;
+            return this;
+        }
+
+        /**
+         * @param groupId the Paxos group of a host this replica belongs to, the files of the replica are named after it
+         *                (see getReplicaName)
+         */
+        public Builder groupId(final int groupId) {
+            this.groupId = groupId;
+            return this;
+        }
+
+        /**
+         * @param retransmitTimer the timer to send and retransmit the PREPARE and ACCEPT messages with, which the groups
+         *                        of a host share; without one the replica starts its own
+         */
+        public Builder retransmitTimer(final Timer retransmitTimer) {
+            this.retransmitTimer = retransmitTimer;
+            return this;
+        }
+
+        public PaxosLogServer build() {
+            return new PaxosLogServer(this);
+        }
+    }
+
     /**
      * Entrance of the server
      */
@@ -123,6 +499,13 @@ public class PaxosLogServer {
         final Thread inComingSocketHandler = new Thread(new IncomingSocketHandler(serverPort));
         final Thread heartBeatLogger = new Thread(new HeartBeatLogger());
         inComingSocketHandler.start();  // start listing to its port for incoming sockets
+        // with erasure coding the log read port rebuilds the values this replica only holds a fragment of
+        List<AddressPortPair> otherReplicasInfo = null;
+        if (fragmentCodec != null) {
+            otherReplicasInfo = new ArrayList<>(allReplicasInfo);
+            otherReplicasInfo.remove(serverId);
+        }
+        new Thread(new LogReadService(serverPort + LOG_READ_PORT_OFFSET, logEntrySlotManager, otherReplicasInfo)).start();
         createSendSocketsForReplicasIfNecessary();  // try to connect all other replicas at beginning
         heartBeatLogger.start();    // start heartbeat logger
         tracker.start();    // start heartbeat tracker
@@ -135,6 +518,30 @@ public class PaxosLogServer {
         }
     }
 
+    /**
+     * @return The next message of the other replicas, null if none arrives within IDLE_POLL_MILLIS
+     */
+    private String pollReplicasMessage() {
+        try {
+            return replicasMessageQueue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @return The next chat message of the clients, null if none arrives within IDLE_POLL_MILLIS
+     */
+    private String pollClientChatMessage() {
+        try {
+            return clientChatMessageQueue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     /**
      * Create replica sending sockets if we don't have 2f such sockets or some such sockets are died
      */
@@ -221,6 +628,9 @@ public class PaxosLogServer {
      */
     public class ReceiveMessageHandler extends ThreadHandler {
 
+        // reads the slots that are no longer in the executed entry cache, created on the first such read
+        private ReplicaLogReader replicaLogReader;
+
         public ReceiveMessageHandler(Socket socket) {
             super(socket);
         }
@@ -235,10 +645,27 @@ public class PaxosLogServer {
                         case CLIENT_TO_SERVER:
                             switch (ClientToServerMsg.getClientToServerType(line)) {
                                 case HELLO:
-                                    handleClientHello(ClientToServerMsg.HelloMsg.fromString(line));
+                                    handleClientHello(ClientToServerMsg.HelloMsg.fromString(line), super.socket);
                                     break;
                                 case CHAT:
-                                    clientChatMessageQueue.offer(line);
+                                    if (isLeader) {
+                                        clientChatMessageQueue.offer(line);
+                                    } else {
+                                        handleClientChatAsFollower(ClientToServerMsg.ChatMsg.fromString(line).getClientID());
+                                    }
+                                    break;
+                                case BATCH:
+                                    handleClientBatch(ClientToServerMsg.BatchMsg.fromString(line));
+                                    break;
+                                case READ:
+                                    handleClientRead(ClientToServerMsg.ReadMsg.fromString(line));
+                                    break;
+                                case TRANSFER:
+                                    handleClientTransfer(ClientToServerMsg.TransferMsg.fromString(line));
+                                    break;
+                                case PAYLOAD:
+                                    final ClientToServerMsg.PayloadMsg payloadMsg = ClientToServerMsg.PayloadMsg.fromString(line);
+                                    payloadStore.add(payloadMsg.getClientID(), payloadMsg.getMessageSequenceNumber(), payloadMsg.getPayload());
                                     break;
                                 default:
                                     throw new IllegalStateException("Unresolvable client to server message!");
@@ -249,12 +676,48 @@ public class PaxosLogServer {
                         case HEART_BEAT:
                             handleClientHeartBeat(HeartBeatMsg.fromString(line));
                             break;
+                        case HEART_BEAT_RESPONSE:
+                            final HeartBeatResponseMsg heartBeatResponseMsg = HeartBeatResponseMsg.fromString(line);
+                            leaderLease.onResponse(heartBeatResponseMsg);
+                            recordRoundTripTime(heartBeatResponseMsg.getResponseServerID(), heartBeatResponseMsg.getTimeStamp());
+                            break;
+                        case READ_INDEX:
+                            handleReadIndex(ReadIndexMsg.fromString(line));
+                            break;
+                        case PRE_VOTE:
+                            handlePreVote(PreVoteMsg.fromString(line));
+                            break;
+                        case PRE_VOTE_RESPONSE:
+                            final PreVoteResponseMsg preVoteResponseMsg = PreVoteResponseMsg.fromString(line);
+                            preVoteResponses.put(preVoteResponseMsg.getResponseServerID(), preVoteResponseMsg);
+                            break;
+                        case TAKE_OVER:
+                            handleTakeOver(TakeOverMsg.fromString(line));
+                            break;
+                        case PAYLOAD_REQUEST:
+                            handlePayloadRequest(PayloadRequestMsg.fromString(line));
+                            break;
+                        case PAYLOAD_RESPONSE:
+                            final PayloadResponseMsg payloadResponseMsg = PayloadResponseMsg.fromString(line);
+                            payloadStore.add(payloadResponseMsg.getReference(), payloadResponseMsg.getPayload());
+                            break;
+                        case READ_INDEX_RESPONSE:
+                            final ReadIndexResponseMsg readIndexResponseMsg = ReadIndexResponseMsg.fromString(line);
+                            final CompletableFuture<Integer> readIndexFuture = pendingReadIndexRequests.get(readIndexResponseMsg.getRequestID());
+                            if (readIndexFuture != null) {
+                                readIndexFuture.complete(readIndexResponseMsg.getReadIndex());
+                            }
+                            break;
                         case PREPARE:
                         case PREPARE_RESPONSE:
+                        case PREPARE_RANGE:
+                        case PREPARE_RANGE_RESPONSE:
                         case ACCEPT:
                         case ACCEPT_RESPONSE:
                         case SUCCESS:
                         case SUCCESS_RESPONSE:
+                        case TRANSFER_LEADERSHIP:
+                        case TRANSFER_LEADERSHIP_RESPONSE:
                             replicasMessageQueue.offer(line);
                             break;
                         default:
@@ -263,23 +726,248 @@ public class PaxosLogServer {
                 }
             } catch (Exception e) {
                 e.printStackTrace();
+            } finally {
+                if (replicaLogReader != null) {
+                    replicaLogReader.close();
+                }
+            }
+        }
+
+        /**
+         * Answer a read from the executed slots of this replica once they reach the read index of the read, otherwise
+         * redirect the client by NACK. The read index of a read with a slot token is the slot after the token, so it
+         * sees the write the token comes from. For a linearizable read, the leader holding the lease uses its own
+         * executed watermark (waiting up to a heartbeat period for its lease), and a follower asks the leader for its
+         * read index with a READ_INDEX round trip. Either way the replica waits up to a heartbeat period for its
+         * executed slots to reach the read index.
+         *
+         * @param readMsg
+         */
+        private void handleClientRead(final ClientToServerMsg.ReadMsg readMsg) {
+            final Socket clientSocket = getClientSendSocket(readMsg.getClientID());
+            if (clientSocket == null) {
+                return;
+            }
+            final int readViewNumber = viewNumber;
+            final boolean readUnderLease = readMsg.getSlotToken() == ClientToServerMsg.ReadMsg.LINEARIZABLE && isLeader;
+            Message response = new ServerToClientMsg.ServerNackMsg(getRedirectLeader());
+            try {
+                final int readIndex;
+                if (readMsg.getSlotToken() != ClientToServerMsg.ReadMsg.LINEARIZABLE) {
+                    readIndex = readMsg.getSlotToken() + 1;
+                } else if (readUnderLease) {
+                    readIndex = viewOfLatestChosenValue == readViewNumber && leaderLease.awaitValid(readViewNumber, HEART_BEAT_PERIOD_MILLS)
+                            ? logEntrySlotManager.getExecutedWatermark() : -1;
+                } else {
+                    readIndex = fetchReadIndexFromLeader();
+                }
+                if (readIndex >= 0 && logEntrySlotManager.awaitExecutedWatermark(readIndex - 1, HEART_BEAT_PERIOD_MILLS) >= readIndex) {
+                    final int executedWatermark = logEntrySlotManager.getExecutedWatermark();
+                    int slotIndex = readMsg.getSlotIndex() == -1 ? executedWatermark - 1 : readMsg.getSlotIndex();
+                    String value = "";
+                    if (slotIndex < 0 || slotIndex >= executedWatermark) {
+                        slotIndex = -1;
+                    } else {
+                        value = readExecutedSlot(slotIndex);
+                    }
+                    // the executed slots were read within the lease only if it is still held now
+                    if (value != null && (!readUnderLease || (isLeader && leaderLease.isValid(readViewNumber)))) {
+                        response = new ServerToClientMsg.ServerReadResponseMsg(readMsg.getClientID(), readMsg.getReadID(), slotIndex, value);
+                    }
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            try {
+                final PrintWriter writer = new PrintWriter(clientSocket.getOutputStream(), true);
+                if (randomGenerator.nextFloat() >= messageLossRate) {
+                    writer.println(response.toString());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.println("Fail to send message to client");
+            }
+        }
+
+        /**
+         * Send another replica the payload it misses if this replica holds it, or has executed the slot it is chosen in.
+         * The payload goes through a connection of its own, so that it does not interleave with the messages of the
+         * consensus thread, which this receiving thread does not own.
+         *
+         * @param payloadRequestMsg
+         */
+        private void handlePayloadRequest(final PayloadRequestMsg payloadRequestMsg) {
+            String payload = payloadStore.get(payloadRequestMsg.getReference());
+            if (payload == null && payloadRequestMsg.getSlotIndex() >= 0
+                    && payloadRequestMsg.getSlotIndex() < logEntrySlotManager.getExecutedWatermark()) {
+                payload = readExecutedSlot(payloadRequestMsg.getSlotIndex());
+            }
+            final int requestServerID = payloadRequestMsg.getRequestServerID();
+            if (payload == null || requestServerID < 0 || requestServerID >= allReplicasInfo.size()) {
+                return;
+            }
+            try (final Socket payloadSocket = new Socket(allReplicasInfo.get(requestServerID).getIp(),
+                    allReplicasInfo.get(requestServerID).getPort())) {
+                final PrintWriter writer = new PrintWriter(payloadSocket.getOutputStream(), true);
+                if (randomGenerator.nextFloat() >= messageLossRate) {
+                    writer.println(new PayloadResponseMsg(payloadRequestMsg.getReference(), payload).toString());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.println("Fail to send payload to replica ID: " + requestServerID);
+            }
+        }
+
+        /**
+         * @return The value of an executed slot, null if the replica no longer keeps it
+         */
+        private String readExecutedSlot(final int slotIndex) {
+            String value = logEntrySlotManager.getExecutedEntryCache().get(slotIndex);
+            if (value == null) {
+                if (replicaLogReader == null) {
+                    replicaLogReader = new ReplicaLogReader(logEntrySlotManager.getReplicaLogDirectory());
+                }
+                value = replicaLogReader.read(slotIndex);
+            }
+            return FragmentCodec.isFragment(value) ? reconstructValue(slotIndex, value) : value;
+        }
+
+        /**
+         * Rebuild the value of an executed slot this replica only holds a fragment of. A follower executes the fragment
+         * the leader has sent it rather than fetching k - 1 more fragments for every slot, so a value is rebuilt when it
+         * is read: from the values the other replicas have executed in the slot, read from their log read ports one
+         * after the other until they hold the value itself (as the leader that proposed it does) or k fragments of it.
+         *
+         * @return The value, null if the replicas reached do not hold enough fragments of it
+         */
+        private String reconstructValue(final int slotIndex, final String fragment) {
+            final String digest = FragmentCodec.getDigest(fragment);
+            final List<String> values = new ArrayList<>();
+            values.add(fragment);
+            for (int replicaID = 0; replicaID < allReplicasInfo.size(); replicaID++) {
+                if (replicaID == serverId) {
+                    continue;
+                }
+                try {
+                    final LogRangeReader logRangeReader = new LogRangeReader(allReplicasInfo.get(replicaID).getIp(),
+                            allReplicasInfo.get(replicaID).getPort());
+                    try {
+                        values.addAll(logRangeReader.readFragments(slotIndex, 1));
+                    } finally {
+                        logRangeReader.close();
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    e.printStackTrace();
+                    System.out.println("Fail to read slot " + slotIndex + " from replica ID: " + replicaID);
+                    continue;
+                }
+                final String value = FragmentCodec.decode(values, digest);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Ask the leader for its read index, waiting up to a heartbeat period for the answer
+     *
+     * @return The read index, -1 if the leader does not answer or can not give one
+     */
+    private int fetchReadIndexFromLeader() throws InterruptedException {
+        final int requestID = nextReadIndexRequestID.getAndIncrement();
+        final CompletableFuture<Integer> readIndexFuture = new CompletableFuture<>();
+        pendingReadIndexRequests.put(requestID, readIndexFuture);
+        try {
+            final Socket sendSocket = allReplicaSendSockets.get(getCurrentLeader());
+            if (sendSocket == null) {
+                return -1;
+            }
+            final PrintWriter writer = new PrintWriter(sendSocket.getOutputStream(), true);
+            if (randomGenerator.nextFloat() >= messageLossRate) {
+                writer.println(new ReadIndexMsg(requestID, serverId).toString());
+            }
+            return readIndexFuture.get(HEART_BEAT_PERIOD_MILLS, TimeUnit.MILLISECONDS);
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            return -1;
+        } finally {
+            pendingReadIndexRequests.remove(requestID);
+        }
+    }
+
+    /**
+     * Answer the read index a follower asks for: the executed watermark of the leader holding the lease, which is above
+     * every slot it has responded to a client for. It is answered without waiting, since the receiving thread also
+     * carries the responses of that follower.
+     *
+     * @param readIndexMsg
+     */
+    private void handleReadIndex(final ReadIndexMsg readIndexMsg) {
+        final int readViewNumber = viewNumber;
+        final int executedWatermark = logEntrySlotManager.getExecutedWatermark();
+        final int readIndex = isLeader && viewOfLatestChosenValue == readViewNumber && leaderLease.isValid(readViewNumber)
+                ? executedWatermark : -1;
+        final Socket sendSocket = allReplicaSendSockets.get(readIndexMsg.getRequestServerID());
+        if (sendSocket == null) {
+            return;
+        }
+        try {
+            final PrintWriter writer = new PrintWriter(sendSocket.getOutputStream(), true);
+            if (randomGenerator.nextFloat() >= messageLossRate) {
+                writer.println(new ReadIndexResponseMsg(readIndexMsg.getRequestID(), readIndex).toString());
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Fail to send read index response to replica!");
         }
     }
 
+    /**
+     * Follow the leader the heartbeat comes from and acknowledge it, which promises the leader its lease. A heartbeat of
+     * another view is ignored while a lease promised to the leader of our view may still be held.
+     *
+     * @param heartBeatMsg
+     */
     private void handleClientHeartBeat(final HeartBeatMsg heartBeatMsg) {
+        if (leaderLease.isPromisedToOtherView(heartBeatMsg.getViewNumber())) {
+            return;
+        }
         updateViewNumber(heartBeatMsg.getViewNumber());
-        tracker.setLatestReceivedTimeStamp(heartBeatMsg.getTimeStamp());
+        tracker.setLatestReceivedTimeStamp(HeartBeatTracker.currentTimeMillis());
+        if (heartBeatMsg.getViewNumber() != viewNumber || getCurrentLeader() == serverId) {
+            return;
+        }
+        // the commit watermark it carries is applied by the consensus thread, which owns the slots
+        replicasMessageQueue.offer(heartBeatMsg.toString());
+        leaderLease.grant(heartBeatMsg.getViewNumber());
+        final Socket sendSocket = getHeartBeatSocket(getCurrentLeader());
+        if (sendSocket == null) {
+            return;
+        }
+        try {
+            final PrintWriter writer = new PrintWriter(sendSocket.getOutputStream(), true);
+            if (randomGenerator.nextFloat() >= messageLossRate) {
+                writer.println(new HeartBeatResponseMsg(heartBeatMsg.getViewNumber(), heartBeatMsg.getTimeStamp(), serverId).toString());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Fail to send heartbeat response to leader!");
+        }
     }
 
     /**
      * Handle the hello message from client, if the current replica is leader, it should send ACK, or rather NACK.
      * Also every time we receive such message, if we haven't connect to that client before, create a new send socket for that client.
+     * A client that is not listening (port 0) will be replied through the socket the hello message comes from.
      *
      * @param helloMsg
+     * @param receiveSocket the socket the hello message comes from
      */
-    private void handleClientHello(final ClientToServerMsg.HelloMsg helloMsg) {
-        if (!allClientSendSockets.containsKey(helloMsg.getClientID())) {
+    private void handleClientHello(final ClientToServerMsg.HelloMsg helloMsg, final Socket receiveSocket) {
+        if (helloMsg.getListeningPort() == 0) {
+            allClientSendSockets.put(helloMsg.getClientID(), receiveSocket);
+        } else if (!allClientSendSockets.containsKey(helloMsg.getClientID())) {
             try {
                 final Socket clientSocket = new Socket(helloMsg.getListeningIPAddr(), helloMsg.getListeningPort());
                 if (clientSocket != null && clientSocket.isConnected()) {
@@ -295,11 +983,11 @@ public class PaxosLogServer {
             final PrintWriter writer = new PrintWriter(clientSocket.getOutputStream(), true);
             if (isLeader) {
                 if (randomGenerator.nextFloat() >= messageLossRate) {
-                    writer.println(new ServerToClientMsg.ServerAckMsg().toString());
+                    writer.println(new ServerToClientMsg.ServerAckMsg(serverId).toString());
                 }
             } else {
                 if (randomGenerator.nextFloat() >= messageLossRate) {
-                    writer.println(new ServerToClientMsg.ServerNackMsg(getCurrentLeader()).toString());
+                    writer.println(new ServerToClientMsg.ServerNackMsg(getRedirectLeader()).toString());
                 }
             }
         } catch (IOException e) {
@@ -308,8 +996,92 @@ public class PaxosLogServer {
         }
     }
 
-    private void increaseViewNumber() {
-        this.viewNumber += 1;
+    /**
+     * A client that caches a stale leader may send chat message to a follower directly, redirect it to the current
+     * leader by NACK. If we have never connected to that client, simply drop the message and let it time out.
+     *
+     * @param clientId
+     */
+    private void handleClientChatAsFollower(final long clientId) {
+        replyToClient(clientId, new ServerToClientMsg.ServerNackMsg(getRedirectLeader()));
+    }
+
+    /**
+     * @return The leader a client is redirected to by NACK: the current leader, or NO_LEADER while this follower misses
+     * it, so that the client asks the other replicas for the leader about to be elected rather than one that is down
+     */
+    private int getRedirectLeader() {
+        return missesLeader() ? ServerToClientMsg.ServerNackMsg.NO_LEADER : getCurrentLeader();
+    }
+
+    /**
+     * @return Whether this replica is a follower that has not heard from its leader for a heartbeat period, which is
+     * when it grants a pre-vote against the leader
+     */
+    private boolean missesLeader() {
+        return !isLeader
+                && HeartBeatTracker.currentTimeMillis() - tracker.getLatestReceivedTimeStamp() >= HEART_BEAT_PERIOD_MILLS;
+    }
+
+    /**
+     * An administrator asks the leader to hand its leadership over, see transferLeadership. A follower redirects the
+     * administrator to the leader by NACK.
+     *
+     * @param transferMsg
+     */
+    private void handleClientTransfer(final ClientToServerMsg.TransferMsg transferMsg) {
+        if (!isLeader) {
+            replyToClient(transferMsg.getClientID(), new ServerToClientMsg.ServerNackMsg(getCurrentLeader()));
+            return;
+        }
+        pendingTransfer = transferMsg;
+    }
+
+    /**
+     * Send a message to a client, if we have never connected to that client, simply drop the message
+     *
+     * @param clientId the ID of a client or a session of a multiplexing client
+     */
+    private void replyToClient(final long clientId, final Message message) {
+        final Socket clientSocket = getClientSendSocket(clientId);
+        if (clientSocket == null) {
+            return;
+        }
+        try {
+            final PrintWriter writer = new PrintWriter(clientSocket.getOutputStream(), true);
+            if (randomGenerator.nextFloat() >= messageLossRate) {
+                writer.println(message.toString());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Fail to send message to client");
+        }
+    }
+
+    /**
+     * Unpack the chat messages of a multiplexing client into the client chat message queue, remembering which
+     * connection each session comes from so that its response can be routed back.
+     *
+     * @param batchMsg
+     */
+    private void handleClientBatch(final ClientToServerMsg.BatchMsg batchMsg) {
+        if (!isLeader) {
+            handleClientChatAsFollower(batchMsg.getConnectionClientID());
+            return;
+        }
+        for (final ClientToServerMsg.ChatMsg chatMsg : batchMsg.getChatMsgs()) {
+            clientConnectionIds.put(chatMsg.getClientID(), batchMsg.getConnectionClientID());
+            clientChatMessageQueue.offer(chatMsg.toString());
+        }
+    }
+
+    /**
+     * @param clientId the ID of a client or a session of a multiplexing client
+     * @return The socket used to send message to that client, null if we have never connected to it
+     */
+    private Socket getClientSendSocket(final long clientId) {
+        final Long connectionClientId = clientConnectionIds.get(clientId);
+        return allClientSendSockets.get(connectionClientId == null ? clientId : connectionClientId);
     }
 
     private void updateViewNumber(final int newViewNumber) {
@@ -327,6 +1099,127 @@ public class PaxosLogServer {
         return this.viewNumber % this.totalNumOfReplicas;
     }
 
+    /**
+     * Called by the tracker when the leader is suspected. Rather than moving to the next view, whose leader may be down
+     * or behind as well, ask the other replicas whether they miss the leader too (a pre-vote) and how far they have
+     * executed the log. Once a quorum (this replica included) misses the leader, the most up-to-date replica among
+     * them takes over in the next view it leads, so the views of unreachable replicas are skipped. A replica cut off
+     * from the others never gathers a quorum and does not disturb the view of the others.
+     */
+    private void runPreVote() {
+        final int suspectedViewNumber = viewNumber;
+        if (isLeader || leaderLease.isPromised()) {
+            return;
+        }
+        preVoteResponses.clear();
+        final String preVoteMsg = new PreVoteMsg(suspectedViewNumber, serverId).toString();
+        int numOfReachableReplicas = 0;
+        for (int replicaID = 0; replicaID < totalNumOfReplicas; replicaID++) {
+            if (replicaID != serverId && sendThroughHeartBeatSocket(replicaID, preVoteMsg)) {
+                numOfReachableReplicas += 1;
+            }
+        }
+        final long deadline = HeartBeatTracker.currentTimeMillis() + PRE_VOTE_TIMEOUT_MILLS;
+        while (preVoteResponses.size() < numOfReachableReplicas && HeartBeatTracker.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // the candidate is the replica with the highest executed watermark, on a tie the one whose view comes first
+        int candidateID = serverId;
+        int candidateExecutedWatermark = logEntrySlotManager.getExecutedWatermark();
+        int numOfGrants = 0;
+        for (final PreVoteResponseMsg preVoteResponseMsg : preVoteResponses.values()) {
+            if (preVoteResponseMsg.getViewNumber() > suspectedViewNumber) {
+                // another replica has moved on to a newer leader already, follow it
+                updateViewNumber(preVoteResponseMsg.getViewNumber());
+                return;
+            }
+            if (!preVoteResponseMsg.isGranted()) {
+                continue;
+            }
+            numOfGrants += 1;
+            final int responderID = preVoteResponseMsg.getResponseServerID();
+            if (preVoteResponseMsg.getExecutedWatermark() > candidateExecutedWatermark
+                    || (preVoteResponseMsg.getExecutedWatermark() == candidateExecutedWatermark
+                    && getNextViewLedBy(responderID, suspectedViewNumber) < getNextViewLedBy(candidateID, suspectedViewNumber))) {
+                candidateID = responderID;
+                candidateExecutedWatermark = preVoteResponseMsg.getExecutedWatermark();
+            }
+        }
+        if (viewNumber != suspectedViewNumber) {
+            // the pre-vote of another replica has been won meanwhile
+            return;
+        }
+        if (numOfGrants < numOfPhase1Responses) {
+            System.out.println("Pre-vote against the leader of view " + suspectedViewNumber + " failed with "
+                    + numOfGrants + " grants");
+            return;
+        }
+        final int newViewNumber = getNextViewLedBy(candidateID, suspectedViewNumber);
+        System.out.println("Pre-vote against the leader of view " + suspectedViewNumber + " won, replica "
+                + candidateID + " takes over in view " + newViewNumber);
+        final TakeOverMsg takeOverMsg = new TakeOverMsg(newViewNumber, serverId);
+        for (int replicaID = 0; replicaID < totalNumOfReplicas; replicaID++) {
+            if (replicaID != serverId) {
+                sendThroughHeartBeatSocket(replicaID, takeOverMsg.toString());
+            }
+        }
+        handleTakeOver(takeOverMsg);
+    }
+
+    /**
+     * @return The first view after the view that is led by the replica
+     */
+    private int getNextViewLedBy(final int replicaID, final int viewNumber) {
+        return viewNumber + 1 + ((replicaID - viewNumber - 1) % totalNumOfReplicas + totalNumOfReplicas) % totalNumOfReplicas;
+    }
+
+    /**
+     * Grant a pre-vote if this replica misses the leader as well: it is not the leader itself, it has not heard from
+     * the leader for a heartbeat period and it promises the leader no lease. The response carries the executed
+     * watermark of this replica, so that the most up-to-date replica can be picked.
+     *
+     * @param preVoteMsg
+     */
+    private void handlePreVote(final PreVoteMsg preVoteMsg) {
+        final int currentViewNumber = viewNumber;
+        final boolean granted = preVoteMsg.getViewNumber() >= currentViewNumber
+                && missesLeader()
+                && !leaderLease.isPromised();
+        sendThroughHeartBeatSocket(preVoteMsg.getRequestServerID(), new PreVoteResponseMsg(currentViewNumber, serverId,
+                logEntrySlotManager.getExecutedWatermark(), granted).toString());
+    }
+
+    /**
+     * Move to the view a pre-vote is won for, unless a lease promised to the leader of another view may still be held.
+     * A TAKE_OVER from the leader of our view hands its leadership over, that leader has given up its lease already.
+     * The leader of the new view takes over right away and recovers the unchosen slots before serving any client.
+     *
+     * @param takeOverMsg
+     */
+    private void handleTakeOver(final TakeOverMsg takeOverMsg) {
+        if (takeOverMsg.getViewNumber() <= viewNumber) {
+            return;
+        }
+        if (takeOverMsg.getElectorServerID() == getCurrentLeader() && takeOverMsg.getElectorServerID() != serverId) {
+            leaderLease.release(viewNumber);
+        }
+        if (leaderLease.isPromisedToOtherView(takeOverMsg.getViewNumber())) {
+            return;
+        }
+        updateViewNumber(takeOverMsg.getViewNumber());
+        // the new leader starts with a fresh silence
+        tracker.setLatestReceivedTimeStamp(HeartBeatTracker.currentTimeMillis());
+        if (getCurrentLeader() == serverId) {
+            recoveryPending = true;
+            tryToBecomeLeader();
+        }
+    }
+
     /**
      * Broadcast a message to all replicas (include itself) through send replica socket.
      *
@@ -341,6 +1234,61 @@ public class PaxosLogServer {
         }
     }
 
+    /**
+     * Multicast messages to all other replicas through send replica socket, flushing once per replica rather than once
+     * per message.
+     *
+     * @param messages
+     * @throws IOException
+     */
+    private void multicastToAllOtherReplicas(final List<String> messages) throws IOException {
+        createSendSocketsForReplicasIfNecessary();
+        multicastToReplicas(allReplicaSendSockets.keySet(), messages);
+    }
+
+    /**
+     * Multicast messages to some other replicas through send replica socket, flushing once per replica rather than once
+     * per message.
+     *
+     * @param replicaIDs
+     * @param messages
+     * @throws IOException
+     */
+    private void multicastToReplicas(final Collection<Integer> replicaIDs, final List<String> messages) throws IOException {
+        final long currentTimeStamp = System.nanoTime();
+        for (final Integer replicaID : replicaIDs) {
+            final Socket sendSocket = allReplicaSendSockets.get(replicaID);
+            if (replicaID == this.serverId || sendSocket == null) {
+                continue;
+            }
+            final PrintWriter writer = new PrintWriter(sendSocket.getOutputStream(), false);
+            for (final String message : messages) {
+                if (randomGenerator.nextFloat() >= messageLossRate) {
+                    writer.println(message);
+                }
+            }
+            writer.flush();
+            lastSentTimeStamps.put(replicaID, currentTimeStamp);
+        }
+    }
+
+    /**
+     * Multicast to all other replicas through send replica socket the messages of each, e.g. the ACCEPT messages of the
+     * fragments of a value, flushing once per replica rather than once per message.
+     *
+     * @param messagesByReplica for messagesByReplica, the key is the replica ID and value is the messages to send it
+     * @throws IOException
+     */
+    private void multicastToEachOtherReplica(final Map<Integer, List<String>> messagesByReplica) throws IOException {
+        createSendSocketsForReplicasIfNecessary();
+        for (final Integer replicaID : allReplicaSendSockets.keySet()) {
+            final List<String> messages = messagesByReplica.get(replicaID);
+            if (messages != null) {
+                multicastToReplicas(Collections.singletonList(replicaID), messages);
+            }
+        }
+    }
+
     /**
      * Multicast a message to all other replicas through send replica socket.
      *
@@ -349,6 +1297,7 @@ public class PaxosLogServer {
      */
     private void multicastToAllOtherReplicas(final String message) throws IOException {
         createSendSocketsForReplicasIfNecessary();
+        final long currentTimeStamp = System.nanoTime();
         for (final Integer replicaID : allReplicaSendSockets.keySet()) {
             if (replicaID == this.serverId) {
                 continue;
@@ -357,33 +1306,122 @@ public class PaxosLogServer {
             if (randomGenerator.nextFloat() >= messageLossRate) {
                 writer.println(message);
             }
+            lastSentTimeStamps.put(replicaID, currentTimeStamp);
         }
     }
 
     /**
-     * If the current process is leader, it will send heartbeat messages to all other replicas periodically.
+     * If the current process is leader, it will send heartbeat messages to the other replicas it has sent nothing to for
+     * a heartbeat period, since any message of the leader tells a follower that the leader is alive (and an accepted
+     * ACCEPT renews the lease like an acknowledged heartbeat). The heartbeats go through the heartbeat sockets.
+     * The time stamp of a heartbeat is the monotonic time it is sent at, the lease of the leader counts from it.
+     * A heartbeat also carries the commit watermark, so that the followers learn the last chosen values while idle.
      */
     public class HeartBeatLogger implements Runnable {
 
         @Override
         public void run() {
             while (true) {
-                if (getCurrentLeader() != serverId) {
+                if (getCurrentLeader() != serverId && isLeader) {
                     isLeader = false;
+                    leaderLease.revoke();
                 }
-                if (isLeader) {
-                    try {
-                        final long currentTimeStamp = System.currentTimeMillis();
-                        broadcastToAllReplicas("HEART_BEAT:" + viewNumber + ":" + currentTimeStamp);
-                        Thread.sleep(HEART_BEAT_PERIOD_MILLS);
-                    } catch (Exception e) {
-                        e.printStackTrace();
+                try {
+                    if (isLeader) {
+                        // the leader does not time out on itself
+                        tracker.setLatestReceivedTimeStamp(HeartBeatTracker.currentTimeMillis());
+                        sendHeartBeatsToIdleReplicas();
+                        Thread.sleep(HEART_BEAT_CHECK_PERIOD_MILLS);
+                    } else {
+                        Thread.sleep(FOLLOWER_CHECK_PERIOD_MILLS);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private void sendHeartBeatsToIdleReplicas() {
+            final long currentTimeStamp = System.nanoTime();
+            final CommitWatermark currentCommitWatermark = commitWatermark;
+            final HeartBeatMsg heartBeatMsg = new HeartBeatMsg(viewNumber, currentTimeStamp,
+                    currentCommitWatermark.roundNumber, currentCommitWatermark.firstUnchosenIndex);
+            boolean roundStarted = false;
+            for (int replicaID = 0; replicaID < totalNumOfReplicas; replicaID++) {
+                final Long lastSentTimeStamp = lastSentTimeStamps.get(replicaID);
+                if (replicaID == serverId
+                        || (lastSentTimeStamp != null && currentTimeStamp - lastSentTimeStamp < HEART_BEAT_PERIOD_MILLS * 1000000L)) {
+                    continue;
+                }
+                if (!roundStarted) {
+                    leaderLease.startRound(viewNumber, currentTimeStamp);
+                    roundStarted = true;
+                }
+                final Socket heartBeatSocket = getHeartBeatSocket(replicaID);
+                if (heartBeatSocket == null) {
+                    continue;
+                }
+                try {
+                    final PrintWriter writer = new PrintWriter(heartBeatSocket.getOutputStream(), true);
+                    if (randomGenerator.nextFloat() >= messageLossRate) {
+                        writer.println(heartBeatMsg.toString());
                     }
+                    lastSentTimeStamps.put(replicaID, currentTimeStamp);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    System.out.println("Fail to send heartbeat to replica ID: " + replicaID);
+                    allReplicaHeartBeatSockets.remove(replicaID);
                 }
             }
         }
     }
 
+    /**
+     * Send a message to a replica through the heartbeat socket to it
+     *
+     * @return Whether the replica is accessible
+     */
+    private boolean sendThroughHeartBeatSocket(final int replicaID, final String message) {
+        final Socket heartBeatSocket = getHeartBeatSocket(replicaID);
+        if (heartBeatSocket == null) {
+            return false;
+        }
+        try {
+            final PrintWriter writer = new PrintWriter(heartBeatSocket.getOutputStream(), true);
+            if (randomGenerator.nextFloat() >= messageLossRate) {
+                writer.println(message);
+            }
+            if (writer.checkError()) {
+                throw new IOException("Connection to replica ID: " + replicaID + " is broken");
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Fail to send message to replica ID: " + replicaID);
+            allReplicaHeartBeatSockets.remove(replicaID);
+            return false;
+        }
+    }
+
+    /**
+     * @return The heartbeat socket to a replica, connected on first use; null if the replica is not accessible now
+     */
+    private synchronized Socket getHeartBeatSocket(final int replicaID) {
+        Socket heartBeatSocket = allReplicaHeartBeatSockets.get(replicaID);
+        if (heartBeatSocket == null || heartBeatSocket.isClosed()) {
+            try {
+                heartBeatSocket = new Socket(allReplicasInfo.get(replicaID).getIp(), allReplicasInfo.get(replicaID).getPort());
+                heartBeatSocket.setTcpNoDelay(true);
+                allReplicaHeartBeatSockets.put(replicaID, heartBeatSocket);
+            } catch (IOException e) {
+                System.out.println("Replica whose address is " + allReplicasInfo.get(replicaID).getIp()
+                        + ':' + allReplicasInfo.get(replicaID).getPort() + " is not accessible now");
+                return null;
+            }
+        }
+        return heartBeatSocket;
+    }
+
     /**
      * If a replica is a leader, it should only behave as a leader.
      * The functionality of a leader includes send out heartbeats to all other replicas, handle client chat message and
@@ -391,9 +1429,36 @@ public class PaxosLogServer {
      */
     private void actAsLeader() {
         while (isLeader) {
+            // the slots chosen so far are executed, published and answered once the queue is drained, after a single
+            // force of the write-ahead log
+            if (hasUnsyncedLeaderChanges() && (clientChatMessageQueue.isEmpty() || pendingTransfer != null
+                    || unsyncedClientResponses.size() >= MAX_GROUP_COMMIT_RESPONSES)) {
+                syncLeaderChanges();
+            }
+            if (recoveryPending) {
+                recoveryPending = false;
+                recoverAsNewLeader();
+                continue;
+            }
+            final ClientToServerMsg.TransferMsg transferMsg = pendingTransfer;
+            if (transferMsg != null) {
+                pendingTransfer = null;
+                transferLeadership(transferMsg);
+                continue;
+            }
+            catchUpLeftOutReplicas();
             String nextString = clientChatMessageQueue.poll();
-            while (nextString == null) {
-                nextString = clientChatMessageQueue.poll();
+            while (nextString == null && pendingTransfer == null) {
+                // catch up the log of the replica while there is nothing else to do, e.g. after recovery
+                if (logEntrySlotManager.hasUnexecutedEntries()) {
+                    logEntrySlotManager.write();
+                }
+                announceCommitWatermark();
+                catchUpLeftOutReplicas();
+                nextString = pollClientChatMessage();
+            }
+            if (nextString == null) {
+                continue;
             }
             if (Message.getMessageType(nextString) == Message.MESSAGE_TYPE.CLIENT_TO_SERVER) {
                 if (ClientToServerMsg.getClientToServerType(nextString) == ClientToServerMsg.CLIENT_TO_SERVER_TYPE.CHAT) {
@@ -406,15 +1471,33 @@ public class PaxosLogServer {
             }
 
             // we should never execute the message that is already executed before
-            if (chosenChatMessages.contains(new ChatMessageIdentifier(nextChatMsg.getClientID(), nextChatMsg.getMessageSequenceNumber()))) {
-                sendResponseBackToClient();
+            if (clientSessionTable.isExecuted(nextChatMsg.getClientID(), nextChatMsg.getMessageSequenceNumber())) {
+                sendResponseBackToClient(clientSessionTable.getSlotIndex(nextChatMsg.getClientID(), nextChatMsg.getMessageSequenceNumber()));
                 break;
             }
+            // a message too far ahead of the executed ones of its client can not be tracked, tell the client by NACK so
+            // that it sends it again (after the earlier ones) rather than waiting for a response that never comes
+            if (!clientSessionTable.isWithinWindow(nextChatMsg.getClientID(), nextChatMsg.getMessageSequenceNumber())) {
+                replyToClient(nextChatMsg.getClientID(), new ServerToClientMsg.ServerNackMsg(getCurrentLeader()));
+                continue;
+            }
+            // the clients refuse to submit such a literal, so it can only come from a broken client
+            if (!isAdmissible(nextChatMsg)) {
+                System.out.println("Refuse message " + nextChatMsg.getMessageSequenceNumber() + " of client "
+                        + nextChatMsg.getClientID() + " that is reserved for the log");
+                continue;
+            }
+            // a reference is only ordered once the leader holds its payload, which the client sends along with the
+            // message, otherwise the client retransmits both
+            if (PayloadStore.isReference(nextChatMsg.getChatMessageLiteral())
+                    && !payloadStore.contains(nextChatMsg.getChatMessageLiteral())) {
+                continue;
+            }
             if (proposeValue(nextChatMsg)) {
-                sendResponseBackToClient();
+                sendResponseBackToClient(currentIndex);
             } else {
                 try {
-                    PrintWriter ClientPrintWriter = new PrintWriter(allClientSendSockets.get(nextChatMsg.getClientID()).getOutputStream(), true);
+                    PrintWriter ClientPrintWriter = new PrintWriter(getClientSendSocket(nextChatMsg.getClientID()).getOutputStream(), true);
                     if (randomGenerator.nextFloat() >= messageLossRate) {
                         ClientPrintWriter.println(new ServerToClientMsg.ServerNackMsg(getCurrentLeader()));
                     }
@@ -425,13 +1508,408 @@ public class PaxosLogServer {
 
             }
         }
+        // the slots chosen before the leadership was lost are still chosen, their clients get the responses
+        if (hasUnsyncedLeaderChanges()) {
+            syncLeaderChanges();
+        }
+    }
+
+    /**
+     * As a leader that has just taken over, fill every hole of the log before serving any client. Rather than one
+     * PREPARE and one ACCEPT round trip per slot, it runs phase 1 for all the slots from its first hole on at once with
+     * PREPARE_RANGE: a quorum answers with every value it has accepted from there on. Then every slot up to the last one
+     * accepted by the quorum that is not chosen here yet gets the value of the highest proposal among the answers (a
+     * no-op if there is none, including the skip slot) in a pipeline of ACCEPT messages, RECOVERY_WINDOW_SIZE slots in
+     * flight at a time. Each slot is chosen as soon as a quorum has accepted it, so the log executes while the rest are
+     * in flight. If an acceptor has promised a higher round, it starts over in a round above that one.
+     */
+    private void recoverAsNewLeader() {
+        final int firstRecoveredIndex = logEntrySlotManager.getFirstHoleIndex();
+        final long recoveryStartTime = System.nanoTime();
+        // what an earlier leadership of this replica held back is caught up by the recovery
+        leftOutAcceptMsgs.clear();
+        deferredAcceptResponses.clear();
+        // a round above the one this replica has promised, the other acceptors ignore a PREPARE below their promise
+        maxRound = Integer.max(maxRound, logEntrySlotManager.getMinProposal());
+        int numOfRecoveredSlots = 0;
+        while (isLeader) {
+            curProposalNumber = maxRound + 1;
+            maxRound += 1;
+            final Collection<PrepareRangeResponseMsg> prepareRangeResponses = sendPrepareRange(firstRecoveredIndex);
+            if (prepareRangeResponses == null) {
+                continue;
+            }
+            final TreeMap<Integer, String> recoveredValues = getRecoveredValues(firstRecoveredIndex, prepareRangeResponses);
+            if (sendRecoveredAccepts(recoveredValues)) {
+                numOfRecoveredSlots = recoveredValues.size();
+                // nothing is accepted beyond the recovered slots, the next client command goes straight to phase 2
+                prepared = true;
+                nextIndex = Math.max(recoveredValues.isEmpty() ? firstRecoveredIndex : recoveredValues.lastKey() + 1,
+                        logEntrySlotManager.getFirstUnchosenIndex());
+                break;
+            }
+        }
+        System.out.printf("Leader %d of view %d recovered %d slots from slot %d in %.1f ms%n", serverId, viewNumber,
+                numOfRecoveredSlots, firstRecoveredIndex, (System.nanoTime() - recoveryStartTime) / 1e6);
+    }
+
+    /**
+     * @return Whether a client may order the literal of the chat message. A literal starting like a value the replicas
+     * make up themselves can not be told apart from it: a fragment would be taken for the fragment of another value,
+     * and a reference is only resolved if it is the reference of the payload of the message itself. A literal starting
+     * with a reserved prefix is only ordered for the clients allowed to use it (see reservePrefix).
+     */
+    private boolean isAdmissible(final ClientToServerMsg.ChatMsg chatMsg) {
+        final String literal = chatMsg.getChatMessageLiteral();
+        for (final Map.Entry<String, Set<Long>> reservedPrefix : reservedPrefixes.entrySet()) {
+            if (literal.startsWith(reservedPrefix.getKey())
+                    && !reservedPrefix.getValue().contains(chatMsg.getClientID())) {
+                return false;
+            }
+        }
+        if (literal.equals(NO_OP_MESSAGE_LITERAL)) {
+            return false;
+        }
+        if (PayloadStore.isReference(literal)) {
+            return PayloadStore.isReferenceOf(literal, chatMsg.getClientID(), chatMsg.getMessageSequenceNumber());
+        }
+        return !FragmentCodec.isFragment(literal);
+    }
+
+    /**
+     * Reserve a prefix of the literals for the entries the host of this replica proposes itself, like the skips of a
+     * MenciusHost, so that a chat message starting with it is refused unless its client is allowed to use it (see
+     * allowReservedPrefix). Call it before the replica starts.
+     */
+    public void reservePrefix(final String prefix) {
+        reservedPrefixes.putIfAbsent(prefix, ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * Let a client order the literals starting with a prefix reserved before
+     */
+    public void allowReservedPrefix(final String prefix, final long clientId) {
+        final Set<Long> clientIds = reservedPrefixes.get(prefix);
+        if (clientIds == null) {
+            throw new IllegalArgumentException("Prefix " + prefix + " is not reserved");
+        }
+        clientIds.add(clientId);
+    }
+
+    /**
+     * Run phase 1 of the current round for every slot from the first one on until a quorum (this replica included)
+     * has promised it
+     *
+     * @return The answers of the other replicas of the quorum, null if an acceptor has promised a higher round or this
+     * replica is not the leader any more
+     */
+    private Collection<PrepareRangeResponseMsg> sendPrepareRange(final int fromSlot) {
+        promiseAsLeader();
+        final String prepareRangeMsg = new PrepareRangeMsg(curProposalNumber, fromSlot, viewNumber).toString();
+        final Map<Integer, PrepareRangeResponseMsg> prepareRangeResponses = new HashMap<>();
+        long retransmitTime = 0;
+        while (isLeader && prepareRangeResponses.size() < numOfPhase1Responses) {
+            if (HeartBeatTracker.currentTimeMillis() >= retransmitTime) {
+                try {
+                    multicastToAllOtherReplicas(prepareRangeMsg);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    System.out.println("Multicast Prepare Range Message Failed!");
+                }
+                retransmitTime = HeartBeatTracker.currentTimeMillis() + RECOVERY_RETRANSMIT_MILLS;
+            }
+            final String receivedMsg = pollReplicasMessage();
+            if (receivedMsg == null || Message.getMessageType(receivedMsg) != Message.MESSAGE_TYPE.PREPARE_RANGE_RESPONSE) {
+                continue;
+            }
+            final PrepareRangeResponseMsg responseMsg = PrepareRangeResponseMsg.fromString(receivedMsg);
+            if (responseMsg.getMinProposal() > curProposalNumber) {
+                maxRound = Integer.max(maxRound, responseMsg.getMinProposal());
+                return null;
+            }
+            if (responseMsg.getRoundNumber() == curProposalNumber) {
+                prepareRangeResponses.put(responseMsg.getResponseServerID(), responseMsg);
+            }
+        }
+        return isLeader ? prepareRangeResponses.values() : null;
+    }
+
+    /**
+     * @return The value to propose for every slot from the first one on that is not chosen here, up to the last slot
+     * accepted by this replica or the quorum that answered the PREPARE_RANGE: the value of the highest proposal
+     * accepted in it, or a no-op. With erasure coding, an accepted fragment stands for the value it is rebuilt from
+     * with the other fragments of that value in the answers; one that can not be rebuilt can not have been chosen, as
+     * a chosen value has k fragments in every phase 1 quorum, so the value of the next highest proposal is taken.
+     */
+    private TreeMap<Integer, String> getRecoveredValues(final int fromSlot, final Collection<PrepareRangeResponseMsg> prepareRangeResponses) {
+        final Map<Integer, List<LogEntry>> acceptedEntries = new HashMap<>();
+        int lastAcceptedSlot = fromSlot - 1;
+        for (int slotIndex = fromSlot; slotIndex <= logEntrySlotManager.getLastLogIndex(); slotIndex++) {
+            if (logEntrySlotManager.getProposalID(slotIndex) > 0) {
+                acceptedEntries.computeIfAbsent(slotIndex, key -> new ArrayList<>()).add(new LogEntry(
+                        logEntrySlotManager.getProposalID(slotIndex), logEntrySlotManager.getLogEntryValue(slotIndex)));
+                lastAcceptedSlot = slotIndex;
+            }
+        }
+        for (final PrepareRangeResponseMsg prepareRangeResponse : prepareRangeResponses) {
+            for (final Map.Entry<Integer, LogEntry> acceptedEntry : prepareRangeResponse.getAcceptedEntries().entrySet()) {
+                acceptedEntries.computeIfAbsent(acceptedEntry.getKey(), key -> new ArrayList<>()).add(acceptedEntry.getValue());
+                lastAcceptedSlot = Math.max(lastAcceptedSlot, acceptedEntry.getKey());
+            }
+        }
+        final TreeMap<Integer, String> recoveredValues = new TreeMap<>();
+        for (int slotIndex = fromSlot; slotIndex <= lastAcceptedSlot; slotIndex++) {
+            if (logEntrySlotManager.isEntryChosen(slotIndex)) {
+                continue;
+            }
+            final List<LogEntry> slotEntries = acceptedEntries.get(slotIndex);
+            recoveredValues.put(slotIndex, slotEntries == null ? NO_OP_MESSAGE_LITERAL : getRecoveredValue(slotEntries));
+        }
+        return recoveredValues;
+    }
+
+    /**
+     * @return The value of the highest proposal among the values accepted in a slot that is whole or can be rebuilt
+     * from their fragments, a no-op if there is none
+     */
+    private String getRecoveredValue(final List<LogEntry> slotEntries) {
+        slotEntries.sort(Comparator.comparingInt(LogEntry::getAcceptedProposal).reversed());
+        List<String> acceptedValues = null;
+        for (final LogEntry slotEntry : slotEntries) {
+            if (!FragmentCodec.isFragment(slotEntry.getAcceptedValue())) {
+                return slotEntry.getAcceptedValue();
+            }
+            if (acceptedValues == null) {
+                acceptedValues = new ArrayList<>();
+                for (final LogEntry entry : slotEntries) {
+                    acceptedValues.add(entry.getAcceptedValue());
+                }
+            }
+            // the fragments of the value may have been accepted in several proposals, each leader proposing it again
+            final String value = FragmentCodec.decode(acceptedValues, FragmentCodec.getDigest(slotEntry.getAcceptedValue()));
+            if (value != null) {
+                return value;
+            }
+        }
+        return NO_OP_MESSAGE_LITERAL;
+    }
+
+    /**
+     * Run phase 2 of the current round for the recovered slots, pipelining the ACCEPT messages. They are proposed on
+     * behalf of no client with the slot index as the sequence number, so that an ACCEPT_RESPONSE tells which slot it
+     * answers; only the responses of acceptors that have promised the current round count.
+     *
+     * @return Whether every recovered slot is chosen, false if an acceptor has promised a higher round or this replica
+     * is not the leader any more
+     */
+    private boolean sendRecoveredAccepts(final TreeMap<Integer, String> recoveredValues) {
+        final Iterator<Integer> unsentSlots = recoveredValues.keySet().iterator();
+        // the recovered slots in flight, the value is the set of acceptors that have accepted it
+        final Map<Integer, Set<Integer>> inFlightSlots = new HashMap<>();
+        long lastProgressTime = HeartBeatTracker.currentTimeMillis();
+        while (isLeader && (unsentSlots.hasNext() || !inFlightSlots.isEmpty())) {
+            // for acceptMsgs, the key is the replica ID and value is the ACCEPT messages to send it, which differ
+            // between the replicas only for the slots whose values are split into fragments
+            final Map<Integer, List<String>> acceptMsgs = new HashMap<>();
+            while (inFlightSlots.size() < RECOVERY_WINDOW_SIZE && unsentSlots.hasNext()) {
+                final int slotIndex = unsentSlots.next();
+                inFlightSlots.put(slotIndex, new HashSet<>());
+                addRecoveredAcceptMsgs(acceptMsgs, slotIndex, recoveredValues.get(slotIndex));
+            }
+            if (acceptMsgs.isEmpty() && HeartBeatTracker.currentTimeMillis() - lastProgressTime >= RECOVERY_RETRANSMIT_MILLS) {
+                for (final Integer slotIndex : inFlightSlots.keySet()) {
+                    addRecoveredAcceptMsgs(acceptMsgs, slotIndex, recoveredValues.get(slotIndex));
+                }
+                lastProgressTime = HeartBeatTracker.currentTimeMillis();
+            }
+            if (!acceptMsgs.isEmpty()) {
+                try {
+                    multicastToEachOtherReplica(acceptMsgs);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    System.out.println("Multicast Accept Message Failed!");
+                }
+            }
+
+            final String receivedMsg = pollReplicasMessage();
+            if (receivedMsg == null || Message.getMessageType(receivedMsg) != Message.MESSAGE_TYPE.ACCEPT_RESPONSE) {
+                continue;
+            }
+            final AcceptResponseMsg responseMsg = AcceptResponseMsg.fromString(receivedMsg);
+            if (responseMsg.getMinProposal() > curProposalNumber) {
+                maxRound = Integer.max(maxRound, responseMsg.getMinProposal());
+                return false;
+            }
+            final Set<Integer> acceptedServers = inFlightSlots.get(responseMsg.getMessageSequenceNumber());
+            if (responseMsg.getClientID() != WriteAheadLog.NO_CLIENT_ID || responseMsg.getMinProposal() != curProposalNumber
+                    || acceptedServers == null) {
+                continue;
+            }
+            acceptedServers.add(responseMsg.getResponseServerID());
+            lastProgressTime = HeartBeatTracker.currentTimeMillis();
+            if (acceptedServers.size() >= numOfPhase2Responses) {
+                final int slotIndex = responseMsg.getMessageSequenceNumber();
+                inFlightSlots.remove(slotIndex);
+                chooseRecoveredSlot(slotIndex, recoveredValues.get(slotIndex));
+            }
+        }
+        return isLeader;
+    }
+
+    private void addRecoveredAcceptMsgs(final Map<Integer, List<String>> acceptMsgs, final int slotIndex, final String recoveredValue) {
+        final List<String> fragments = encodeFragments(recoveredValue);
+        for (int replicaID = 0; replicaID < totalNumOfReplicas; replicaID++) {
+            if (replicaID == serverId) {
+                continue;
+            }
+            acceptMsgs.computeIfAbsent(replicaID, key -> new ArrayList<>()).add(new AcceptMsg(curProposalNumber, slotIndex,
+                    getDurableFirstUnchosenIndex(), WriteAheadLog.NO_CLIENT_ID, slotIndex,
+                    fragments == null ? recoveredValue : fragments.get(replicaID)).toString());
+        }
+    }
+
+    private void chooseRecoveredSlot(final int slotIndex, final String recoveredValue) {
+        final String acceptedValue = getAcceptedValue(slotIndex);
+        logEntrySlotManager.insertLogEntry(slotIndex, curProposalNumber, WriteAheadLog.NO_CLIENT_ID, slotIndex, recoveredValue);
+        logEntrySlotManager.chooseLogEntry(slotIndex);
+        markAcceptedClientMessageExecuted(slotIndex, acceptedValue, recoveredValue);
+        viewOfLatestChosenValue = viewNumber;
+        // the followers learn the chosen slots from the next ACCEPT or heartbeat
+        publishChosenSlot(slotIndex);
+    }
+
+    /**
+     * Execute the slots chosen so far and publish them with the commit watermark. The leader has counted its own accept
+     * of the slot, so with a write-ahead log nothing is done before the log is forced: the slot waits for
+     * syncLeaderChanges, which executes and publishes it along with the other slots chosen in the meantime.
+     */
+    private void publishChosenSlot(final int slotIndex) {
+        final CommitWatermark chosenCommitWatermark = new CommitWatermark(curProposalNumber,
+                logEntrySlotManager.getFirstUnchosenIndex());
+        if (logEntrySlotManager.isPersistent()) {
+            firstUnsyncedChosenIndex = Math.min(firstUnsyncedChosenIndex, slotIndex);
+            unsyncedCommitWatermark = chosenCommitWatermark;
+            return;
+        }
+        if (logEntrySlotManager.hasUnexecutedEntries()) {
+            logEntrySlotManager.write();
+        }
+        commitWatermark = chosenCommitWatermark;
+    }
+
+    /**
+     * @return The first unchosen index the other replicas may be told about: every slot below it is chosen, and the
+     * leader's own accepts of those it has chosen are on disk
+     */
+    private int getDurableFirstUnchosenIndex() {
+        return Math.min(logEntrySlotManager.getFirstUnchosenIndex(), firstUnsyncedChosenIndex);
+    }
+
+    /**
+     * @return Whether the leader has chosen a slot or owes a client a response since the write-ahead log was last forced
+     */
+    private boolean hasUnsyncedLeaderChanges() {
+        return unsyncedCommitWatermark != null || !unsyncedClientResponses.isEmpty();
+    }
+
+    /**
+     * As the leader, force the write-ahead log, then execute and publish the slots chosen since it was last forced and
+     * send the clients the responses that waited for it (a group commit like sendSyncedLeaderResponses)
+     */
+    private void syncLeaderChanges() {
+        logEntrySlotManager.syncWriteAheadLog();
+        if (unsyncedCommitWatermark != null) {
+            if (logEntrySlotManager.hasUnexecutedEntries()) {
+                logEntrySlotManager.write();
+            }
+            commitWatermark = unsyncedCommitWatermark;
+            unsyncedCommitWatermark = null;
+            firstUnsyncedChosenIndex = Integer.MAX_VALUE;
+        }
+        for (final ServerToClientMsg.ServerResponseMsg response : unsyncedClientResponses) {
+            replyToClient(response.getClientID(), response);
+        }
+        unsyncedClientResponses.clear();
+    }
+
+    /**
+     * Hand the leadership over to another replica, e.g. before this one is restarted, rather than letting the
+     * followers time out on it. No client command is in flight between two commands of the consensus thread, so the
+     * leader stops taking new ones (they wait in the queue) and catches the target up: it tells the target its commit
+     * watermark and sends it the chosen slots it misses until the target has chosen every slot below the first unchosen
+     * index of the leader. Then the leader gives up its lease and moves the replicas to the next view the target leads
+     * with TAKE_OVER, which releases the followers from the lease they promised it, so they follow the target at once.
+     * The commands waiting in the queue are redirected to the target by NACK. If the target can not be caught up in
+     * time, the leader keeps its leadership.
+     */
+    private void transferLeadership(final ClientToServerMsg.TransferMsg transferMsg) {
+        final int targetServerID = transferMsg.getTargetServerID() == ClientToServerMsg.TransferMsg.NEXT_REPLICA
+                ? (serverId + 1) % totalNumOfReplicas : transferMsg.getTargetServerID();
+        if (targetServerID == serverId || targetServerID < 0 || targetServerID >= totalNumOfReplicas) {
+            replyToClient(transferMsg.getClientID(), new ServerToClientMsg.ServerAckMsg(serverId));
+            return;
+        }
+        final CommitWatermark transferCommitWatermark = commitWatermark;
+        final String transferLeadershipMsg = new TransferLeadershipMsg(viewNumber, transferCommitWatermark.roundNumber,
+                transferCommitWatermark.firstUnchosenIndex).toString();
+        final long deadline = HeartBeatTracker.currentTimeMillis() + TRANSFER_TIMEOUT_MILLS;
+        int targetFirstUnchosenIndex = -1;
+        while (targetFirstUnchosenIndex < transferCommitWatermark.firstUnchosenIndex && HeartBeatTracker.currentTimeMillis() < deadline) {
+            sendThroughHeartBeatSocket(targetServerID, transferLeadershipMsg);
+            final long retryDeadline = HeartBeatTracker.currentTimeMillis() + TRANSFER_RETRY_MILLS;
+            while (HeartBeatTracker.currentTimeMillis() < retryDeadline) {
+                final String receivedMsg = pollReplicasMessage();
+                if (receivedMsg == null || Message.getMessageType(receivedMsg) != Message.MESSAGE_TYPE.TRANSFER_LEADERSHIP_RESPONSE) {
+                    continue;
+                }
+                final TransferLeadershipResponseMsg responseMsg = TransferLeadershipResponseMsg.fromString(receivedMsg);
+                if (responseMsg.getViewNumber() == viewNumber && responseMsg.getResponseServerID() == targetServerID) {
+                    targetFirstUnchosenIndex = responseMsg.getFirstUnchosenIndex();
+                    // the target has chosen what it accepted in our round, it misses the slots accepted in other rounds
+                    sendSuccessMessages(targetServerID, targetFirstUnchosenIndex, transferCommitWatermark.firstUnchosenIndex);
+                    break;
+                }
+            }
+        }
+        if (targetFirstUnchosenIndex < transferCommitWatermark.firstUnchosenIndex) {
+            System.out.println("Leader " + serverId + " failed to catch replica " + targetServerID
+                    + " up and keeps its leadership");
+            replyToClient(transferMsg.getClientID(), new ServerToClientMsg.ServerAckMsg(serverId));
+            return;
+        }
+
+        final int newViewNumber = getNextViewLedBy(targetServerID, viewNumber);
+        leaderLease.revoke();
+        updateViewNumber(newViewNumber);
+        isLeader = false;
+        final String takeOverMsg = new TakeOverMsg(newViewNumber, serverId).toString();
+        for (int replicaID = 0; replicaID < totalNumOfReplicas; replicaID++) {
+            if (replicaID != serverId) {
+                sendThroughHeartBeatSocket(replicaID, takeOverMsg);
+            }
+        }
+        System.out.println("Leader " + serverId + " handed its leadership over to replica " + targetServerID
+                + " in view " + newViewNumber);
+        String queuedMsg;
+        while ((queuedMsg = clientChatMessageQueue.poll()) != null) {
+            replyToClient(ClientToServerMsg.ChatMsg.fromString(queuedMsg).getClientID(),
+                    new ServerToClientMsg.ServerNackMsg(targetServerID));
+        }
+        replyToClient(transferMsg.getClientID(), new ServerToClientMsg.ServerNackMsg(targetServerID));
     }
 
-    private void sendResponseBackToClient() {
+    private void sendResponseBackToClient(final int slotIndex) {
+        final ServerToClientMsg.ServerResponseMsg responseMsg = new ServerToClientMsg.ServerResponseMsg(
+                nextChatMsg.getClientID(), nextChatMsg.getMessageSequenceNumber(), slotIndex);
+        // the leader has counted its own accept of the slot, which is on disk only once the write-ahead log is forced
+        if (logEntrySlotManager.isPersistent()) {
+            unsyncedClientResponses.add(responseMsg);
+            return;
+        }
         try {
-            PrintWriter ClientPrintWriter = new PrintWriter(allClientSendSockets.get(nextChatMsg.getClientID()).getOutputStream(), true);
+            PrintWriter ClientPrintWriter = new PrintWriter(getClientSendSocket(nextChatMsg.getClientID()).getOutputStream(), true);
             if (randomGenerator.nextFloat() >= messageLossRate) {
-                ClientPrintWriter.println(new ServerToClientMsg.ServerResponseMsg(nextChatMsg.getMessageSequenceNumber()));
+                ClientPrintWriter.println(responseMsg);
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -448,6 +1926,14 @@ public class PaxosLogServer {
 
     public boolean proposeValueInNextIndex(ClientToServerMsg.ChatMsg InputValue) {
         writeValueThisTime = InputValue;
+        if (prepared == false && fragmentCodec != null) {
+            // with erasure coding the single slot PREPARE can not rebuild a value from the fragments the acceptors
+            // answer with, the recovery of a new leader does for all the slots from the first hole on
+            recoverAsNewLeader();
+            if (prepared == false) {
+                return false;
+            }
+        }
         if (prepared == true) {
             currentIndex = nextIndex;
             nextIndex += 1;
@@ -483,23 +1969,44 @@ public class PaxosLogServer {
             currentIndex += 1;
             nextIndex += 1;
         }
+        maxRound = Integer.max(maxRound, logEntrySlotManager.getMinProposal());
         curProposalNumber = maxRound + 1;
         maxRound += 1;
+        promiseAsLeader();
         receivedDistinctPrepareResponse = new HashSet<>();
         receivedDistinctNoMoreAccepted = new HashSet<>();
 
-        PrepareMsg SendPrepareMsg = new PrepareMsg(curProposalNumber, currentIndex, InputValue.getClientID(), InputValue.getMessageSequenceNumber());
+        PrepareMsg SendPrepareMsg = new PrepareMsg(curProposalNumber, currentIndex, InputValue.getClientID(), InputValue.getMessageSequenceNumber(),
+                viewNumber);
         new WaitRepeatSendPrepare(SendPrepareMsg, 20);
     }
 
 
+    /**
+     * Promise the current round as one acceptor of its own phase 1 quorum. The PREPARE or PREPARE_RANGE relying on the
+     * promise is only sent once it is on disk, so the write-ahead log is forced along with what else waits for it.
+     */
+    private void promiseAsLeader() {
+        if (curProposalNumber > logEntrySlotManager.getMinProposal()) {
+            logEntrySlotManager.setMinProposal(curProposalNumber);
+        }
+        syncLeaderChanges();
+    }
+
     public void handlePrepareResponse(ClientToServerMsg.ChatMsg InputValue) {
         int maxReplyAcceptedProposal = 0;
-        while (receivedDistinctPrepareResponse.size() < numOfToleratedFailures) {
+        // the leader is one of the acceptors of its quorum, what it has accepted counts like the response of any other
+        if (currentIndex <= logEntrySlotManager.getLastLogIndex() && logEntrySlotManager.getProposalID(currentIndex) > 0) {
+            maxReplyAcceptedProposal = logEntrySlotManager.getProposalID(currentIndex);
+            writeValueThisTime = new ClientToServerMsg.ChatMsg(InputValue.getClientID(), InputValue.getMessageSequenceNumber(),
+                    logEntrySlotManager.getLogEntryValue(currentIndex));
+        }
+        final boolean noMoreAcceptedByLeader = currentIndex > logEntrySlotManager.getLastLogIndex();
+        while (receivedDistinctPrepareResponse.size() < numOfPhase1Responses) {
 
-            String ReceivedMsg = replicasMessageQueue.poll();
+            String ReceivedMsg = pollReplicasMessage();
             while (ReceivedMsg == null) {
-                ReceivedMsg = replicasMessageQueue.poll();
+                ReceivedMsg = pollReplicasMessage();
             }
             if (Message.getMessageType(ReceivedMsg) == Message.MESSAGE_TYPE.PREPARE_RESPONSE) {
                 PrepareResponseMsg ReceivedPreparedResponse = PrepareResponseMsg.fromString(ReceivedMsg);
@@ -516,7 +2023,7 @@ public class PaxosLogServer {
                     if (ReceivedPreparedResponse.isNoMoreAccepted()) {
                         receivedDistinctNoMoreAccepted.add(ReceivedPreparedResponse.getResponseServerID());
                     }
-                    if (receivedDistinctNoMoreAccepted.size() >= numOfToleratedFailures) {
+                    if (noMoreAcceptedByLeader && receivedDistinctNoMoreAccepted.size() >= numOfPhase1Responses) {
                         prepared = true;
                     }
                 } else {
@@ -530,55 +2037,265 @@ public class PaxosLogServer {
 
     public void sendAccept(ClientToServerMsg.ChatMsg InputValue) {
         receivedDistinctAcceptResponse = new HashSet<>();
+        announcedFirstUnchosenIndex = getDurableFirstUnchosenIndex();
+        acceptTimeStamp = System.nanoTime();
+        leaderLease.startRound(viewNumber, acceptTimeStamp);
         AcceptMsg sendAcceptMsg = new AcceptMsg(curProposalNumber, currentIndex,
-                logEntrySlotManager.getFirstUnchosenIndex(), writeValueThisTime.getClientID(),
+                announcedFirstUnchosenIndex, writeValueThisTime.getClientID(),
                 writeValueThisTime.getMessageSequenceNumber(), writeValueThisTime.getChatMessageLiteral());
-        new WaitRepeatSendAccept(sendAcceptMsg, 20);
+        final List<String> fragments = encodeFragments(writeValueThisTime.getChatMessageLiteral());
+        if (thrifty) {
+            thriftyQuorum = getThriftyQuorum();
+            final List<Integer> leftOutReplicas = holdBackFromLeftOutReplicas(sendAcceptMsg);
+            thriftyAcceptSender = new WaitRepeatSendAccept(sendAcceptMsg, thriftyQuorum, leftOutReplicas,
+                    getThriftyTimeoutMillis(), 20);
+        } else if (fragments != null) {
+            // every replica accepts its own fragment, the leader keeps the whole value
+            final Map<Integer, String> fragmentAcceptMsgs = new HashMap<>();
+            for (int replicaID = 0; replicaID < totalNumOfReplicas; replicaID++) {
+                fragmentAcceptMsgs.put(replicaID, new AcceptMsg(curProposalNumber, currentIndex, announcedFirstUnchosenIndex,
+                        writeValueThisTime.getClientID(), writeValueThisTime.getMessageSequenceNumber(),
+                        fragments.get(replicaID)).toString());
+            }
+            new WaitRepeatSendAccept(sendAcceptMsg, fragmentAcceptMsgs, 20);
+        } else {
+            new WaitRepeatSendAccept(sendAcceptMsg, 20);
+        }
+    }
+
+    /**
+     * @return The fragment of every replica, the one at index i is for replica i, for a value the leader proposes with
+     * erasure coding; null if the value goes to every replica in full, as a short one (e.g. a no-op or the reference of
+     * a disseminated payload) does
+     */
+    private List<String> encodeFragments(final String value) {
+        if (fragmentCodec == null || value.length() < MIN_FRAGMENTED_VALUE_LENGTH || FragmentCodec.isFragment(value)) {
+            return null;
+        }
+        return fragmentCodec.encode(value);
+    }
+
+    /**
+     * @return The other replicas with the shortest smoothed round trip times that complete a phase 2 quorum, a replica
+     * not measured yet comes after the measured ones
+     */
+    private List<Integer> getThriftyQuorum() {
+        createSendSocketsForReplicasIfNecessary();
+        final List<Integer> candidates = new ArrayList<>();
+        for (int replicaID = 0; replicaID < totalNumOfReplicas; replicaID++) {
+            if (replicaID != serverId && allReplicaSendSockets.containsKey(replicaID)) {
+                candidates.add(replicaID);
+            }
+        }
+        candidates.sort(Comparator.comparingLong((Integer replicaID) -> roundTripTimeNanos.getOrDefault(replicaID, Long.MAX_VALUE)));
+        return new ArrayList<>(candidates.subList(0, Math.min(numOfPhase2Responses, candidates.size())));
+    }
+
+    /**
+     * @return How long the leader waits for the thrifty quorum before it sends the ACCEPT to every replica
+     */
+    private long getThriftyTimeoutMillis() {
+        long slowestRoundTripTimeNanos = 0;
+        for (final Integer replicaID : thriftyQuorum) {
+            slowestRoundTripTimeNanos = Math.max(slowestRoundTripTimeNanos, roundTripTimeNanos.getOrDefault(replicaID, 0L));
+        }
+        return Math.max(THRIFTY_MIN_TIMEOUT_MILLS, THRIFTY_TIMEOUT_RTT_MULTIPLE * slowestRoundTripTimeNanos / 1000000L);
+    }
+
+    /**
+     * As the leader, fold the time from a message sent at the time stamp to the response of a replica into the smoothed
+     * round trip time to that replica
+     */
+    private void recordRoundTripTime(final int replicaID, final long sentTimeStamp) {
+        if (!thrifty || !isLeader) {
+            return;
+        }
+        roundTripTimeNanos.merge(replicaID, System.nanoTime() - sentTimeStamp,
+                (smoothedNanos, sampleNanos) -> smoothedNanos + (sampleNanos - smoothedNanos) / 8);
+    }
+
+    /**
+     * Keep the ACCEPT for the replicas left out of the thrifty quorum, they get it with catchUpLeftOutReplicas. A replica
+     * of the quorum that was left out before gets what is held back from it first, so that it does not answer the
+     * ACCEPT with the first unchosen index of a log with holes, which the leader would fill with SUCCESS messages.
+     *
+     * @return The replicas left out
+     */
+    private List<Integer> holdBackFromLeftOutReplicas(final AcceptMsg acceptMsg) {
+        final int firstUnchosenIndex = getDurableFirstUnchosenIndex();
+        for (final Integer replicaID : thriftyQuorum) {
+            final List<AcceptMsg> heldBackMsgs = leftOutAcceptMsgs.remove(replicaID);
+            if (heldBackMsgs != null) {
+                catchUpReplica(replicaID, heldBackMsgs, firstUnchosenIndex);
+            }
+        }
+        if (leftOutAcceptMsgs.isEmpty()) {
+            leftOutTimeStamp = HeartBeatTracker.currentTimeMillis();
+        }
+        final List<Integer> leftOutReplicas = new ArrayList<>();
+        for (int replicaID = 0; replicaID < totalNumOfReplicas; replicaID++) {
+            if (replicaID != serverId && !thriftyQuorum.contains(replicaID)) {
+                leftOutAcceptMsgs.computeIfAbsent(replicaID, key -> new ArrayList<>()).add(acceptMsg);
+                leftOutReplicas.add(replicaID);
+            }
+        }
+        return leftOutReplicas;
+    }
+
+    /**
+     * In thrifty mode, send the replicas left out of the thrifty quorum the ACCEPT messages held back from them, in one
+     * batch once a replica has THRIFTY_CATCH_UP_BATCH_SIZE of them or the first one is THRIFTY_CATCH_UP_MILLS old, so
+     * that they keep up with the log off the commit path of the leader. Each carries the current first unchosen index,
+     * which tells the replica its slot is chosen already, so it is not answered (see handleAcceptMessage). The batches
+     * do not count as traffic for the heartbeats, so the left out replicas keep getting heartbeats, whose responses
+     * measure their round trip times.
+     */
+    private void catchUpLeftOutReplicas() {
+        if (leftOutAcceptMsgs.isEmpty()) {
+            return;
+        }
+        int numOfHeldBackMsgs = 0;
+        for (final List<AcceptMsg> heldBackMsgs : leftOutAcceptMsgs.values()) {
+            numOfHeldBackMsgs = Math.max(numOfHeldBackMsgs, heldBackMsgs.size());
+        }
+        if (numOfHeldBackMsgs < THRIFTY_CATCH_UP_BATCH_SIZE
+                && HeartBeatTracker.currentTimeMillis() - leftOutTimeStamp < THRIFTY_CATCH_UP_MILLS) {
+            return;
+        }
+        final int firstUnchosenIndex = getDurableFirstUnchosenIndex();
+        for (final Map.Entry<Integer, List<AcceptMsg>> entry : leftOutAcceptMsgs.entrySet()) {
+            catchUpReplica(entry.getKey(), entry.getValue(), firstUnchosenIndex);
+        }
+        leftOutAcceptMsgs.clear();
+    }
+
+    /**
+     * Send a replica the ACCEPT messages held back from it in one batch, each with the given first unchosen index
+     */
+    private void catchUpReplica(final int replicaID, final List<AcceptMsg> heldBackMsgs, final int firstUnchosenIndex) {
+        final Socket sendSocket = allReplicaSendSockets.get(replicaID);
+        if (sendSocket == null) {
+            return;
+        }
+        try {
+            final PrintWriter writer = new PrintWriter(sendSocket.getOutputStream(), false);
+            for (final AcceptMsg acceptMsg : heldBackMsgs) {
+                if (randomGenerator.nextFloat() >= messageLossRate) {
+                    writer.println(new AcceptMsg(acceptMsg.getRoundNumber(), acceptMsg.getSlotIndex(),
+                            Math.max(firstUnchosenIndex, acceptMsg.getFirstUnchosenIndex()), acceptMsg.getClientID(),
+                            acceptMsg.getMessageSequenceNumber(), acceptMsg.getChatMessageLiteral()).toString());
+                }
+            }
+            writer.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Fail to catch up replica ID: " + replicaID);
+        }
     }
 
     public void handleAcceptResponse(ClientToServerMsg.ChatMsg InputValue) {
-        while (receivedDistinctAcceptResponse.size() < numOfToleratedFailures) {
-            String ReceivedMsg = replicasMessageQueue.poll();
+        while (receivedDistinctAcceptResponse.size() < numOfPhase2Responses) {
+            String ReceivedMsg = pollReplicasMessage();
             while (ReceivedMsg == null) {
-                ReceivedMsg = replicasMessageQueue.poll();
+                ReceivedMsg = pollReplicasMessage();
             }
             if (Message.getMessageType(ReceivedMsg) == Message.MESSAGE_TYPE.ACCEPT_RESPONSE) {
                 AcceptResponseMsg ReceivedAcceptResponse = AcceptResponseMsg.fromString(ReceivedMsg);
                 if (ReceivedAcceptResponse.getClientID() == writeValueThisTime.getClientID()
                         && ReceivedAcceptResponse.getMessageSequenceNumber() == writeValueThisTime.getMessageSequenceNumber()) {
                     receivedDistinctAcceptResponse.add(ReceivedAcceptResponse.getResponseServerID());
+                    recordRoundTripTime(ReceivedAcceptResponse.getResponseServerID(), acceptTimeStamp);
                     if (ReceivedAcceptResponse.getMinProposal() > curProposalNumber) {
                         maxRound = ReceivedAcceptResponse.getMinProposal();
                         prepared = false;
                         return;
                     }
+                    leaderLease.onAcknowledgement(ReceivedAcceptResponse.getViewNumber(), acceptTimeStamp,
+                            ReceivedAcceptResponse.getResponseServerID());
                     if (ReceivedAcceptResponse.getFirstUnchosenIndex() <= logEntrySlotManager.getLastLogIndex() && logEntrySlotManager.isEntryChosen(ReceivedAcceptResponse.getFirstUnchosenIndex())) {
-                        try {
-                            PrintWriter SuccessPrintWriter = new PrintWriter(allReplicaSendSockets.get(ReceivedAcceptResponse.getResponseServerID()).getOutputStream(), true);
-                            for (int sendSuccessIndex = ReceivedAcceptResponse.getFirstUnchosenIndex(); sendSuccessIndex < logEntrySlotManager.getFirstUnchosenIndex(); sendSuccessIndex++) {
-                                if (randomGenerator.nextFloat() >= messageLossRate) {
-                                    SuccessPrintWriter.println(new SuccessMsg(sendSuccessIndex, logEntrySlotManager.getLogEntryValue(sendSuccessIndex)));
-                                }
-                            }
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                            System.out.printf("fail to build printwriter to replica ID: %s", ReceivedAcceptResponse.getResponseServerID());
-                        }
+                        sendSuccessMessages(ReceivedAcceptResponse.getResponseServerID(),
+                                ReceivedAcceptResponse.getFirstUnchosenIndex(), getDurableFirstUnchosenIndex());
                     }
                 } else {
                     System.out.println("received accept response with inconsistent ClientID and MessageSequence Number");
                 }
             }
         }
-        logEntrySlotManager.insertLogEntry(currentIndex, curProposalNumber, writeValueThisTime.getChatMessageLiteral());
+        if (thrifty) {
+            // a replica of the thrifty quorum that has not answered yet is charged with the time it has taken so far, so
+            // that a replica that has become slow drops out of the quorum
+            for (final Integer replicaID : thriftyQuorum) {
+                if (!receivedDistinctAcceptResponse.contains(replicaID)) {
+                    recordRoundTripTime(replicaID, acceptTimeStamp);
+                }
+            }
+            // the replicas left out have got the ACCEPT already if the quorum was late
+            if (thriftyAcceptSender.expanded) {
+                for (final List<AcceptMsg> heldBackMsgs : leftOutAcceptMsgs.values()) {
+                    if (!heldBackMsgs.isEmpty() && heldBackMsgs.get(heldBackMsgs.size() - 1) == thriftyAcceptSender.sendAcceptMsg) {
+                        heldBackMsgs.remove(heldBackMsgs.size() - 1);
+                    }
+                }
+            }
+        }
+        final String acceptedValue = getAcceptedValue(currentIndex);
+        logEntrySlotManager.insertLogEntry(currentIndex, curProposalNumber, writeValueThisTime.getClientID(),
+                writeValueThisTime.getMessageSequenceNumber(), writeValueThisTime.getChatMessageLiteral());
         logEntrySlotManager.chooseLogEntry(currentIndex);
-        logEntrySlotManager.write();
-        chosenChatMessages.add(new ChatMessageIdentifier(writeValueThisTime.getClientID(), writeValueThisTime.getMessageSequenceNumber()));
+        viewOfLatestChosenValue = viewNumber;
+        // the followers learn the chosen value from the next ACCEPT or heartbeat instead of a SUCCESS message
+        publishChosenSlot(currentIndex);
+        if (writeValueThisTime.getClientID() != WriteAheadLog.NO_CLIENT_ID) {
+            acceptedClientMessages.remove(currentIndex);
+            clientSessionTable.markExecuted(writeValueThisTime.getClientID(), writeValueThisTime.getMessageSequenceNumber(), currentIndex);
+        } else {
+            // a value recovered by a new leader
+            markAcceptedClientMessageExecuted(currentIndex, acceptedValue, writeValueThisTime.getChatMessageLiteral());
+        }
+    }
+
+    /**
+     * Catch a replica up with the chosen slots from its first unchosen index to ours
+     */
+    private void sendSuccessMessages(final int replicaID, final int fromIndex, final int toIndex) {
+        if (fromIndex >= toIndex) {
+            return;
+        }
+        try {
+            PrintWriter SuccessPrintWriter = new PrintWriter(allReplicaSendSockets.get(replicaID).getOutputStream(), true);
+            for (int sendSuccessIndex = fromIndex; sendSuccessIndex < toIndex; sendSuccessIndex++) {
+                // with erasure coding the replica gets its own fragment of a value the leader holds in full; a slot the
+                // leader only holds a fragment of (chosen before it took over) is sent as that fragment
+                final String chosenValue = logEntrySlotManager.getLogEntryValue(sendSuccessIndex);
+                final List<String> fragments = encodeFragments(chosenValue);
+                if (randomGenerator.nextFloat() >= messageLossRate) {
+                    SuccessPrintWriter.println(new SuccessMsg(sendSuccessIndex,
+                            fragments == null ? chosenValue : fragments.get(replicaID)));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("fail to build printwriter to replica ID: %s", replicaID);
+        }
+    }
+
+    /**
+     * As the leader with nothing to propose, tell the followers about the values chosen since the last ACCEPT with a
+     * heartbeat, so that they do not wait for the next periodic one to execute them. The heartbeat does not start a
+     * lease round, its acknowledgements are ignored.
+     */
+    private void announceCommitWatermark() {
+        final CommitWatermark currentCommitWatermark = commitWatermark;
+        if (currentCommitWatermark.firstUnchosenIndex <= announcedFirstUnchosenIndex) {
+            return;
+        }
+        announcedFirstUnchosenIndex = currentCommitWatermark.firstUnchosenIndex;
         try {
-            multicastToAllOtherReplicas((new SuccessMsg(currentIndex, writeValueThisTime.getChatMessageLiteral())).toString());
+            multicastToAllOtherReplicas(new HeartBeatMsg(viewNumber, System.nanoTime(),
+                    currentCommitWatermark.roundNumber, currentCommitWatermark.firstUnchosenIndex).toString());
         } catch (IOException e) {
             e.printStackTrace();
-            System.out.println("Error multicast success!");
+            System.out.println("Error multicast commit watermark!");
         }
     }
 
@@ -598,7 +2315,7 @@ public class PaxosLogServer {
         @Override
         public void run() {
 
-            if (MessageSeqNum == nextChatMsg.getMessageSequenceNumber() && receivedDistinctPrepareResponse.size() < numOfToleratedFailures) {
+            if (MessageSeqNum == nextChatMsg.getMessageSequenceNumber() && receivedDistinctPrepareResponse.size() < numOfPhase1Responses) {
                 try {
                     multicastToAllOtherReplicas(sendPrepareMsg.toString());
                 } catch (IOException e) {
@@ -615,7 +2332,7 @@ public class PaxosLogServer {
         final Timer timer;
 
         public WaitRepeatSendPrepare(PrepareMsg SendPrepareMsg, int milliseconds) {
-            timer = new Timer();
+            timer = retransmitTimer;
             Calendar calendar = Calendar.getInstance();
             Date time = calendar.getTime();
             timer.schedule(new WaitRepeatSendPrepareTask(SendPrepareMsg), time, milliseconds * 1000);
@@ -629,17 +2346,45 @@ public class PaxosLogServer {
     public class WaitRepeatSendAcceptTask extends TimerTask {
         final AcceptMsg sendAcceptMsg;
         final int MessageSequenceNum;
+        // the replicas to send the ACCEPT message to, null for all other replicas
+        final List<Integer> replicaIDs;
+        // in thrifty mode, the sender to tell once the ACCEPT message is sent to the replicas left out of the quorum
+        final WaitRepeatSendAccept sender;
+        // with erasure coding, the key is the replica ID and value is the ACCEPT message of its fragment, null if every
+        // replica gets sendAcceptMsg
+        final Map<Integer, String> fragmentAcceptMsgs;
+
+        public WaitRepeatSendAcceptTask(AcceptMsg sendAcceptMsg, List<Integer> replicaIDs, WaitRepeatSendAccept sender) {
+            this(sendAcceptMsg, replicaIDs, sender, null);
+        }
 
-        public WaitRepeatSendAcceptTask(AcceptMsg sendAcceptMsg) {
+        public WaitRepeatSendAcceptTask(AcceptMsg sendAcceptMsg, List<Integer> replicaIDs, WaitRepeatSendAccept sender,
+                                        Map<Integer, String> fragmentAcceptMsgs) {
             this.sendAcceptMsg = sendAcceptMsg;
             this.MessageSequenceNum = sendAcceptMsg.getMessageSequenceNumber();
+            this.replicaIDs = replicaIDs;
+            this.sender = sender;
+            this.fragmentAcceptMsgs = fragmentAcceptMsgs;
         }
 
         @Override
         public void run() {
-            if (nextChatMsg.getMessageSequenceNumber() == MessageSequenceNum && receivedDistinctAcceptResponse.size() < numOfToleratedFailures) {
+            if (nextChatMsg.getMessageSequenceNumber() == MessageSequenceNum && receivedDistinctAcceptResponse.size() < numOfPhase2Responses) {
                 try {
-                    multicastToAllOtherReplicas(sendAcceptMsg.toString());
+                    if (fragmentAcceptMsgs != null) {
+                        final Map<Integer, List<String>> messagesByReplica = new HashMap<>();
+                        for (final Map.Entry<Integer, String> entry : fragmentAcceptMsgs.entrySet()) {
+                            messagesByReplica.put(entry.getKey(), Collections.singletonList(entry.getValue()));
+                        }
+                        multicastToEachOtherReplica(messagesByReplica);
+                    } else if (replicaIDs == null) {
+                        multicastToAllOtherReplicas(sendAcceptMsg.toString());
+                    } else {
+                        if (sender != null) {
+                            sender.expanded = true;
+                        }
+                        multicastToReplicas(replicaIDs, Collections.singletonList(sendAcceptMsg.toString()));
+                    }
                 } catch (IOException e) {
                     e.printStackTrace();
                     System.out.println("Multicast Accept Message Failed!");
@@ -652,12 +2397,45 @@ public class PaxosLogServer {
 
     public class WaitRepeatSendAccept {
         final Timer timer;
+        final AcceptMsg sendAcceptMsg;
+        // whether the ACCEPT message has been sent to the replicas left out of the thrifty quorum too
+        volatile boolean expanded;
 
         public WaitRepeatSendAccept(AcceptMsg sendAcceptMsg, int milliseconds) {
-            timer = new Timer();
+            timer = retransmitTimer;
+            Calendar calendar = Calendar.getInstance();
+            Date time = calendar.getTime();
+            this.sendAcceptMsg = sendAcceptMsg;
+            timer.schedule(new WaitRepeatSendAcceptTask(sendAcceptMsg, null, null), time, milliseconds * 1000);
+        }
+
+        /**
+         * Send every other replica the ACCEPT message of its own fragment of the value of sendAcceptMsg
+         */
+        public WaitRepeatSendAccept(AcceptMsg sendAcceptMsg, Map<Integer, String> fragmentAcceptMsgs, int milliseconds) {
+            timer = retransmitTimer;
             Calendar calendar = Calendar.getInstance();
             Date time = calendar.getTime();
-            timer.schedule(new WaitRepeatSendAcceptTask(sendAcceptMsg), time, milliseconds * 1000);
+            this.sendAcceptMsg = sendAcceptMsg;
+            timer.schedule(new WaitRepeatSendAcceptTask(sendAcceptMsg, null, null, fragmentAcceptMsgs), time,
+                    milliseconds * 1000);
+        }
+
+        /**
+         * Send the ACCEPT message to the thrifty quorum first, to the replicas left out too if the quorum has not
+         * answered after expandMilliseconds, and to every other replica from then on
+         */
+        public WaitRepeatSendAccept(AcceptMsg sendAcceptMsg, List<Integer> thriftyQuorum, List<Integer> leftOutReplicas,
+                                    long expandMilliseconds, int milliseconds) {
+            timer = retransmitTimer;
+            Calendar calendar = Calendar.getInstance();
+            Date time = calendar.getTime();
+            this.sendAcceptMsg = sendAcceptMsg;
+            timer.schedule(new WaitRepeatSendAcceptTask(sendAcceptMsg, thriftyQuorum, null), time);
+            timer.schedule(new WaitRepeatSendAcceptTask(sendAcceptMsg, leftOutReplicas, this),
+                    new Date(time.getTime() + expandMilliseconds));
+            timer.schedule(new WaitRepeatSendAcceptTask(sendAcceptMsg, null, null), new Date(time.getTime() + milliseconds * 1000),
+                    milliseconds * 1000);
         }
     }
 
@@ -669,32 +2447,67 @@ public class PaxosLogServer {
      */
     private void actAsAcceptor() {
         while (!isLeader) {
-            final String currentMessage = replicasMessageQueue.poll();
+            if (!deferredAcceptResponses.isEmpty()) {
+                sendDeferredAcceptResponses();
+            }
+            // the responses of the messages handled so far are sent once the queue is drained, after a single force
+            if (!unsyncedLeaderResponses.isEmpty() && (replicasMessageQueue.isEmpty()
+                    || unsyncedLeaderResponses.size() >= MAX_GROUP_COMMIT_RESPONSES)) {
+                sendSyncedLeaderResponses();
+            }
+            String currentMessage = replicasMessageQueue.poll();
             if (currentMessage == null) {
-                continue;
+                // execute the chosen slots while there is nothing else to do, then wait for the next message
+                if (logEntrySlotManager.hasUnexecutedEntries()) {
+                    logEntrySlotManager.write();
+                }
+                currentMessage = pollReplicasMessage();
+                if (currentMessage == null) {
+                    continue;
+                }
             }
             final Message.MESSAGE_TYPE currentType = Message.getMessageType(currentMessage);
             if (currentType.equals(Message.MESSAGE_TYPE.PREPARE_RESPONSE)
+                    || currentType.equals(Message.MESSAGE_TYPE.PREPARE_RANGE_RESPONSE)
                     || currentType.equals(Message.MESSAGE_TYPE.ACCEPT_RESPONSE)
                     || currentType.equals(Message.MESSAGE_TYPE.SUCCESS_RESPONSE)) {
                 continue;
             } else {
                 if (currentType.equals(Message.MESSAGE_TYPE.PREPARE)) {
                     handlePrepareMessage(currentMessage);
+                } else if (currentType.equals(Message.MESSAGE_TYPE.PREPARE_RANGE)) {
+                    handlePrepareRangeMessage(currentMessage);
                 } else if (currentType.equals(Message.MESSAGE_TYPE.ACCEPT)) {
                     handleAcceptMessage(currentMessage);
                 } else if (currentType.equals(Message.MESSAGE_TYPE.SUCCESS)) {
                     handleSuccessMessage(currentMessage);
+                } else if (currentType.equals(Message.MESSAGE_TYPE.HEART_BEAT)) {
+                    final HeartBeatMsg heartBeatMsg = HeartBeatMsg.fromString(currentMessage);
+                    chooseAcceptedSlots(heartBeatMsg.getRoundNumber(), heartBeatMsg.getFirstUnchosenIndex());
+                } else if (currentType.equals(Message.MESSAGE_TYPE.TRANSFER_LEADERSHIP)) {
+                    handleTransferLeadershipMessage(currentMessage);
                 }
             }
         }
+        if (!unsyncedLeaderResponses.isEmpty()) {
+            sendSyncedLeaderResponses();
+        }
     }
 
+    /**
+     * Promise the round of the PREPARE for its slot and answer with the value accepted in it, unless a lease promised
+     * to the leader of another view may still be held, as the leader of the PREPARE could otherwise get a value chosen
+     * while the leader holding the lease answers reads; it retransmits the PREPARE until the lease is over
+     */
     private void handlePrepareMessage(final String currentMessage) {
         final PrepareMsg prepareMsg = PrepareMsg.fromString(currentMessage);
         maxRound = Integer.max(maxRound, prepareMsg.getRoundNumber());
+        if (leaderLease.isPromisedToOtherView(prepareMsg.getViewNumber())) {
+            return;
+        }
         if (prepareMsg.getRoundNumber() >= logEntrySlotManager.getMinProposal()) {
             logEntrySlotManager.setMinProposal(prepareMsg.getRoundNumber());
+            tracker.setLatestReceivedTimeStamp(HeartBeatTracker.currentTimeMillis());
             final PrepareResponseMsg prepareResponseMsg = new PrepareResponseMsg(
                     logEntrySlotManager.getProposalID(prepareMsg.getSlotIndex()),
                     prepareMsg.getSlotIndex(),
@@ -704,53 +2517,229 @@ public class PaxosLogServer {
                     prepareMsg.getMessageSequenceNumber(),
                     logEntrySlotManager.getLogEntryValue(prepareMsg.getSlotIndex())
             );
-            final Socket sendSocket = allReplicaSendSockets.get(getCurrentLeader());
-            try {
-                final PrintWriter writer = new PrintWriter(sendSocket.getOutputStream(), true);
-                if (randomGenerator.nextFloat() >= messageLossRate) {
-                    writer.println(prepareResponseMsg.toString());
+            respondToLeader(prepareResponseMsg.toString());
+        }
+    }
+
+    /**
+     * Promise the round of a new leader for every slot from the first slot of the PREPARE_RANGE on and answer with the
+     * values accepted in them, or tell the leader the higher round promised already. Like a PREPARE it is not answered
+     * while a lease promised to the leader of another view may still be held.
+     */
+    private void handlePrepareRangeMessage(final String currentMessage) {
+        final PrepareRangeMsg prepareRangeMsg = PrepareRangeMsg.fromString(currentMessage);
+        maxRound = Integer.max(maxRound, prepareRangeMsg.getRoundNumber());
+        if (leaderLease.isPromisedToOtherView(prepareRangeMsg.getViewNumber())) {
+            return;
+        }
+        final Map<Integer, LogEntry> acceptedEntries = new LinkedHashMap<>();
+        if (prepareRangeMsg.getRoundNumber() >= logEntrySlotManager.getMinProposal()) {
+            logEntrySlotManager.setMinProposal(prepareRangeMsg.getRoundNumber());
+            tracker.setLatestReceivedTimeStamp(HeartBeatTracker.currentTimeMillis());
+            for (int slotIndex = prepareRangeMsg.getFromSlot(); slotIndex <= logEntrySlotManager.getLastLogIndex(); slotIndex++) {
+                if (logEntrySlotManager.getProposalID(slotIndex) > 0) {
+                    acceptedEntries.put(slotIndex, new LogEntry(logEntrySlotManager.getProposalID(slotIndex),
+                            logEntrySlotManager.getLogEntryValue(slotIndex)));
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
-                System.out.println("Fail to send prepare response to leader!");
             }
         }
+        final PrepareRangeResponseMsg prepareRangeResponseMsg = new PrepareRangeResponseMsg(prepareRangeMsg.getRoundNumber(),
+                this.serverId, logEntrySlotManager.getMinProposal(), acceptedEntries);
+        createSendSocketsForReplicasIfNecessary();
+        respondToLeader(prepareRangeResponseMsg.toString());
     }
 
     private void handleAcceptMessage(final String currentMessage) {
         final AcceptMsg acceptMsg = AcceptMsg.fromString(currentMessage);
+        // the slot of an ACCEPT below the first unchosen index of the leader is chosen already, the leader only catches
+        // this replica up with it (see catchUpLeftOutReplicas) and needs no answer
+        final boolean chosenByLeader = acceptMsg.getSlotIndex() < acceptMsg.getFirstUnchosenIndex();
+        if (chosenByLeader && logEntrySlotManager.isEntryChosen(acceptMsg.getSlotIndex())) {
+            return;
+        }
         if (acceptMsg.getRoundNumber() >= logEntrySlotManager.getMinProposal()) {
             logEntrySlotManager.setMinProposal(acceptMsg.getRoundNumber());
-            logEntrySlotManager.insertLogEntry(acceptMsg.getSlotIndex(), acceptMsg.getRoundNumber(), acceptMsg.getChatMessageLiteral());
-            for (int i = 0; i < logEntrySlotManager.getFirstUnchosenIndex(); i++) {
-                if (logEntrySlotManager.getProposalID(i) == acceptMsg.getRoundNumber()) {
-                    logEntrySlotManager.chooseLogEntry(i);
+            final String acceptedValue = getAcceptedValue(acceptMsg.getSlotIndex());
+            logEntrySlotManager.insertLogEntry(acceptMsg.getSlotIndex(), acceptMsg.getRoundNumber(), acceptMsg.getClientID(),
+                    acceptMsg.getMessageSequenceNumber(), acceptMsg.getChatMessageLiteral());
+            if (acceptMsg.getClientID() == WriteAheadLog.NO_CLIENT_ID) {
+                // a value recovered by a new leader is still the client message accepted here if it is the same value
+                if (!isSameValue(acceptMsg.getChatMessageLiteral(), acceptedValue)) {
+                    acceptedClientMessages.remove(acceptMsg.getSlotIndex());
                 }
+            } else {
+                acceptedClientMessages.put(acceptMsg.getSlotIndex(),
+                        new ChatMessageIdentifier(acceptMsg.getClientID(), acceptMsg.getMessageSequenceNumber()));
+            }
+            if (chosenByLeader) {
+                // it may be below the slots chooseAcceptedSlots has checked against this round already
+                logEntrySlotManager.chooseLogEntry(acceptMsg.getSlotIndex());
+                markAcceptedClientMessageExecuted(acceptMsg.getSlotIndex(), acceptMsg.getChatMessageLiteral(),
+                        acceptMsg.getChatMessageLiteral());
+            }
+            chooseAcceptedSlots(acceptMsg.getRoundNumber(), acceptMsg.getFirstUnchosenIndex());
+            // an accepted ACCEPT proves the leader alive and renews its lease like an acknowledged heartbeat
+            tracker.setLatestReceivedTimeStamp(HeartBeatTracker.currentTimeMillis());
+            if (chosenByLeader) {
+                return;
+            }
+            final int promisedViewNumber = viewNumber;
+            final boolean promised = !leaderLease.isPromisedToOtherView(promisedViewNumber);
+            if (promised) {
+                leaderLease.grant(promisedViewNumber);
             }
             final AcceptResponseMsg acceptResponseMsg = new AcceptResponseMsg(
                     logEntrySlotManager.getMinProposal(),
                     logEntrySlotManager.getFirstUnchosenIndex(),
                     this.serverId,
                     acceptMsg.getClientID(),
-                    acceptMsg.getMessageSequenceNumber()
+                    acceptMsg.getMessageSequenceNumber(),
+                    promised ? promisedViewNumber : -1
             );
-            final Socket sendSocket = allReplicaSendSockets.get(getCurrentLeader());
-            try {
-                final PrintWriter writer = new PrintWriter(sendSocket.getOutputStream(), true);
-                if (randomGenerator.nextFloat() >= messageLossRate) {
-                    writer.println(acceptResponseMsg.toString());
+            // the leader counts this replica towards the quorum holding the payload of a reference
+            if (PayloadStore.isReference(acceptMsg.getChatMessageLiteral())
+                    && !payloadStore.contains(acceptMsg.getChatMessageLiteral())) {
+                deferredAcceptResponses.computeIfAbsent(acceptMsg.getChatMessageLiteral(), reference -> new ArrayList<>())
+                        .add(acceptResponseMsg);
+                return;
+            }
+            respondToLeader(acceptResponseMsg.toString());
+        }
+    }
+
+    /**
+     * Send the leader a response to its PREPARE, PREPARE_RANGE or ACCEPT message. With a write-ahead log the response
+     * must not leave before the changes it promises are on disk, so it waits for the other messages in the queue and
+     * is sent with their responses after a single force of the log (a group commit, see sendSyncedLeaderResponses).
+     */
+    private void respondToLeader(final String response) {
+        if (logEntrySlotManager.isPersistent()) {
+            unsyncedLeaderResponses.add(response);
+            return;
+        }
+        try {
+            multicastToReplicas(Collections.singletonList(getCurrentLeader()), Collections.singletonList(response));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Fail to send response to leader!");
+        }
+    }
+
+    /**
+     * Force the write-ahead log, then send the leader the responses that waited for it
+     */
+    private void sendSyncedLeaderResponses() {
+        logEntrySlotManager.syncWriteAheadLog();
+        final List<String> responses = new ArrayList<>(unsyncedLeaderResponses);
+        unsyncedLeaderResponses.clear();
+        try {
+            multicastToReplicas(Collections.singletonList(getCurrentLeader()), responses);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Fail to send responses to leader!");
+        }
+    }
 
+    /**
+     * Send the responses deferred until their payloads arrived, and ask the other replicas for the payloads that the
+     * client has not sent here for a while, e.g. as it crashed or the payload was lost
+     */
+    private void sendDeferredAcceptResponses() {
+        final Iterator<Map.Entry<String, List<AcceptResponseMsg>>> iterator = deferredAcceptResponses.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, List<AcceptResponseMsg>> entry = iterator.next();
+            if (payloadStore.contains(entry.getKey())) {
+                for (final AcceptResponseMsg acceptResponseMsg : entry.getValue()) {
+                    unsyncedLeaderResponses.add(acceptResponseMsg.toString());
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
-                System.out.println("Fail to send accept response to leader!");
+                payloadRequestTimeStamps.remove(entry.getKey());
+                iterator.remove();
+            } else {
+                requestPayload(-1, entry.getKey());
             }
         }
+        if (!unsyncedLeaderResponses.isEmpty()) {
+            sendSyncedLeaderResponses();
+        }
+    }
+
+    /**
+     * Ask the other replicas for the payload of a reference this replica misses, once it has missed it for
+     * PAYLOAD_REQUEST_RETRY_MILLS and then every PAYLOAD_REQUEST_RETRY_MILLS, since the payload the client sends to
+     * every replica is usually on its way. Called by the consensus thread, e.g. as a chosen slot can not be executed.
+     *
+     * @param slotIndex the slot the reference is chosen in, -1 if it is only accepted there
+     * @param reference
+     */
+    public void requestPayload(final int slotIndex, final String reference) {
+        final long currentTimeStamp = System.nanoTime();
+        final Long requestTimeStamp = payloadRequestTimeStamps.get(reference);
+        if (requestTimeStamp == null) {
+            payloadRequestTimeStamps.put(reference, currentTimeStamp);
+            return;
+        }
+        if (currentTimeStamp - requestTimeStamp < PAYLOAD_REQUEST_RETRY_MILLS * 1000000L) {
+            return;
+        }
+        payloadRequestTimeStamps.put(reference, currentTimeStamp);
+        payloadRequestTimeStamps.keySet().removeIf(payloadStore::contains);
+        try {
+            multicastToAllOtherReplicas(new PayloadRequestMsg(slotIndex, serverId, reference).toString());
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Fail to send payload request to replicas!");
+        }
+    }
+
+    /**
+     * Choose the slots below the first unchosen index of the leader that are accepted in its round, the leader has got
+     * every slot it proposed in that round chosen below that index. A slot accepted in another round stays unchosen
+     * until the leader catches this replica up with SUCCESS messages.
+     *
+     * @param roundNumber        the round of the leader
+     * @param firstUnchosenIndex the first unchosen index of the leader
+     */
+    private void chooseAcceptedSlots(final int roundNumber, final int firstUnchosenIndex) {
+        int slotIndex = logEntrySlotManager.getFirstUnchosenIndex();
+        if (roundNumber == learnedCommitRoundNumber) {
+            // the slots below learnedCommitIndex are checked against this round already
+            slotIndex = Math.max(slotIndex, learnedCommitIndex);
+        } else {
+            learnedCommitRoundNumber = roundNumber;
+            learnedCommitIndex = 0;
+        }
+        final int endIndex = Math.min(firstUnchosenIndex, logEntrySlotManager.getLastLogIndex() + 1);
+        for (; slotIndex < endIndex; slotIndex++) {
+            if (logEntrySlotManager.getProposalID(slotIndex) == roundNumber) {
+                logEntrySlotManager.chooseLogEntry(slotIndex);
+                final String chosenValue = logEntrySlotManager.getLogEntryValue(slotIndex);
+                markAcceptedClientMessageExecuted(slotIndex, chosenValue, chosenValue);
+            }
+        }
+        learnedCommitIndex = Math.max(learnedCommitIndex, endIndex);
+    }
+
+    /**
+     * As the target of a leadership transfer, choose the slots the commit watermark of the leader covers and tell the
+     * leader how far the chosen slots reach, it sends the missing ones with SUCCESS messages
+     */
+    private void handleTransferLeadershipMessage(final String currentMessage) {
+        final TransferLeadershipMsg transferLeadershipMsg = TransferLeadershipMsg.fromString(currentMessage);
+        if (transferLeadershipMsg.getViewNumber() != viewNumber) {
+            return;
+        }
+        tracker.setLatestReceivedTimeStamp(HeartBeatTracker.currentTimeMillis());
+        chooseAcceptedSlots(transferLeadershipMsg.getRoundNumber(), transferLeadershipMsg.getFirstUnchosenIndex());
+        sendThroughHeartBeatSocket(getCurrentLeader(), new TransferLeadershipResponseMsg(viewNumber, serverId,
+                logEntrySlotManager.getFirstUnchosenIndex()).toString());
     }
 
     private void handleSuccessMessage(final String currentMessage) {
         final SuccessMsg successMsg = SuccessMsg.fromString(currentMessage);
+        tracker.setLatestReceivedTimeStamp(HeartBeatTracker.currentTimeMillis());
         if (!logEntrySlotManager.isEntryChosen(successMsg.getSlotIndex())) {
+            markAcceptedClientMessageExecuted(successMsg.getSlotIndex(), getAcceptedValue(successMsg.getSlotIndex()),
+                    successMsg.getChatMessageLiteral());
             logEntrySlotManager.successLogEntry(successMsg.getSlotIndex(), successMsg.getChatMessageLiteral());
             final SuccessResponseMsg successResponseMsg = new SuccessResponseMsg(
                     logEntrySlotManager.getFirstUnchosenIndex(),
@@ -761,10 +2750,57 @@ public class PaxosLogServer {
         }
     }
 
+    /**
+     * @return The value accepted in the slot, null if the slot is empty
+     */
+    private String getAcceptedValue(final int slotIndex) {
+        return slotIndex <= logEntrySlotManager.getLastLogIndex() ? logEntrySlotManager.getLogEntryValue(slotIndex) : null;
+    }
+
+    /**
+     * Mark the client message accepted in a slot executed now that the slot is chosen. A value chosen by a SUCCESS
+     * message or recovered by a new leader carries no client, it is that message only if it is the value accepted here.
+     */
+    private void markAcceptedClientMessageExecuted(final int slotIndex, final String acceptedValue, final String chosenValue) {
+        final ChatMessageIdentifier acceptedClientMessage = acceptedClientMessages.remove(slotIndex);
+        if (acceptedClientMessage != null && isSameValue(acceptedValue, chosenValue)) {
+            clientSessionTable.markExecuted(acceptedClientMessage.getClinetId(), acceptedClientMessage.getMessageSequenceNumber(), slotIndex);
+        }
+    }
+
+    /**
+     * @return Whether two values of a slot are the same value, which with erasure coding may be a fragment of it
+     */
+    private static boolean isSameValue(final String value, final String otherValue) {
+        if (value == null || otherValue == null) {
+            return value == otherValue;
+        }
+        if (value.equals(otherValue)) {
+            return true;
+        }
+        if (!FragmentCodec.isFragment(value) && !FragmentCodec.isFragment(otherValue)) {
+            return false;
+        }
+        return (FragmentCodec.isFragment(value) ? FragmentCodec.getDigest(value) : PayloadStore.digest(value))
+                .equals(FragmentCodec.isFragment(otherValue) ? FragmentCodec.getDigest(otherValue) : PayloadStore.digest(otherValue));
+    }
+
     public int getServerId() {
         return serverId;
     }
 
+    public int getGroupId() {
+        return groupId;
+    }
+
+    /**
+     * @return The name the files of this replica are named after: "replica{serverId}", and
+     * "replica{serverId}-group{groupId}" for a group of a host other than its first, so the groups keep their files apart
+     */
+    public String getReplicaName() {
+        return groupId == 0 ? "replica" + serverId : "replica" + serverId + "-group" + groupId;
+    }
+
     public boolean isLeader() {
         return isLeader;
     }
@@ -772,4 +2808,27 @@ public class PaxosLogServer {
     public int getSkipSlotSeqNum() {
         return skipSlotSeqNum;
     }
+
+    public ClientSessionTable getClientSessionTable() {
+        return clientSessionTable;
+    }
+
+    public LogEntrySlotManager getLogEntrySlotManager() {
+        return logEntrySlotManager;
+    }
+
+    /**
+     * A round and a first unchosen index of the leader, published together since a follower can only choose the slots
+     * below the index that are accepted in that very round
+     */
+    private final static class CommitWatermark {
+
+        private final int roundNumber;
+        private final int firstUnchosenIndex;
+
+        private CommitWatermark(final int roundNumber, final int firstUnchosenIndex) {
+            this.roundNumber = roundNumber;
+            this.firstUnchosenIndex = firstUnchosenIndex;
+        }
+    }
 }
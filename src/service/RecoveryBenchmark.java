@@ -0,0 +1,91 @@
+package service;
+
+import util.AddressPortPair;
+import util.LogEntrySlotManager;
+import util.WriteAheadLog;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A benchmark of how long a persistent replica takes to be ready to serve after a restart. It writes a write-ahead log
+ * of the given number of chosen entries (the last tenth not executed yet) for replica 9, then measures how long the
+ * replica takes to be constructed from it (replay, session table, cursors), and how long it then takes to catch up
+ * the log of the replica. For example:
+ *
+ *      java -Xmx4g -cp out/production/MultiPaxosLog service.RecoveryBenchmark columnar 10000000
+ *      java -Xmx1g -cp out/production/MultiPaxosLog service.RecoveryBenchmark mapped 100000000
+ *
+ * The segments are decoded by as many threads as there are processors, use -XX:ActiveProcessorCount to compare.
+ * It deletes replica9-wal, replica9-slots and replica9-log in the working directory before and after the run.
+ */
+public class RecoveryBenchmark {
+
+    private final static int SERVER_ID = 9;
+    private final static int NUM_OF_ENTRIES = 1000000;
+    private final static int NUM_OF_CLIENTS = 1000;
+
+    public static void main(String[] args) {
+        final String storeType = args.length > 0 ? args[0] : "columnar";
+        final int numOfEntries = args.length > 1 ? Integer.parseInt(args[1]) : NUM_OF_ENTRIES;
+        cleanUp();
+
+        final long writeStartTime = System.nanoTime();
+        final WriteAheadLog writeAheadLog = new WriteAheadLog("replica" + SERVER_ID + "-wal");
+        writeAheadLog.logMinProposal(1);
+        final int numOfExecutedEntries = numOfEntries - numOfEntries / 10;
+        for (int i = 0; i < numOfEntries; i++) {
+            writeAheadLog.logAccept(i, 1, NUM_OF_CLIENTS + i % NUM_OF_CLIENTS, i / NUM_OF_CLIENTS, "client message " + i);
+            writeAheadLog.logChosen(i);
+            if (i % 4096 == 4095 && i < numOfExecutedEntries) {
+                writeAheadLog.logExecuted(i);
+            }
+        }
+        writeAheadLog.close();
+        final double writeSeconds = (System.nanoTime() - writeStartTime) / 1e9;
+
+        final long recoveryStartTime = System.nanoTime();
+        final PaxosLogServer server = new PaxosLogServer.Builder(SERVER_ID, "127.0.0.1", 0, 2, new ArrayList<AddressPortPair>())
+                .logEntryStoreType(storeType)
+                .persistent(true)
+                .build();
+        final double readySeconds = (System.nanoTime() - recoveryStartTime) / 1e9;
+
+        final LogEntrySlotManager logEntrySlotManager = server.getLogEntrySlotManager();
+        final long catchUpStartTime = System.nanoTime();
+        while (logEntrySlotManager.hasUnexecutedEntries()) {
+            logEntrySlotManager.write();
+        }
+        final double catchUpSeconds = (System.nanoTime() - catchUpStartTime) / 1e9;
+
+        System.out.printf("%s store, %d entries (%d threads): write-ahead log written in %.1f s, ready in %.2f s "
+                        + "(first unchosen %d, %d sessions), log caught up %.2f s later%n",
+                storeType, numOfEntries, Runtime.getRuntime().availableProcessors(), writeSeconds, readySeconds,
+                logEntrySlotManager.getFirstUnchosenIndex(), server.getClientSessionTable().size(), catchUpSeconds);
+        cleanUp();
+        System.exit(0);
+    }
+
+    private static void cleanUp() {
+        for (final String name : new String[]{"replica" + SERVER_ID + "-wal", "replica" + SERVER_ID + "-slots", "replica" + SERVER_ID + "-log"}) {
+            final File directory = new File(name);
+            final List<File> files = new ArrayList<>();
+            collect(directory, files);
+            for (int i = files.size() - 1; i >= 0; i--) {
+                files.get(i).delete();
+            }
+        }
+    }
+
+    private static void collect(final File file, final List<File> files) {
+        if (!file.exists()) {
+            return;
+        }
+        files.add(file);
+        final File[] children = file.listFiles();
+        for (final File child : children == null ? new File[0] : children) {
+            collect(child, files);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package service;
+
+import client.PaxosLogClient;
+import util.AddressPortPair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A benchmark of the egress of the leader and the throughput with and without thrifty replication. It starts 5 replicas
+ * in this process on the ports 4357 ~ 4361, replica 0 as the leader, and puts a proxy in front of every follower that
+ * counts the bytes the leader sends it and delays them: follower i by i ms, the last follower by 20 ms. Another proxy in
+ * front of the leader counts the bytes the followers send it. A client then submits the commands with the given payload
+ * size through a window of 64, and the bytes the leader has sent per command are reported once the commands are
+ * committed and again once every replica has executed them, since in thrifty mode the replicas left out of the quorum
+ * catch up after the commit, along with the bytes the leader has received per command. Run it with the payload size in bytes, "thrifty" or
+ * "full", and optionally the number of commands:
+ *
+ *      java -cp out/production/MultiPaxosLog service.ThriftyReplicationBenchmark 1024 thrifty > /dev/null
+ *      java -cp out/production/MultiPaxosLog service.ThriftyReplicationBenchmark 65536 full 200 > /dev/null
+ *
+ * The result is printed to stderr, since the replicas print every message they receive to stdout.
+ */
+public class ThriftyReplicationBenchmark {
+
+    private final static int NUM_OF_TOLERATED_FAILURES = 2;
+    private final static int FIRST_PORT = 4357;
+    private final static int FIRST_PROXY_PORT = 4457;
+    private final static int CLIENT_PORT = 7870;
+    private final static int SLOW_REPLICA_DELAY_MILLS = 20;
+    private final static int WINDOW_SIZE = 64;
+    private final static int NUM_OF_WARM_UP_COMMANDS = 100;
+    private final static int NUM_OF_COMMANDS = 2000;
+    private final static long TIME_OUT_MILLS = 60000;
+
+    public static void main(String[] args) throws Exception {
+        final int payloadSize = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        final boolean thrifty = args.length < 2 || args[1].equals("thrifty");
+        final int numOfCommands = args.length > 2 ? Integer.parseInt(args[2]) : NUM_OF_COMMANDS;
+        final int numOfReplicas = NUM_OF_TOLERATED_FAILURES * 2 + 1;
+
+        // the replicas reach the followers through the proxies, the client reaches them directly
+        final List<AddressPortPair> allReplicasInfo = new ArrayList<>();
+        final List<AddressPortPair> clientReplicasInfo = new ArrayList<>();
+        final List<DelayingProxy> proxies = new ArrayList<>();
+        final DelayingProxy leaderProxy = DelayingProxy.start(FIRST_PROXY_PORT, FIRST_PORT, 0);
+        allReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PROXY_PORT));
+        clientReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PORT));
+        for (int replicaID = 1; replicaID < numOfReplicas; replicaID++) {
+            final int delayMillis = replicaID == numOfReplicas - 1 ? SLOW_REPLICA_DELAY_MILLS : replicaID;
+            proxies.add(DelayingProxy.start(FIRST_PROXY_PORT + replicaID, FIRST_PORT + replicaID, delayMillis));
+            allReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PROXY_PORT + replicaID));
+            clientReplicasInfo.add(new AddressPortPair("127.0.0.1", FIRST_PORT + replicaID));
+        }
+        final List<PaxosLogServer> servers = new ArrayList<>();
+        for (int replicaID = 0; replicaID < numOfReplicas; replicaID++) {
+            servers.add(new PaxosLogServer.Builder(replicaID, "127.0.0.1", FIRST_PORT + replicaID, NUM_OF_TOLERATED_FAILURES,
+                    allReplicasInfo).leader(replicaID == 0).thrifty(thrifty).build());
+        }
+        // the followers listen before the leader starts
+        for (int replicaID = numOfReplicas - 1; replicaID >= 0; replicaID--) {
+            startDaemon(servers.get(replicaID)::start);
+        }
+        Thread.sleep(1000);
+
+        final PaxosLogClient logClient = new PaxosLogClient.Builder("127.0.0.1", CLIENT_PORT, clientReplicasInfo)
+                .windowSize(WINDOW_SIZE)
+                .build();
+        startDaemon(logClient::start);
+        final char[] payload = new char[payloadSize];
+        Arrays.fill(payload, 'x');
+        final String value = new String(payload);
+        for (int i = 0; i < NUM_OF_WARM_UP_COMMANDS; i++) {
+            logClient.submit(value).get();
+        }
+
+        final long startBytes = getLeaderEgressBytes(proxies);
+        final long startIngressBytes = leaderProxy.getNumOfForwardedBytes();
+        final long startTime = System.nanoTime();
+        final List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < numOfCommands; i++) {
+            futures.add(logClient.submit(value));
+        }
+        int lastSlot = 0;
+        for (final CompletableFuture<Long> future : futures) {
+            lastSlot = Math.max(lastSlot, future.get().intValue());
+        }
+        final double seconds = (System.nanoTime() - startTime) / 1e9;
+        final long committedBytes = getLeaderEgressBytes(proxies) - startBytes;
+
+        final long catchUpStartTime = System.nanoTime();
+        for (final PaxosLogServer server : servers) {
+            if (server.getLogEntrySlotManager().awaitExecutedWatermark(lastSlot, TIME_OUT_MILLS) <= lastSlot) {
+                System.err.println("Replica " + server.getServerId() + " has not executed slot " + lastSlot);
+            }
+        }
+        final double catchUpMillis = (System.nanoTime() - catchUpStartTime) / 1e6;
+        final long executedBytes = getLeaderEgressBytes(proxies) - startBytes;
+        final long ingressBytes = leaderProxy.getNumOfForwardedBytes() - startIngressBytes;
+
+        System.err.printf("%s, %d B payload: %.0f commands/s (%.1f MB/s), leader egress %.0f B/command when committed, "
+                        + "%.0f B/command once every replica has executed them %.0f ms later, leader ingress %.0f B/command%n",
+                thrifty ? "thrifty" : "full", payloadSize, numOfCommands / seconds, numOfCommands * (double) payloadSize / seconds / 1e6,
+                committedBytes / (double) numOfCommands, executedBytes / (double) numOfCommands, catchUpMillis,
+                ingressBytes / (double) numOfCommands);
+        System.exit(0);
+    }
+
+    private static long getLeaderEgressBytes(final List<DelayingProxy> proxies) {
+        long numOfBytes = 0;
+        for (final DelayingProxy proxy : proxies) {
+            numOfBytes += proxy.getNumOfForwardedBytes();
+        }
+        return numOfBytes;
+    }
+
+    private static void startDaemon(final Runnable runnable) {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
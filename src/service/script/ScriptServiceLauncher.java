@@ -2,6 +2,7 @@ package service.script;
 
 import service.PaxosLogServer;
 import util.AddressPortPair;
+import util.LogEntryStoreFactory;
 
 import java.io.*;
 import java.util.ArrayList;
@@ -35,17 +36,26 @@ public class ScriptServiceLauncher {
             allReplicasInfo.add(new AddressPortPair(info.split(":")[0], Integer.parseInt(info.split(":")[1])));
         }
 
-        final PaxosLogServer logServer = new PaxosLogServer(
+        // a majority for both phases unless configured otherwise
+        final int numOfToleratedFailures = Integer.parseInt(properties.getProperty("num_of_tolerated_failures_" + serverId));
+        final PaxosLogServer logServer = new PaxosLogServer.Builder(
                 Integer.parseInt(properties.getProperty("server_id_" + serverId)),
                 properties.getProperty("server_address_" + serverId),
                 Integer.parseInt(properties.getProperty("sever_port_" + serverId)),
-                Boolean.valueOf(properties.getProperty("sever_isLeader_" + serverId)),
-                Integer.parseInt(properties.getProperty("view_number_" + serverId)),
-                Integer.parseInt(properties.getProperty("num_of_tolerated_failures_" + serverId)),
-                allReplicasInfo,
-                Integer.parseInt(properties.getProperty("skip_slot_seq_number_" + serverId)),
-                Double.parseDouble(properties.getProperty("message_loss_rate_" + serverId))
-        );
+                numOfToleratedFailures,
+                allReplicasInfo)
+                .leader(Boolean.valueOf(properties.getProperty("sever_isLeader_" + serverId)))
+                .viewNumber(Integer.parseInt(properties.getProperty("view_number_" + serverId)))
+                .skipSlotSeqNum(Integer.parseInt(properties.getProperty("skip_slot_seq_number_" + serverId)))
+                .messageLossRate(Double.parseDouble(properties.getProperty("message_loss_rate_" + serverId)))
+                .logEntryStoreType(properties.getProperty("log_entry_store_" + serverId, LogEntryStoreFactory.DEFAULT_TYPE))
+                .persistent(Boolean.valueOf(properties.getProperty("write_ahead_log_" + serverId, "false")))
+                .quorumSizes(
+                        Integer.parseInt(properties.getProperty("phase_1_quorum_size_" + serverId, String.valueOf(numOfToleratedFailures + 1))),
+                        Integer.parseInt(properties.getProperty("phase_2_quorum_size_" + serverId, String.valueOf(numOfToleratedFailures + 1))))
+                .thrifty(Boolean.valueOf(properties.getProperty("thrifty_" + serverId, "false")))
+                .numOfDataFragments(Integer.parseInt(properties.getProperty("data_fragments_" + serverId, "1")))
+                .build();
         logServer.start();
     }
 }
@@ -0,0 +1,104 @@
+package thread;
+
+import java.util.Random;
+
+/**
+ * A simulation that compares the phi accrual failure detector of HeartBeatTracker with the fixed timeout it replaces
+ * (TOLERATE_FACTOR = 5 heartbeat periods), on simulated time so that it runs in seconds.
+ *
+ * The leader sends a heartbeat every HEART_BEAT_PERIOD_MILLS plus up to a check period (as PaxosLogServer does on an
+ * idle link), and every heartbeat is delayed by |N(0, jitter)| plus, with PAUSE_PROBABILITY, a pause of up to
+ * MAX_PAUSE_MILLIS (e.g. a garbage collection). For every jitter it reports:
+ *      - the mean time-to-detect: the time from the leader crashing right after a heartbeat to the suspicion
+ *      - the false positive rate: the share of heartbeat intervals in which the live leader is suspected
+ */
+public class FailureDetectorBenchmark {
+
+    private final static int HEART_BEAT_PERIOD_MILLS = 2000;
+    private final static int HEART_BEAT_CHECK_PERIOD_MILLS = HEART_BEAT_PERIOD_MILLS / 4;
+    private final static long FIXED_TIMEOUT_MILLIS = 5 * HEART_BEAT_PERIOD_MILLS;
+    private final static long MIN_SUSPICION_MILLIS = 2 * HEART_BEAT_PERIOD_MILLS;
+    private final static int MAX_SAMPLE_SIZE = 200;
+
+    private final static double PAUSE_PROBABILITY = 0.01;
+    private final static int MAX_PAUSE_MILLIS = 4000;
+
+    private final static int NUM_OF_HEART_BEATS = 100000;
+    private final static int NUM_OF_CRASHES = 1000;
+    private final static int WARM_UP_HEART_BEATS = 500;
+    private final static int CHECK_PERIOD_MILLS = 10;
+
+    public static void main(String[] args) {
+        final double threshold = args.length > 0 ? Double.parseDouble(args[0]) : HeartBeatTracker.DEFAULT_PHI_THRESHOLD;
+        System.out.printf("phi threshold %.1f, fixed timeout %d ms, %.1f%% of heartbeats paused by up to %d ms%n",
+                threshold, FIXED_TIMEOUT_MILLIS, PAUSE_PROBABILITY * 100, MAX_PAUSE_MILLIS);
+        for (int jitter : new int[]{0, 50, 200, 500, 1000}) {
+            final Random random = new Random(jitter);
+
+            // false positives: suspicions raised before the next heartbeat arrives
+            final PhiAccrualFailureDetector detector = newDetector(threshold);
+            long sendTime = 0;
+            long lastArrival = 0;
+            int phiFalsePositives = 0;
+            int fixedFalsePositives = 0;
+            for (int i = 0; i < NUM_OF_HEART_BEATS; i++) {
+                sendTime = nextSendTime(sendTime, random);
+                final long arrival = Math.max(lastArrival, sendTime + delay(jitter, random));
+                if (isSuspected(detector, arrival - 1)) {
+                    phiFalsePositives += 1;
+                }
+                if (arrival - 1 - lastArrival > FIXED_TIMEOUT_MILLIS) {
+                    fixedFalsePositives += 1;
+                }
+                detector.heartbeat(arrival);
+                lastArrival = arrival;
+            }
+
+            // time-to-detect: the leader crashes right after a heartbeat is sent
+            long phiDetectionSum = 0;
+            long fixedDetectionSum = 0;
+            for (int c = 0; c < NUM_OF_CRASHES; c++) {
+                final PhiAccrualFailureDetector crashDetector = newDetector(threshold);
+                sendTime = 0;
+                lastArrival = 0;
+                for (int i = 0; i < WARM_UP_HEART_BEATS; i++) {
+                    sendTime = nextSendTime(sendTime, random);
+                    lastArrival = Math.max(lastArrival, sendTime + delay(jitter, random));
+                    crashDetector.heartbeat(lastArrival);
+                }
+                long now = lastArrival;
+                while (!isSuspected(crashDetector, now)) {
+                    now += CHECK_PERIOD_MILLS;
+                }
+                phiDetectionSum += now - sendTime;
+                fixedDetectionSum += lastArrival + FIXED_TIMEOUT_MILLIS - sendTime;
+            }
+
+            System.out.printf("jitter %4d ms: time-to-detect phi %6.0f ms / fixed %6.0f ms, false positives phi %.5f%% / fixed %.5f%%%n",
+                    jitter, phiDetectionSum / (double) NUM_OF_CRASHES, fixedDetectionSum / (double) NUM_OF_CRASHES,
+                    phiFalsePositives * 100.0 / NUM_OF_HEART_BEATS, fixedFalsePositives * 100.0 / NUM_OF_HEART_BEATS);
+        }
+    }
+
+    private static PhiAccrualFailureDetector newDetector(final double threshold) {
+        // the same parameters as HeartBeatTracker
+        return new PhiAccrualFailureDetector(threshold, MAX_SAMPLE_SIZE, HEART_BEAT_PERIOD_MILLS / 4.0,
+                HEART_BEAT_PERIOD_MILLS, HEART_BEAT_PERIOD_MILLS, 0);
+    }
+
+    private static boolean isSuspected(final PhiAccrualFailureDetector detector, final long now) {
+        return now - detector.getLastArrivalMillis() >= MIN_SUSPICION_MILLIS && detector.isSuspected(now);
+    }
+
+    private static long nextSendTime(final long sendTime, final Random random) {
+        return sendTime + HEART_BEAT_PERIOD_MILLS + random.nextInt(HEART_BEAT_CHECK_PERIOD_MILLS);
+    }
+
+    private static long delay(final int jitter, final Random random) {
+        long delay = (long) Math.abs(random.nextGaussian() * jitter);
+        if (random.nextDouble() < PAUSE_PROBABILITY) {
+            delay += random.nextInt(MAX_PAUSE_MILLIS);
+        }
+        return delay;
+    }
+}
@@ -2,26 +2,46 @@ package thread;
 
 /**
  * A heartbeat tracking worker which track the heartbeat from leader and execute timeout logic using callbacks
+ * The time stamps are local monotonic milliseconds (see currentTimeMillis), the time a heartbeat is received rather
+ * than the time stamp in it, so that neither clock skew between replicas nor a wall clock jump triggers a timeout.
+ *
+ * The leader is suspected by a phi accrual failure detector rather than after a fixed timeout: it adapts to how
+ * regularly the messages of the leader arrive, so a steady leader is suspected soon after it stops while a jittery link
+ * does not trigger an election. Any message that shows the leader alive counts as a heartbeat.
  */
 public class HeartBeatTracker {
 
-    private final static int TOLERATE_FACTOR = 5;
+    public final static double DEFAULT_PHI_THRESHOLD = 8.0;
 
-    private final Runnable increaseViewNumberCallBack;
-    private final Runnable electLeaderCallBack;
-    private volatile long latestReceivedTimeStamp;
-    private final long maxDelayTolerance;
+    private final static int MAX_SAMPLE_SIZE = 200;
+    private final static int CHECK_PERIOD_MILLS = 10;
 
+    private final Runnable suspectLeaderCallBack;
+    private final PhiAccrualFailureDetector failureDetector;
+    private final long minSuspicionMillis;
+
+    // how long after the last message of the leader the latest suspicion was raised, -1 if none is raised yet
+    private volatile long lastDetectionLatencyMillis;
+
+    /**
+     * @param suspectLeaderCallBack run on the tracking thread whenever the leader is suspected, e.g. to elect a new one
+     * @param heartBeatPeriod       the longest the leader goes without sending a follower anything
+     * @param phiThreshold          the suspicion level at which the leader is considered failed
+     * @param minSuspicionMillis    the leader is never suspected sooner than this after its last message, e.g. while
+     *                              the lease this replica has promised it may still be held
+     */
     public HeartBeatTracker(
-            final Runnable increaseViewNumberCallBack,
-            final Runnable electLeaderCallBack,
+            final Runnable suspectLeaderCallBack,
             final long latestTimeStamp,
-            int heartBeatPeriod
+            int heartBeatPeriod,
+            double phiThreshold,
+            long minSuspicionMillis
     ) {
-        this.increaseViewNumberCallBack = increaseViewNumberCallBack;
-        this.electLeaderCallBack = electLeaderCallBack;
-        this.latestReceivedTimeStamp = latestTimeStamp;
-        this.maxDelayTolerance = heartBeatPeriod * TOLERATE_FACTOR;
+        this.suspectLeaderCallBack = suspectLeaderCallBack;
+        this.failureDetector = new PhiAccrualFailureDetector(phiThreshold, MAX_SAMPLE_SIZE, heartBeatPeriod / 4.0,
+                heartBeatPeriod, heartBeatPeriod, latestTimeStamp);
+        this.minSuspicionMillis = minSuspicionMillis;
+        this.lastDetectionLatencyMillis = -1;
     }
 
     public void start() {
@@ -29,11 +49,28 @@ public class HeartBeatTracker {
     }
 
     public long getLatestReceivedTimeStamp() {
-        return latestReceivedTimeStamp;
+        return failureDetector.getLastArrivalMillis();
     }
 
+    /**
+     * Record a heartbeat (or any other message showing the leader alive) received at the time stamp
+     */
     public void setLatestReceivedTimeStamp(final long latestReceivedTimeStamp) {
-        this.latestReceivedTimeStamp = latestReceivedTimeStamp;
+        failureDetector.heartbeat(latestReceivedTimeStamp);
+    }
+
+    /**
+     * @return How long after the last message of the leader the latest suspicion was raised, -1 if none is raised yet
+     */
+    public long getLastDetectionLatencyMillis() {
+        return lastDetectionLatencyMillis;
+    }
+
+    /**
+     * @return The monotonic time in milliseconds the heartbeats are tracked in
+     */
+    public static long currentTimeMillis() {
+        return System.nanoTime() / 1000000L;
     }
 
     public class TrackerHandler implements Runnable {
@@ -41,12 +78,21 @@ public class HeartBeatTracker {
         @Override
         public void run() {
             while (true) {
-                final long currentTimeStamp = System.currentTimeMillis();
-                if (currentTimeStamp - latestReceivedTimeStamp > maxDelayTolerance) {
-                    System.out.println("Heart Beat Timeout!");
-                    increaseViewNumberCallBack.run();
-                    electLeaderCallBack.run();
-                    setLatestReceivedTimeStamp(System.currentTimeMillis());
+                final long currentTimeStamp = currentTimeMillis();
+                final long silenceMillis = currentTimeStamp - failureDetector.getLastArrivalMillis();
+                final double phi = failureDetector.phi(currentTimeStamp);
+                if (silenceMillis >= minSuspicionMillis && phi >= failureDetector.getThreshold()) {
+                    lastDetectionLatencyMillis = silenceMillis;
+                    System.out.printf("Heart Beat Timeout! Leader suspected %d ms after its last message (phi = %.1f)%n",
+                            lastDetectionLatencyMillis, phi);
+                    suspectLeaderCallBack.run();
+                    // the next leader starts with a fresh history of arrivals
+                    failureDetector.reset(currentTimeMillis());
+                }
+                try {
+                    Thread.sleep(CHECK_PERIOD_MILLS);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
                 }
             }
         }
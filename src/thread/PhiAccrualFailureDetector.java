@@ -0,0 +1,126 @@
+package thread;
+
+/**
+ * An adaptive failure detector (Hayashibara et al., "The phi accrual failure detector"). Instead of a fixed timeout it
+ * keeps the recent inter-arrival times of the messages of the monitored process and computes phi, the suspicion level
+ * -log10(probability that a message is still to come) given the time elapsed since the last one. The process is
+ * suspected once phi reaches the threshold, e.g. a threshold of 8 means a false suspicion chance of about 10^-8 if the
+ * inter-arrival times are normally distributed. Jittery links widen the distribution and delay the suspicion, steady
+ * links shrink it and speed the suspicion up.
+ *
+ * The arrival times are local monotonic milliseconds (see HeartBeatTracker.currentTimeMillis), so that clock skew
+ * between the replicas does not matter. The acceptable pause is added to the mean inter-arrival time, it covers the
+ * gaps a sender makes on purpose, e.g. a leader that only sends heartbeats after a heartbeat period without traffic.
+ * Every method is synchronized, since the arrivals are recorded by the receiving threads.
+ */
+public class PhiAccrualFailureDetector {
+
+    private final double threshold;
+    private final double minStdDeviationMillis;
+    private final long acceptablePauseMillis;
+    private final long firstIntervalEstimateMillis;
+
+    // a ring of the latest inter-arrival times, with their running sum and sum of squares
+    private final long[] intervals;
+    private int numOfIntervals;
+    private int nextInterval;
+    private double intervalSum;
+    private double squaredIntervalSum;
+
+    private long lastArrivalMillis;
+
+    /**
+     * @param threshold                   the phi at which the monitored process is suspected
+     * @param maxSampleSize               the number of latest inter-arrival times the distribution is estimated from
+     * @param minStdDeviationMillis       the least standard deviation assumed, so that a very steady link does not turn
+     *                                    a slightly late message into a suspicion
+     * @param acceptablePauseMillis       the gap the monitored process may make on purpose
+     * @param firstIntervalEstimateMillis the expected inter-arrival time before any is observed
+     * @param nowMillis                   the time the monitoring starts at, it counts as an arrival
+     */
+    public PhiAccrualFailureDetector(final double threshold, final int maxSampleSize, final double minStdDeviationMillis,
+                                     final long acceptablePauseMillis, final long firstIntervalEstimateMillis,
+                                     final long nowMillis) {
+        if (threshold <= 0 || maxSampleSize < 2 || minStdDeviationMillis <= 0 || firstIntervalEstimateMillis <= 0) {
+            throw new IllegalArgumentException("Invalid parameters of phi accrual failure detector");
+        }
+        this.threshold = threshold;
+        this.minStdDeviationMillis = minStdDeviationMillis;
+        this.acceptablePauseMillis = acceptablePauseMillis;
+        this.firstIntervalEstimateMillis = firstIntervalEstimateMillis;
+        this.intervals = new long[maxSampleSize];
+        reset(nowMillis);
+    }
+
+    /**
+     * Record the arrival of a message of the monitored process
+     */
+    public synchronized void heartbeat(final long nowMillis) {
+        final long interval = nowMillis - lastArrivalMillis;
+        if (interval < 0) {
+            return;
+        }
+        addInterval(interval);
+        lastArrivalMillis = nowMillis;
+    }
+
+    /**
+     * Forget the observed inter-arrival times and start monitoring afresh from now, e.g. after a new leader is elected
+     */
+    public synchronized void reset(final long nowMillis) {
+        numOfIntervals = 0;
+        nextInterval = 0;
+        intervalSum = 0;
+        squaredIntervalSum = 0;
+        // like the first estimate of Akka, two samples a quarter of the estimate apart around it
+        final long estimatedDeviation = firstIntervalEstimateMillis / 4;
+        addInterval(firstIntervalEstimateMillis - estimatedDeviation);
+        addInterval(firstIntervalEstimateMillis + estimatedDeviation);
+        lastArrivalMillis = nowMillis;
+    }
+
+    /**
+     * @return The suspicion level of the monitored process now
+     */
+    public synchronized double phi(final long nowMillis) {
+        final double mean = intervalSum / numOfIntervals + acceptablePauseMillis;
+        final double variance = squaredIntervalSum / numOfIntervals - (intervalSum / numOfIntervals) * (intervalSum / numOfIntervals);
+        final double stdDeviation = Math.max(Math.sqrt(Math.max(0, variance)), minStdDeviationMillis);
+        final double y = (nowMillis - lastArrivalMillis - mean) / stdDeviation;
+        // the logistic approximation of the cumulative normal distribution used by Akka, accurate to 0.0002
+        final double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (nowMillis - lastArrivalMillis > mean) {
+            return -Math.log10(e / (1.0 + e));
+        }
+        return -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+
+    /**
+     * @return Whether the monitored process is suspected now
+     */
+    public boolean isSuspected(final long nowMillis) {
+        return phi(nowMillis) >= threshold;
+    }
+
+    public synchronized long getLastArrivalMillis() {
+        return lastArrivalMillis;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    private void addInterval(final long interval) {
+        if (numOfIntervals == intervals.length) {
+            final long evicted = intervals[nextInterval];
+            intervalSum -= evicted;
+            squaredIntervalSum -= (double) evicted * evicted;
+        } else {
+            numOfIntervals += 1;
+        }
+        intervals[nextInterval] = interval;
+        nextInterval = (nextInterval + 1) % intervals.length;
+        intervalSum += interval;
+        squaredIntervalSum += (double) interval * interval;
+    }
+}
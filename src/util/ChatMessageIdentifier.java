@@ -1,7 +1,5 @@
 package util;
 
-import java.util.Objects;
-
 /**
  * A POJO that model the distinctness of messages sent from different clients
  * Note that a pair of client ID and message sequence number can
@@ -34,6 +32,6 @@ public class ChatMessageIdentifier {
 
     @Override
     public int hashCode() {
-        return Objects.hash(clinetId, messageSequenceNumber);
+        return 31 * Long.hashCode(clinetId) + messageSequenceNumber;
     }
 }
@@ -0,0 +1,41 @@
+package util;
+
+import java.security.SecureRandom;
+
+/**
+ * A generator of client IDs. Using System.currentTimeMillis() as the ID makes two clients launched in the same
+ * millisecond collide, so we combine the time with random bits instead.
+ */
+public class ClientIdGenerator {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // the lower bits are random and the higher bits keep the launching time, so IDs are still roughly ordered by time
+    private static final int RANDOM_BITS = 20;
+
+    // a multiplexing client reserves a block of IDs for its sessions: the block ID has this many low bits clear, and its
+    // sessions are numbered in them, so two sessions of a client never share an ID however fast they are opened
+    public static final int SESSION_BITS = 16;
+    // the bits of the launching time in a block ID, which keep the time modulo about 18 hours
+    private static final int BLOCK_TIME_BITS = 62 - SESSION_BITS - RANDOM_BITS;
+    // set in every block ID and in no client ID (whose time does not reach this bit), so a session never takes a client ID
+    private static final long BLOCK_FLAG = 1L << 62;
+
+    /**
+     * @return A positive client ID that is unique with overwhelming probability
+     */
+    public static long nextClientId() {
+        final long randomPart = RANDOM.nextInt(1 << RANDOM_BITS);
+        return ((System.currentTimeMillis() << RANDOM_BITS) | randomPart) & Long.MAX_VALUE;
+    }
+
+    /**
+     * @return A positive ID with the low SESSION_BITS bits clear, the IDs from it up to it plus 2^SESSION_BITS - 1
+     * belong to the caller; it is unique with overwhelming probability, like a client ID
+     */
+    public static long nextSessionBlockId() {
+        final long randomPart = RANDOM.nextInt(1 << RANDOM_BITS);
+        final long timePart = System.currentTimeMillis() & ((1L << BLOCK_TIME_BITS) - 1);
+        return BLOCK_FLAG | (((timePart << RANDOM_BITS) | randomPart) << SESSION_BITS);
+    }
+}
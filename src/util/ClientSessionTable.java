@@ -0,0 +1,325 @@
+package util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A table that remembers which messages of each client have been executed, so that a message can only be executed once.
+ *
+ * For each client (session) we only keep the highest sequence number below which every message is executed, plus a
+ * bitmap of WINDOW_SIZE sequence numbers above it. Sessions live in a primitive open-addressing hash map keyed by the
+ * client ID (linear probing, backward-shift deletion), so a lookup allocates nothing. Sessions that have been idle for
+ * longer than the expire period are dropped.
+ *
+ * Since a client never has more than WINDOW_SIZE messages in flight, a message above the window can only come from a
+ * misbehaving client; the leader does not execute it (see isWithinWindow) but answers it with a NACK, so the client
+ * retransmits it.
+ */
+public class ClientSessionTable {
+
+    public static final int WINDOW_SIZE = 256;
+
+    public static final long DEFAULT_SESSION_EXPIRE_MILLS = 60 * 60 * 1000;
+
+    private static final int WINDOW_WORDS = WINDOW_SIZE / 64;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long EMPTY_KEY = Long.MIN_VALUE;
+
+    private final long sessionExpireMills;
+
+    // all columns are indexed by the position of the client ID in keys
+    private long[] keys;
+    private int[] contiguousSeqNums;   // every message with a sequence number <= this is executed, -1 if none
+    private long[] windowBits;         // bit i of the session means contiguousSeqNum + 1 + i is executed
+    private int[] lastSeqNums;         // the latest executed sequence number and the slot it is chosen in
+    private int[] lastSlotIndexes;
+    private long[] lastActiveTimeStamps;
+
+    private int size;
+    private long lastExpireTimeStamp;
+
+    public ClientSessionTable() {
+        this(DEFAULT_SESSION_EXPIRE_MILLS);
+    }
+
+    public ClientSessionTable(final long sessionExpireMills) {
+        this.sessionExpireMills = sessionExpireMills;
+        allocate(INITIAL_CAPACITY);
+        this.lastExpireTimeStamp = System.currentTimeMillis();
+    }
+
+    /**
+     * @return Whether the message has been executed before
+     */
+    public boolean isExecuted(final long clientId, final int messageSequenceNumber) {
+        final int position = find(clientId);
+        if (position < 0) {
+            return false;
+        }
+        final int offset = messageSequenceNumber - contiguousSeqNums[position] - 1;
+        if (offset < 0) {
+            return true;
+        }
+        if (offset >= WINDOW_SIZE) {
+            return false;
+        }
+        return (windowBits[position * WINDOW_WORDS + (offset >>> 6)] & (1L << offset)) != 0;
+    }
+
+    /**
+     * @return Whether the message is close enough to the executed ones of its client to be tracked by the bitmap
+     */
+    public boolean isWithinWindow(final long clientId, final int messageSequenceNumber) {
+        final int position = find(clientId);
+        final int contiguousSeqNum = position < 0 ? -1 : contiguousSeqNums[position];
+        return messageSequenceNumber - contiguousSeqNum - 1 < WINDOW_SIZE;
+    }
+
+    /**
+     * @return The slot index an executed message is chosen in, or -1 if the table does not remember it (only the
+     * latest executed message of each client is remembered)
+     */
+    public int getSlotIndex(final long clientId, final int messageSequenceNumber) {
+        final int position = find(clientId);
+        if (position < 0 || lastSeqNums[position] != messageSequenceNumber) {
+            return -1;
+        }
+        return lastSlotIndexes[position];
+    }
+
+    /**
+     * Record that a message is executed in the given slot
+     */
+    public void markExecuted(final long clientId, final int messageSequenceNumber, final int slotIndex) {
+        final long currentTimeStamp = System.currentTimeMillis();
+        if (currentTimeStamp - lastExpireTimeStamp > sessionExpireMills / 4) {
+            expireIdleSessions(currentTimeStamp);
+        }
+        int position = find(clientId);
+        if (position < 0) {
+            position = insert(clientId);
+        }
+        lastActiveTimeStamps[position] = currentTimeStamp;
+        lastSeqNums[position] = messageSequenceNumber;
+        lastSlotIndexes[position] = slotIndex;
+
+        int offset = messageSequenceNumber - contiguousSeqNums[position] - 1;
+        if (offset < 0) {
+            return;
+        }
+        if (offset >= WINDOW_SIZE) {
+            // should not happen if the leader checks isWithinWindow, slide the window so that the bitmap stays bounded
+            shiftWindow(position, offset - WINDOW_SIZE + 1);
+            offset = WINDOW_SIZE - 1;
+        }
+        windowBits[position * WINDOW_WORDS + (offset >>> 6)] |= 1L << offset;
+        // advance the contiguous sequence number over the executed prefix of the window
+        int numOfExecutedPrefix = 0;
+        for (int word = 0; word < WINDOW_WORDS; word++) {
+            final long notExecuted = ~windowBits[position * WINDOW_WORDS + word];
+            if (notExecuted != 0) {
+                numOfExecutedPrefix += Long.numberOfTrailingZeros(notExecuted);
+                break;
+            }
+            numOfExecutedPrefix += 64;
+        }
+        if (numOfExecutedPrefix > 0) {
+            shiftWindow(position, numOfExecutedPrefix);
+        }
+    }
+
+    /**
+     * Drop every session whose latest message is executed longer than the expire period ago
+     */
+    public void expireIdleSessions(final long currentTimeStamp) {
+        lastExpireTimeStamp = currentTimeStamp;
+        int position = 0;
+        while (position < keys.length) {
+            if (keys[position] != EMPTY_KEY && currentTimeStamp - lastActiveTimeStamps[position] > sessionExpireMills) {
+                // the backward shift may move another session into this position, so check it again
+                remove(position);
+            } else {
+                position += 1;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Write the table into a snapshot
+     */
+    public void writeTo(final DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int position = 0; position < keys.length; position++) {
+            if (keys[position] == EMPTY_KEY) {
+                continue;
+            }
+            out.writeLong(keys[position]);
+            out.writeInt(contiguousSeqNums[position]);
+            for (int word = 0; word < WINDOW_WORDS; word++) {
+                out.writeLong(windowBits[position * WINDOW_WORDS + word]);
+            }
+            out.writeInt(lastSeqNums[position]);
+            out.writeInt(lastSlotIndexes[position]);
+            out.writeLong(lastActiveTimeStamps[position]);
+        }
+    }
+
+    /**
+     * Replace the content of the table with the one written by writeTo
+     */
+    public void readFrom(final DataInput in) throws IOException {
+        final int numOfSessions = in.readInt();
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < numOfSessions * 2) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+        for (int i = 0; i < numOfSessions; i++) {
+            final int position = insert(in.readLong());
+            contiguousSeqNums[position] = in.readInt();
+            for (int word = 0; word < WINDOW_WORDS; word++) {
+                windowBits[position * WINDOW_WORDS + word] = in.readLong();
+            }
+            lastSeqNums[position] = in.readInt();
+            lastSlotIndexes[position] = in.readInt();
+            lastActiveTimeStamps[position] = in.readLong();
+        }
+    }
+
+    private void allocate(final int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        contiguousSeqNums = new int[capacity];
+        windowBits = new long[capacity * WINDOW_WORDS];
+        lastSeqNums = new int[capacity];
+        lastSlotIndexes = new int[capacity];
+        lastActiveTimeStamps = new long[capacity];
+        size = 0;
+    }
+
+    private static int hash(final long clientId) {
+        // the finalizer of MurmurHash3, so that client IDs differing only in high bits spread over the table
+        long h = clientId;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private int find(final long clientId) {
+        final int mask = keys.length - 1;
+        int position = hash(clientId) & mask;
+        while (keys[position] != EMPTY_KEY) {
+            if (keys[position] == clientId) {
+                return position;
+            }
+            position = (position + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int insert(final long clientId) {
+        if (clientId == EMPTY_KEY) {
+            throw new IllegalArgumentException("Invalid client ID");
+        }
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        final int mask = keys.length - 1;
+        int position = hash(clientId) & mask;
+        while (keys[position] != EMPTY_KEY) {
+            position = (position + 1) & mask;
+        }
+        keys[position] = clientId;
+        contiguousSeqNums[position] = -1;
+        for (int word = 0; word < WINDOW_WORDS; word++) {
+            windowBits[position * WINDOW_WORDS + word] = 0;
+        }
+        lastSeqNums[position] = -1;
+        lastSlotIndexes[position] = -1;
+        lastActiveTimeStamps[position] = System.currentTimeMillis();
+        size += 1;
+        return position;
+    }
+
+    private void resize(final int capacity) {
+        final long[] oldKeys = keys;
+        final int[] oldContiguousSeqNums = contiguousSeqNums;
+        final long[] oldWindowBits = windowBits;
+        final int[] oldLastSeqNums = lastSeqNums;
+        final int[] oldLastSlotIndexes = lastSlotIndexes;
+        final long[] oldLastActiveTimeStamps = lastActiveTimeStamps;
+        allocate(capacity);
+        for (int oldPosition = 0; oldPosition < oldKeys.length; oldPosition++) {
+            if (oldKeys[oldPosition] == EMPTY_KEY) {
+                continue;
+            }
+            final int position = insert(oldKeys[oldPosition]);
+            contiguousSeqNums[position] = oldContiguousSeqNums[oldPosition];
+            System.arraycopy(oldWindowBits, oldPosition * WINDOW_WORDS, windowBits, position * WINDOW_WORDS, WINDOW_WORDS);
+            lastSeqNums[position] = oldLastSeqNums[oldPosition];
+            lastSlotIndexes[position] = oldLastSlotIndexes[oldPosition];
+            lastActiveTimeStamps[position] = oldLastActiveTimeStamps[oldPosition];
+        }
+    }
+
+    private void remove(int position) {
+        final int mask = keys.length - 1;
+        keys[position] = EMPTY_KEY;
+        size -= 1;
+        // backward-shift deletion: move later entries of the probe chain into the hole so that find() never stops early
+        int next = (position + 1) & mask;
+        while (keys[next] != EMPTY_KEY) {
+            final int home = hash(keys[next]) & mask;
+            // the entry at next can fill the hole if its home position is not in (position, next]
+            if (((next - home) & mask) >= ((next - position) & mask)) {
+                move(next, position);
+                position = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    private void move(final int from, final int to) {
+        keys[to] = keys[from];
+        contiguousSeqNums[to] = contiguousSeqNums[from];
+        System.arraycopy(windowBits, from * WINDOW_WORDS, windowBits, to * WINDOW_WORDS, WINDOW_WORDS);
+        lastSeqNums[to] = lastSeqNums[from];
+        lastSlotIndexes[to] = lastSlotIndexes[from];
+        lastActiveTimeStamps[to] = lastActiveTimeStamps[from];
+        keys[from] = EMPTY_KEY;
+    }
+
+    /**
+     * Advance the contiguous sequence number of a session by distance, shifting the bitmap accordingly
+     */
+    private void shiftWindow(final int position, final int distance) {
+        contiguousSeqNums[position] += distance;
+        final int base = position * WINDOW_WORDS;
+        if (distance >= WINDOW_SIZE) {
+            for (int word = 0; word < WINDOW_WORDS; word++) {
+                windowBits[base + word] = 0;
+            }
+            return;
+        }
+        final int wordShift = distance >>> 6;
+        final int bitShift = distance & 63;
+        for (int word = 0; word < WINDOW_WORDS; word++) {
+            final int source = word + wordShift;
+            long bits = 0;
+            if (source < WINDOW_WORDS) {
+                bits = windowBits[base + source] >>> bitShift;
+                if (bitShift != 0 && source + 1 < WINDOW_WORDS) {
+                    bits |= windowBits[base + source + 1] << (64 - bitShift);
+                }
+            }
+            windowBits[base + word] = bits;
+        }
+    }
+}
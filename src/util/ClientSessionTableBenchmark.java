@@ -0,0 +1,75 @@
+package util;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A micro benchmark that compares ClientSessionTable with a HashSet of ChatMessageIdentifier, which is what replicas
+ * used to remember executed messages. It reports the retained heap per million executed messages and the ns/op of
+ * duplicate lookups. Run it with a fixed heap (e.g. -Xms2g -Xmx2g) so the memory numbers are stable.
+ */
+public class ClientSessionTableBenchmark {
+
+    private final static int NUM_OF_CLIENTS = 1000;
+    private final static int NUM_OF_COMMANDS = 1000000;
+    private final static int NUM_OF_LOOKUPS = 10000000;
+
+    public static void main(String[] args) {
+        final long[] clientIds = new long[NUM_OF_CLIENTS];
+        for (int i = 0; i < NUM_OF_CLIENTS; i++) {
+            clientIds[i] = ClientIdGenerator.nextClientId();
+        }
+
+        final long baseline = usedMemory();
+        final Set<ChatMessageIdentifier> hashSet = new HashSet<>();
+        for (int i = 0; i < NUM_OF_COMMANDS; i++) {
+            hashSet.add(new ChatMessageIdentifier(clientIds[i % NUM_OF_CLIENTS], i / NUM_OF_CLIENTS));
+        }
+        final long hashSetBytes = usedMemory() - baseline;
+
+        final long tableBaseline = usedMemory();
+        final ClientSessionTable table = new ClientSessionTable();
+        for (int i = 0; i < NUM_OF_COMMANDS; i++) {
+            table.markExecuted(clientIds[i % NUM_OF_CLIENTS], i / NUM_OF_CLIENTS, i);
+        }
+        final long tableBytes = usedMemory() - tableBaseline;
+
+        System.out.printf("HashSet<ChatMessageIdentifier>: %.1f MB per million commands%n", hashSetBytes * (1e6 / NUM_OF_COMMANDS) / 1e6);
+        System.out.printf("ClientSessionTable:             %.1f MB per million commands%n", tableBytes * (1e6 / NUM_OF_COMMANDS) / 1e6);
+
+        // run each lookup loop twice and only report the second run, after the JIT has compiled it
+        for (int round = 0; round < 2; round++) {
+            final Random random = new Random(round);
+            long found = 0;
+            long startTime = System.nanoTime();
+            for (int i = 0; i < NUM_OF_LOOKUPS; i++) {
+                final int command = random.nextInt(NUM_OF_COMMANDS);
+                if (hashSet.contains(new ChatMessageIdentifier(clientIds[command % NUM_OF_CLIENTS], command / NUM_OF_CLIENTS))) {
+                    found += 1;
+                }
+            }
+            final double hashSetNanos = (System.nanoTime() - startTime) / (double) NUM_OF_LOOKUPS;
+
+            startTime = System.nanoTime();
+            for (int i = 0; i < NUM_OF_LOOKUPS; i++) {
+                final int command = random.nextInt(NUM_OF_COMMANDS);
+                if (table.isExecuted(clientIds[command % NUM_OF_CLIENTS], command / NUM_OF_CLIENTS)) {
+                    found += 1;
+                }
+            }
+            final double tableNanos = (System.nanoTime() - startTime) / (double) NUM_OF_LOOKUPS;
+            if (round == 1) {
+                System.out.printf("lookup: HashSet %.1f ns/op, ClientSessionTable %.1f ns/op (%d found)%n", hashSetNanos, tableNanos, found);
+            }
+        }
+    }
+
+    private static long usedMemory() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
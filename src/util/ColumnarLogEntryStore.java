@@ -0,0 +1,171 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A log entry store that keeps the slots in primitive columns instead of one object per slot:
+ *      an int column for the accepted proposals,
+ *      bitsets for whether a slot is present, chosen and executed,
+ *      and the values encoded in UTF-8 in a shared byte arena, addressed by an offset and a length column.
+ *
+ * That is about 16 bytes per slot plus the payload, instead of a LogEntry, a String and its byte array per slot,
+ * and the garbage collector only has a handful of large arrays to trace no matter how long the log is.
+ *
+ * The arena is made of fixed size chunks so it can grow beyond 2 GB. A value never crosses a chunk boundary, a value
+ * larger than a chunk gets a chunk of its own. The first chunk starts small and doubles up to the chunk size, so that a
+ * short log does not reserve a whole chunk.
+ * Overwriting a slot appends the new value and leaves the old bytes unused, which is fine since a slot is only
+ * overwritten by a higher proposal before it is chosen.
+ */
+public class ColumnarLogEntryStore implements LogEntryStore {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int CHUNK_SIZE = 1 << 24;
+    private static final int INITIAL_CHUNK_SIZE = 1 << 16;
+    private static final int NULL_VALUE_LENGTH = -1;
+
+    private int[] acceptedProposals;
+    private long[] valueAddresses;  // chunk index in the higher 32 bits and offset in that chunk in the lower 32 bits
+    private int[] valueLengths;
+    private long[] presentBits;
+    private long[] chosenBits;
+    private long[] executedBits;
+
+    private byte[][] arenaChunks;
+    private int numOfChunks;
+    private int currentChunkOffset;
+
+    private int lastIndex;
+
+    public ColumnarLogEntryStore() {
+        this.acceptedProposals = new int[INITIAL_CAPACITY];
+        this.valueAddresses = new long[INITIAL_CAPACITY];
+        this.valueLengths = new int[INITIAL_CAPACITY];
+        this.presentBits = new long[INITIAL_CAPACITY / 64];
+        this.chosenBits = new long[INITIAL_CAPACITY / 64];
+        this.executedBits = new long[INITIAL_CAPACITY / 64];
+        this.arenaChunks = new byte[4][];
+        this.arenaChunks[0] = new byte[INITIAL_CHUNK_SIZE];
+        this.numOfChunks = 1;
+        this.currentChunkOffset = 0;
+        this.lastIndex = -1;
+    }
+
+    @Override
+    public boolean contains(final int index) {
+        return getBit(presentBits, index);
+    }
+
+    @Override
+    public int getAcceptedProposal(final int index) {
+        return contains(index) ? acceptedProposals[index] : 0;
+    }
+
+    @Override
+    public String getAcceptedValue(final int index) {
+        if (!contains(index) || valueLengths[index] == NULL_VALUE_LENGTH) {
+            return null;
+        }
+        final long address = valueAddresses[index];
+        return new String(arenaChunks[(int) (address >>> 32)], (int) address, valueLengths[index], StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void put(final int index, final int acceptedProposal, final String acceptedValue) {
+        ensureCapacity(index);
+        acceptedProposals[index] = acceptedProposal;
+        if (acceptedValue == null) {
+            valueLengths[index] = NULL_VALUE_LENGTH;
+        } else {
+            final byte[] bytes = acceptedValue.getBytes(StandardCharsets.UTF_8);
+            valueAddresses[index] = appendToArena(bytes);
+            valueLengths[index] = bytes.length;
+        }
+        setBit(presentBits, index);
+        clearBit(chosenBits, index);
+        clearBit(executedBits, index);
+        lastIndex = Math.max(lastIndex, index);
+    }
+
+    @Override
+    public boolean isChosen(final int index) {
+        return getBit(chosenBits, index);
+    }
+
+    @Override
+    public void setChosen(final int index) {
+        setBit(chosenBits, index);
+    }
+
+    @Override
+    public boolean isExecuted(final int index) {
+        return getBit(executedBits, index);
+    }
+
+    @Override
+    public void setExecuted(final int index) {
+        setBit(executedBits, index);
+    }
+
+    @Override
+    public int getLastIndex() {
+        return lastIndex;
+    }
+
+    private long appendToArena(final byte[] bytes) {
+        final byte[] currentChunk = arenaChunks[numOfChunks - 1];
+        if (bytes.length > currentChunk.length - currentChunkOffset && currentChunk.length < CHUNK_SIZE
+                && bytes.length <= CHUNK_SIZE - currentChunkOffset) {
+            // only the first chunk is smaller than a regular one, the offsets in it stay valid as it grows
+            int newLength = currentChunk.length * 2;
+            while (newLength < currentChunkOffset + bytes.length) {
+                newLength *= 2;
+            }
+            arenaChunks[numOfChunks - 1] = Arrays.copyOf(currentChunk, Math.min(CHUNK_SIZE, newLength));
+        }
+        if (bytes.length > arenaChunks[numOfChunks - 1].length - currentChunkOffset) {
+            // start a new chunk, which is as large as the value if the value does not fit in a regular one
+            if (numOfChunks == arenaChunks.length) {
+                arenaChunks = Arrays.copyOf(arenaChunks, arenaChunks.length * 2);
+            }
+            arenaChunks[numOfChunks] = new byte[Math.max(CHUNK_SIZE, bytes.length)];
+            numOfChunks += 1;
+            currentChunkOffset = 0;
+        }
+        final int chunkIndex = numOfChunks - 1;
+        System.arraycopy(bytes, 0, arenaChunks[chunkIndex], currentChunkOffset, bytes.length);
+        final long address = ((long) chunkIndex << 32) | currentChunkOffset;
+        currentChunkOffset += bytes.length;
+        return address;
+    }
+
+    private void ensureCapacity(final int index) {
+        if (index < acceptedProposals.length) {
+            return;
+        }
+        int newLength = acceptedProposals.length * 2;
+        while (newLength <= index) {
+            newLength *= 2;
+        }
+        acceptedProposals = Arrays.copyOf(acceptedProposals, newLength);
+        valueAddresses = Arrays.copyOf(valueAddresses, newLength);
+        valueLengths = Arrays.copyOf(valueLengths, newLength);
+        presentBits = Arrays.copyOf(presentBits, newLength / 64);
+        chosenBits = Arrays.copyOf(chosenBits, newLength / 64);
+        executedBits = Arrays.copyOf(executedBits, newLength / 64);
+    }
+
+    private static boolean getBit(final long[] bits, final int index) {
+        final int word = index >>> 6;
+        return word < bits.length && (bits[word] & (1L << index)) != 0;
+    }
+
+    private static void setBit(final long[] bits, final int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    private static void clearBit(final long[] bits, final int index) {
+        bits[index >>> 6] &= ~(1L << index);
+    }
+}
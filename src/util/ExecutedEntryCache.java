@@ -0,0 +1,48 @@
+package util;
+
+/**
+ * The most recently executed entries of a replica in a fixed size ring, so that subscribers that keep up with the log
+ * are served from memory while the entries are still hot, and only subscribers that fall behind by more than the
+ * capacity read the log of the replica from disk.
+ *
+ * It is written by the consensus thread only and read by any number of subscriber threads without locking: an entry
+ * is an immutable (slot, value) pair, so a reader that finds the ring position overwritten by a newer slot simply
+ * misses. The entries of a slot are visible to readers once the executed watermark (a volatile) covers the slot.
+ */
+public class ExecutedEntryCache {
+
+    public final static int DEFAULT_CAPACITY = 1 << 16;
+
+    private final ExecutedEntry[] entries;
+
+    public ExecutedEntryCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ExecutedEntryCache(final int capacity) {
+        this.entries = new ExecutedEntry[capacity];
+    }
+
+    public void put(final int slotIndex, final String value) {
+        entries[slotIndex % entries.length] = new ExecutedEntry(slotIndex, value);
+    }
+
+    /**
+     * @return The value of the slot, null if it is no longer (or not yet) in the cache
+     */
+    public String get(final int slotIndex) {
+        final ExecutedEntry entry = entries[slotIndex % entries.length];
+        return entry != null && entry.slotIndex == slotIndex ? entry.value : null;
+    }
+
+    private static class ExecutedEntry {
+
+        private final int slotIndex;
+        private final String value;
+
+        ExecutedEntry(final int slotIndex, final String value) {
+            this.slotIndex = slotIndex;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the value of a slot into the fragments of a Reed-Solomon code (RS-Paxos), one per replica, so that the leader
+ * sends every acceptor its fragment only and any k of them give the value back. A fragment is kept in the slot as
+ * "|FRAGMENT|{index}:{k}:{number of fragments}:{length of the value in bytes}:{SHA-256 of the value}:{the shard in Base64}",
+ * the fragment of replica i has index i.
+ *
+ * The digest tells the fragments of one value from those of another value proposed for the same slot by another
+ * leader, and is checked again once the value is decoded.
+ */
+public class FragmentCodec {
+
+    // the prefix of a fragment, like the no-op literal of the leader it can not be the literal of a chat message
+    public final static String FRAGMENT_PREFIX = "|FRAGMENT|";
+
+    private final int numOfDataFragments;
+    private final int numOfFragments;
+    private final ReedSolomon reedSolomon;
+
+    public FragmentCodec(final int numOfDataFragments, final int numOfFragments) {
+        this.numOfDataFragments = numOfDataFragments;
+        this.numOfFragments = numOfFragments;
+        this.reedSolomon = new ReedSolomon(numOfDataFragments, numOfFragments - numOfDataFragments);
+    }
+
+    public int getNumOfDataFragments() {
+        return numOfDataFragments;
+    }
+
+    /**
+     * @return The fragments of the value, the one at index i is for replica i
+     */
+    public List<String> encode(final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        final String header = numOfDataFragments + ":" + numOfFragments + ":" + bytes.length + ":"
+                + PayloadStore.digest(value) + ":";
+        final byte[][] shards = reedSolomon.encode(bytes);
+        final Base64.Encoder encoder = Base64.getEncoder();
+        final List<String> fragments = new ArrayList<>(numOfFragments);
+        for (int index = 0; index < numOfFragments; index++) {
+            fragments.add(FRAGMENT_PREFIX + index + ":" + header + encoder.encodeToString(shards[index]));
+        }
+        return fragments;
+    }
+
+    /**
+     * @return Whether the value of a slot is a fragment of the value chosen for it
+     */
+    public static boolean isFragment(final String value) {
+        return value != null && value.startsWith(FRAGMENT_PREFIX);
+    }
+
+    /**
+     * @return The digest of the value a fragment belongs to
+     */
+    public static String getDigest(final String fragment) {
+        return split(fragment)[4];
+    }
+
+    /**
+     * @return The index of a fragment, which is the ID of the replica it is for
+     */
+    public static int getIndex(final String fragment) {
+        return Integer.parseInt(split(fragment)[0]);
+    }
+
+    /**
+     * Rebuild the value with the given digest from the values different replicas hold for its slot, either the value
+     * itself or its fragments; the values of other digests are ignored
+     *
+     * @return The value, null if there are fewer than k distinct fragments of it
+     */
+    public static String decode(final Collection<String> values, final String digest) {
+        final Map<Integer, byte[]> shards = new HashMap<>();
+        final Base64.Decoder decoder = Base64.getDecoder();
+        int numOfDataFragments = 0;
+        int numOfFragments = 0;
+        int valueLength = 0;
+        for (final String value : values) {
+            if (value == null) {
+                continue;
+            }
+            if (!isFragment(value)) {
+                if (PayloadStore.digest(value).equals(digest)) {
+                    return value;
+                }
+                continue;
+            }
+            final String[] subStrArr = split(value);
+            if (!subStrArr[4].equals(digest)) {
+                continue;
+            }
+            numOfDataFragments = Integer.parseInt(subStrArr[1]);
+            numOfFragments = Integer.parseInt(subStrArr[2]);
+            valueLength = Integer.parseInt(subStrArr[3]);
+            shards.put(Integer.parseInt(subStrArr[0]), decoder.decode(subStrArr[5]));
+        }
+        if (shards.isEmpty() || shards.size() < numOfDataFragments) {
+            return null;
+        }
+        final byte[] bytes = new ReedSolomon(numOfDataFragments, numOfFragments - numOfDataFragments).decode(shards, valueLength);
+        final String value = new String(bytes, StandardCharsets.UTF_8);
+        return PayloadStore.digest(value).equals(digest) ? value : null;
+    }
+
+    private static String[] split(final String fragment) {
+        return fragment.substring(FRAGMENT_PREFIX.length()).split(":", 6);
+    }
+}
@@ -0,0 +1,163 @@
+package util;
+
+import message.HeartBeatResponseMsg;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A time based lease that lets the leader answer reads from its executed slots without a Paxos round.
+ *
+ * Every heartbeat of the leader carries its System.nanoTime() when it is sent. A follower that acknowledges it promises
+ * not to follow another leader for leaseDuration from the moment it receives it (grant / isPromisedToOtherView), and
+ * once a quorum has acknowledged a heartbeat, the leader holds the lease until its send time plus leaseDuration shrunk
+ * by the clock drift bound. The promises start no earlier than the heartbeat is sent and the clocks of the replicas do
+ * not run slower than the bound relative to each other, so the lease of the leader ends before the promise of any
+ * follower in its quorum, and no other leader can get a value chosen (and answer a read) while the lease is held.
+ *
+ * An accepted ACCEPT works like a heartbeat: the follower promises the lease when it accepts and its response carries the
+ * view it promised, so the leader keeps its lease while heartbeats are suppressed by the ACCEPT traffic. A follower
+ * does not answer the PREPARE or PREPARE_RANGE of the leader of another view while its promise holds either, so that
+ * leader can not even finish phase 1 before the lease is over.
+ *
+ * Only monotonic time is used, wall clocks can jump. Every method is synchronized, since heartbeats are sent by the
+ * HeartBeatLogger, acknowledged on the receiving threads and the lease is checked by the threads serving reads.
+ */
+public class LeaderLease {
+
+    private final int serverId;
+    private final int quorumSize;   // the number of acknowledgements from other replicas a lease needs
+    private final long leaseDurationNanos;
+    private final long leaderLeaseDurationNanos;
+
+    // the heartbeat being acknowledged, as the leader
+    private int roundViewNumber;
+    private long roundTimeStamp;
+    private final Set<Integer> roundResponders;
+
+    // the lease held, as the leader
+    private int leaseViewNumber;
+    private long leaseExpiration;
+
+    // the promise given, as a follower
+    private int promisedViewNumber;
+    private long promiseExpiration;
+
+    /**
+     * @param quorumSize      the number of other replicas that have to acknowledge a heartbeat
+     * @param clockDriftBound the largest relative rate at which the clocks of two replicas drift apart, e.g. 0.01
+     */
+    public LeaderLease(final int serverId, final int quorumSize, final long leaseDurationMillis, final double clockDriftBound) {
+        if (clockDriftBound < 0 || clockDriftBound >= 1) {
+            throw new IllegalArgumentException("Invalid clock drift bound");
+        }
+        this.serverId = serverId;
+        this.quorumSize = quorumSize;
+        this.leaseDurationNanos = leaseDurationMillis * 1000000L;
+        this.leaderLeaseDurationNanos = (long) (leaseDurationNanos * (1 - clockDriftBound));
+        this.roundViewNumber = -1;
+        this.roundResponders = new HashSet<>();
+        this.leaseViewNumber = -1;
+        this.promisedViewNumber = -1;
+    }
+
+    /**
+     * As the leader, start collecting the acknowledgements of the heartbeat (or ACCEPT) that is about to be sent
+     */
+    public synchronized void startRound(final int viewNumber, final long timeStamp) {
+        roundViewNumber = viewNumber;
+        roundTimeStamp = timeStamp;
+        roundResponders.clear();
+    }
+
+    /**
+     * As the leader, count an acknowledgement, the lease is extended once a quorum has acknowledged the heartbeat
+     */
+    public void onResponse(final HeartBeatResponseMsg heartBeatResponseMsg) {
+        onAcknowledgement(heartBeatResponseMsg.getViewNumber(), heartBeatResponseMsg.getTimeStamp(),
+                heartBeatResponseMsg.getResponseServerID());
+    }
+
+    /**
+     * As the leader, count an acknowledgement of the round started at the time stamp, e.g. the response to an ACCEPT
+     *
+     * @param viewNumber the view the responder has promised the lease to
+     */
+    public synchronized void onAcknowledgement(final int viewNumber, final long timeStamp, final int responseServerID) {
+        if (viewNumber != roundViewNumber || timeStamp != roundTimeStamp || responseServerID == serverId) {
+            return;
+        }
+        roundResponders.add(responseServerID);
+        if (roundResponders.size() >= quorumSize) {
+            if (leaseViewNumber != roundViewNumber || roundTimeStamp + leaderLeaseDurationNanos > leaseExpiration) {
+                leaseViewNumber = roundViewNumber;
+                leaseExpiration = roundTimeStamp + leaderLeaseDurationNanos;
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return Whether this replica holds the lease as the leader of the view
+     */
+    public synchronized boolean isValid(final int viewNumber) {
+        return leaseViewNumber == viewNumber && System.nanoTime() - leaseExpiration < 0;
+    }
+
+    /**
+     * As the leader, wait until the lease of the view is held or the timeout expires
+     *
+     * @return Whether the lease is held
+     */
+    public synchronized boolean awaitValid(final int viewNumber, final long timeoutMillis) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        while (!isValid(viewNumber)) {
+            final long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                return false;
+            }
+            wait(Math.max(1, remainingNanos / 1000000L));
+        }
+        return true;
+    }
+
+    /**
+     * As the leader, give the lease up, e.g. when the view changes
+     */
+    public synchronized void revoke() {
+        leaseViewNumber = -1;
+        roundViewNumber = -1;
+    }
+
+    /**
+     * As a follower, promise the leader of the view not to follow another leader for the lease duration from now on
+     */
+    public synchronized void grant(final int viewNumber) {
+        promisedViewNumber = viewNumber;
+        promiseExpiration = System.nanoTime() + leaseDurationNanos;
+    }
+
+    /**
+     * As a follower, drop the promise to the leader of the view, when that leader hands its leadership over and has
+     * given its lease up already
+     */
+    public synchronized void release(final int viewNumber) {
+        if (promisedViewNumber == viewNumber) {
+            promisedViewNumber = -1;
+        }
+    }
+
+    /**
+     * @return Whether this replica has promised the leader of any view that its lease is not over yet
+     */
+    public synchronized boolean isPromised() {
+        return promisedViewNumber != -1 && System.nanoTime() - promiseExpiration < 0;
+    }
+
+    /**
+     * @return Whether this replica has promised a leader of another view that its lease is not over yet
+     */
+    public synchronized boolean isPromisedToOtherView(final int viewNumber) {
+        return promisedViewNumber != -1 && promisedViewNumber != viewNumber && System.nanoTime() - promiseExpiration < 0;
+    }
+}
@@ -7,14 +7,9 @@ public class LogEntry {
     private String acceptedValue;
     private boolean isExecuted;
 
-    private int numberOfReceivedPrepareResponse;
-    private int numberOfReceivedAcceptResponse;
-
     public LogEntry(int acceptedProposal, String acceptedValue) {
         this.acceptedProposal = acceptedProposal;
         this.acceptedValue = acceptedValue;
-        this.numberOfReceivedPrepareResponse = 0;
-        this.numberOfReceivedAcceptResponse = 0;
         this.isExecuted = false;
     }
 
@@ -34,14 +29,6 @@ public class LogEntry {
         this.acceptedValue = acceptedValue;
     }
 
-    public int getNumberOfReceivedPrepareResponse() {
-        return numberOfReceivedPrepareResponse;
-    }
-
-    public void setNumberOfReceivedPrepareResponse(int numberOfReceivedPrepareResponse) {
-        this.numberOfReceivedPrepareResponse = numberOfReceivedPrepareResponse;
-    }
-
     public boolean isExecuted() {
         return isExecuted;
     }
@@ -2,10 +2,7 @@ package util;
 
 import service.PaxosLogServer;
 
-import java.io.BufferedWriter;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 
 
 /**
@@ -13,116 +10,204 @@ import java.io.OutputStreamWriter;
  */
 public class LogEntrySlotManager {
 
-    private static final int INITIAL_ARRAY_CAPACITY = 10;
+    private final static int MAX_ENTRIES_PER_WRITE = 4096;
 
     private final PaxosLogServer paxosLogServer;
 
     private final int skipSlotSeqNum;
-    private final int serverId;
+    private final String replicaName;
 
-    // we use an array of LogEntry to model the entry slots, using array enable us to allow a hole (skip slot)
-    private LogEntry[] logEntryArray;
-    private final int size;
+    // the storage of the slots, a slot can be empty so that we allow a hole (skip slot)
+    private final LogEntryStore logEntryStore;
 
     private int firstUnchosenIndex; // the smallest log index that have not been chosen
     private int lastLogIndex;   // the largest entry for which this server has accepted a proposal
     private int minProposal;    // the number of the smallest proposal this server will accept for any log entry
 
+    // every slot below these indexes is chosen (ignoring the skip slot for the second one), so that finding the first
+    // unchosen index never scans the whole log; they only move backward when a chosen slot is overwritten
+    private int chosenPrefixEnd;
+    private int chosenPrefixEndIgnoringSkipSlot;
+
+    // every slot below this index is executed (written to the log of the replica)
+    private int firstUnexecutedIndex;
+
+    // every slot below this index can be read from the log of the replica, it is published after the log is flushed
+    // and read by other threads, e.g. to serve range reads
+    private volatile int executedWatermark;
+
+    // the log of the replica, the executed entries are written to it in slot order
+    private final ReplicaLogWriter replicaLogWriter;
+
+    // the newest executed entries, so that subscribers keeping up with the log do not read it from disk
+    private final ExecutedEntryCache executedEntryCache;
+
+    // subscriber threads wait on it for the executed watermark to move
+    private final Object executedWatermarkMonitor;
+
+    // the write-ahead log every change of the slots goes to before the replica responds, null if not persistent
+    private final WriteAheadLog writeAheadLog;
+
+    // the disseminated payloads the references chosen in the slots are resolved to before they are executed
+    private final PayloadStore payloadStore;
+
     public LogEntrySlotManager(final PaxosLogServer paxosLogServer) {
+        this(paxosLogServer, new ColumnarLogEntryStore());
+    }
+
+    public LogEntrySlotManager(final PaxosLogServer paxosLogServer, final LogEntryStore logEntryStore) {
+        this(paxosLogServer, logEntryStore, null);
+    }
+
+    /**
+     * Recover the slots, the min proposal and the session table of the replica from the write-ahead log if there is
+     * one, otherwise the min proposal from the store (see LogEntryStore.loadMinProposal). The chosen slots that are
+     * not executed yet are written to the log of the replica by write() a batch at a time, so the replica can serve as
+     * soon as the write-ahead log is replayed.
+     */
+    public LogEntrySlotManager(final PaxosLogServer paxosLogServer, final LogEntryStore logEntryStore,
+                               final WriteAheadLog writeAheadLog) {
         this.paxosLogServer = paxosLogServer;
-        this.logEntryArray = new LogEntry[INITIAL_ARRAY_CAPACITY];
-        this.size = 0;
+        this.logEntryStore = logEntryStore;
+        this.writeAheadLog = writeAheadLog;
         this.firstUnchosenIndex = 0;
         this.lastLogIndex = 0;
-        this.minProposal = 0;
+        if (writeAheadLog != null) {
+            this.minProposal = LogRecovery.recover(writeAheadLog, logEntryStore,
+                    paxosLogServer.getClientSessionTable(), Runtime.getRuntime().availableProcessors());
+        } else {
+            // a store that keeps the accepted slots across restarts keeps the promise made for them too
+            this.minProposal = logEntryStore.loadMinProposal();
+        }
+        this.chosenPrefixEnd = 0;
+        this.chosenPrefixEndIgnoringSkipSlot = 0;
+        this.firstUnexecutedIndex = 0;
+        // a store kept across restarts may already contain executed slots, which must not be written again
+        while (logEntryStore.isExecuted(firstUnexecutedIndex)) {
+            firstUnexecutedIndex += 1;
+        }
         this.skipSlotSeqNum = paxosLogServer.getSkipSlotSeqNum();
-        this.serverId = paxosLogServer.getServerId();
+        this.replicaName = paxosLogServer.getReplicaName();
+        this.replicaLogWriter = new ReplicaLogWriter(getReplicaLogDirectory());
+        this.executedEntryCache = new ExecutedEntryCache();
+        this.executedWatermarkMonitor = new Object();
+        this.payloadStore = new PayloadStore();
+        this.executedWatermark = Math.min(firstUnexecutedIndex, Math.max(0, replicaLogWriter.getNextSlot()));
+        selfUpdate();
     }
 
+    /**
+     * @return The accepted proposal of the slot, Integer.MAX_VALUE if the slot is chosen and 0 if it is empty
+     */
     public int getProposalID(final int index) {
-        if (index >= logEntryArray.length) {
-            logEntryArrayExpand();
-        }
-        final LogEntry logEntry = logEntryArray[index];
-        if (logEntry == null) {
-            return 0;
-        } else {
-            return logEntry.getAcceptedProposal();
+        if (logEntryStore.isChosen(index)) {
+            return Integer.MAX_VALUE;
         }
+        return logEntryStore.getAcceptedProposal(index);
     }
 
     public String getLogEntryValue(final int index) {
-        if (index >= logEntryArray.length) {
-            logEntryArrayExpand();
-        }
-        final LogEntry logEntry = logEntryArray[index];
-        if (logEntry == null) {
-            return null;
-        } else {
-            return logEntry.getAcceptedValue();
-        }
+        return logEntryStore.getAcceptedValue(index);
     }
 
-    public void insertLogEntry(final int index, final int proposalID, final String value) {
-        selfUpdate();
-        if (index >= logEntryArray.length) {
-            logEntryArrayExpand();
+    /**
+     * @param clientId              the client the value comes from, so that the session table can be recovered
+     * @param messageSequenceNumber the sequence number of the value in that client
+     */
+    public void insertLogEntry(final int index, final int proposalID, final long clientId,
+                               final int messageSequenceNumber, final String value) {
+        logEntryStore.put(index, proposalID, value);
+        keepPayload(value);
+        if (writeAheadLog != null) {
+            writeAheadLog.logAccept(index, proposalID, clientId, messageSequenceNumber, value);
+            persist();
         }
-        logEntryArray[index] = new LogEntry(proposalID, value);
+        onSlotUnchosen(index);
         selfUpdate();
     }
 
     public void chooseLogEntry(final int index) {
-        selfUpdate();
-        if (index >= logEntryArray.length) {
-            logEntryArrayExpand();
+        logEntryStore.setChosen(index);
+        if (writeAheadLog != null) {
+            writeAheadLog.logChosen(index);
+            persist();
         }
-        final LogEntry logEntry = logEntryArray[index];
-        logEntry.setAcceptedProposal(Integer.MAX_VALUE);
         selfUpdate();
     }
 
     public void successLogEntry(final int index, final String value) {
-        selfUpdate();
-        if (index >= logEntryArray.length) {
-            logEntryArrayExpand();
+        logEntryStore.put(index, Integer.MAX_VALUE, value);
+        keepPayload(value);
+        logEntryStore.setChosen(index);
+        if (writeAheadLog != null) {
+            writeAheadLog.logAccept(index, Integer.MAX_VALUE, WriteAheadLog.NO_CLIENT_ID, 0, value);
+            writeAheadLog.logChosen(index);
+            persist();
         }
-        logEntryArray[index] = new LogEntry(Integer.MAX_VALUE, value);
         selfUpdate();
     }
 
     public boolean isEntryChosen(final int index) {
-        if (index >= logEntryArray.length) {
-            logEntryArrayExpand();
-        }
-        final LogEntry logEntry = logEntryArray[index];
-        if (logEntry == null) {
-            return false;
-        } else {
-            return logEntry.getAcceptedProposal() == Integer.MAX_VALUE;
-        }
+        return logEntryStore.isChosen(index);
     }
 
     public void updateLogEntry(final int index, final int proposalID, final String value) {
-        selfUpdate();
-        if (index >= logEntryArray.length) {
-            logEntryArrayExpand();
+        logEntryStore.put(index, proposalID, value);
+        keepPayload(value);
+        onSlotUnchosen(index);
+        if (proposalID == Integer.MAX_VALUE) {
+            logEntryStore.setChosen(index);
+        }
+        if (writeAheadLog != null) {
+            writeAheadLog.logAccept(index, proposalID, WriteAheadLog.NO_CLIENT_ID, 0, value);
+            if (proposalID == Integer.MAX_VALUE) {
+                writeAheadLog.logChosen(index);
+            }
+            persist();
         }
-        final LogEntry logEntry = logEntryArray[index];
-        logEntry.setAcceptedProposal(proposalID);
-        logEntry.setAcceptedValue(value);
         selfUpdate();
     }
 
-    private void logEntryArrayExpand() {
-        selfUpdate();
-        final int previousSize = this.logEntryArray.length;
-        LogEntry[] newLogEntryArray = new LogEntry[previousSize * 2];
-        for (int i = 0; i < previousSize; i++) {
-            newLogEntryArray[i] = logEntryArray[i];
+    /**
+     * Hand the logged changes to the OS, and start a snapshot once the log has grown enough. They are forced to disk
+     * by syncWriteAheadLog before a response depending on them leaves the replica.
+     */
+    private void persist() {
+        writeAheadLog.flush();
+        if (writeAheadLog.isSnapshotDue()) {
+            writeAheadLog.startSnapshot();
         }
-        this.logEntryArray = newLogEntryArray;
-        selfUpdate();
+    }
+
+    /**
+     * @return Whether the changes of the slots go to a write-ahead log, so that a response depending on them has to
+     * wait for syncWriteAheadLog
+     */
+    public boolean isPersistent() {
+        return writeAheadLog != null;
+    }
+
+    /**
+     * Force the changes of the slots logged so far to disk, once for all the responses that depend on them
+     */
+    public void syncWriteAheadLog() {
+        if (writeAheadLog != null) {
+            writeAheadLog.sync();
+        }
+    }
+
+    /**
+     * Keep the payload of a reference accepted in a slot from expiring before the slot is executed
+     */
+    private void keepPayload(final String value) {
+        if (PayloadStore.isReference(value)) {
+            payloadStore.markReferenced(value);
+        }
+    }
+
+    private void onSlotUnchosen(final int index) {
+        chosenPrefixEnd = Math.min(chosenPrefixEnd, index);
+        chosenPrefixEndIgnoringSkipSlot = Math.min(chosenPrefixEndIgnoringSkipSlot, index);
     }
 
     private void selfUpdate() {
@@ -131,28 +216,27 @@ public class LogEntrySlotManager {
     }
 
     private void updateFirstUnchosenIndex() {
-        for (int i = 0; i < logEntryArray.length; i++) {
-            if (paxosLogServer.isLeader() && i == skipSlotSeqNum) {
-                continue;
-            }
-            if (logEntryArray[i] == null) {
-                this.firstUnchosenIndex = i;
-                break;
-            }
-            if (logEntryArray[i].getAcceptedProposal() != Integer.MAX_VALUE) {
-                this.firstUnchosenIndex = i;
-                break;
-            }
+        while (logEntryStore.isChosen(chosenPrefixEnd)) {
+            chosenPrefixEnd += 1;
         }
+        while (chosenPrefixEndIgnoringSkipSlot == skipSlotSeqNum || logEntryStore.isChosen(chosenPrefixEndIgnoringSkipSlot)) {
+            chosenPrefixEndIgnoringSkipSlot += 1;
+        }
+        // the leader never proposes in the skip slot, so it should not wait for that slot to be chosen
+        this.firstUnchosenIndex = paxosLogServer.isLeader() ? chosenPrefixEndIgnoringSkipSlot : chosenPrefixEnd;
     }
 
     private void updateLastLogIndex() {
-        for (int i = logEntryArray.length - 1; i >= 0; i--) {
-            if (logEntryArray[i] != null) {
-                lastLogIndex = i;
-                break;
-            }
-        }
+        lastLogIndex = Math.max(0, logEntryStore.getLastIndex());
+    }
+
+    /**
+     * @return The first slot that is not chosen, the skip slot included even on the leader, e.g. for a new leader to
+     * fill every hole below the accepted slots
+     */
+    public int getFirstHoleIndex() {
+        selfUpdate();
+        return chosenPrefixEnd;
     }
 
     public int getFirstUnchosenIndex() {
@@ -175,49 +259,118 @@ public class LogEntrySlotManager {
         this.lastLogIndex = lastLogIndex;
     }
 
+    /**
+     * @return Whether some chosen slots are waiting to be written to the log of the replica
+     */
+    public boolean hasUnexecutedEntries() {
+        return logEntryStore.isChosen(firstUnexecutedIndex);
+    }
+
+    /**
+     * @return The directory of the log of the replica, which can be read by slot with ReplicaLogReader
+     */
+    public String getReplicaLogDirectory() {
+        return replicaName + "-log";
+    }
+
+    /**
+     * @return Every slot below this one can be read from the log of the replica, safe to call from any thread
+     */
+    public int getExecutedWatermark() {
+        return executedWatermark;
+    }
+
+    /**
+     * Wait until the executed watermark is beyond the slot or the timeout expires, safe to call from any thread
+     *
+     * @return The executed watermark
+     */
+    public int awaitExecutedWatermark(final int slotIndex, final long timeoutMillis) throws InterruptedException {
+        if (executedWatermark > slotIndex) {
+            return executedWatermark;
+        }
+        final long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        synchronized (executedWatermarkMonitor) {
+            long remainingNanos;
+            while (executedWatermark <= slotIndex && (remainingNanos = deadline - System.nanoTime()) > 0) {
+                executedWatermarkMonitor.wait(Math.max(1, remainingNanos / 1000000L));
+            }
+        }
+        return executedWatermark;
+    }
+
+    /**
+     * @return The newest executed entries, the ones below the executed watermark can be read from any thread
+     */
+    public ExecutedEntryCache getExecutedEntryCache() {
+        return executedEntryCache;
+    }
+
+    /**
+     * @return The payloads this replica has received for references, safe to use from any thread
+     */
+    public PayloadStore getPayloadStore() {
+        return payloadStore;
+    }
+
     public int getMinProposal() {
-        selfUpdate();
         return minProposal;
     }
 
     public void setMinProposal(int minProposal) {
-        selfUpdate();
+        if (writeAheadLog != null && minProposal != this.minProposal) {
+            writeAheadLog.logMinProposal(minProposal);
+            persist();
+        }
+        logEntryStore.storeMinProposal(minProposal);
         this.minProposal = minProposal;
     }
 
     /**
-     * Write the chosen value to the log of the replica
+     * Write the chosen value to the log of the replica, at most MAX_ENTRIES_PER_WRITE of them so that a long backlog
+     * (e.g. after recovery) does not stall the replica; call it again while hasUnexecutedEntries()
      * Note that you can write (execute) if and only if there is no holes in front of current slot
+     * A reference to a disseminated payload is executed as the payload, the write stops at a reference whose payload
+     * this replica has not received and asks the other replicas for it. A no-op holds no command, it is executed as an
+     * empty entry, which no chat message can be, so that the log stays addressable by slot.
      */
     public void write() {
-        BufferedWriter bufferedWriter = null;
+        if (!logEntryStore.isChosen(firstUnexecutedIndex)) {
+            return;
+        }
         try {
-            bufferedWriter = new BufferedWriter(
-                    new OutputStreamWriter(
-                            new FileOutputStream("replica" + serverId + ".log", true)));
-            for (LogEntry logEntry : logEntryArray) {
-                if (logEntry == null) {
+            int numOfWrittenEntries = 0;
+            while (logEntryStore.isChosen(firstUnexecutedIndex) && numOfWrittenEntries < MAX_ENTRIES_PER_WRITE) {
+                final String acceptedValue = logEntryStore.getAcceptedValue(firstUnexecutedIndex);
+                final String value = PaxosLogServer.NO_OP_MESSAGE_LITERAL.equals(acceptedValue) ? ""
+                        : PayloadStore.isReference(acceptedValue) ? payloadStore.get(acceptedValue) : acceptedValue;
+                if (value == null) {
+                    paxosLogServer.requestPayload(firstUnexecutedIndex, acceptedValue);
                     break;
                 }
-                if (logEntry.isExecuted()) {
-                    continue;
-                } else if (!logEntry.isExecuted() && logEntry.getAcceptedProposal() == Integer.MAX_VALUE) {
-                    bufferedWriter.write(logEntry.getAcceptedValue());
-                    bufferedWriter.newLine();
-                    logEntry.setExecuted(true);
-                } else {
-                    break;
+                replicaLogWriter.append(firstUnexecutedIndex, value);
+                executedEntryCache.put(firstUnexecutedIndex, String.valueOf(value));
+                logEntryStore.setExecuted(firstUnexecutedIndex);
+                if (PayloadStore.isReference(acceptedValue)) {
+                    payloadStore.retire(acceptedValue);
                 }
+                firstUnexecutedIndex += 1;
+                numOfWrittenEntries += 1;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                bufferedWriter.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+            if (numOfWrittenEntries == 0) {
+                return;
+            }
+            replicaLogWriter.flush();
+            executedWatermark = firstUnexecutedIndex;
+            synchronized (executedWatermarkMonitor) {
+                executedWatermarkMonitor.notifyAll();
             }
+            if (writeAheadLog != null) {
+                writeAheadLog.logExecuted(firstUnexecutedIndex - 1);
+                persist();
+            }
+        } catch (UncheckedIOException e) {
+            e.printStackTrace();
         }
     }
 }
-
@@ -0,0 +1,52 @@
+package util;
+
+/**
+ * The storage of the log entry slots of a replica. LogEntrySlotManager implements the Paxos logic of the slots on top
+ * of it, so that different representations of the slots can be used without touching that logic.
+ *
+ * A slot is empty until a value is put into it. An empty slot has accepted proposal 0 and value null, and is neither
+ * chosen nor executed. The store grows automatically, so any non-negative index can be accessed.
+ */
+public interface LogEntryStore {
+
+    /**
+     * @return Whether a value has been put into the slot
+     */
+    boolean contains(int index);
+
+    int getAcceptedProposal(int index);
+
+    String getAcceptedValue(int index);
+
+    /**
+     * Put a value accepted with the given proposal into the slot, the slot is no longer chosen or executed afterwards
+     */
+    void put(int index, int acceptedProposal, String acceptedValue);
+
+    boolean isChosen(int index);
+
+    void setChosen(int index);
+
+    boolean isExecuted(int index);
+
+    void setExecuted(int index);
+
+    /**
+     * @return The largest index of a non-empty slot, -1 if all slots are empty
+     */
+    int getLastIndex();
+
+    /**
+     * @return The min proposal of the replica last stored, 0 for a store that does not keep the slots across restarts
+     */
+    default int loadMinProposal() {
+        return 0;
+    }
+
+    /**
+     * Keep the min proposal of the replica next to the slots, which a store that does not keep the slots across
+     * restarts has no need to do
+     */
+    default void storeMinProposal(int minProposal) {
+    }
+}
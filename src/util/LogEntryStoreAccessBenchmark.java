@@ -0,0 +1,47 @@
+package util;
+
+import java.util.Random;
+
+/**
+ * A micro benchmark of the two access patterns of a replica on a long log: appending chosen slots in order, and reading
+ * slots at random (as a catching up replica or a reader of old slots does). Run each store in its own JVM, the mapped
+ * store keeps its files in replica0-slots, which should be removed between runs, for example:
+ *
+ *      java -Xmx8g -cp out/production/MultiPaxosLog util.LogEntryStoreAccessBenchmark columnar 100000000
+ *      java -Xmx1g -cp out/production/MultiPaxosLog util.LogEntryStoreAccessBenchmark mapped 100000000
+ */
+public class LogEntryStoreAccessBenchmark {
+
+    private final static int NUM_OF_SLOTS = 100000000;
+    private final static int NUM_OF_LOOKUPS = 10000000;
+
+    public static void main(String[] args) {
+        final String storeType = args.length > 0 ? args[0] : "mapped";
+        final int numOfSlots = args.length > 1 ? Integer.parseInt(args[1]) : NUM_OF_SLOTS;
+
+        final LogEntryStore store = LogEntryStoreFactory.create(storeType, 0);
+
+        final long appendStartTime = System.nanoTime();
+        for (int i = 0; i < numOfSlots; i++) {
+            store.put(i, 1, "client message " + i);
+            store.setChosen(i);
+        }
+        final double appendSeconds = (System.nanoTime() - appendStartTime) / 1e9;
+
+        final Random random = new Random(10);
+        long totalLength = 0;
+        final long lookupStartTime = System.nanoTime();
+        for (int i = 0; i < NUM_OF_LOOKUPS; i++) {
+            final int index = random.nextInt(numOfSlots);
+            if (store.isChosen(index)) {
+                totalLength += store.getAcceptedValue(index).length();
+            }
+        }
+        final double lookupNanos = (System.nanoTime() - lookupStartTime) / (double) NUM_OF_LOOKUPS;
+
+        final Runtime runtime = Runtime.getRuntime();
+        System.out.printf("%s store, %d slots: append %.0f slots/s, random lookup %.0f ns/op, heap used %d MB (checksum %d)%n",
+                storeType, numOfSlots, numOfSlots / appendSeconds, lookupNanos,
+                (runtime.totalMemory() - runtime.freeMemory()) >> 20, totalLength);
+    }
+}
@@ -0,0 +1,59 @@
+package util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * A micro benchmark that fills a log entry store with chosen slots and reports the retained heap per slot and the time
+ * spent in garbage collection. Run each store in its own JVM with the same heap settings, for example:
+ *
+ *      java -Xms8g -Xmx8g -cp out/production/MultiPaxosLog util.LogEntryStoreBenchmark object 50000000
+ *      java -Xms8g -Xmx8g -cp out/production/MultiPaxosLog util.LogEntryStoreBenchmark columnar 50000000
+ */
+public class LogEntryStoreBenchmark {
+
+    private final static int NUM_OF_SLOTS = 50000000;
+
+    public static void main(String[] args) {
+        final String storeType = args.length > 0 ? args[0] : "columnar";
+        final int numOfSlots = args.length > 1 ? Integer.parseInt(args[1]) : NUM_OF_SLOTS;
+
+        final long baseline = usedMemory();
+        final long baselineGcMillis = totalGcMillis();
+        final long startTime = System.nanoTime();
+
+        final LogEntryStore store = LogEntryStoreFactory.create(storeType, 0);
+        for (int i = 0; i < numOfSlots; i++) {
+            store.put(i, 1, "client message " + i);
+            store.setChosen(i);
+        }
+        final double fillSeconds = (System.nanoTime() - startTime) / 1e9;
+        final long gcMillisDuringFill = totalGcMillis() - baselineGcMillis;
+
+        // a full collection has to trace everything that is retained, which is what dominates pauses on a big log
+        final long fullGcStartTime = System.nanoTime();
+        System.gc();
+        final double fullGcMillis = (System.nanoTime() - fullGcStartTime) / 1e6;
+
+        final long retainedBytes = usedMemory() - baseline;
+        System.out.printf("%s store, %d slots: %.1f bytes/slot, fill %.1f s, GC during fill %d ms, full GC %.1f ms (last slot: %s)%n",
+                storeType, numOfSlots, retainedBytes / (double) numOfSlots, fillSeconds, gcMillisDuringFill, fullGcMillis,
+                store.getAcceptedValue(numOfSlots - 1));
+    }
+
+    private static long totalGcMillis() {
+        long total = 0;
+        for (final GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, bean.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static long usedMemory() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,32 @@
+package util;
+
+/**
+ * Create the log entry store of a replica from its configured type:
+ *      "object"    one LogEntry object per slot on the heap
+ *      "columnar"  primitive columns on the heap (the default)
+ *      "mapped"    memory-mapped files off the heap, kept across restarts in the directory {replica name}-slots
+ */
+public class LogEntryStoreFactory {
+
+    public final static String DEFAULT_TYPE = "columnar";
+
+    public static LogEntryStore create(final String type, final int serverId) {
+        return create(type, "replica" + serverId);
+    }
+
+    /**
+     * @param replicaName the name the files of the replica are named after, see PaxosLogServer.getReplicaName
+     */
+    public static LogEntryStore create(final String type, final String replicaName) {
+        switch (type) {
+            case "object":
+                return new ObjectLogEntryStore();
+            case "columnar":
+                return new ColumnarLogEntryStore();
+            case "mapped":
+                return new MappedLogEntryStore(replicaName + "-slots");
+            default:
+                throw new IllegalArgumentException("Unknown log entry store type: " + type);
+        }
+    }
+}
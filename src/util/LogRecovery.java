@@ -0,0 +1,225 @@
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+
+/**
+ * Rebuild the slots and the session table of a replica from its write-ahead log (see WriteAheadLog).
+ *
+ * Decoding a segment (mapping it, checking the CRCs and decoding the values) is independent of every other segment,
+ * so the segments are decoded in parallel in a fork-join pool, a few segments ahead of the one being applied. The
+ * decoded records are then applied strictly in order on the calling thread, since a later record may overwrite an
+ * earlier one. A record that fails its CRC ends its segment, which is what a crash in the middle of a write leaves.
+ *
+ * Slots that are already chosen in the store (a mapped store keeps them across restarts) are not written again.
+ */
+public class LogRecovery {
+
+    // how many segments are decoded ahead of the one being applied, per thread of the pool
+    private final static int DECODE_AHEAD_PER_THREAD = 2;
+
+    /**
+     * @param parallelism the number of threads decoding segments
+     * @return The min proposal of the replica
+     */
+    public static int recover(final WriteAheadLog writeAheadLog, final LogEntryStore store,
+                              final ClientSessionTable clientSessionTable, final int parallelism) {
+        return recover(writeAheadLog.getSegmentsToReplay(), store, clientSessionTable, parallelism);
+    }
+
+    /**
+     * Apply the segments in the given order, e.g. those a snapshot of the write-ahead log covers
+     *
+     * @return The min proposal of the replica
+     */
+    static int recover(final List<File> segments, final LogEntryStore store,
+                       final ClientSessionTable clientSessionTable, final int parallelism) {
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        final Applier applier = new Applier(store, clientSessionTable);
+        try {
+            final Queue<ForkJoinTask<DecodedSegment>> decodingSegments = new ArrayDeque<>();
+            final Iterator<File> segmentIterator = segments.iterator();
+            while (segmentIterator.hasNext() || !decodingSegments.isEmpty()) {
+                while (segmentIterator.hasNext() && decodingSegments.size() < parallelism * DECODE_AHEAD_PER_THREAD) {
+                    final File segment = segmentIterator.next();
+                    decodingSegments.offer(pool.submit(() -> decode(segment)));
+                }
+                applier.apply(decodingSegments.poll().join());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return applier.minProposal;
+    }
+
+    static DecodedSegment decode(final File segment) {
+        final DecodedSegment decodedSegment = new DecodedSegment();
+        try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final CRC32 crc = new CRC32();
+            byte[] body = new byte[4096];
+            while (buffer.remaining() >= WriteAheadLog.RECORD_HEADER_SIZE) {
+                final int bodyLength = buffer.getInt();
+                final int checksum = buffer.getInt();
+                if (bodyLength <= 0 || bodyLength > buffer.remaining()) {
+                    System.out.println("Torn record at the end of " + segment + ", ignore the rest of it");
+                    break;
+                }
+                if (body.length < bodyLength) {
+                    body = new byte[Math.max(bodyLength, body.length * 2)];
+                }
+                buffer.get(body, 0, bodyLength);
+                crc.reset();
+                crc.update(body, 0, bodyLength);
+                if ((int) crc.getValue() != checksum) {
+                    System.out.println("Corrupted record in " + segment + ", ignore the rest of it");
+                    break;
+                }
+                decodedSegment.add(body, bodyLength);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return decodedSegment;
+    }
+
+    /**
+     * The records of a segment decoded into columns
+     */
+    static class DecodedSegment {
+
+        private int size;
+        private byte[] types = new byte[1024];
+        private int[] slotIndexes = new int[1024];     // or the min proposal of a MIN_PROPOSAL record
+        private int[] proposals = new int[1024];
+        private long[] clientIds = new long[1024];
+        private int[] messageSequenceNumbers = new int[1024];
+        private String[] values = new String[1024];
+        private byte[] sessionTable;
+
+        void add(final byte[] body, final int bodyLength) {
+            if (size == types.length) {
+                final int newLength = size * 2;
+                types = Arrays.copyOf(types, newLength);
+                slotIndexes = Arrays.copyOf(slotIndexes, newLength);
+                proposals = Arrays.copyOf(proposals, newLength);
+                clientIds = Arrays.copyOf(clientIds, newLength);
+                messageSequenceNumbers = Arrays.copyOf(messageSequenceNumbers, newLength);
+                values = Arrays.copyOf(values, newLength);
+            }
+            final ByteBuffer record = ByteBuffer.wrap(body, 0, bodyLength);
+            final byte type = record.get();
+            types[size] = type;
+            switch (type) {
+                case WriteAheadLog.MIN_PROPOSAL:
+                case WriteAheadLog.CHOSEN:
+                case WriteAheadLog.EXECUTED:
+                    slotIndexes[size] = record.getInt();
+                    break;
+                case WriteAheadLog.ACCEPT:
+                    slotIndexes[size] = record.getInt();
+                    proposals[size] = record.getInt();
+                    clientIds[size] = record.getLong();
+                    messageSequenceNumbers[size] = record.getInt();
+                    final int valueLength = record.getInt();
+                    values[size] = valueLength < 0 ? null : new String(body, record.position(), valueLength, StandardCharsets.UTF_8);
+                    break;
+                case WriteAheadLog.SESSION_TABLE:
+                    sessionTable = Arrays.copyOfRange(body, 5, 5 + record.getInt());
+                    break;
+                default:
+                    throw new IllegalStateException("Unresolvable write-ahead log record!");
+            }
+            size += 1;
+        }
+    }
+
+    /**
+     * Apply decoded records in order
+     */
+    private static class Applier {
+
+        private final LogEntryStore store;
+        private final ClientSessionTable clientSessionTable;
+
+        // the client message accepted in each slot that is not chosen yet, so that the session table can be updated
+        // once it is chosen
+        private final Map<Integer, long[]> acceptedMessages;
+
+        private int minProposal;
+        private int executedUpTo;
+
+        Applier(final LogEntryStore store, final ClientSessionTable clientSessionTable) {
+            this.store = store;
+            this.clientSessionTable = clientSessionTable;
+            this.acceptedMessages = new HashMap<>();
+            this.minProposal = 0;
+            this.executedUpTo = -1;
+        }
+
+        void apply(final DecodedSegment segment) {
+            for (int i = 0; i < segment.size; i++) {
+                final int slotIndex = segment.slotIndexes[i];
+                switch (segment.types[i]) {
+                    case WriteAheadLog.MIN_PROPOSAL:
+                        minProposal = Math.max(minProposal, slotIndex);
+                        break;
+                    case WriteAheadLog.ACCEPT:
+                        if (!store.isChosen(slotIndex)) {
+                            store.put(slotIndex, segment.proposals[i], segment.values[i]);
+                        }
+                        if (segment.clientIds[i] == WriteAheadLog.NO_CLIENT_ID) {
+                            acceptedMessages.remove(slotIndex);
+                        } else {
+                            acceptedMessages.put(slotIndex, new long[]{segment.clientIds[i], segment.messageSequenceNumbers[i]});
+                        }
+                        break;
+                    case WriteAheadLog.CHOSEN:
+                        if (!store.isChosen(slotIndex)) {
+                            store.setChosen(slotIndex);
+                        }
+                        final long[] acceptedMessage = acceptedMessages.remove(slotIndex);
+                        if (acceptedMessage != null) {
+                            clientSessionTable.markExecuted(acceptedMessage[0], (int) acceptedMessage[1], slotIndex);
+                        }
+                        break;
+                    case WriteAheadLog.EXECUTED:
+                        for (int index = executedUpTo + 1; index <= slotIndex; index++) {
+                            if (!store.isExecuted(index)) {
+                                store.setExecuted(index);
+                            }
+                        }
+                        executedUpTo = Math.max(executedUpTo, slotIndex);
+                        break;
+                    case WriteAheadLog.SESSION_TABLE:
+                        try {
+                            clientSessionTable.readFrom(new DataInputStream(new ByteArrayInputStream(segment.sessionTable)));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        break;
+                    default:
+                        throw new IllegalStateException("Unresolvable write-ahead log record!");
+                }
+            }
+        }
+    }
+}
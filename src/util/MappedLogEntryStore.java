@@ -0,0 +1,248 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A log entry store that keeps the slots off heap in memory-mapped files under a directory:
+ *      "slot.meta"   a fixed 16 byte record per slot: the value address with the present, chosen and executed flags in
+ *                    its highest bits (8 bytes), the value length (4 bytes) and the accepted proposal (4 bytes)
+ *      "slot.data"   the values encoded in UTF-8, append only
+ *      "slot.header" the largest non-empty slot index, the end of the data file and the min proposal of the replica
+ *
+ * The OS page cache does the caching, so hundreds of millions of slots cost no heap and no GC time, and a restarted
+ * replica simply maps the files again instead of reloading the log. Both files are mapped in fixed size regions on
+ * demand since a single mapping can not exceed 2 GB. A value never crosses a data region boundary.
+ *
+ * The mappings are not forced to disk on every write, the files are as durable as the page cache.
+ *
+ * The min proposal is kept in the header next to the slots, since a replica that remaps the slots it accepted before a
+ * restart must not accept a smaller proposal in them than it promised, even when it runs without a write-ahead log.
+ */
+public class MappedLogEntryStore implements LogEntryStore {
+
+    private static final int RECORD_SIZE = 16;
+    private static final int SLOTS_PER_META_REGION = 1 << 26;
+    private static final long META_REGION_SIZE = (long) SLOTS_PER_META_REGION * RECORD_SIZE;
+    private static final long DATA_REGION_SIZE = 1L << 30;
+    private static final int HEADER_SIZE = 64;
+    private static final long HEADER_MAGIC = 0x4d50534c4f545331L;
+
+    private static final long PRESENT_FLAG = 1L << 63;
+    private static final long CHOSEN_FLAG = 1L << 62;
+    private static final long EXECUTED_FLAG = 1L << 61;
+    private static final long ADDRESS_MASK = (1L << 61) - 1;
+    private static final int NULL_VALUE_LENGTH = -1;
+
+    private final FileChannel metaChannel;
+    private final FileChannel dataChannel;
+    private final MappedByteBuffer header;
+
+    private MappedByteBuffer[] metaRegions;
+    private MappedByteBuffer[] dataRegions;
+
+    private int lastIndex;
+    private long dataEnd;
+
+    /**
+     * Open the store in the directory, mapping the slots written by a previous run if there are any
+     */
+    public MappedLogEntryStore(final String directory) {
+        try {
+            final File dir = new File(directory);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Fail to create directory " + directory);
+            }
+            this.metaChannel = new RandomAccessFile(new File(dir, "slot.meta"), "rw").getChannel();
+            this.dataChannel = new RandomAccessFile(new File(dir, "slot.data"), "rw").getChannel();
+            final FileChannel headerChannel = new RandomAccessFile(new File(dir, "slot.header"), "rw").getChannel();
+            final boolean isNewStore = headerChannel.size() < HEADER_SIZE;
+            this.header = headerChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            headerChannel.close();
+            if (isNewStore) {
+                header.putLong(0, HEADER_MAGIC);
+                header.putInt(8, -1);
+                header.putLong(16, 0);
+                header.putInt(24, 0);
+            } else if (header.getLong(0) != HEADER_MAGIC) {
+                throw new IOException("Unrecognized slot store in " + directory);
+            }
+            this.lastIndex = header.getInt(8);
+            this.dataEnd = header.getLong(16);
+            this.metaRegions = new MappedByteBuffer[4];
+            this.dataRegions = new MappedByteBuffer[4];
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean contains(final int index) {
+        return (getAddressAndFlags(index) & PRESENT_FLAG) != 0;
+    }
+
+    @Override
+    public int getAcceptedProposal(final int index) {
+        final MappedByteBuffer region = getMetaRegion(index, false);
+        if (region == null || !contains(index)) {
+            return 0;
+        }
+        return region.getInt(recordPosition(index) + 12);
+    }
+
+    @Override
+    public String getAcceptedValue(final int index) {
+        final long addressAndFlags = getAddressAndFlags(index);
+        if ((addressAndFlags & PRESENT_FLAG) == 0) {
+            return null;
+        }
+        final int valueLength = getMetaRegion(index, false).getInt(recordPosition(index) + 8);
+        if (valueLength == NULL_VALUE_LENGTH) {
+            return null;
+        }
+        final long address = addressAndFlags & ADDRESS_MASK;
+        final MappedByteBuffer region = getDataRegion((int) (address / DATA_REGION_SIZE));
+        final byte[] bytes = new byte[valueLength];
+        final int position = (int) (address % DATA_REGION_SIZE);
+        for (int i = 0; i < valueLength; i++) {
+            bytes[i] = region.get(position + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void put(final int index, final int acceptedProposal, final String acceptedValue) {
+        long address = 0;
+        int valueLength = NULL_VALUE_LENGTH;
+        if (acceptedValue != null) {
+            final byte[] bytes = acceptedValue.getBytes(StandardCharsets.UTF_8);
+            address = appendToData(bytes);
+            valueLength = bytes.length;
+        }
+        final MappedByteBuffer region = getMetaRegion(index, true);
+        final int position = recordPosition(index);
+        region.putInt(position + 8, valueLength);
+        region.putInt(position + 12, acceptedProposal);
+        // the flags are written last, so a slot is never seen present with a half written record
+        region.putLong(position, address | PRESENT_FLAG);
+        if (index > lastIndex) {
+            lastIndex = index;
+            header.putInt(8, lastIndex);
+        }
+    }
+
+    @Override
+    public boolean isChosen(final int index) {
+        return (getAddressAndFlags(index) & CHOSEN_FLAG) != 0;
+    }
+
+    @Override
+    public void setChosen(final int index) {
+        setFlag(index, CHOSEN_FLAG);
+    }
+
+    @Override
+    public boolean isExecuted(final int index) {
+        return (getAddressAndFlags(index) & EXECUTED_FLAG) != 0;
+    }
+
+    @Override
+    public void setExecuted(final int index) {
+        setFlag(index, EXECUTED_FLAG);
+    }
+
+    @Override
+    public int getLastIndex() {
+        return lastIndex;
+    }
+
+    /**
+     * @return The min proposal last stored, 0 for a new store
+     */
+    @Override
+    public int loadMinProposal() {
+        return header.getInt(24);
+    }
+
+    @Override
+    public void storeMinProposal(final int minProposal) {
+        header.putInt(24, minProposal);
+    }
+
+    private void setFlag(final int index, final long flag) {
+        final MappedByteBuffer region = getMetaRegion(index, true);
+        final int position = recordPosition(index);
+        region.putLong(position, region.getLong(position) | flag);
+    }
+
+    private long getAddressAndFlags(final int index) {
+        final MappedByteBuffer region = getMetaRegion(index, false);
+        return region == null ? 0 : region.getLong(recordPosition(index));
+    }
+
+    private static int recordPosition(final int index) {
+        return (index % SLOTS_PER_META_REGION) * RECORD_SIZE;
+    }
+
+    private long appendToData(final byte[] bytes) {
+        if (bytes.length > DATA_REGION_SIZE) {
+            throw new IllegalArgumentException("Value is too large for the mapped slot store");
+        }
+        if (dataEnd % DATA_REGION_SIZE + bytes.length > DATA_REGION_SIZE) {
+            dataEnd = (dataEnd / DATA_REGION_SIZE + 1) * DATA_REGION_SIZE;
+        }
+        final long address = dataEnd;
+        final MappedByteBuffer region = getDataRegion((int) (address / DATA_REGION_SIZE));
+        final int position = (int) (address % DATA_REGION_SIZE);
+        for (int i = 0; i < bytes.length; i++) {
+            region.put(position + i, bytes[i]);
+        }
+        dataEnd += bytes.length;
+        header.putLong(16, dataEnd);
+        return address;
+    }
+
+    /**
+     * @param create whether to map (and thus allocate) the region if it is beyond the end of the file
+     * @return The meta region containing the slot, null if it does not exist and create is false
+     */
+    private MappedByteBuffer getMetaRegion(final int index, final boolean create) {
+        final int regionIndex = index / SLOTS_PER_META_REGION;
+        if (regionIndex < metaRegions.length && metaRegions[regionIndex] != null) {
+            return metaRegions[regionIndex];
+        }
+        try {
+            if (!create && metaChannel.size() <= regionIndex * META_REGION_SIZE) {
+                return null;
+            }
+            if (regionIndex >= metaRegions.length) {
+                metaRegions = Arrays.copyOf(metaRegions, Math.max(metaRegions.length * 2, regionIndex + 1));
+            }
+            metaRegions[regionIndex] = metaChannel.map(FileChannel.MapMode.READ_WRITE, regionIndex * META_REGION_SIZE, META_REGION_SIZE);
+            return metaRegions[regionIndex];
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private MappedByteBuffer getDataRegion(final int regionIndex) {
+        if (regionIndex < dataRegions.length && dataRegions[regionIndex] != null) {
+            return dataRegions[regionIndex];
+        }
+        try {
+            if (regionIndex >= dataRegions.length) {
+                dataRegions = Arrays.copyOf(dataRegions, Math.max(dataRegions.length * 2, regionIndex + 1));
+            }
+            dataRegions[regionIndex] = dataChannel.map(FileChannel.MapMode.READ_WRITE, regionIndex * DATA_REGION_SIZE, DATA_REGION_SIZE);
+            return dataRegions[regionIndex];
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
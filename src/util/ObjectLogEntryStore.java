@@ -0,0 +1,78 @@
+package util;
+
+/**
+ * A log entry store that keeps one LogEntry object per slot in an array. Using array enable us to allow a hole (skip slot).
+ * A chosen entry is encoded as acceptedProposal = Integer.MAX_VALUE.
+ */
+public class ObjectLogEntryStore implements LogEntryStore {
+
+    private static final int INITIAL_ARRAY_CAPACITY = 10;
+
+    private LogEntry[] logEntryArray;
+    private int lastIndex;
+
+    public ObjectLogEntryStore() {
+        this.logEntryArray = new LogEntry[INITIAL_ARRAY_CAPACITY];
+        this.lastIndex = -1;
+    }
+
+    @Override
+    public boolean contains(final int index) {
+        return index < logEntryArray.length && logEntryArray[index] != null;
+    }
+
+    @Override
+    public int getAcceptedProposal(final int index) {
+        return contains(index) ? logEntryArray[index].getAcceptedProposal() : 0;
+    }
+
+    @Override
+    public String getAcceptedValue(final int index) {
+        return contains(index) ? logEntryArray[index].getAcceptedValue() : null;
+    }
+
+    @Override
+    public void put(final int index, final int acceptedProposal, final String acceptedValue) {
+        ensureCapacity(index);
+        logEntryArray[index] = new LogEntry(acceptedProposal, acceptedValue);
+        lastIndex = Math.max(lastIndex, index);
+    }
+
+    @Override
+    public boolean isChosen(final int index) {
+        return contains(index) && logEntryArray[index].getAcceptedProposal() == Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void setChosen(final int index) {
+        logEntryArray[index].setAcceptedProposal(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isExecuted(final int index) {
+        return contains(index) && logEntryArray[index].isExecuted();
+    }
+
+    @Override
+    public void setExecuted(final int index) {
+        logEntryArray[index].setExecuted(true);
+    }
+
+    @Override
+    public int getLastIndex() {
+        return lastIndex;
+    }
+
+    private void ensureCapacity(final int index) {
+        if (index < logEntryArray.length) {
+            return;
+        }
+        int newLength = logEntryArray.length * 2;
+        while (newLength <= index) {
+            newLength *= 2;
+        }
+        final LogEntry[] newLogEntryArray = new LogEntry[newLength];
+        System.arraycopy(logEntryArray, 0, newLogEntryArray, 0, logEntryArray.length);
+        this.logEntryArray = newLogEntryArray;
+    }
+}
@@ -0,0 +1,203 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The payloads a replica has received for the chat messages disseminated by their clients (see PaxosLogClient). Such a
+ * message is ordered by a small reference "|PAYLOAD|{client ID}:{sequence number}:{SHA-256 of the payload}" instead
+ * of its payload, so that the leader sends every follower a few dozen bytes per slot rather than the whole payload,
+ * and the reference is resolved to the payload here before the slot is executed.
+ *
+ * It is filled by the receiving threads and read by the consensus thread. A payload is retired once its slot is
+ * executed and kept for a while longer, the same message may be chosen in a second slot after a leader change and
+ * a replica falling behind may ask for it; after that the replicas answer such a request from their executed slots.
+ * A payload whose reference no slot of this replica has accepted (e.g. its client crashed before the leader ordered
+ * it) is dropped once it is older than the expire period; should its reference be chosen after all, the replica asks
+ * the other replicas for it like for any payload it misses.
+ *
+ * A client may only order the reference of a payload of its own message (see isReferenceOf), so a chat message can
+ * not start with the prefix of a reference.
+ */
+public class PayloadStore {
+
+    // the prefix of a reference, like the no-op literal of the leader it can not be the literal of a chat message
+    public final static String REFERENCE_PREFIX = "|PAYLOAD|";
+
+    public final static int DEFAULT_RETIRED_CAPACITY = 64;
+    public final static long DEFAULT_UNREFERENCED_EXPIRE_MILLS = 60000;
+
+    private final long unreferencedExpireMills;
+
+    // for payloads, the key is the reference and value is the payload of a slot that is not executed yet
+    private final Map<String, String> payloads;
+
+    // for unreferencedTimeStamps, the key is the reference of a payload no slot has accepted yet and value is the time
+    // the payload was received at
+    private final Map<String, Long> unreferencedTimeStamps;
+    private volatile long lastExpireTimeStamp;
+
+    // the latest retired payloads, the eldest is dropped once there are more than the capacity
+    private final Map<String, String> retiredPayloads;
+
+    public PayloadStore() {
+        this(DEFAULT_RETIRED_CAPACITY, DEFAULT_UNREFERENCED_EXPIRE_MILLS);
+    }
+
+    public PayloadStore(final int retiredCapacity, final long unreferencedExpireMills) {
+        this.unreferencedExpireMills = unreferencedExpireMills;
+        this.payloads = new ConcurrentHashMap<>();
+        this.unreferencedTimeStamps = new ConcurrentHashMap<>();
+        this.lastExpireTimeStamp = System.currentTimeMillis();
+        this.retiredPayloads = new LinkedHashMap<String, String>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+                return size() > retiredCapacity;
+            }
+        };
+    }
+
+    /**
+     * @return Whether the value of a slot is a reference to a disseminated payload
+     */
+    public static boolean isReference(final String value) {
+        return value != null && value.startsWith(REFERENCE_PREFIX);
+    }
+
+    /**
+     * @return Whether the value is the reference of the payload of the given message, the only reference the client of
+     * that message may order
+     */
+    public static boolean isReferenceOf(final String value, final long clientId, final int messageSequenceNumber) {
+        final String referencePrefix = REFERENCE_PREFIX + clientId + ':' + messageSequenceNumber + ':';
+        if (value == null || !value.startsWith(referencePrefix) || value.length() != referencePrefix.length() + 64) {
+            return false;
+        }
+        for (int i = referencePrefix.length(); i < value.length(); i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The reference a client orders its payload by
+     */
+    public static String toReference(final long clientId, final int messageSequenceNumber, final String payload) {
+        return REFERENCE_PREFIX + clientId + ':' + messageSequenceNumber + ':' + digest(payload);
+    }
+
+    /**
+     * @return The SHA-256 of the UTF-8 bytes of a value in hex
+     */
+    public static String digest(final String value) {
+        final MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        final StringBuilder builder = new StringBuilder();
+        for (final byte b : messageDigest.digest(value.getBytes(StandardCharsets.UTF_8))) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Keep the payload a client has disseminated
+     *
+     * @return The reference of the payload
+     */
+    public String add(final long clientId, final int messageSequenceNumber, final String payload) {
+        final String reference = toReference(clientId, messageSequenceNumber, payload);
+        if (!contains(reference)) {
+            put(reference, payload);
+        }
+        return reference;
+    }
+
+    /**
+     * Keep the payload another replica has sent for a reference, if it is the payload the reference refers to
+     *
+     * @return Whether the payload matches the reference
+     */
+    public boolean add(final String reference, final String payload) {
+        final String[] subStrArr = reference.substring(REFERENCE_PREFIX.length()).split(":");
+        if (subStrArr.length != 3
+                || !toReference(Long.parseLong(subStrArr[0]), Integer.parseInt(subStrArr[1]), payload).equals(reference)) {
+            return false;
+        }
+        if (!contains(reference)) {
+            put(reference, payload);
+        }
+        return true;
+    }
+
+    private void put(final String reference, final String payload) {
+        final long currentTimeStamp = System.currentTimeMillis();
+        unreferencedTimeStamps.put(reference, currentTimeStamp);
+        payloads.put(reference, payload);
+        if (currentTimeStamp - lastExpireTimeStamp > unreferencedExpireMills / 4) {
+            expireUnreferencedPayloads(currentTimeStamp);
+        }
+    }
+
+    /**
+     * Keep the payload of a reference a slot has accepted until the slot is executed
+     */
+    public void markReferenced(final String reference) {
+        unreferencedTimeStamps.remove(reference);
+    }
+
+    /**
+     * Drop every payload no slot has accepted the reference of since it was received longer than the expire period ago
+     */
+    public void expireUnreferencedPayloads(final long currentTimeStamp) {
+        lastExpireTimeStamp = currentTimeStamp;
+        for (final Map.Entry<String, Long> entry : unreferencedTimeStamps.entrySet()) {
+            // a payload referenced meanwhile has lost its time stamp already and is kept
+            if (currentTimeStamp - entry.getValue() > unreferencedExpireMills
+                    && unreferencedTimeStamps.remove(entry.getKey(), entry.getValue())) {
+                payloads.remove(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * @return The payload of the reference, null if this replica has not received it or no longer keeps it
+     */
+    public String get(final String reference) {
+        final String payload = payloads.get(reference);
+        if (payload != null) {
+            return payload;
+        }
+        synchronized (retiredPayloads) {
+            return retiredPayloads.get(reference);
+        }
+    }
+
+    public boolean contains(final String reference) {
+        return get(reference) != null;
+    }
+
+    /**
+     * Retire the payload of a reference whose slot is executed
+     */
+    public void retire(final String reference) {
+        final String payload = payloads.get(reference);
+        if (payload == null) {
+            return;
+        }
+        synchronized (retiredPayloads) {
+            retiredPayloads.put(reference, payload);
+        }
+        unreferencedTimeStamps.remove(reference);
+        payloads.remove(reference);
+    }
+}
@@ -0,0 +1,230 @@
+package util;
+
+import java.util.Map;
+
+/**
+ * A systematic Reed-Solomon code over GF(2^8): a value is split into k data shards of equal length (the last one
+ * padded with zeros) and m parity shards are computed from them, any k of the k + m shards give the value back.
+ *
+ * The encoding matrix is the identity on top of a k * m Cauchy matrix, whose entry for parity shard i and data shard j
+ * is 1 / (x_i + y_j) with x_i = k + i and y_j = j; every square sub-matrix of a Cauchy matrix is invertible, so any k
+ * rows of the encoding matrix are. Multiplication goes through a full 256 * 256 table, so encoding a shard is one table
+ * lookup and one XOR per byte and parity shard.
+ */
+public class ReedSolomon {
+
+    // x^8 + x^4 + x^3 + x^2 + 1, the primitive polynomial of the field
+    private final static int PRIMITIVE_POLYNOMIAL = 0x11D;
+
+    private final static byte[] EXP_TABLE = new byte[512];
+    private final static int[] LOG_TABLE = new int[256];
+    private final static byte[][] MULTIPLICATION_TABLE = new byte[256][256];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP_TABLE[i] = (byte) x;
+            EXP_TABLE[i + 255] = (byte) x;
+            LOG_TABLE[x] = i;
+            x <<= 1;
+            if (x >= 256) {
+                x ^= PRIMITIVE_POLYNOMIAL;
+            }
+        }
+        for (int a = 1; a < 256; a++) {
+            for (int b = 1; b < 256; b++) {
+                MULTIPLICATION_TABLE[a][b] = EXP_TABLE[LOG_TABLE[a] + LOG_TABLE[b]];
+            }
+        }
+    }
+
+    private final int numOfDataShards;
+    private final int numOfParityShards;
+
+    // the rows of the encoding matrix below the identity, one per parity shard
+    private final byte[][] parityRows;
+
+    public ReedSolomon(final int numOfDataShards, final int numOfParityShards) {
+        if (numOfDataShards < 1 || numOfParityShards < 0 || numOfDataShards + numOfParityShards > 256) {
+            throw new IllegalArgumentException("Invalid number of shards");
+        }
+        this.numOfDataShards = numOfDataShards;
+        this.numOfParityShards = numOfParityShards;
+        this.parityRows = new byte[numOfParityShards][];
+        for (int i = 0; i < numOfParityShards; i++) {
+            parityRows[i] = getRow(numOfDataShards + i);
+        }
+    }
+
+    public int getNumOfDataShards() {
+        return numOfDataShards;
+    }
+
+    public int getNumOfParityShards() {
+        return numOfParityShards;
+    }
+
+    /**
+     * @return The length of every shard of a value of the given length
+     */
+    public int getShardLength(final int valueLength) {
+        return Math.max(1, (valueLength + numOfDataShards - 1) / numOfDataShards);
+    }
+
+    /**
+     * @return The k data shards followed by the m parity shards of the value
+     */
+    public byte[][] encode(final byte[] value) {
+        final int shardLength = getShardLength(value.length);
+        final byte[][] shards = new byte[numOfDataShards + numOfParityShards][shardLength];
+        for (int j = 0; j < numOfDataShards; j++) {
+            final int from = j * shardLength;
+            if (from < value.length) {
+                System.arraycopy(value, from, shards[j], 0, Math.min(shardLength, value.length - from));
+            }
+        }
+        for (int i = 0; i < numOfParityShards; i++) {
+            final byte[] parityShard = shards[numOfDataShards + i];
+            for (int j = 0; j < numOfDataShards; j++) {
+                multiplyAndAdd(parityRows[i][j], shards[j], parityShard);
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * @param shards      at least k shards of the value, the key is the index of the shard (the data shards come first)
+     * @param valueLength the length of the value
+     * @return The value, null if there are fewer than k shards
+     */
+    public byte[] decode(final Map<Integer, byte[]> shards, final int valueLength) {
+        if (shards.size() < numOfDataShards) {
+            return null;
+        }
+        final int shardLength = getShardLength(valueLength);
+        final byte[][] dataShards = new byte[numOfDataShards][];
+        for (int j = 0; j < numOfDataShards; j++) {
+            dataShards[j] = shards.get(j);
+        }
+        // the rows of the encoding matrix of k shards we have, the data shards we have among them
+        final int[] shardIndexes = new int[numOfDataShards];
+        int numOfRows = 0;
+        for (int j = 0; j < numOfDataShards; j++) {
+            if (dataShards[j] != null) {
+                shardIndexes[numOfRows++] = j;
+            }
+        }
+        if (numOfRows < numOfDataShards) {
+            for (final Integer shardIndex : shards.keySet()) {
+                if (shardIndex >= numOfDataShards && numOfRows < numOfDataShards) {
+                    shardIndexes[numOfRows++] = shardIndex;
+                }
+            }
+            final byte[][] matrix = new byte[numOfDataShards][];
+            for (int r = 0; r < numOfDataShards; r++) {
+                matrix[r] = getRow(shardIndexes[r]);
+            }
+            final byte[][] inverse = invert(matrix);
+            for (int j = 0; j < numOfDataShards; j++) {
+                if (dataShards[j] != null) {
+                    continue;
+                }
+                dataShards[j] = new byte[shardLength];
+                for (int r = 0; r < numOfDataShards; r++) {
+                    multiplyAndAdd(inverse[j][r], shards.get(shardIndexes[r]), dataShards[j]);
+                }
+            }
+        }
+        final byte[] value = new byte[valueLength];
+        for (int j = 0; j < numOfDataShards; j++) {
+            final int from = j * shardLength;
+            if (from < valueLength) {
+                System.arraycopy(dataShards[j], 0, value, from, Math.min(shardLength, valueLength - from));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return The row of the encoding matrix for a shard: a unit row for a data shard, a Cauchy row for a parity shard
+     */
+    private byte[] getRow(final int shardIndex) {
+        final byte[] row = new byte[numOfDataShards];
+        if (shardIndex < numOfDataShards) {
+            row[shardIndex] = 1;
+            return row;
+        }
+        for (int j = 0; j < numOfDataShards; j++) {
+            row[j] = inverse((byte) (shardIndex ^ j));
+        }
+        return row;
+    }
+
+    /**
+     * target += coefficient * source, byte by byte
+     */
+    private static void multiplyAndAdd(final byte coefficient, final byte[] source, final byte[] target) {
+        if (coefficient == 0) {
+            return;
+        }
+        final byte[] multiples = MULTIPLICATION_TABLE[coefficient & 0xFF];
+        for (int b = 0; b < target.length; b++) {
+            target[b] ^= multiples[source[b] & 0xFF];
+        }
+    }
+
+    private static byte multiply(final byte a, final byte b) {
+        return MULTIPLICATION_TABLE[a & 0xFF][b & 0xFF];
+    }
+
+    private static byte inverse(final byte a) {
+        if (a == 0) {
+            throw new ArithmeticException("Zero has no inverse");
+        }
+        return EXP_TABLE[255 - LOG_TABLE[a & 0xFF]];
+    }
+
+    /**
+     * @return The inverse of a square matrix by Gauss-Jordan elimination
+     */
+    private static byte[][] invert(final byte[][] matrix) {
+        final int size = matrix.length;
+        final byte[][] work = new byte[size][];
+        final byte[][] inverse = new byte[size][size];
+        for (int r = 0; r < size; r++) {
+            work[r] = matrix[r].clone();
+            inverse[r][r] = 1;
+        }
+        for (int c = 0; c < size; c++) {
+            int pivot = c;
+            while (pivot < size && work[pivot][c] == 0) {
+                pivot += 1;
+            }
+            if (pivot == size) {
+                throw new IllegalStateException("The rows of the encoding matrix are not independent");
+            }
+            byte[] swap = work[c];
+            work[c] = work[pivot];
+            work[pivot] = swap;
+            swap = inverse[c];
+            inverse[c] = inverse[pivot];
+            inverse[pivot] = swap;
+            final byte scale = inverse(work[c][c]);
+            for (int k = 0; k < size; k++) {
+                work[c][k] = multiply(work[c][k], scale);
+                inverse[c][k] = multiply(inverse[c][k], scale);
+            }
+            for (int r = 0; r < size; r++) {
+                if (r == c || work[r][c] == 0) {
+                    continue;
+                }
+                final byte factor = work[r][c];
+                for (int k = 0; k < size; k++) {
+                    work[r][k] ^= multiply(factor, work[c][k]);
+                    inverse[r][k] ^= multiply(factor, inverse[c][k]);
+                }
+            }
+        }
+        return inverse;
+    }
+}
@@ -0,0 +1,96 @@
+package util;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A micro benchmark of random slot reads from a segmented replica log. It writes a log of the given size in GB into
+ * the directory replica-log-benchmark (uncompressed, so that every read goes through the index), then reads random
+ * slots and reports the latency percentiles, and finally the latency of a few reads from a compressed segment.
+ * For example:
+ *
+ *      java -Xmx1g -cp out/production/MultiPaxosLog util.ReplicaLogReadBenchmark 50
+ *
+ * The directory is deleted afterwards.
+ */
+public class ReplicaLogReadBenchmark {
+
+    private final static double LOG_SIZE_GB = 50;
+    private final static int NUM_OF_READS = 100000;
+    private final static int NUM_OF_COMPRESSED_READS = 20;
+    private final static String DIRECTORY = "replica-log-benchmark";
+
+    public static void main(String[] args) {
+        final double logSizeGb = args.length > 0 ? Double.parseDouble(args[0]) : LOG_SIZE_GB;
+        final long logSizeBytes = (long) (logSizeGb * (1L << 30));
+        deleteDirectory();
+
+        final char[] padding = new char[80];
+        Arrays.fill(padding, 'x');
+        final String payload = new String(padding);
+
+        final long writeStartTime = System.nanoTime();
+        final ReplicaLogWriter writer = new ReplicaLogWriter(DIRECTORY, ReplicaLogWriter.DEFAULT_MAX_SEGMENT_BYTES,
+                Integer.MAX_VALUE, ReplicaLogWriter.RETAIN_ALL_SEGMENTS);
+        long writtenBytes = 0;
+        int numOfSlots = 0;
+        while (writtenBytes < logSizeBytes) {
+            final String value = "client message " + numOfSlots + " " + payload;
+            writer.append(numOfSlots, value);
+            writtenBytes += value.length() + 12;
+            numOfSlots += 1;
+        }
+        writer.close();
+        final double writeSeconds = (System.nanoTime() - writeStartTime) / 1e9;
+
+        final ReplicaLogReader reader = new ReplicaLogReader(DIRECTORY);
+        final Random random = new Random(10);
+        final long[] latencies = new long[NUM_OF_READS];
+        for (int i = 0; i < NUM_OF_READS; i++) {
+            final int slotIndex = random.nextInt(numOfSlots);
+            final long startTime = System.nanoTime();
+            final String value = reader.read(slotIndex);
+            latencies[i] = System.nanoTime() - startTime;
+            if (value == null || !value.startsWith("client message " + slotIndex + " ")) {
+                throw new IllegalStateException("Wrong value read at slot " + slotIndex + ": " + value);
+            }
+        }
+        reader.close();
+        Arrays.sort(latencies);
+        System.out.printf("%d slots, %.1f GB written in %.1f s (%d segments); random read latency: p50 %.1f us, "
+                        + "p99 %.1f us, max %.1f us%n",
+                numOfSlots, writtenBytes / (double) (1L << 30), writeSeconds,
+                ReplicaLogWriter.listSegments(new File(DIRECTORY)).length,
+                latencies[NUM_OF_READS / 2] / 1e3, latencies[NUM_OF_READS * 99 / 100] / 1e3, latencies[NUM_OF_READS - 1] / 1e3);
+
+        // compress the oldest segment only and read from it
+        final int[] firstSlots = ReplicaLogWriter.listSegments(new File(DIRECTORY));
+        final ReplicaLogWriter compressingWriter = new ReplicaLogWriter(DIRECTORY, ReplicaLogWriter.DEFAULT_MAX_SEGMENT_BYTES,
+                firstSlots.length - 1, ReplicaLogWriter.RETAIN_ALL_SEGMENTS);
+        compressingWriter.enforceRetentionPolicy();
+        compressingWriter.close();
+        final ReplicaLogReader compressedReader = new ReplicaLogReader(DIRECTORY);
+        final int slotsInFirstSegment = firstSlots.length > 1 ? firstSlots[1] : numOfSlots;
+        long totalCompressedNanos = 0;
+        for (int i = 0; i < NUM_OF_COMPRESSED_READS; i++) {
+            final int slotIndex = random.nextInt(slotsInFirstSegment);
+            final long startTime = System.nanoTime();
+            compressedReader.read(slotIndex);
+            totalCompressedNanos += System.nanoTime() - startTime;
+        }
+        compressedReader.close();
+        System.out.printf("random read latency from a compressed segment: mean %.1f ms%n",
+                totalCompressedNanos / 1e6 / NUM_OF_COMPRESSED_READS);
+        deleteDirectory();
+    }
+
+    private static void deleteDirectory() {
+        final File directory = new File(DIRECTORY);
+        final File[] files = directory.listFiles();
+        for (final File file : files == null ? new File[0] : files) {
+            file.delete();
+        }
+        directory.delete();
+    }
+}
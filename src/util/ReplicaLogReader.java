@@ -0,0 +1,370 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Random access by slot to the log of a replica written by ReplicaLogWriter. Finding a slot is a binary search over
+ * the first slots of the segments, one read of the index of the segment and a scan of at most INDEX_INTERVAL lines.
+ *
+ * The files of recently used segments are kept open. A reader is not thread safe, use one per thread.
+ */
+public class ReplicaLogReader {
+
+    private final static int MAX_OPEN_SEGMENTS = 16;
+    private final static int READ_CHUNK_SIZE = 8192;
+
+    private final File directory;
+    private final Map<Integer, FileChannel[]> openSegments;   // the log and the index file of a segment
+    private int[] firstSlots;
+
+    public ReplicaLogReader(final String directory) {
+        this.directory = new File(directory);
+        this.openSegments = new LinkedHashMap<Integer, FileChannel[]>(MAX_OPEN_SEGMENTS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Integer, FileChannel[]> eldest) {
+                if (size() > MAX_OPEN_SEGMENTS) {
+                    closeSegment(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.firstSlots = ReplicaLogWriter.listSegments(this.directory);
+    }
+
+    /**
+     * @return The value of the slot, null if the slot is not in the log (not written yet or deleted by retention)
+     */
+    public String read(final int slotIndex) {
+        final List<String> values = readRange(slotIndex, 1);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * @return The values of up to maxEntries consecutive slots starting from fromSlot, fewer if the log ends earlier
+     */
+    public List<String> readRange(final int fromSlot, final int maxEntries) {
+        final List<String> values = new ArrayList<>();
+        int slotIndex = fromSlot;
+        boolean refreshed = false;
+        while (values.size() < maxEntries) {
+            final int segmentIndex = findSegment(slotIndex);
+            final int numOfValues = values.size();
+            if (segmentIndex >= 0) {
+                try {
+                    readFromSegment(firstSlots[segmentIndex], slotIndex, maxEntries, values);
+                } catch (NoSuchFileException | FileNotFoundException e) {
+                    // the segment has been compressed or deleted since we listed it
+                    closeSegment(openSegments.remove(firstSlots[segmentIndex]));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            if (values.size() > numOfValues) {
+                slotIndex += values.size() - numOfValues;
+                refreshed = false;
+            } else if (!refreshed) {
+                // the slot may be in a segment written since we listed them
+                firstSlots = ReplicaLogWriter.listSegments(directory);
+                refreshed = true;
+            } else {
+                break;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * A byte range of an uncompressed segment holding the lines of consecutive slots, which can be sent as is
+     */
+    public static class SegmentRange {
+        private final FileChannel channel;
+        private final long startOffset;
+        private final long endOffset;
+        private final int numOfEntries;
+
+        SegmentRange(final FileChannel channel, final long startOffset, final long endOffset, final int numOfEntries) {
+            this.channel = channel;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.numOfEntries = numOfEntries;
+        }
+
+        public FileChannel getChannel() {
+            return channel;
+        }
+
+        public long getStartOffset() {
+            return startOffset;
+        }
+
+        public long getNumOfBytes() {
+            return endOffset - startOffset;
+        }
+
+        public int getNumOfEntries() {
+            return numOfEntries;
+        }
+    }
+
+    /**
+     * Find the lines of up to maxEntries slots from fromSlot on within the segment containing fromSlot, without reading
+     * more of the segment than the lines between the index entries and the two ends of the range.
+     *
+     * @return The range, null if fromSlot is not in the log or its segment is compressed
+     */
+    public SegmentRange locateRange(final int fromSlot, final int maxEntries) {
+        int segmentIndex = findSegment(fromSlot);
+        try {
+            for (int attempt = 0; attempt < 2; attempt++) {
+                if (segmentIndex >= 0) {
+                    final SegmentRange range = locateRangeInSegment(firstSlots[segmentIndex], fromSlot, maxEntries);
+                    if (range != null) {
+                        return range;
+                    }
+                }
+                firstSlots = ReplicaLogWriter.listSegments(directory);
+                segmentIndex = findSegment(fromSlot);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return null;
+    }
+
+    private SegmentRange locateRangeInSegment(final int firstSlot, final int fromSlot, final int maxEntries) throws IOException {
+        FileChannel[] channels = openSegments.get(firstSlot);
+        if (channels == null) {
+            try {
+                channels = openSegment(firstSlot);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            openSegments.put(firstSlot, channels);
+        }
+        if (channels[0] == null) {
+            return null;
+        }
+        final int interval = ReplicaLogWriter.INDEX_INTERVAL;
+        final int startIndexEntry = (fromSlot - firstSlot) / interval;
+        final long startIndexOffset = readIndexEntry(channels[1], startIndexEntry);
+        if (startIndexOffset < 0) {
+            return null;
+        }
+        final int numOfLinesToStart = fromSlot - (firstSlot + startIndexEntry * interval);
+        final long[] start = scanLines(channels[0], startIndexOffset, numOfLinesToStart);
+        if (start[1] < numOfLinesToStart) {
+            return null;
+        }
+
+        // continue from the index entry closest below the end of the range that exists
+        final int endSlot = fromSlot + maxEntries;
+        int endIndexEntry = Math.min((endSlot - firstSlot) / interval, (int) (channels[1].size() / 8) - 1);
+        long endIndexOffset = readIndexEntry(channels[1], endIndexEntry);
+        int endIndexedSlot = firstSlot + endIndexEntry * interval;
+        if (endIndexEntry <= startIndexEntry || endIndexOffset < 0) {
+            endIndexOffset = start[0];
+            endIndexedSlot = fromSlot;
+        }
+        final long[] end = scanLines(channels[0], endIndexOffset, endSlot - endIndexedSlot);
+        return new SegmentRange(channels[0], start[0], end[0], endIndexedSlot + (int) end[1] - fromSlot);
+    }
+
+    /**
+     * @return The offset stored in the index entry, -1 if the index does not have it
+     */
+    private static long readIndexEntry(final FileChannel index, final int entry) throws IOException {
+        final ByteBuffer offsetBuffer = ByteBuffer.allocate(8);
+        while (offsetBuffer.hasRemaining()) {
+            if (index.read(offsetBuffer, (long) entry * 8 + offsetBuffer.position()) < 0) {
+                return -1;
+            }
+        }
+        return offsetBuffer.getLong(0);
+    }
+
+    /**
+     * Skip up to numOfLines complete lines from the offset on
+     *
+     * @return The offset after the skipped lines and the number of skipped lines
+     */
+    private static long[] scanLines(final FileChannel log, final long offset, final int numOfLines) throws IOException {
+        final ByteBuffer chunk = ByteBuffer.allocate(READ_CHUNK_SIZE);
+        long lineEnd = offset;
+        long position = offset;
+        int numOfScannedLines = 0;
+        while (numOfScannedLines < numOfLines) {
+            chunk.clear();
+            final int length = log.read(chunk, position);
+            if (length <= 0) {
+                break;
+            }
+            for (int i = 0; i < length && numOfScannedLines < numOfLines; i++) {
+                if (chunk.get(i) == '\n') {
+                    numOfScannedLines += 1;
+                    lineEnd = position + i + 1;
+                }
+            }
+            position += length;
+        }
+        return new long[]{lineEnd, numOfScannedLines};
+    }
+
+    public void close() {
+        for (final FileChannel[] channels : openSegments.values()) {
+            closeSegment(channels);
+        }
+        openSegments.clear();
+    }
+
+    /**
+     * @return The position in firstSlots of the segment that would contain the slot, -1 if none
+     */
+    private int findSegment(final int slotIndex) {
+        int position = Arrays.binarySearch(firstSlots, slotIndex);
+        if (position < 0) {
+            position = -position - 2;
+        }
+        return position;
+    }
+
+    /**
+     * Append the values from fromSlot on to values until it holds maxEntries values or the segment ends
+     */
+    private void readFromSegment(final int firstSlot, final int fromSlot, final int maxEntries,
+                                 final List<String> values) throws IOException {
+        final long indexPosition = (long) ((fromSlot - firstSlot) / ReplicaLogWriter.INDEX_INTERVAL) * 8;
+        int indexedSlot = firstSlot + (fromSlot - firstSlot) / ReplicaLogWriter.INDEX_INTERVAL * ReplicaLogWriter.INDEX_INTERVAL;
+
+        FileChannel[] channels = openSegments.get(firstSlot);
+        if (channels == null) {
+            channels = openSegment(firstSlot);
+            openSegments.put(firstSlot, channels);
+        }
+        final ByteBuffer offsetBuffer = ByteBuffer.allocate(8);
+        while (offsetBuffer.hasRemaining()) {
+            if (channels[1].read(offsetBuffer, indexPosition + offsetBuffer.position()) < 0) {
+                return;     // the slot is beyond the end of this segment
+            }
+        }
+        final long offset = offsetBuffer.getLong(0);
+        if (channels[0] == null) {
+            readFromCompressedSegment(firstSlot, offset, indexedSlot, fromSlot, maxEntries, values);
+            return;
+        }
+
+        // read chunks from the indexed line on and split them into lines, skipping the lines before fromSlot
+        final ByteBuffer chunk = ByteBuffer.allocate(READ_CHUNK_SIZE);
+        long position = offset;
+        byte[] pending = new byte[0];
+        while (values.size() < maxEntries) {
+            chunk.clear();
+            final int length = channels[0].read(chunk, position);
+            if (length <= 0) {
+                return;
+            }
+            position += length;
+            final byte[] bytes = Arrays.copyOf(pending, pending.length + length);
+            System.arraycopy(chunk.array(), 0, bytes, pending.length, length);
+            int lineStart = 0;
+            for (int i = 0; i < bytes.length && values.size() < maxEntries; i++) {
+                if (bytes[i] != '\n') {
+                    continue;
+                }
+                if (indexedSlot >= fromSlot) {
+                    values.add(parseValue(bytes, lineStart, i, indexedSlot));
+                }
+                indexedSlot += 1;
+                lineStart = i + 1;
+            }
+            // a line that is not complete yet (still being written) is never returned
+            pending = Arrays.copyOfRange(bytes, lineStart, bytes.length);
+        }
+    }
+
+    private void readFromCompressedSegment(final int firstSlot, final long offset, int indexedSlot, final int fromSlot,
+                                           final int maxEntries, final List<String> values) throws IOException {
+        try (InputStream in = new GZIPInputStream(new FileInputStream(ReplicaLogWriter.compressedSegmentFile(directory, firstSlot)), 1 << 16)) {
+            long skipped = 0;
+            while (skipped < offset) {
+                final long n = in.skip(offset - skipped);
+                if (n <= 0) {
+                    return;
+                }
+                skipped += n;
+            }
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while (values.size() < maxEntries && (line = reader.readLine()) != null) {
+                if (indexedSlot >= fromSlot) {
+                    final byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                    values.add(parseValue(bytes, 0, bytes.length, indexedSlot));
+                }
+                indexedSlot += 1;
+            }
+        }
+    }
+
+    private static String parseValue(final byte[] bytes, final int lineStart, final int lineEnd, final int slotIndex) {
+        int separator = lineStart;
+        while (separator < lineEnd && bytes[separator] != ':') {
+            separator += 1;
+        }
+        final int lineSlot = Integer.parseInt(new String(bytes, lineStart, separator - lineStart, StandardCharsets.US_ASCII));
+        if (lineSlot != slotIndex) {
+            throw new IllegalStateException("Replica log is inconsistent with its index at slot " + slotIndex);
+        }
+        return new String(bytes, separator + 1, lineEnd - separator - 1, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The log (null if the segment is compressed) and the index file of the segment
+     */
+    private FileChannel[] openSegment(final int firstSlot) throws IOException {
+        final FileChannel index = FileChannel.open(ReplicaLogWriter.indexFile(directory, firstSlot).toPath(), StandardOpenOption.READ);
+        final File segment = ReplicaLogWriter.segmentFile(directory, firstSlot);
+        FileChannel log = null;
+        if (segment.exists() || !ReplicaLogWriter.compressedSegmentFile(directory, firstSlot).exists()) {
+            try {
+                log = FileChannel.open(segment.toPath(), StandardOpenOption.READ);
+            } catch (IOException e) {
+                index.close();
+                throw e;
+            }
+        }
+        return new FileChannel[]{log, index};
+    }
+
+    private static void closeSegment(final FileChannel[] channels) {
+        if (channels == null) {
+            return;
+        }
+        for (final FileChannel channel : channels) {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The log of a replica (the executed entries), written into size bounded segment files in a directory:
+ *      "{firstSlot}.log"    one line per slot in slot order, {slotIndex}:{value}
+ *      "{firstSlot}.index"  the byte offset (8 bytes) in the segment of every INDEX_INTERVAL-th slot of it
+ * where firstSlot is the zero padded index of the first slot of the segment, so any slot can be found by a binary
+ * search over the segments and a scan of at most INDEX_INTERVAL lines (see ReplicaLogReader).
+ *
+ * A new segment is started once the current one exceeds maxSegmentBytes. Then a retention policy is applied in the
+ * background: all but the newest numOfUncompressedSegments segments are compressed ("{firstSlot}.log.gz", the index
+ * still refers to the uncompressed bytes), and all but the newest numOfRetainedSegments are deleted.
+ *
+ * Appending a slot that is already in the log does nothing, so that a replica that crashed after writing some entries
+ * but before recording them as executed does not write them twice. A torn line at the end of the log is cut off on
+ * open.
+ */
+public class ReplicaLogWriter {
+
+    public final static long DEFAULT_MAX_SEGMENT_BYTES = 64L << 20;
+    public final static int DEFAULT_NUM_OF_UNCOMPRESSED_SEGMENTS = 4;
+    public final static int RETAIN_ALL_SEGMENTS = -1;
+
+    final static int INDEX_INTERVAL = 64;
+    final static String SEGMENT_SUFFIX = ".log";
+    final static String COMPRESSED_SEGMENT_SUFFIX = ".log.gz";
+    final static String INDEX_SUFFIX = ".index";
+
+    private final File directory;
+    private final long maxSegmentBytes;
+    private final int numOfUncompressedSegments;
+    private final int numOfRetainedSegments;
+
+    // compresses and deletes old segments so that appending never waits for it
+    private final ExecutorService retentionExecutor;
+
+    private int segmentFirstSlot;
+    private int nextSlot;   // the slot the next line is for, -1 if the log is empty
+    private long segmentBytes;
+    private OutputStream segmentStream;
+    private DataOutputStream indexStream;
+
+    public ReplicaLogWriter(final String directory) {
+        this(directory, DEFAULT_MAX_SEGMENT_BYTES, DEFAULT_NUM_OF_UNCOMPRESSED_SEGMENTS, RETAIN_ALL_SEGMENTS);
+    }
+
+    /**
+     * @param numOfUncompressedSegments the number of newest segments that are kept uncompressed
+     * @param numOfRetainedSegments     the number of newest segments that are kept at all, RETAIN_ALL_SEGMENTS to
+     *                                  never delete one
+     */
+    public ReplicaLogWriter(final String directory, final long maxSegmentBytes, final int numOfUncompressedSegments,
+                            final int numOfRetainedSegments) {
+        this.directory = new File(directory);
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new UncheckedIOException(new IOException("Fail to create directory " + directory));
+        }
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.numOfUncompressedSegments = numOfUncompressedSegments;
+        this.numOfRetainedSegments = numOfRetainedSegments;
+        this.retentionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "replica-log-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.nextSlot = -1;
+        try {
+            reopenLastSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Append the value of a slot, slots have to be appended in order
+     */
+    public void append(final int slotIndex, final String value) {
+        if (nextSlot != -1 && slotIndex < nextSlot) {
+            return;
+        }
+        try {
+            if (segmentStream == null || slotIndex != nextSlot) {
+                startSegment(slotIndex);
+            }
+            if ((slotIndex - segmentFirstSlot) % INDEX_INTERVAL == 0) {
+                indexStream.writeLong(segmentBytes);
+            }
+            final byte[] line = (slotIndex + ":" + value + "\n").getBytes(StandardCharsets.UTF_8);
+            segmentStream.write(line);
+            segmentBytes += line.length;
+            nextSlot = slotIndex + 1;
+            if (segmentBytes >= maxSegmentBytes) {
+                closeSegment();
+                applyRetentionPolicy();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Hand every appended line to the OS
+     */
+    public void flush() {
+        if (segmentStream == null) {
+            return;
+        }
+        try {
+            segmentStream.flush();
+            indexStream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The slot the next appended line should be for, -1 if the log is empty
+     */
+    public int getNextSlot() {
+        return nextSlot;
+    }
+
+    public void close() {
+        try {
+            closeSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        retentionExecutor.shutdown();
+    }
+
+    private void startSegment(final int firstSlot) throws IOException {
+        closeSegment();
+        segmentFirstSlot = firstSlot;
+        segmentBytes = 0;
+        segmentStream = new BufferedOutputStream(new FileOutputStream(segmentFile(directory, firstSlot)), 1 << 16);
+        indexStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile(directory, firstSlot))));
+    }
+
+    private void closeSegment() throws IOException {
+        if (segmentStream == null) {
+            return;
+        }
+        segmentStream.close();
+        indexStream.close();
+        segmentStream = null;
+        indexStream = null;
+    }
+
+    /**
+     * Continue the newest uncompressed segment: cut off a torn line at its end, rebuild its index (which may be
+     * behind the segment after a crash) and find the next slot
+     */
+    private void reopenLastSegment() throws IOException {
+        final int[] firstSlots = listSegments(directory);
+        if (firstSlots.length == 0) {
+            return;
+        }
+        final int firstSlot = firstSlots[firstSlots.length - 1];
+        final File segment = segmentFile(directory, firstSlot);
+        if (!segment.exists()) {
+            // the newest segment is already compressed, so it is complete and we know where it ends
+            nextSlot = firstSlot + countLinesOfCompressedSegment(firstSlot);
+            return;
+        }
+        final List<Long> lineOffsets = new ArrayList<>();
+        long completeBytes = 0;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(segment), 1 << 16)) {
+            long position = 0;
+            lineOffsets.add(0L);
+            int b;
+            while ((b = in.read()) != -1) {
+                position += 1;
+                if (b == '\n') {
+                    completeBytes = position;
+                    lineOffsets.add(position);
+                }
+            }
+        }
+        lineOffsets.remove(lineOffsets.size() - 1);   // the offset after the last complete line starts no line
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(completeBytes);
+        }
+        try (DataOutputStream index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile(directory, firstSlot))))) {
+            for (int i = 0; i < lineOffsets.size(); i += INDEX_INTERVAL) {
+                index.writeLong(lineOffsets.get(i));
+            }
+        }
+        if (lineOffsets.isEmpty()) {
+            segment.delete();
+            indexFile(directory, firstSlot).delete();
+            if (firstSlots.length > 1) {
+                reopenLastSegment();
+            }
+            return;
+        }
+        segmentFirstSlot = firstSlot;
+        segmentBytes = completeBytes;
+        nextSlot = firstSlot + lineOffsets.size();
+        segmentStream = new BufferedOutputStream(new FileOutputStream(segment, true), 1 << 16);
+        indexStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile(directory, firstSlot), true)));
+    }
+
+    private int countLinesOfCompressedSegment(final int firstSlot) throws IOException {
+        int numOfLines = 0;
+        try (InputStream in = new BufferedInputStream(new GZIPInputStream(
+                new FileInputStream(compressedSegmentFile(directory, firstSlot))))) {
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    numOfLines += 1;
+                }
+            }
+        }
+        return numOfLines;
+    }
+
+    private void applyRetentionPolicy() {
+        retentionExecutor.execute(this::enforceRetentionPolicy);
+    }
+
+    /**
+     * Compress and delete old segments according to the retention policy on the calling thread; appending does it in
+     * the background whenever a segment is full
+     */
+    public void enforceRetentionPolicy() {
+        final int[] firstSlots = listSegments(directory);
+        // the newest segment may still be written, it is never touched here
+        for (int i = 0; i < firstSlots.length - 1; i++) {
+            final int age = firstSlots.length - 1 - i;
+            try {
+                if (numOfRetainedSegments != RETAIN_ALL_SEGMENTS && age >= numOfRetainedSegments) {
+                    segmentFile(directory, firstSlots[i]).delete();
+                    compressedSegmentFile(directory, firstSlots[i]).delete();
+                    indexFile(directory, firstSlots[i]).delete();
+                } else if (age >= numOfUncompressedSegments && segmentFile(directory, firstSlots[i]).exists()) {
+                    compress(firstSlots[i]);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.println("Fail to apply retention policy to segment " + firstSlots[i]);
+            }
+        }
+    }
+
+    private void compress(final int firstSlot) throws IOException {
+        final File segment = segmentFile(directory, firstSlot);
+        final File compressedSegment = compressedSegmentFile(directory, firstSlot);
+        final File temporaryFile = new File(directory, compressedSegment.getName() + ".tmp");
+        try (InputStream in = new FileInputStream(segment);
+             OutputStream out = new GZIPOutputStream(new FileOutputStream(temporaryFile), 1 << 16)) {
+            final byte[] buffer = new byte[1 << 16];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                out.write(buffer, 0, length);
+            }
+        }
+        if (!temporaryFile.renameTo(compressedSegment)) {
+            throw new IOException("Fail to rename " + temporaryFile);
+        }
+        segment.delete();
+    }
+
+    /**
+     * @return The first slots of all segments (compressed or not), in order
+     */
+    static int[] listSegments(final File directory) {
+        final String[] names = directory.list((dir, name) -> name.endsWith(INDEX_SUFFIX));
+        if (names == null) {
+            return new int[0];
+        }
+        final int[] firstSlots = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            firstSlots[i] = Integer.parseInt(names[i].substring(0, names[i].length() - INDEX_SUFFIX.length()));
+        }
+        Arrays.sort(firstSlots);
+        return firstSlots;
+    }
+
+    static File segmentFile(final File directory, final int firstSlot) {
+        return new File(directory, String.format("%012d", firstSlot) + SEGMENT_SUFFIX);
+    }
+
+    static File compressedSegmentFile(final File directory, final int firstSlot) {
+        return new File(directory, String.format("%012d", firstSlot) + COMPRESSED_SEGMENT_SUFFIX);
+    }
+
+    static File indexFile(final File directory, final int firstSlot) {
+        return new File(directory, String.format("%012d", firstSlot) + INDEX_SUFFIX);
+    }
+}
@@ -0,0 +1,441 @@
+package util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead log of every change LogEntrySlotManager makes to the slots, so that a replica can recover its state
+ * after a crash instead of learning the whole log again from its peers (see LogRecovery).
+ *
+ * The log lives in a directory and is made of segment files named by their sequence number ("000000000007.wal"); a
+ * new segment is started whenever the current one exceeds SEGMENT_SIZE and every time the log is opened, so a torn
+ * record can only be at the end of a segment. Every record is framed as
+ *      {length of body}{CRC32 of body}{type}{fields...}
+ * with the types:
+ *      MIN_PROPOSAL    {minProposal}
+ *      ACCEPT          {slotIndex}{proposal}{clientId}{messageSequenceNumber}{valueLength}{value in UTF-8}
+ *                      (client ID -1 if unknown, value length -1 if null)
+ *      CHOSEN          {slotIndex}
+ *      EXECUTED        {slotIndex}, every slot up to this one is executed
+ *      SESSION_TABLE   {length}{ClientSessionTable.writeTo}
+ *
+ * After SNAPSHOT_INTERVAL_SEGMENTS segments a snapshot of the whole state is written in the same format into the
+ * directory "snapshot-{n}", where n is the first segment not covered by it, and the segments before n are deleted. The
+ * snapshot is built on a thread of its own from the previous snapshot and the segments it covers, which are never
+ * written again, rather than from the slots of the replica, so the consensus thread only starts a new segment for it.
+ *
+ * Records are handed to the OS on flush and forced to disk on sync, which a replica calls before it sends a response
+ * that depends on them. A segment is forced before it is closed.
+ */
+public class WriteAheadLog {
+
+    public final static byte MIN_PROPOSAL = 1;
+    public final static byte ACCEPT = 2;
+    public final static byte CHOSEN = 3;
+    public final static byte EXECUTED = 4;
+    public final static byte SESSION_TABLE = 5;
+
+    public final static int NO_CLIENT_ID = -1;
+
+    final static int RECORD_HEADER_SIZE = 8;
+    final static long SEGMENT_SIZE = 64L << 20;
+    private final static int SNAPSHOT_INTERVAL_SEGMENTS = 16;
+    private final static String SEGMENT_SUFFIX = ".wal";
+    private final static String SNAPSHOT_PREFIX = "snapshot-";
+
+    private final File directory;
+    private final SegmentWriter writer;
+    private final ExecutorService snapshotExecutor;
+    private int numOfSegmentsSinceSnapshot;
+    private volatile boolean snapshotInProgress;
+
+    public WriteAheadLog(final String directory) {
+        this.directory = new File(directory);
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new UncheckedIOException(new IOException("Fail to create directory " + directory));
+        }
+        final List<File> segments = getSegments();
+        final long nextSegmentNumber = segments.isEmpty() ? 0 : getSegmentNumber(segments.get(segments.size() - 1)) + 1;
+        this.writer = new SegmentWriter(this.directory, SEGMENT_SUFFIX, nextSegmentNumber);
+        this.snapshotExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "write-ahead-log-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.numOfSegmentsSinceSnapshot = 0;
+        this.snapshotInProgress = false;
+    }
+
+    public void logMinProposal(final int minProposal) {
+        writer.body(5).put(MIN_PROPOSAL).putInt(minProposal);
+        writer.append();
+    }
+
+    public void logAccept(final int slotIndex, final int proposal, final long clientId,
+                          final int messageSequenceNumber, final String value) {
+        writer.appendAccept(slotIndex, proposal, clientId, messageSequenceNumber, value);
+    }
+
+    public void logChosen(final int slotIndex) {
+        writer.body(5).put(CHOSEN).putInt(slotIndex);
+        writer.append();
+    }
+
+    public void logExecuted(final int slotIndex) {
+        writer.body(5).put(EXECUTED).putInt(slotIndex);
+        writer.append();
+    }
+
+    /**
+     * Hand every record logged so far to the OS
+     */
+    public void flush() {
+        writer.flush();
+        if (writer.getNumOfRolledSegments() > 0) {
+            numOfSegmentsSinceSnapshot += writer.getNumOfRolledSegments();
+            writer.resetNumOfRolledSegments();
+        }
+    }
+
+    /**
+     * Hand every record logged so far to the OS and force it to disk, a group of records at a time is cheaper than
+     * one record at a time
+     */
+    public void sync() {
+        flush();
+        writer.force();
+    }
+
+    /**
+     * @return Whether enough segments have been written since the last snapshot to take a new one, and no snapshot is
+     * being written
+     */
+    public boolean isSnapshotDue() {
+        return numOfSegmentsSinceSnapshot >= SNAPSHOT_INTERVAL_SEGMENTS && !snapshotInProgress;
+    }
+
+    /**
+     * Continue the log in a new segment and write a snapshot of the segments before it (and the snapshot they follow)
+     * in the background, the segments and snapshots it makes obsolete are deleted once it is written
+     */
+    public void startSnapshot() {
+        writer.roll();
+        final long firstUncoveredSegmentNumber = writer.getSegmentNumber();
+        final List<File> coveredSegments = new ArrayList<>();
+        for (final File segment : getSegmentsToReplay()) {
+            if (!segment.getParentFile().equals(directory) || getSegmentNumber(segment) < firstUncoveredSegmentNumber) {
+                coveredSegments.add(segment);
+            }
+        }
+        numOfSegmentsSinceSnapshot = 0;
+        writer.resetNumOfRolledSegments();
+        snapshotInProgress = true;
+        snapshotExecutor.execute(() -> {
+            try {
+                writeSnapshot(coveredSegments, firstUncoveredSegmentNumber);
+            } finally {
+                snapshotInProgress = false;
+            }
+        });
+    }
+
+    /**
+     * Replay the covered segments into a state of its own and write it as the snapshot of firstUncoveredSegmentNumber
+     */
+    private void writeSnapshot(final List<File> coveredSegments, final long firstUncoveredSegmentNumber) {
+        final LogEntryStore store = new ColumnarLogEntryStore();
+        final ClientSessionTable clientSessionTable = new ClientSessionTable();
+        final int minProposal = LogRecovery.recover(coveredSegments, store, clientSessionTable, 1);
+        int firstUnexecutedIndex = 0;
+        while (store.isExecuted(firstUnexecutedIndex)) {
+            firstUnexecutedIndex += 1;
+        }
+        final File snapshotDirectory = new File(directory, SNAPSHOT_PREFIX + String.format("%012d", firstUncoveredSegmentNumber));
+        final File temporaryDirectory = new File(directory, snapshotDirectory.getName() + ".tmp");
+        try {
+            if (!temporaryDirectory.isDirectory() && !temporaryDirectory.mkdirs()) {
+                throw new IOException("Fail to create directory " + temporaryDirectory);
+            }
+            final SegmentWriter snapshotWriter = new SegmentWriter(temporaryDirectory, SEGMENT_SUFFIX, 0);
+            snapshotWriter.body(5).put(MIN_PROPOSAL).putInt(minProposal);
+            snapshotWriter.append();
+
+            final ByteArrayOutputStream sessionTableBytes = new ByteArrayOutputStream();
+            clientSessionTable.writeTo(new DataOutputStream(sessionTableBytes));
+            snapshotWriter.body(5 + sessionTableBytes.size()).put(SESSION_TABLE).putInt(sessionTableBytes.size())
+                    .put(sessionTableBytes.toByteArray());
+            snapshotWriter.append();
+
+            for (int i = 0; i <= store.getLastIndex(); i++) {
+                if (!store.contains(i)) {
+                    continue;
+                }
+                snapshotWriter.appendAccept(i, store.getAcceptedProposal(i), NO_CLIENT_ID, 0, store.getAcceptedValue(i));
+                if (store.isChosen(i)) {
+                    snapshotWriter.body(5).put(CHOSEN).putInt(i);
+                    snapshotWriter.append();
+                }
+            }
+            if (firstUnexecutedIndex > 0) {
+                snapshotWriter.body(5).put(EXECUTED).putInt(firstUnexecutedIndex - 1);
+                snapshotWriter.append();
+            }
+            snapshotWriter.close();
+            if (!temporaryDirectory.renameTo(snapshotDirectory)) {
+                throw new IOException("Fail to rename " + temporaryDirectory + " to " + snapshotDirectory);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Fail to write snapshot " + snapshotDirectory + ", keep the write-ahead log instead");
+            return;
+        }
+
+        for (final File segment : getSegments()) {
+            if (getSegmentNumber(segment) < firstUncoveredSegmentNumber) {
+                segment.delete();
+            }
+        }
+        final File[] files = directory.listFiles();
+        for (final File file : files == null ? new File[0] : files) {
+            if (file.isDirectory() && file.getName().startsWith(SNAPSHOT_PREFIX) && !file.equals(snapshotDirectory)) {
+                deleteDirectory(file);
+            }
+        }
+    }
+
+    /**
+     * @return The segments of the latest snapshot followed by the write-ahead log segments after it, in the order
+     * their records should be applied
+     */
+    public List<File> getSegmentsToReplay() {
+        final List<File> segmentsToReplay = new ArrayList<>();
+        long firstUncoveredSegmentNumber = 0;
+        final File[] files = directory.listFiles();
+        File latestSnapshot = null;
+        for (final File file : files == null ? new File[0] : files) {
+            if (file.isDirectory() && file.getName().startsWith(SNAPSHOT_PREFIX) && !file.getName().endsWith(".tmp")) {
+                final long coveredUpTo = Long.parseLong(file.getName().substring(SNAPSHOT_PREFIX.length()));
+                if (latestSnapshot == null || coveredUpTo > firstUncoveredSegmentNumber) {
+                    latestSnapshot = file;
+                    firstUncoveredSegmentNumber = coveredUpTo;
+                }
+            }
+        }
+        if (latestSnapshot != null) {
+            segmentsToReplay.addAll(getSegments(latestSnapshot));
+        }
+        for (final File segment : getSegments()) {
+            if (getSegmentNumber(segment) >= firstUncoveredSegmentNumber) {
+                segmentsToReplay.add(segment);
+            }
+        }
+        return segmentsToReplay;
+    }
+
+    public void close() {
+        writer.close();
+        snapshotExecutor.shutdown();
+    }
+
+    private List<File> getSegments() {
+        return getSegments(directory);
+    }
+
+    private static List<File> getSegments(final File directory) {
+        final File[] segments = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (segments == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(segments, (a, b) -> Long.compare(getSegmentNumber(a), getSegmentNumber(b)));
+        return new ArrayList<>(Arrays.asList(segments));
+    }
+
+    private static long getSegmentNumber(final File segment) {
+        final String name = segment.getName();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static void deleteDirectory(final File directory) {
+        final File[] files = directory.listFiles();
+        for (final File file : files == null ? new File[0] : files) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    /**
+     * Append framed records to numbered segment files in a directory, starting a new segment when the current one
+     * exceeds SEGMENT_SIZE
+     */
+    private static class SegmentWriter {
+
+        private final static int BUFFER_SIZE = 1 << 20;
+
+        private final File directory;
+        private final String suffix;
+        private final ByteBuffer buffer;
+        private final CRC32 crc;
+        private ByteBuffer body;
+
+        private long segmentNumber;
+        private FileChannel segmentChannel;
+        private long segmentSize;
+        private boolean forced;
+        private int numOfRolledSegments;
+
+        SegmentWriter(final File directory, final String suffix, final long firstSegmentNumber) {
+            this.directory = directory;
+            this.suffix = suffix;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            this.crc = new CRC32();
+            this.body = ByteBuffer.allocate(4096);
+            this.segmentNumber = firstSegmentNumber;
+            this.numOfRolledSegments = 0;
+            openSegment();
+        }
+
+        /**
+         * @return The cleared body buffer of the next record, holding at least capacity bytes
+         */
+        ByteBuffer body(final int capacity) {
+            if (body.capacity() < capacity) {
+                body = ByteBuffer.allocate(Math.max(capacity, body.capacity() * 2));
+            }
+            body.clear();
+            return body;
+        }
+
+        void appendAccept(final int slotIndex, final int proposal, final long clientId,
+                          final int messageSequenceNumber, final String value) {
+            final byte[] valueBytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+            final int valueLength = valueBytes == null ? -1 : valueBytes.length;
+            final ByteBuffer body = body(25 + Math.max(0, valueLength));
+            body.put(ACCEPT).putInt(slotIndex).putInt(proposal).putLong(clientId).putInt(messageSequenceNumber).putInt(valueLength);
+            if (valueBytes != null) {
+                body.put(valueBytes);
+            }
+            append();
+        }
+
+        /**
+         * Frame the body buffer as a record
+         */
+        void append() {
+            body.flip();
+            crc.reset();
+            crc.update(body.array(), 0, body.limit());
+            final int recordSize = RECORD_HEADER_SIZE + body.limit();
+            if (buffer.remaining() < recordSize) {
+                flush();
+            }
+            if (buffer.remaining() < recordSize) {
+                // a record larger than the buffer is written on its own
+                final ByteBuffer record = ByteBuffer.allocate(recordSize);
+                record.putInt(body.limit()).putInt((int) crc.getValue()).put(body);
+                record.flip();
+                write(record);
+            } else {
+                buffer.putInt(body.limit()).putInt((int) crc.getValue()).put(body);
+            }
+            segmentSize += recordSize;
+            if (segmentSize >= SEGMENT_SIZE) {
+                roll();
+            }
+        }
+
+        void flush() {
+            buffer.flip();
+            write(buffer);
+            buffer.clear();
+        }
+
+        /**
+         * Force what has been flushed to the segment to disk, unless nothing has been flushed since the last time
+         */
+        void force() {
+            if (forced) {
+                return;
+            }
+            try {
+                segmentChannel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            forced = true;
+        }
+
+        /**
+         * Flush and continue in a new segment
+         */
+        void roll() {
+            flush();
+            closeSegment();
+            segmentNumber += 1;
+            numOfRolledSegments += 1;
+            openSegment();
+        }
+
+        void close() {
+            flush();
+            closeSegment();
+        }
+
+        long getSegmentNumber() {
+            return segmentNumber;
+        }
+
+        int getNumOfRolledSegments() {
+            return numOfRolledSegments;
+        }
+
+        void resetNumOfRolledSegments() {
+            numOfRolledSegments = 0;
+        }
+
+        private void write(final ByteBuffer bytes) {
+            if (bytes.hasRemaining()) {
+                forced = false;
+            }
+            try {
+                while (bytes.hasRemaining()) {
+                    segmentChannel.write(bytes);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void openSegment() {
+            final File segment = new File(directory, String.format("%012d", segmentNumber) + suffix);
+            try {
+                segmentChannel = new FileOutputStream(segment, true).getChannel();
+                segmentSize = segmentChannel.size();
+                forced = true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void closeSegment() {
+            force();
+            try {
+                segmentChannel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}